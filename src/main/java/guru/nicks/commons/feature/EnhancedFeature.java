@@ -1,6 +1,9 @@
 package guru.nicks.commons.feature;
 
+import guru.nicks.commons.feature.annotation.AsyncIfDisabled;
+import guru.nicks.commons.feature.annotation.AutoDisable;
 import guru.nicks.commons.feature.annotation.BehaviorIfDisabled;
+import guru.nicks.commons.feature.annotation.ClientVisible;
 import guru.nicks.commons.feature.annotation.HowToToggle;
 import guru.nicks.commons.feature.annotation.Stability;
 import guru.nicks.commons.feature.domain.FeatureStability;
@@ -50,6 +53,15 @@ public interface EnhancedFeature extends Feature {
                 .orElse(true);
     }
 
+    /**
+     * Checks if the feature is annotated with {@link ClientVisible @ClientVisible}.
+     *
+     * @return {@code true} if the feature state can be exposed to clients
+     */
+    default boolean isClientVisible() {
+        return !findAnnotations(ClientVisible.class, true).isEmpty();
+    }
+
     /**
      * Collects all non-blank {@link FeatureGroup#value()}'s.
      *
@@ -100,6 +112,24 @@ public interface EnhancedFeature extends Feature {
                 .orElse(FeatureStability.STABLE);
     }
 
+    /**
+     * Reads {@link AutoDisable @AutoDisable}, if any.
+     *
+     * @return circuit breaker settings
+     */
+    default Optional<AutoDisable> findAutoDisable() {
+        return findAnnotationValue(AutoDisable.class, Function.identity());
+    }
+
+    /**
+     * Reads {@link AsyncIfDisabled @AsyncIfDisabled}, if any.
+     *
+     * @return disabled feature behavior for asynchronous methods
+     */
+    default Optional<AsyncIfDisabled> findAsyncIfDisabled() {
+        return findAnnotationValue(AsyncIfDisabled.class, Function.identity());
+    }
+
     /**
      * Reads non-blank {@link BehaviorIfDisabled#value()}}, if any.
      *
@@ -1,6 +1,18 @@
 package guru.nicks.commons.feature;
 
+import guru.nicks.commons.feature.annotation.AsyncIfDisabled;
+import guru.nicks.commons.feature.annotation.AutoDisable;
+import guru.nicks.commons.feature.annotation.FeatureGate;
 import guru.nicks.commons.feature.exception.FeatureDisabledException;
+import guru.nicks.commons.feature.interceptor.FeatureCircuitBreaker;
+import guru.nicks.commons.feature.interceptor.FeatureLatencyRecorder;
+import guru.nicks.commons.feature.interceptor.FeatureShadow;
+import guru.nicks.commons.feature.interceptor.FeatureThrottle;
+import guru.nicks.commons.feature.interceptor.ShadowCallExecutor;
+import guru.nicks.commons.feature.interceptor.TargetCall;
+import guru.nicks.commons.feature.lifecycle.FeatureAwareLifecycle;
+import guru.nicks.commons.feature.lifecycle.FeatureLifecycleManager;
+import guru.nicks.commons.feature.usage.FeatureUsageTracker;
 import guru.nicks.commons.utils.ExceptionUtils;
 import guru.nicks.commons.utils.ReflectionUtils;
 
@@ -8,12 +20,14 @@ import jakarta.annotation.Nullable;
 import lombok.Builder;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.NamingStrategy;
 import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
 import net.bytebuddy.implementation.MethodDelegation;
 import net.bytebuddy.implementation.bind.annotation.AllArguments;
 import net.bytebuddy.implementation.bind.annotation.Origin;
@@ -21,14 +35,24 @@ import net.bytebuddy.implementation.bind.annotation.RuntimeType;
 import net.bytebuddy.implementation.bind.annotation.This;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatchers;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
 import org.apache.commons.collections.MapUtils;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.interceptor.AsyncExecutionInterceptor;
 import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.bind.annotation.RestController;
 import org.togglz.core.Feature;
+import org.togglz.core.repository.StateRepository;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -36,7 +60,10 @@ import java.lang.reflect.Modifier;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -47,6 +74,11 @@ import static net.bytebuddy.matcher.ElementMatchers.not;
  * {@link #findRequiredFeature(Class)}. Works both for interface-based and class-based beans, including controllers and
  * beans having no default constructor.
  * <p>
+ * If the bean is already a Spring AOP proxy (e.g. because of {@code @Transactional} or {@code @Cacheable}), no wrapper
+ * class is generated: the feature check is added as the first advisor of the existing proxy instead, so there's one
+ * proxy layer less, and a disabled feature skips the other interceptors too. Otherwise, a subclass of the target class
+ * is generated.
+ * <p>
  * <b>WARNING: As of Spring Boot 3.5.8, controllers cannot be wrapped:</b> endpoints returning void (e.g. those having
  * {@code DeleteMapping}) stop being called - no matter if the feature is enabled or not. The reason is unknown. For
  * this reason, this post processor throws an exception when applied to a controller.
@@ -81,10 +113,41 @@ import static net.bytebuddy.matcher.ElementMatchers.not;
  *              {@code null} may impede the business logic. More complex use cases require manual
  *              {@link FeatureTester#checkState(Feature) handling} in the source code.
  *          </li>
+ *          <li>
+ *              If the decorated method returns {@code CompletableFuture}, {@code CompletionStage} or {@code Future},
+ *              nothing is thrown: a failed (with {@link FeatureDisabledException} having no stack trace) or an
+ *              empty-completed future is returned, as per {@link AsyncIfDisabled @AsyncIfDisabled}. With
+ *              {@link AsyncIfDisabled#recheckOnExecution()}, {@link Async @Async} methods of AOP-proxied beans also
+ *              check the feature when the executor runs them.
+ *          </li>
  *      </ul>
  *  </li>
  * </ul>
  * <p>
+ * Each wrapper class is defined in its own class loader (ByteBuddy's default), whose parent is the target class'
+ * loader, so wrappers of classes living in a child loader (e.g. Spring DevTools' restart class loader) resolve against
+ * that loader. A wrapper class is unloaded as soon as the wrapped bean becomes unreachable.
+ * <p>
+ * Features annotated with {@link AutoDisable @AutoDisable} are disabled automatically if their beans fail or are slow
+ * too often - provided that {@link #setStateRepository(StateRepository)} has been called. With the state repository
+ * set, any enabled feature can also be put into a degraded mode at runtime, admitting only a fraction or a rate of
+ * calls (see {@link FeatureThrottle}). If {@link #setShadowCallExecutor(ShadowCallExecutor)} has been called too,
+ * calls to beans of disabled features can be mirrored asynchronously (see {@link FeatureShadow}).
+ * <p>
+ * If {@link #setLatencyRecorder(FeatureLatencyRecorder)} has been called, latency of each gated call is recorded per
+ * feature, method, and path taken (target or fallback). If {@link #setUsageTracker(FeatureUsageTracker)} has been
+ * called, calls to gated beans are counted per feature.
+ * <p>
+ * If {@link #setLifecycleManager(FeatureLifecycleManager)} has been called, beans implementing
+ * {@link FeatureAwareLifecycle} are notified when their feature is turned on or off, so they can release resources
+ * while it's off. {@link FeatureAwareLifecycle} methods are never gated.
+ * <p>
+ * Gated classes can be indexed at compile time (see {@link GatedBeanIndex}), so that beans of classes not in the index
+ * are returned as is, without calling {@link #findRequiredFeature(Class)}. This is opt-in:
+ * {@link #setGatedBeanIndexEnabled(boolean) setGatedBeanIndexEnabled(true)} may be called only if <b>all</b>
+ * annotations {@link #findRequiredFeature(Class)} reads are marked with {@link FeatureGate @FeatureGate} and passed to
+ * the annotation processor - otherwise, classes annotated with the other ones lose their gate. Classes of jars and
+ * directories having no index are checked the usual way.
  */
 @RequiredArgsConstructor
 @Slf4j
@@ -104,6 +167,70 @@ public abstract class FeatureBeanPostProcessor implements BeanPostProcessor {
     @NonNull // Lombok creates runtime nullness check for this own annotation only
     private final Predicate<Feature> featureTester;
 
+    /**
+     * State repository chain. Optional, enables {@link AutoDisable @AutoDisable} and {@link FeatureThrottle degraded
+     * mode} support.
+     */
+    @Nullable
+    @Setter
+    private StateRepository stateRepository;
+
+    /**
+     * One breaker per feature, shared by all beans gated by it.
+     */
+    private final Map<Feature, FeatureCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * One throttle per feature, shared by all beans gated by it.
+     */
+    private final Map<Feature, FeatureThrottle> throttles = new ConcurrentHashMap<>();
+
+    /**
+     * Optional, enables {@link FeatureShadow shadow mode} support (together with {@link #stateRepository}).
+     */
+    @Nullable
+    @Setter
+    private ShadowCallExecutor shadowCallExecutor;
+
+    /**
+     * One shadow per feature, shared by all beans gated by it.
+     */
+    private final Map<Feature, FeatureShadow> shadows = new ConcurrentHashMap<>();
+
+    /**
+     * Optional, enables latency recording.
+     */
+    @Nullable
+    @Setter
+    private FeatureLatencyRecorder latencyRecorder;
+
+    /**
+     * Optional, enables usage tracking.
+     */
+    @Nullable
+    @Setter
+    private FeatureUsageTracker usageTracker;
+
+    /**
+     * Optional, enables {@link FeatureAwareLifecycle} support.
+     */
+    @Nullable
+    @Setter
+    private FeatureLifecycleManager lifecycleManager;
+
+    /**
+     * Loaded on first use, see {@link #getGatedBeanIndex()}.
+     */
+    @Nullable
+    private volatile GatedBeanIndex gatedBeanIndex;
+
+    /**
+     * If {@code false} (default), {@link GatedBeanIndex} is ignored, and {@link #findRequiredFeature(Class)} is called
+     * for each bean.
+     */
+    @Setter
+    private boolean gatedBeanIndexEnabled;
+
     /**
      * Reads enabler feature from, most commonly, a custom annotation.
      *
@@ -143,21 +270,18 @@ public abstract class FeatureBeanPostProcessor implements BeanPostProcessor {
 
     @Override
     public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) throws BeansException {
+        // O(1) per class in the hierarchy, unlike annotation scanning
+        if (gatedBeanIndexEnabled && !getGatedBeanIndex().mayBeGated(bean.getClass())) {
+            return bean;
+        }
+
         Feature feature = findRequiredFeature(bean.getClass()).orElse(null);
         if (feature == null) {
             return bean;
         }
 
-        // can't subclass bean.getClass() because it might be a JDK proxy (which is a final class)...
+        // can't subclass bean.getClass() because it might be a JDK proxy (which is a final class)
         Class<?> targetClass = AopUtils.getTargetClass(bean);
-        // ...but if the real target class is final, it can't be subclassed either
-        if (Modifier.isFinal(targetClass.getModifiers())) {
-            throw new IllegalArgumentException("Cannot wrap final class [" + targetClass.getName()
-                    + "] for feature ["
-                    + feature
-                    + "]. Consider making the class non-final or using interface-based proxies.");
-        }
-
         boolean targetIsController = isController(targetClass);
 
         // see class-level comment
@@ -167,21 +291,159 @@ public abstract class FeatureBeanPostProcessor implements BeanPostProcessor {
                     + "not. The reason is unknown.");
         }
 
-        log.info("Making all public methods of bean [{}] dependent on feature '{}'. {}", targetClass.getName(), feature,
-                buildExplanationMessage(targetClass, targetIsController));
-
         var interceptor = MethodCallInterceptor.builder()
                 .proxyTarget(bean)
                 .proxyTargetIsController(targetIsController)
                 .feature(feature)
                 .featureTester(featureTester)
+                .circuitBreaker(findCircuitBreaker(feature))
+                .throttle(findThrottle(feature))
+                .shadow(findShadow(feature))
+                .latencies((latencyRecorder == null)
+                        ? null
+                        : latencyRecorder.forFeature(feature))
+                .usageTracker(usageTracker)
+                .lifecycle(((lifecycleManager != null) && (bean instanceof FeatureAwareLifecycle lifecycleBean))
+                        ? lifecycleManager.register(feature, lifecycleBean)
+                        : null)
+                .asyncPolicy(findAsyncIfDisabled(feature)
+                        .map(AsyncIfDisabled::value)
+                        .orElse(null))
                 .build();
+
+        // no need to stack one more proxy layer on top of an existing one (created for @Transactional, @Cacheable,
+        // etc.)
+        if ((bean instanceof Advised advised) && !advised.isFrozen()) {
+            log.info("Making all public methods of AOP-proxied bean [{}] dependent on feature '{}'. {}",
+                    targetClass.getName(), feature, buildExplanationMessage(targetClass, targetIsController));
+
+            // first in the chain: a disabled feature skips the other interceptors (transactions, caching, etc.) too
+            advised.addAdvisor(0, new DefaultPointcutAdvisor(FeatureCheckPointcut.INSTANCE,
+                    (MethodInterceptor) interceptor::invokeInAdviceChain));
+
+            if (findAsyncIfDisabled(feature).map(AsyncIfDisabled::recheckOnExecution).orElse(false)) {
+                addExecutionTimeCheck(advised, interceptor);
+            }
+
+            return bean;
+        }
+
+        // if the real target class is final, it can't be subclassed
+        if (Modifier.isFinal(targetClass.getModifiers())) {
+            throw new IllegalArgumentException("Cannot wrap final class [" + targetClass.getName()
+                    + "] for feature ["
+                    + feature
+                    + "]. Consider making the class non-final or using interface-based proxies.");
+        }
+
+        log.info("Making all public methods of bean [{}] dependent on feature '{}'. {}", targetClass.getName(), feature,
+                buildExplanationMessage(targetClass, targetIsController));
+
         Class<?> wrapperClass = generateWrapperClass(targetClass, interceptor);
 
         // the original class may not have a default constructor (beans having injected dependencies usually do not)
         return ReflectionUtils.instantiateEvenWithoutDefaultConstructor(wrapperClass);
     }
 
+    /**
+     * Adds one more feature check right after the {@link Async @Async} interceptor, if any, so it's done on the
+     * executor thread when the call is actually executed.
+     *
+     * @param advised     AOP proxy
+     * @param interceptor interceptor
+     */
+    private static void addExecutionTimeCheck(Advised advised, MethodCallInterceptor interceptor) {
+        Advisor[] advisors = advised.getAdvisors();
+
+        for (int i = 0; i < advisors.length; i++) {
+            if (advisors[i].getAdvice() instanceof AsyncExecutionInterceptor) {
+                advised.addAdvisor(i + 1, new DefaultPointcutAdvisor(AsyncMethodPointcut.INSTANCE,
+                        (MethodInterceptor) interceptor::recheckInAdviceChain));
+                return;
+            }
+        }
+
+        // the @Async post processor runs later and will put its advisor before the feature check
+        log.debug("No @Async interceptor found in proxy of [{}], feature is checked on execution anyway",
+                AopUtils.getTargetClass(advised).getName());
+    }
+
+    private static Optional<AsyncIfDisabled> findAsyncIfDisabled(Feature feature) {
+        return (feature instanceof EnhancedFeature enhancedFeature)
+                ? enhancedFeature.findAsyncIfDisabled()
+                : Optional.empty();
+    }
+
+    /**
+     * Returns gated bean index, loading it on the first call.
+     *
+     * @return index
+     */
+    private GatedBeanIndex getGatedBeanIndex() {
+        GatedBeanIndex index = gatedBeanIndex;
+
+        if (index == null) {
+            // races are harmless: the index loaded is the same
+            index = GatedBeanIndex.load(Objects.requireNonNullElse(ClassUtils.getDefaultClassLoader(),
+                    getClass().getClassLoader()));
+            gatedBeanIndex = index;
+        }
+
+        return index;
+    }
+
+    /**
+     * Finds or creates circuit breaker for the feature if it's annotated with {@link AutoDisable @AutoDisable}, and
+     * {@link #setStateRepository(StateRepository) state repository} is set.
+     *
+     * @param feature feature
+     * @return circuit breaker, {@code null} if not applicable
+     */
+    @Nullable
+    private FeatureCircuitBreaker findCircuitBreaker(Feature feature) {
+        if ((stateRepository == null) || !(feature instanceof EnhancedFeature enhancedFeature)) {
+            return null;
+        }
+
+        return enhancedFeature.findAutoDisable()
+                .map(settings -> circuitBreakers.computeIfAbsent(feature,
+                        key -> new FeatureCircuitBreaker(feature, settings, stateRepository)))
+                .orElse(null);
+    }
+
+    /**
+     * Finds or creates throttle for the feature if {@link #setStateRepository(StateRepository) state repository} is
+     * set.
+     *
+     * @param feature feature
+     * @return throttle, {@code null} if not applicable
+     */
+    @Nullable
+    private FeatureThrottle findThrottle(Feature feature) {
+        if (stateRepository == null) {
+            return null;
+        }
+
+        return throttles.computeIfAbsent(feature, key -> new FeatureThrottle(feature, stateRepository));
+    }
+
+    /**
+     * Finds or creates shadow for the feature if {@link #setStateRepository(StateRepository) state repository} and
+     * {@link #setShadowCallExecutor(ShadowCallExecutor) shadow call executor} are set.
+     *
+     * @param feature feature
+     * @return shadow, {@code null} if not applicable
+     */
+    @Nullable
+    private FeatureShadow findShadow(Feature feature) {
+        if ((stateRepository == null) || (shadowCallExecutor == null)) {
+            return null;
+        }
+
+        return shadows.computeIfAbsent(feature,
+                key -> new FeatureShadow(feature, stateRepository, shadowCallExecutor));
+    }
+
     /**
      * Builds feature behavior explanation message for logging purposes.
      *
@@ -229,10 +491,49 @@ public abstract class FeatureBeanPostProcessor implements BeanPostProcessor {
                         .filter(ElementMatchers.named("invoke"))
                         .to(interceptor))
                 .make()
-                .load(getClass().getClassLoader())
+                // WRAPPER is what load(ClassLoader) uses anyway, it's spelled out for clarity; the target class'
+                // loader (and not this class' one) is the parent because the target may live in a child loader
+                .load(Objects.requireNonNullElse(targetClass.getClassLoader(), getClass().getClassLoader()),
+                        ClassLoadingStrategy.Default.WRAPPER)
                 .getLoaded();
     }
 
+    /**
+     * Matches the methods {@link MethodCallInterceptor} is applied to in existing AOP proxies: public methods except
+     * those of {@link Object} and their overrides - {@code equals()}, {@code hashCode()} and {@code toString()} must
+     * not depend on a feature toggle - and {@link FeatureAwareLifecycle} methods.
+     */
+    private static final class FeatureCheckPointcut extends StaticMethodMatcherPointcut {
+
+        private static final FeatureCheckPointcut INSTANCE = new FeatureCheckPointcut();
+
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return Modifier.isPublic(method.getModifiers())
+                    && (method.getDeclaringClass() != Object.class)
+                    && !MethodCallInterceptor.isObjectMethod(method)
+                    && !MethodCallInterceptor.isLifecycleMethod(method);
+        }
+
+    }
+
+    /**
+     * Matches {@link FeatureCheckPointcut} methods which are {@link Async @Async} themselves or belong to an
+     * {@link Async @Async} class.
+     */
+    private static final class AsyncMethodPointcut extends StaticMethodMatcherPointcut {
+
+        private static final AsyncMethodPointcut INSTANCE = new AsyncMethodPointcut();
+
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return FeatureCheckPointcut.INSTANCE.matches(method, targetClass)
+                    && (AnnotatedElementUtils.hasAnnotation(method, Async.class)
+                    || AnnotatedElementUtils.hasAnnotation(targetClass, Async.class));
+        }
+
+    }
+
     /**
      * This class MUST be public, otherwise ByteBuddy won't be able to delegate to it.
      */
@@ -251,6 +552,59 @@ public abstract class FeatureBeanPostProcessor implements BeanPostProcessor {
         @NonNull // Lombok creates runtime nullness check for this own annotation only
         Predicate<Feature> featureTester;
 
+        /**
+         * Optional, see {@link AutoDisable @AutoDisable}.
+         */
+        @Nullable
+        FeatureCircuitBreaker circuitBreaker;
+
+        /**
+         * Optional, see {@link FeatureThrottle}.
+         */
+        @Nullable
+        FeatureThrottle throttle;
+
+        /**
+         * Optional, see {@link FeatureShadow}.
+         */
+        @Nullable
+        FeatureShadow shadow;
+
+        /**
+         * Optional, see {@link FeatureLatencyRecorder}.
+         */
+        @Nullable
+        FeatureLatencyRecorder.FeatureLatencies latencies;
+
+        /**
+         * Optional, see {@link FeatureUsageTracker}.
+         */
+        @Nullable
+        FeatureUsageTracker usageTracker;
+
+        /**
+         * Optional, see {@link FeatureLifecycleManager}.
+         */
+        @Nullable
+        FeatureLifecycleManager.FeatureLifecycle lifecycle;
+
+        /**
+         * Optional, {@link AsyncIfDisabled.Policy#FAIL} by default.
+         */
+        @Nullable
+        AsyncIfDisabled.Policy asyncPolicy;
+
+        /**
+         * Checks if {@link CompletableFuture} can be returned instead of the given type, i.e. the type is
+         * {@code CompletableFuture}, {@code CompletionStage} or {@code Future}.
+         *
+         * @param returnType method return type
+         * @return {@code true} if the method is asynchronous
+         */
+        private static boolean isAsync(Class<?> returnType) {
+            return (returnType != Object.class) && returnType.isAssignableFrom(CompletableFuture.class);
+        }
+
         /**
          * Checks if the given method is one of {@link Object}'s {@code equals()}, {@code hashCode()} or
          * {@code toString()} having the canonical signature.
@@ -267,6 +621,22 @@ public abstract class FeatureBeanPostProcessor implements BeanPostProcessor {
             };
         }
 
+        /**
+         * Checks if the given method implements {@link FeatureAwareLifecycle}: lifecycle hooks are called while the
+         * feature is off, so they must not be gated.
+         *
+         * @param method method to check
+         * @return {@code true} method is a lifecycle hook
+         */
+        private static boolean isLifecycleMethod(Method method) {
+            return (method.getParameterCount() == 0)
+                    && FeatureAwareLifecycle.class.isAssignableFrom(method.getDeclaringClass())
+                    && switch (method.getName()) {
+                        case "onFeatureEnabled", "onFeatureDisabled" -> true;
+                        default -> false;
+                    };
+        }
+
         @RuntimeType
         @Nullable
         @SneakyThrows
@@ -280,12 +650,137 @@ public abstract class FeatureBeanPostProcessor implements BeanPostProcessor {
                 return invokeOnTarget(method, methodArguments);
             }
 
-            // don't cache feature state: it can be modified at any time manually, depend on IP address, date, etc.
-            if (featureTester.test(feature)) {
+            if (isLifecycleMethod(method)) {
                 return invokeOnTarget(method, methodArguments);
             }
 
-            return processDisabledFeature(feature, method);
+            return gate(method, () -> invokeOnTarget(method, methodArguments));
+        }
+
+        /**
+         * Same as {@link #invoke(Object, Method, Object[])}, but for beans which are already AOP proxies: called as the
+         * first advice of the proxy's chain, so a disabled feature skips the rest of the chain and the target.
+         * {@link FeatureCheckPointcut} excludes {@code equals()}, {@code hashCode()} and {@code toString()}.
+         *
+         * @param invocation method invocation
+         * @return method invocation result
+         * @throws Throwable whatever the rest of the chain throws
+         */
+        @Nullable
+        public Object invokeInAdviceChain(MethodInvocation invocation) throws Throwable {
+            return gate(invocation.getMethod(), invocation::proceed);
+        }
+
+        /**
+         * Checks the feature once more, without throttling, shadowing, etc. (they've been applied on the first check).
+         * Added after the {@link Async @Async} interceptor, so it runs on the executor thread.
+         *
+         * @param invocation method invocation
+         * @return method invocation result
+         * @throws Throwable whatever the rest of the chain throws
+         */
+        @Nullable
+        public Object recheckInAdviceChain(MethodInvocation invocation) throws Throwable {
+            return (featureTester.test(feature) && ((lifecycle == null) || lifecycle.beforeEnabledCall()))
+                    ? invocation.proceed()
+                    : processDisabledFeature(feature, invocation.getMethod());
+        }
+
+        /**
+         * Calls the target or applies the disabled feature behavior.
+         *
+         * @param method     method being called
+         * @param targetCall target method call
+         * @return method invocation result
+         * @throws Throwable whatever the target method throws
+         */
+        @Nullable
+        private Object gate(Method method, TargetCall targetCall) throws Throwable {
+            if (usageTracker != null) {
+                usageTracker.recordInterceptedCall(feature);
+            }
+
+            // don't cache feature state: it can be modified at any time manually, depend on IP address, date, etc.
+            boolean featureEnabled = featureTester.test(feature);
+
+            if (!featureEnabled) {
+                // shadow mode: the call is mirrored asynchronously, the caller sees the feature as disabled
+                if (shadow != null) {
+                    shadow.mirror(method, warmingUp(targetCall));
+                }
+            }
+            // degraded mode: calls not admitted behave as if the feature was disabled
+            else if ((throttle != null) && !throttle.tryAdmit()) {
+                featureEnabled = false;
+            }
+
+            // warm up beans released while the feature was off, before the first call reaches them; refused if the
+            // enabled state read is older than the disabling event
+            if (featureEnabled && (lifecycle != null) && !lifecycle.beforeEnabledCall()) {
+                featureEnabled = false;
+            }
+
+            if (circuitBreaker != null) {
+                return gateWithCircuitBreaker(method, featureEnabled, targetCall);
+            }
+
+            // no lambdas and wrappers on the hot path: the call is timed here
+            long startNanos = (latencies == null)
+                    ? 0
+                    : System.nanoTime();
+
+            try {
+                return featureEnabled
+                        ? targetCall.call()
+                        : processDisabledFeature(feature, method);
+            } finally {
+                if (latencies != null) {
+                    latencies.record(method, featureEnabled, System.nanoTime() - startNanos);
+                }
+            }
+        }
+
+        /**
+         * Lets the circuit breaker choose between the target and the fallback: probe calls reach the target while the
+         * feature is off.
+         *
+         * @param method         method being called
+         * @param featureEnabled feature state
+         * @param targetCall     target method call
+         * @return method invocation result
+         * @throws Throwable whatever the target method throws
+         */
+        @Nullable
+        private Object gateWithCircuitBreaker(Method method, boolean featureEnabled, TargetCall targetCall)
+                throws Throwable {
+            TargetCall fallback = () -> processDisabledFeature(feature, method);
+
+            if (latencies != null) {
+                targetCall = latencies.timed(method, true, targetCall);
+                fallback = latencies.timed(method, false, fallback);
+            }
+
+            return (lifecycle == null)
+                    ? circuitBreaker.intercept(featureEnabled, targetCall, fallback)
+                    : circuitBreaker.intercept(featureEnabled, targetCall, fallback, lifecycle::warmUp);
+        }
+
+        /**
+         * Makes the target call warm up the bean first, if it supports {@link FeatureAwareLifecycle}. For calls made
+         * while the feature is off, such as shadow calls.
+         *
+         * @param targetCall target method call
+         * @return target call, wrapped if needed
+         */
+        private TargetCall warmingUp(TargetCall targetCall) {
+            if (lifecycle == null) {
+                return targetCall;
+            }
+
+            return () -> {
+                lifecycle.warmUp();
+                return targetCall.call();
+            };
         }
 
         /**
@@ -339,6 +834,16 @@ public abstract class FeatureBeanPostProcessor implements BeanPostProcessor {
                 throw e;
             }
 
+            // exceptions thrown on the caller's thread break async pipelines, and their stack traces are useless there
+            if (isAsync(method.getReturnType())) {
+                log.debug("Feature '{}' disabled - returning {} future instead of calling [{}]", feature,
+                        (asyncPolicy == AsyncIfDisabled.Policy.COMPLETE_EMPTY) ? "empty" : "failed", method);
+
+                return (asyncPolicy == AsyncIfDisabled.Policy.COMPLETE_EMPTY)
+                        ? CompletableFuture.completedFuture(null)
+                        : CompletableFuture.failedFuture(FeatureDisabledException.withoutStackTrace(feature));
+            }
+
             // skip void method (no need for isAssignableFrom() for void class)
             if (method.getReturnType() == void.class) {
                 log.warn("Feature '{}' disabled - skipping void method call [{}]", feature, method);
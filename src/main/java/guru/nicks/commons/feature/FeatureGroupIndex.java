@@ -0,0 +1,174 @@
+package guru.nicks.commons.feature;
+
+import jakarta.annotation.Nullable;
+import org.togglz.core.Feature;
+import org.togglz.core.annotation.FeatureGroup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Maps {@link EnhancedFeature#getGroupNames() feature groups} (i.e. {@link FeatureGroup @FeatureGroup} values) to their
+ * member features. Built once because reading annotations on each call is relatively expensive. Features not
+ * implementing {@link EnhancedFeature} don't belong to any group.
+ * <p>
+ * Each group has a bit number (its index in the sorted group names), and each feature - a precomputed mask of the
+ * groups it belongs to, looked up by enum ordinal. Hence there can be at most {@value #MAX_GROUPS} groups.
+ */
+public class FeatureGroupIndex {
+
+    public static final int MAX_GROUPS = Long.SIZE;
+
+    /**
+     * Sorted by group name, features are in the original order.
+     */
+    private final Map<String, List<Feature>> featuresByGroupName;
+    /**
+     * Keys are group names, values are bit masks with exactly one bit set.
+     */
+    private final Map<String, Long> groupMasksByGroupName;
+
+    /**
+     * Enum class of all indexed features, {@code null} if they're not constants of the same enum (then
+     * {@link #groupMasksByOrdinal} is empty and {@link #groupMasksByFeature} is used).
+     */
+    @Nullable
+    private final Class<?> featuresEnumClass;
+    private final long[] groupMasksByOrdinal;
+    private final Map<Feature, Long> groupMasksByFeature;
+
+    /**
+     * Constructor.
+     *
+     * @param features all features
+     */
+    public FeatureGroupIndex(Collection<? extends Feature> features) {
+        Map<String, List<Feature>> index = new TreeMap<>();
+
+        for (Feature feature : features) {
+            if (feature instanceof EnhancedFeature enhancedFeature) {
+                enhancedFeature.getGroupNames().forEach(groupName ->
+                        index.computeIfAbsent(groupName, key -> new ArrayList<>()).add(feature));
+            }
+        }
+
+        if (index.size() > MAX_GROUPS) {
+            throw new IllegalStateException("Too many feature groups: " + index.size() + " (max. " + MAX_GROUPS + ")");
+        }
+
+        Map<String, List<Feature>> immutableIndex = new LinkedHashMap<>();
+        Map<String, Long> groupMasks = new LinkedHashMap<>();
+        Map<Feature, Long> featureMasks = new HashMap<>();
+
+        index.forEach((groupName, groupFeatures) -> {
+            long groupMask = 1L << groupMasks.size();
+            groupMasks.put(groupName, groupMask);
+            immutableIndex.put(groupName, List.copyOf(groupFeatures));
+            groupFeatures.forEach(feature -> featureMasks.merge(feature, groupMask, (a, b) -> a | b));
+        });
+
+        featuresByGroupName = Collections.unmodifiableMap(immutableIndex);
+        groupMasksByGroupName = Collections.unmodifiableMap(groupMasks);
+        groupMasksByFeature = Map.copyOf(featureMasks);
+
+        featuresEnumClass = findCommonEnumClass(features);
+        groupMasksByOrdinal = (featuresEnumClass == null)
+                ? new long[0]
+                : new long[featuresEnumClass.getEnumConstants().length];
+
+        if (featuresEnumClass != null) {
+            for (Map.Entry<Feature, Long> entry : featureMasks.entrySet()) {
+                groupMasksByOrdinal[((Enum<?>) entry.getKey()).ordinal()] = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * Creates index for all constants of the given enum (the one configured as {@code togglz.feature-enums}).
+     *
+     * @param featuresEnumClass features enum
+     * @return index
+     * @throws IllegalArgumentException the class is not an enum
+     */
+    public static FeatureGroupIndex of(Class<? extends Feature> featuresEnumClass) {
+        if (!featuresEnumClass.isEnum()) {
+            throw new IllegalArgumentException("Class " + featuresEnumClass.getName() + " is not an enum");
+        }
+
+        return new FeatureGroupIndex(Arrays.asList(featuresEnumClass.getEnumConstants()));
+    }
+
+    /**
+     * Returns bit mask of the groups the feature belongs to. O(1) for enum features: one array lookup by ordinal.
+     *
+     * @param feature feature
+     * @return group mask ({@code 0} if the feature doesn't belong to any group or is not indexed)
+     */
+    public long getGroupMask(Feature feature) {
+        if ((feature instanceof Enum<?> enumFeature) && (enumFeature.getDeclaringClass() == featuresEnumClass)) {
+            return groupMasksByOrdinal[enumFeature.ordinal()];
+        }
+
+        return groupMasksByFeature.getOrDefault(feature, 0L);
+    }
+
+    /**
+     * Returns bit mask of the given group.
+     *
+     * @param groupName group name
+     * @return mask with exactly one bit set
+     * @throws IllegalArgumentException the group is unknown
+     */
+    public long getGroupMask(String groupName) {
+        Long groupMask = groupMasksByGroupName.get(groupName);
+        if (groupMask == null) {
+            throw new IllegalArgumentException("Unknown feature group: '" + groupName + "'");
+        }
+
+        return groupMask;
+    }
+
+    /**
+     * Returns names of all non-empty groups.
+     *
+     * @return sorted group names
+     */
+    public Set<String> getGroupNames() {
+        return featuresByGroupName.keySet();
+    }
+
+    /**
+     * Returns features belonging to the given group.
+     *
+     * @param groupName group name
+     * @return features (empty list for an unknown group)
+     */
+    public List<Feature> getFeatures(String groupName) {
+        return featuresByGroupName.getOrDefault(groupName, List.of());
+    }
+
+    @Nullable
+    private static Class<?> findCommonEnumClass(Collection<? extends Feature> features) {
+        Class<?> enumClass = null;
+
+        for (Feature feature : features) {
+            if (!(feature instanceof Enum<?> enumFeature)
+                    || ((enumClass != null) && (enumClass != enumFeature.getDeclaringClass()))) {
+                return null;
+            }
+
+            enumClass = enumFeature.getDeclaringClass();
+        }
+
+        return enumClass;
+    }
+
+}
@@ -0,0 +1,113 @@
+package guru.nicks.commons.feature;
+
+import guru.nicks.commons.feature.domain.GroupFeature;
+
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.annotation.FeatureGroup;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Group-level kill-switches: a disabled group disables all its member features (see
+ * {@link FeatureGroup @FeatureGroup}), i.e. the group state is ANDed with each member feature state. A group is enabled
+ * unless it's explicitly disabled.
+ * <p>
+ * Group states are stored through the same repository chain as feature states, as {@link GroupFeature} pseudo-features
+ * (so the read-only guard, caches and listeners apply to them as well). In memory, disabled groups are held as a single
+ * bit mask, therefore {@link #isAllowedByGroups(Feature)} is O(1) no matter how many groups a feature belongs to.
+ * <p>
+ * Changes made by this instance are applied immediately; those made on other nodes are picked up by
+ * {@link #refresh()} which should be called periodically, e.g. from a {@code @Scheduled} method.
+ */
+@Slf4j
+public class FeatureGroupKillSwitches {
+
+    private final StateRepository stateRepository;
+    private final FeatureGroupIndex featureGroupIndex;
+
+    /**
+     * Bits of disabled groups (see {@link FeatureGroupIndex#getGroupMask(String)}).
+     */
+    private volatile long disabledGroupsMask;
+
+    /**
+     * Constructor. Reads group states from the repository.
+     *
+     * @param stateRepository   repository chain (the same one feature states are stored in)
+     * @param featureGroupIndex feature group index
+     */
+    public FeatureGroupKillSwitches(StateRepository stateRepository, FeatureGroupIndex featureGroupIndex) {
+        this.stateRepository = checkNotNull(stateRepository, "state repository");
+        this.featureGroupIndex = checkNotNull(featureGroupIndex, "feature group index");
+        refresh();
+    }
+
+    /**
+     * Checks if none of the groups the feature belongs to is disabled.
+     *
+     * @param feature feature
+     * @return {@code false} if at least one of the feature's groups is disabled
+     */
+    public boolean isAllowedByGroups(Feature feature) {
+        return (featureGroupIndex.getGroupMask(feature) & disabledGroupsMask) == 0;
+    }
+
+    /**
+     * Checks the group state.
+     *
+     * @param groupName group name
+     * @return {@code true} if the group is not disabled
+     * @throws IllegalArgumentException the group is unknown
+     */
+    public boolean isGroupEnabled(String groupName) {
+        return (featureGroupIndex.getGroupMask(groupName) & disabledGroupsMask) == 0;
+    }
+
+    /**
+     * Stores the group state and applies it immediately.
+     *
+     * @param groupName group name
+     * @param enabled   new state
+     * @throws IllegalArgumentException the group is unknown
+     */
+    public void setGroupEnabled(String groupName, boolean enabled) {
+        long groupMask = featureGroupIndex.getGroupMask(groupName);
+        stateRepository.setFeatureState(new FeatureState(new GroupFeature(groupName), enabled));
+
+        synchronized (this) {
+            disabledGroupsMask = enabled
+                    ? (disabledGroupsMask & ~groupMask)
+                    : (disabledGroupsMask | groupMask);
+        }
+
+        log.warn("Feature group '{}' {}", groupName, enabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Re-reads all group states from the repository.
+     */
+    public void refresh() {
+        long mask = 0;
+
+        for (String groupName : featureGroupIndex.getGroupNames()) {
+            FeatureState groupState = stateRepository.getFeatureState(new GroupFeature(groupName));
+
+            if ((groupState != null) && !groupState.isEnabled()) {
+                mask |= featureGroupIndex.getGroupMask(groupName);
+            }
+        }
+
+        synchronized (this) {
+            if (mask != disabledGroupsMask) {
+                log.info("Disabled feature groups mask changed: {} -> {}", Long.toBinaryString(disabledGroupsMask),
+                        Long.toBinaryString(mask));
+            }
+
+            disabledGroupsMask = mask;
+        }
+    }
+
+}
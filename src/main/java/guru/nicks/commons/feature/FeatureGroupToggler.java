@@ -0,0 +1,62 @@
+package guru.nicks.commons.feature;
+
+import guru.nicks.commons.feature.repository.BatchStateRepository;
+import guru.nicks.commons.feature.repository.CompositeBatchStateRepository;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.util.List;
+
+/**
+ * Toggles all features of a {@link FeatureGroupIndex group} with one batch write. Pass the whole repository chain
+ * (typically {@link CompositeBatchStateRepository}) to get one read-only guard pass, one database batch, one Redis
+ * pipeline and one listener event per group - which is what emergency kill-switches need.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class FeatureGroupToggler {
+
+    @NonNull // Lombok creates runtime nullness check for this own annotation only
+    private final StateRepository stateRepository;
+
+    @NonNull // Lombok creates runtime nullness check for this own annotation only
+    private final FeatureGroupIndex featureGroupIndex;
+
+    /**
+     * Enables or disables all features of the given group. Their strategies and parameters are preserved.
+     *
+     * @param groupName group name
+     * @param enabled   new state
+     * @return new feature states
+     * @throws IllegalArgumentException the group is unknown
+     * @throws IllegalStateException    some features of the group are not toggleable online (then nothing is changed)
+     */
+    public List<FeatureState> setGroupEnabled(String groupName, boolean enabled) {
+        List<Feature> features = featureGroupIndex.getFeatures(groupName);
+        if (features.isEmpty()) {
+            throw new IllegalArgumentException("Unknown feature group: '" + groupName + "'");
+        }
+
+        List<FeatureState> featureStates = features.stream()
+                .map(feature -> {
+                    FeatureState currentState = stateRepository.getFeatureState(feature);
+                    FeatureState newState = (currentState == null)
+                            ? new FeatureState(feature)
+                            : currentState.copy();
+
+                    newState.setEnabled(enabled);
+                    return newState;
+                })
+                .toList();
+
+        log.info("{} {} features of group '{}'", enabled ? "Enabling" : "Disabling", featureStates.size(), groupName);
+        BatchStateRepository.setFeatureStates(stateRepository, featureStates);
+        return featureStates;
+    }
+
+}
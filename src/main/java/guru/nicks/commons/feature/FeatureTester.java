@@ -15,6 +15,17 @@ import java.util.function.Supplier;
  */
 public interface FeatureTester extends Predicate<Feature> {
 
+    /**
+     * Same as {@link #test(Feature)}, but the check is not recorded as feature usage. For internal callers whose checks
+     * don't mean the feature is used, such as periodic refreshes of client-visible feature states.
+     *
+     * @param feature project feature
+     * @return {@code true} if the feature is active
+     */
+    default boolean testWithoutUsageTracking(Feature feature) {
+        return test(feature);
+    }
+
     /**
      * Checks if this feature is currently active and throws an exception if it is not.
      *
@@ -0,0 +1,165 @@
+package guru.nicks.commons.feature;
+
+import guru.nicks.commons.feature.annotation.FeatureGate;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of classes annotated with {@link FeatureGate @FeatureGate}-marked annotations, written at compile time by
+ * {@code GatedBeanIndexProcessor} to {@value #RESOURCE_LOCATION} (one {@code <class name>=<feature>} line per class).
+ * <p>
+ * Each index is trusted only for the classes of the code source (jar or directory) it was found in: classes of other
+ * code sources - e.g. of a library built without the processor - may be gated, and their annotations must be checked
+ * the usual way. Classes having no code source (JDK classes, JDK proxies) are never gated themselves, but their
+ * interfaces are checked.
+ */
+@Slf4j
+public class GatedBeanIndex {
+
+    public static final String RESOURCE_LOCATION = "META-INF/feature-gated-beans.index";
+
+    /**
+     * Keys are code source locations (see {@link #toCodeSourceLocation(URL)}), values are class names indexed there.
+     */
+    private final Map<String, Set<String>> classNamesByCodeSource;
+
+    private GatedBeanIndex(Map<String, Set<String>> classNamesByCodeSource) {
+        this.classNamesByCodeSource = classNamesByCodeSource;
+    }
+
+    /**
+     * Loads index from all {@value #RESOURCE_LOCATION} resources.
+     *
+     * @param classLoader class loader to look the resources up with
+     * @return index
+     */
+    public static GatedBeanIndex load(ClassLoader classLoader) {
+        Map<String, Set<String>> classNamesByCodeSource = new HashMap<>();
+
+        try {
+            for (URL url : Collections.list(classLoader.getResources(RESOURCE_LOCATION))) {
+                String codeSourceLocation = toCodeSourceLocation(url);
+
+                if (codeSourceLocation == null) {
+                    log.warn("Ignoring gated bean index of unknown code source: {}", url);
+                    continue;
+                }
+
+                Set<String> classNames = new HashSet<>();
+                readIndex(url, classNames);
+                classNamesByCodeSource.merge(codeSourceLocation, Set.copyOf(classNames), (first, second) -> first);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + RESOURCE_LOCATION + ": " + e.getMessage(), e);
+        }
+
+        log.debug("Gated bean indexes found in: {}", classNamesByCodeSource.keySet());
+        return new GatedBeanIndex(Map.copyOf(classNamesByCodeSource));
+    }
+
+    /**
+     * Checks if there's any index on the classpath.
+     *
+     * @return {@code true} if the index is present
+     */
+    public boolean isPresent() {
+        return !classNamesByCodeSource.isEmpty();
+    }
+
+    /**
+     * Checks if the class or any of its superclasses and interfaces may be gated: it's either indexed, or comes from a
+     * code source having no index. Superclasses are checked too because the bean class may be a CGLIB subclass, and
+     * the annotation may be inherited.
+     *
+     * @param clazz class to check
+     * @return {@code true} if the class may be gated
+     */
+    public boolean mayBeGated(Class<?> clazz) {
+        for (Class<?> current = clazz; (current != null) && (current != Object.class);
+                current = current.getSuperclass()) {
+            if (mayBeGatedItself(current)) {
+                return true;
+            }
+
+            for (Class<?> anInterface : current.getInterfaces()) {
+                if (mayBeGated(anInterface)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean mayBeGatedItself(Class<?> clazz) {
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        if ((codeSource == null) || (codeSource.getLocation() == null)) {
+            return false;
+        }
+
+        Set<String> classNames = classNamesByCodeSource.get(normalize(codeSource.getLocation().toString()));
+        // not covered by any index
+        return (classNames == null) || classNames.contains(clazz.getName());
+    }
+
+    /**
+     * Converts index resource URL to the {@link #normalize(String) normalized} location of its code source.
+     *
+     * @param indexUrl index resource URL
+     * @return code source location, {@code null} if the URL doesn't end with {@value #RESOURCE_LOCATION}
+     */
+    @Nullable
+    private static String toCodeSourceLocation(URL indexUrl) {
+        String url = indexUrl.toString();
+
+        return url.endsWith(RESOURCE_LOCATION)
+                ? normalize(url.substring(0, url.length() - RESOURCE_LOCATION.length()))
+                : null;
+    }
+
+    /**
+     * Brings jar and directory locations to the same form, whether they come from resource URLs or from
+     * {@link CodeSource#getLocation()}: {@code jar:file:/lib/a.jar!/} and {@code file:/lib/a.jar} become
+     * {@code file:/lib/a.jar}, {@code file:/classes/} becomes {@code file:/classes}. Nested jars (e.g. Spring Boot's)
+     * have several {@code !/} separators, only the last one is removed.
+     *
+     * @param location location
+     * @return normalized location
+     */
+    private static String normalize(String location) {
+        if (location.startsWith("jar:") && location.endsWith("!/")) {
+            location = location.substring("jar:".length(), location.length() - "!/".length());
+        }
+
+        return location.endsWith("/")
+                ? location.substring(0, location.length() - 1)
+                : location;
+    }
+
+    private static void readIndex(URL url, Set<String> classNames) throws IOException {
+        try (var reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            reader.lines()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(line -> (line.indexOf('=') < 0)
+                            ? line
+                            : line.substring(0, line.indexOf('=')))
+                    .forEach(classNames::add);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package guru.nicks.commons.feature.annotation;
+
+import guru.nicks.commons.feature.FeatureBeanPostProcessor;
+import guru.nicks.commons.feature.exception.FeatureDisabledException;
+
+import org.springframework.scheduling.annotation.Async;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * How methods of beans gated by this feature (see {@link FeatureBeanPostProcessor}) returning
+ * {@code CompletableFuture}, {@code CompletionStage} or {@code Future} behave if the feature is disabled. Without this
+ * annotation, such methods return a future failed with {@link FeatureDisabledException}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface AsyncIfDisabled {
+
+    /**
+     * What the future returned instead of calling the method holds.
+     */
+    Policy value() default Policy.FAIL;
+
+    /**
+     * If {@code true}, {@link Async @Async} methods check the feature again when they're actually executed by the
+     * executor (the feature may have been disabled while the call was queued). Note that user-dependent activation
+     * strategies see the executor thread's user, if any.
+     */
+    boolean recheckOnExecution() default false;
+
+    /**
+     * Disabled feature behavior for asynchronous methods.
+     */
+    enum Policy {
+
+        /**
+         * Future failed with {@link FeatureDisabledException} having no stack trace (it's cheap to create, and the
+         * caller's stack is irrelevant for asynchronous code anyway).
+         */
+        FAIL,
+
+        /**
+         * Future completed with {@code null}, like skipping a void method.
+         */
+        COMPLETE_EMPTY
+
+    }
+
+}
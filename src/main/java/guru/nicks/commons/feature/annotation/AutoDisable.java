@@ -0,0 +1,61 @@
+package guru.nicks.commons.feature.annotation;
+
+import guru.nicks.commons.feature.FeatureBeanPostProcessor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Opt-in protective mode (circuit breaker) for beans gated by this feature (see {@link FeatureBeanPostProcessor}): if
+ * calls to such beans fail or are slow too often within a sliding window, the feature is disabled through the state
+ * repository chain. After {@link #retryAfterSeconds()}, a few probe calls are let through, and if they all succeed, the
+ * feature is enabled again.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface AutoDisable {
+
+    /**
+     * Share of failed calls (0..1) which disables the feature.
+     */
+    double maxErrorRate() default 0.5;
+
+    /**
+     * Calls longer than this are slow. {@code 0} means latency is not monitored.
+     */
+    long slowCallMillis() default 0;
+
+    /**
+     * Share of slow calls (0..1) which disables the feature.
+     */
+    double maxSlowCallRate() default 1;
+
+    /**
+     * Rates are not evaluated until the window holds at least this number of calls.
+     */
+    int minCalls() default 20;
+
+    /**
+     * Sliding window length.
+     */
+    int windowSeconds() default 10;
+
+    /**
+     * How long the feature stays disabled before probing.
+     */
+    int retryAfterSeconds() default 60;
+
+    /**
+     * Number of successful probe calls needed to enable the feature again.
+     */
+    int probeCalls() default 5;
+
+    /**
+     * Exceptions (and their subclasses) which don't count as failures, e.g. validation or business exceptions: the bean
+     * has worked as designed.
+     */
+    Class<? extends Throwable>[] ignoreExceptions() default {};
+
+}
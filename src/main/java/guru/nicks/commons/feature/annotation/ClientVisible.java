@@ -0,0 +1,18 @@
+package guru.nicks.commons.feature.annotation;
+
+import guru.nicks.commons.feature.client.ClientFeatureStates;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the feature as visible to clients (web and mobile frontends), see {@link ClientFeatureStates}. Features whose
+ * state depends on the current user must not be client-visible because client-visible states are evaluated without a
+ * user.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ClientVisible {
+}
@@ -0,0 +1,21 @@
+package guru.nicks.commons.feature.annotation;
+
+import guru.nicks.commons.feature.FeatureBeanPostProcessor;
+import guru.nicks.commons.feature.GatedBeanIndex;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a custom annotation as the one {@link FeatureBeanPostProcessor#findRequiredFeature(Class)} reads the feature
+ * from. Classes annotated with such an annotation are written to {@link GatedBeanIndex} at compile time, so the post
+ * processor doesn't have to scan annotations of each bean at startup.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.ANNOTATION_TYPE)
+public @interface FeatureGate {
+}
@@ -0,0 +1,334 @@
+package guru.nicks.commons.feature.client;
+
+import guru.nicks.commons.feature.EnhancedFeature;
+import guru.nicks.commons.feature.annotation.ClientVisible;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPOutputStream;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * States of {@link ClientVisible @ClientVisible} features, for clients polling them. A virtual thread evaluates the
+ * features periodically; only if a state has changed, a new {@link Snapshot} is built, having a new version, the
+ * payload serialized to JSON and gzipped, and an {@code ETag}. Therefore, polls cost no feature evaluation, no
+ * serialization, and no compression - and if the client has the current {@code ETag}, no payload either.
+ * <p>
+ * Full payload: {@code {"version":N,"features":{"A":true,"B":false}}}. Delta payload (only features changed after the
+ * given version): {@code {"version":N,"since":M,"features":{"B":true}}}.
+ * <p>
+ * {@code ETag} depends on the states only, so it's the same on all nodes. Each representation has its own
+ * {@code ETag}: identity, gzipped, and delta ones differ by a suffix. Versions are node-specific (they start with the
+ * node's start time): a version issued by another node is unknown, and the full payload is served instead of a delta.
+ */
+@Slf4j
+public class ClientFeatureStates implements AutoCloseable {
+
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * Number of low bits of {@link Snapshot#version()} holding the change counter.
+     */
+    private static final int COUNTER_BITS = 20;
+
+    private static final String GZIP_ETAG_SUFFIX = "-gzip";
+    private static final String DELTA_ETAG_SUFFIX = "-delta";
+
+    private final Predicate<Feature> featureTester;
+    /**
+     * Sorted by name.
+     */
+    private final List<Feature> features;
+    private final long firstVersion;
+
+    private volatile Snapshot snapshot;
+
+    @Nullable
+    private final Thread refresher;
+
+    /**
+     * Constructor. Evaluates the features and starts the refreshing thread.
+     *
+     * @param featureTester   evaluates features
+     * @param features        all features (only {@link ClientVisible @ClientVisible} ones are exposed)
+     * @param refreshInterval how often to evaluate the features, zero to disable the refreshing thread (then
+     *                        {@link #refresh()} should be called manually)
+     */
+    public ClientFeatureStates(Predicate<Feature> featureTester, Collection<? extends Feature> features,
+            Duration refreshInterval) {
+        this.featureTester = checkNotNull(featureTester, "feature tester");
+        check(refreshInterval, "refresh interval")
+                .notNull()
+                .constraint(interval -> !interval.isNegative(), "must not be negative");
+
+        this.features = checkNotNull(features, "features")
+                .stream()
+                .filter(feature -> (feature instanceof EnhancedFeature enhancedFeature)
+                        && enhancedFeature.isClientVisible())
+                .sorted(Comparator.comparing(Feature::name))
+                .map(Feature.class::cast)
+                .toList();
+
+        firstVersion = System.currentTimeMillis() << COUNTER_BITS;
+        snapshot = Snapshot.build(firstVersion, this.features, evaluate(), null);
+        log.info("Exposing {} client-visible features", this.features.size());
+
+        refresher = refreshInterval.isZero()
+                ? null
+                : Thread.ofVirtual()
+                        .name("client-feature-states-refresher")
+                        .start(() -> refreshLoop(refreshInterval));
+    }
+
+    /**
+     * Returns the current snapshot.
+     *
+     * @return snapshot
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Evaluates the features and, if any state has changed, builds a new snapshot.
+     */
+    public void refresh() {
+        Snapshot current = snapshot;
+        boolean[] states = evaluate();
+
+        if (!current.hasSameStates(states)) {
+            snapshot = Snapshot.build(current.version() + 1, features, states, current);
+            log.debug("Client-visible feature states changed, new version: {}", current.version() + 1);
+        }
+    }
+
+    /**
+     * Stops the refreshing thread.
+     */
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.interrupt();
+        }
+    }
+
+    /**
+     * Checks if the version has been issued by this node.
+     *
+     * @param version version
+     * @return {@code true} if a delta can be built for this version
+     */
+    public boolean isKnownVersion(long version) {
+        return (version >= firstVersion) && (version <= snapshot.version());
+    }
+
+    private boolean[] evaluate() {
+        boolean[] states = new boolean[features.size()];
+
+        for (int i = 0; i < states.length; i++) {
+            states[i] = featureTester.test(features.get(i));
+        }
+
+        return states;
+    }
+
+    private void refreshLoop(Duration refreshInterval) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(refreshInterval);
+
+                try {
+                    refresh();
+                }
+                // keep serving the previous snapshot
+                catch (RuntimeException e) {
+                    log.warn("Failed to refresh client-visible feature states: {}", e.getMessage(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Feature states having precomputed payloads. Arrays are shared and must not be modified.
+     *
+     * @param version        version
+     * @param etag           quoted {@code ETag} value of the full (identity) payload
+     * @param json           full payload
+     * @param gzippedJson    full payload, gzipped
+     * @param previousDelta  delta payload since the previous version, {@code null} for the first version
+     * @param features       features, sorted by name
+     * @param states         feature states, indexes are the same as in {@code features}
+     * @param changeVersions versions in which each feature state has changed last
+     */
+    public record Snapshot(
+
+            long version,
+            String etag,
+            byte[] json,
+            byte[] gzippedJson,
+            @Nullable
+            byte[] previousDelta,
+            List<Feature> features,
+            boolean[] states,
+            long[] changeVersions) {
+
+        private static Snapshot build(long version, List<Feature> features, boolean[] states,
+                @Nullable Snapshot previous) {
+            long[] changeVersions = new long[states.length];
+            for (int i = 0; i < states.length; i++) {
+                changeVersions[i] = ((previous == null) || (previous.states[i] != states[i]))
+                        ? version
+                        : previous.changeVersions[i];
+            }
+
+            String featuresJson = toFeaturesJson(features, states, changeVersions, null);
+            byte[] json = ("{\"version\":" + version + ",\"features\":" + featuresJson + "}")
+                    .getBytes(StandardCharsets.UTF_8);
+
+            // versions are node-specific, so they're not hashed
+            var crc = new CRC32C();
+            crc.update(featuresJson.getBytes(StandardCharsets.UTF_8));
+            String etag = "\"" + HexFormat.of().toHexDigits((int) crc.getValue()) + "\"";
+
+            return new Snapshot(version, etag, json, gzip(json),
+                    (previous == null)
+                            ? null
+                            : toDeltaJson(version, previous.version, features, states, changeVersions),
+                    features, states, changeVersions);
+        }
+
+        /**
+         * Returns delta payload: states changed after the given version.
+         *
+         * @param since version known to the client, must be {@link ClientFeatureStates#isKnownVersion(long) known}
+         * @return delta payload
+         */
+        public byte[] getDelta(long since) {
+            return ((previousDelta != null) && (since == version - 1))
+                    ? previousDelta
+                    : toDeltaJson(version, since, features, states, changeVersions);
+        }
+
+        /**
+         * Returns {@code ETag} of the gzipped full payload.
+         *
+         * @return quoted {@code ETag} value
+         */
+        public String gzipEtag() {
+            return withEtagSuffix(GZIP_ETAG_SUFFIX);
+        }
+
+        /**
+         * Returns {@code ETag} of delta payloads.
+         *
+         * @return quoted {@code ETag} value
+         */
+        public String deltaEtag() {
+            return withEtagSuffix(DELTA_ETAG_SUFFIX);
+        }
+
+        /**
+         * Checks if the {@code If-None-Match} header value is {@code *} or matches the {@code ETag} of any
+         * representation of the current states (weak comparison, as required for {@code If-None-Match}).
+         *
+         * @param ifNoneMatch header value, may contain several (possibly weak) tags
+         * @return {@code true} if the client has the current states
+         */
+        public boolean matches(@Nullable String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+
+            for (String tag : ifNoneMatch.split(",")) {
+                String strongTag = tag.strip();
+                if (strongTag.equals("*")) {
+                    return true;
+                }
+
+                if (strongTag.startsWith("W/")) {
+                    strongTag = strongTag.substring(2);
+                }
+
+                if (strongTag.equals(etag) || strongTag.equals(gzipEtag()) || strongTag.equals(deltaEtag())) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private String withEtagSuffix(String suffix) {
+            // inside the quotes
+            return etag.substring(0, etag.length() - 1) + suffix + "\"";
+        }
+
+        private boolean hasSameStates(boolean[] otherStates) {
+            return Arrays.equals(states, otherStates);
+        }
+
+        private static byte[] toDeltaJson(long version, long since, List<Feature> features, boolean[] states,
+                long[] changeVersions) {
+            return ("{\"version\":" + version + ",\"since\":" + since + ",\"features\":"
+                    + toFeaturesJson(features, states, changeVersions, since) + "}")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Serializes states by hand: feature names are Java identifiers, so they need no escaping, and no JSON library
+         * is needed.
+         *
+         * @param since if not {@code null}, only states changed after this version are serialized
+         */
+        private static String toFeaturesJson(List<Feature> features, boolean[] states, long[] changeVersions,
+                @Nullable Long since) {
+            var json = new StringBuilder(2 + features.size() * 32).append('{');
+
+            for (int i = 0; i < states.length; i++) {
+                if ((since != null) && (changeVersions[i] <= since)) {
+                    continue;
+                }
+
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+
+                json.append('"').append(features.get(i).name()).append("\":").append(states[i]);
+            }
+
+            return json.append('}').toString();
+        }
+
+        private static byte[] gzip(byte[] bytes) {
+            var out = new ByteArrayOutputStream(bytes.length / 2 + 32);
+
+            try (var gzip = new GZIPOutputStream(out)) {
+                gzip.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return out.toByteArray();
+        }
+
+    }
+
+}
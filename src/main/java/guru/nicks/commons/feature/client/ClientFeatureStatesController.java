@@ -0,0 +1,93 @@
+package guru.nicks.commons.feature.client;
+
+import jakarta.annotation.Nullable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves {@link ClientFeatureStates} precomputed payloads (the path is {@value #PATH_PROPERTY}, {@value #DEFAULT_PATH}
+ * by default):
+ * <ul>
+ *  <li>{@code If-None-Match} matching the current {@code ETag} of any representation (or {@code *}) - HTTP 304 without
+ *      body</li>
+ *  <li>{@code ?since=<version>} issued by this node - delta payload</li>
+ *  <li>otherwise - full payload, gzipped if the client accepts it</li>
+ * </ul>
+ * Each representation has its own {@code ETag} (see {@link ClientFeatureStates.Snapshot#gzipEtag()},
+ * {@link ClientFeatureStates.Snapshot#deltaEtag()}), so caches don't mix them up. All responses have
+ * {@code Vary: Accept-Encoding}.
+ * Not an actuator endpoint because actuator operations can neither read request headers nor set response ones.
+ */
+@RestController
+@RequiredArgsConstructor
+public class ClientFeatureStatesController {
+
+    public static final String PATH_PROPERTY = "togglz.client-states.path";
+    public static final String DEFAULT_PATH = "/feature-states";
+
+    private final ClientFeatureStates clientFeatureStates;
+
+    /**
+     * Returns client-visible feature states.
+     *
+     * @param since          version known to the client, if any
+     * @param ifNoneMatch    {@code If-None-Match} header
+     * @param acceptEncoding {@code Accept-Encoding} header
+     * @return response
+     */
+    @GetMapping(path = "${" + PATH_PROPERTY + ":" + DEFAULT_PATH + "}")
+    public ResponseEntity<byte[]> getFeatureStates(
+            @RequestParam(name = "since", required = false) @Nullable Long since,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) @Nullable String ifNoneMatch,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) @Nullable String acceptEncoding) {
+        // read once: the snapshot may be replaced concurrently
+        ClientFeatureStates.Snapshot snapshot = clientFeatureStates.getSnapshot();
+
+        boolean delta = (since != null) && clientFeatureStates.isKnownVersion(since);
+        boolean gzip = !delta && (acceptEncoding != null) && acceptEncoding.contains("gzip");
+
+        String etag;
+        if (delta) {
+            etag = snapshot.deltaEtag();
+        } else if (gzip) {
+            etag = snapshot.gzipEtag();
+        } else {
+            etag = snapshot.etag();
+        }
+
+        if (snapshot.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        var response = ResponseEntity.ok()
+                .eTag(etag)
+                // clients must revalidate, but may keep the payload
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if (delta) {
+            return response.body(snapshot.getDelta(since));
+        }
+
+        if (gzip) {
+            return response
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(snapshot.gzippedJson());
+        }
+
+        return response.body(snapshot.json());
+    }
+
+}
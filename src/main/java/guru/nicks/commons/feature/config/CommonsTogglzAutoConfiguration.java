@@ -1,16 +1,29 @@
 package guru.nicks.commons.feature.config;
 
+import guru.nicks.commons.feature.FeatureGroupKillSwitches;
 import guru.nicks.commons.feature.FeatureTester;
+import guru.nicks.commons.feature.client.ClientFeatureStates;
+import guru.nicks.commons.feature.client.ClientFeatureStatesController;
+import guru.nicks.commons.feature.domain.FeatureLatencyDto;
+import guru.nicks.commons.feature.domain.FeatureUsageDto;
 import guru.nicks.commons.feature.impl.FeatureTesterImpl;
+import guru.nicks.commons.feature.interceptor.FeatureLatencyRecorder;
+import guru.nicks.commons.feature.strategy.ExpressionActivationStrategy;
+import guru.nicks.commons.feature.strategy.FeatureExpressionContext;
+import guru.nicks.commons.feature.strategy.FeatureExpressionContextProvider;
+import guru.nicks.commons.feature.usage.FeatureUsageTracker;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
@@ -20,6 +33,8 @@ import org.togglz.core.manager.EnumBasedFeatureProvider;
 import org.togglz.core.manager.FeatureManager;
 import org.togglz.core.spi.FeatureProvider;
 
+import java.util.List;
+
 /**
  * Works if {@code togglz.enabled} is true.
  * <p>
@@ -37,29 +52,120 @@ import org.togglz.core.spi.FeatureProvider;
 public class CommonsTogglzAutoConfiguration {
 
     /**
-     * Creates {@link FeatureTester} bean if it's not already present.
+     * Creates {@link FeatureTester} bean if it's not already present. If there's a {@link FeatureGroupKillSwitches}
+     * bean, group states are checked too. If there's a {@link FeatureUsageTracker} bean, checks are recorded.
      */
     @ConditionalOnMissingBean(FeatureTester.class)
     @Bean
-    public FeatureTester featureTester(FeatureManager featureManager) {
+    public FeatureTester featureTester(FeatureManager featureManager,
+            ObjectProvider<FeatureGroupKillSwitches> featureGroupKillSwitches,
+            ObjectProvider<FeatureUsageTracker> featureUsageTracker) {
         log.debug("Building {} bean", FeatureTester.class.getSimpleName());
-        return new FeatureTesterImpl(featureManager);
+
+        return new FeatureTesterImpl(featureManager, featureGroupKillSwitches.getIfAvailable(),
+                featureUsageTracker.getIfAvailable());
+    }
+
+    /**
+     * Creates {@link ExpressionActivationStrategy} bean (picked up by Togglz as an activation strategy) if it's not
+     * already present. If there's a {@link FeatureExpressionContextProvider} bean, it builds expression context,
+     * otherwise context is built from the Togglz user.
+     */
+    @ConditionalOnMissingBean(ExpressionActivationStrategy.class)
+    @Bean
+    public ExpressionActivationStrategy expressionActivationStrategy(
+            ObjectProvider<FeatureExpressionContextProvider> contextProvider) {
+        log.debug("Building {} bean", ExpressionActivationStrategy.class.getSimpleName());
+        return new ExpressionActivationStrategy(contextProvider.getIfAvailable(() -> FeatureExpressionContext::from));
     }
 
     /**
      * Add Togglz Web Console endpoint to the list printed by {@code /actuator}, to it can be clicked (not only typed).
+     * Also shows latencies of gated bean calls if there's a {@link FeatureLatencyRecorder} bean.
      */
     @Endpoint(id = "togglz-console")
     @Component
+    @RequiredArgsConstructor
     public static class TogglzConsoleEndpoint {
 
+        private final ObjectProvider<FeatureLatencyRecorder> featureLatencyRecorder;
+
         /**
-         * There must be at least one method annotated with e.g. {@link ReadOperation} (no matter what it does),
-         * otherwise the endpoint will not be registered.
+         * There must be at least one method annotated with e.g. {@link ReadOperation}, otherwise the endpoint will not
+         * be registered.
+         *
+         * @return latencies of the last completed interval, empty if latency recording is off
          */
         @ReadOperation
-        public String dummy() {
-            return "dummy";
+        public List<FeatureLatencyDto> latencies() {
+            FeatureLatencyRecorder recorder = featureLatencyRecorder.getIfAvailable();
+
+            return (recorder == null)
+                    ? List.of()
+                    : recorder.getLatencies();
+        }
+
+    }
+
+    /**
+     * Shows feature usage (to find dead flags) if there's a {@link FeatureUsageTracker} bean.
+     */
+    @Endpoint(id = "feature-usage")
+    @Component
+    @RequiredArgsConstructor
+    public static class FeatureUsageEndpoint {
+
+        private final ObjectProvider<FeatureUsageTracker> featureUsageTracker;
+
+        /**
+         * Returns usage of all features.
+         *
+         * @return usage since the application start, empty if usage tracking is off
+         */
+        @ReadOperation
+        public List<FeatureUsageDto> usage() {
+            FeatureUsageTracker tracker = featureUsageTracker.getIfAvailable();
+
+            return (tracker == null)
+                    ? List.of()
+                    : tracker.getUsage();
+        }
+
+    }
+
+    /**
+     * Serves {@link ClientFeatureStates} to polling clients if {@code togglz.client-states.enabled} is {@code true}.
+     */
+    @ConditionalOnProperty(prefix = "togglz.client-states", name = "enabled")
+    @Configuration(proxyBeanMethods = false)
+    static class ClientStatesBeans {
+
+        @ConditionalOnMissingBean(ClientFeatureStates.class)
+        @Bean(destroyMethod = "close")
+        public ClientFeatureStates clientFeatureStates(FeatureManager featureManager, FeatureTester featureTester) {
+            log.debug("Building {} bean", ClientFeatureStates.class.getSimpleName());
+            // refreshes are not feature usage
+            return new ClientFeatureStates(featureTester::testWithoutUsageTracking, featureManager.getFeatures(),
+                    ClientFeatureStates.DEFAULT_REFRESH_INTERVAL);
+        }
+
+        /**
+         * spring-web is optional, so the controller is referred to only if it's present (a bean method returning it
+         * would fail on introspection otherwise).
+         */
+        @ConditionalOnClass(name = "org.springframework.web.bind.annotation.RestController")
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+        @Configuration(proxyBeanMethods = false)
+        static class ControllerBeans {
+
+            @ConditionalOnMissingBean(ClientFeatureStatesController.class)
+            @Bean
+            public ClientFeatureStatesController clientFeatureStatesController(
+                    ClientFeatureStates clientFeatureStates) {
+                log.debug("Building {} bean", ClientFeatureStatesController.class.getSimpleName());
+                return new ClientFeatureStatesController(clientFeatureStates);
+            }
+
         }
 
     }
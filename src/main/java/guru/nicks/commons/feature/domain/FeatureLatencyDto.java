@@ -0,0 +1,33 @@
+package guru.nicks.commons.feature.domain;
+
+import lombok.Builder;
+
+/**
+ * Latency of calls to one method of a gated bean during the last completed interval.
+ *
+ * @param featureName  feature gating the bean
+ * @param method       method (class simple name and method name)
+ * @param path         {@code enabled} if the target was called, {@code fallback} if the disabled feature behavior was
+ *                     applied
+ * @param count        number of calls
+ * @param meanMillis   mean latency
+ * @param p50Millis    median latency
+ * @param p90Millis    90th percentile of latency
+ * @param p99Millis    99th percentile of latency
+ * @param p999Millis   99.9th percentile of latency
+ * @param maxMillis    max. latency
+ */
+@Builder
+public record FeatureLatencyDto(
+
+        String featureName,
+        String method,
+        String path,
+        long count,
+        double meanMillis,
+        double p50Millis,
+        double p90Millis,
+        double p99Millis,
+        double p999Millis,
+        double maxMillis) {
+}
@@ -11,6 +11,8 @@ import java.util.stream.Collectors;
 /**
  * {@link FeatureState} cannot be directly deserialized from JSON because it lacks a no-args constructor. This DTO
  * stores all feature state information and provides conversion methods.
+ * <p>
+ * Parameters are held as an immutable map, so DTOs can be shared between threads and compared cheaply.
  */
 @Builder(toBuilder = true)
 public record FeatureStateDto(
@@ -20,6 +22,15 @@ public record FeatureStateDto(
         String strategyId,
         Map<String, String> parameters) implements Serializable {
 
+    /**
+     * Compact constructor.
+     */
+    public FeatureStateDto {
+        parameters = (parameters == null)
+                ? Map.of()
+                : Map.copyOf(parameters);
+    }
+
     /**
      * Creates DTO from {@link FeatureState}.
      *
@@ -52,9 +63,7 @@ public record FeatureStateDto(
         var featureState = new FeatureState(feature, enabled);
         featureState.setStrategyId(strategyId);
 
-        if (parameters != null) {
-            parameters.forEach(featureState::setParameter);
-        }
+        parameters.forEach(featureState::setParameter);
 
         return featureState;
     }
@@ -0,0 +1,30 @@
+package guru.nicks.commons.feature.domain;
+
+import jakarta.annotation.Nullable;
+import lombok.Builder;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Usage of one feature since the application start.
+ *
+ * @param featureName          feature name
+ * @param checkCount           number of state checks
+ * @param activeCount          number of state checks which found the feature active
+ * @param interceptedCallCount number of calls to gated beans
+ * @param lastCheckedAt        time of the last state check (with one-second precision), {@code null} if never checked
+ * @param callSites            sampled call sites ({@code class.method:line}) and the number of samples, most frequent
+ *                             first
+ */
+@Builder
+public record FeatureUsageDto(
+
+        String featureName,
+        long checkCount,
+        long activeCount,
+        long interceptedCallCount,
+        @Nullable
+        Instant lastCheckedAt,
+        Map<String, Long> callSites) {
+}
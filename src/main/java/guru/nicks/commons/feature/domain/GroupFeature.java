@@ -0,0 +1,25 @@
+package guru.nicks.commons.feature.domain;
+
+import guru.nicks.commons.feature.FeatureGroupKillSwitches;
+
+import org.togglz.core.Feature;
+
+/**
+ * Pseudo-feature holding the kill-switch state of a whole feature group in the regular state repositories.
+ *
+ * @param groupName group name
+ * @see FeatureGroupKillSwitches
+ */
+public record GroupFeature(String groupName) implements Feature {
+
+    /**
+     * Distinguishes group states from regular feature states in the storage.
+     */
+    public static final String NAME_PREFIX = "@group:";
+
+    @Override
+    public String name() {
+        return NAME_PREFIX + groupName;
+    }
+
+}
@@ -0,0 +1,26 @@
+package guru.nicks.commons.feature.domain;
+
+import guru.nicks.commons.feature.repository.TenantFeatureStateRepository;
+
+import org.togglz.core.Feature;
+
+/**
+ * Pseudo-feature holding the tenant-specific state of a feature in the regular state repositories.
+ *
+ * @param tenantId tenant ID
+ * @param feature  feature
+ * @see TenantFeatureStateRepository
+ */
+public record TenantFeature(String tenantId, Feature feature) implements Feature {
+
+    /**
+     * Distinguishes tenant states from regular feature states in the storage.
+     */
+    public static final String NAME_PREFIX = "@tenant:";
+
+    @Override
+    public String name() {
+        return NAME_PREFIX + tenantId + ":" + feature.name();
+    }
+
+}
@@ -15,4 +15,31 @@ public class FeatureDisabledException extends NotImplementedException {
         super("Feature disabled: " + feature);
     }
 
+    /**
+     * Creates exception without stack trace. Filling in the stack trace is the most expensive part of creating an
+     * exception, so such exceptions can be created on each call, e.g. to fail futures of disabled features.
+     *
+     * @param feature the feature that is disabled
+     * @return exception
+     */
+    public static FeatureDisabledException withoutStackTrace(Feature feature) {
+        return new WithoutStackTrace(feature);
+    }
+
+    /**
+     * Exception whose stack trace is not filled in.
+     */
+    private static final class WithoutStackTrace extends FeatureDisabledException {
+
+        private WithoutStackTrace(Feature feature) {
+            super(feature);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+    }
+
 }
@@ -1,7 +1,10 @@
 package guru.nicks.commons.feature.impl;
 
+import guru.nicks.commons.feature.FeatureGroupKillSwitches;
 import guru.nicks.commons.feature.FeatureTester;
+import guru.nicks.commons.feature.usage.FeatureUsageTracker;
 
+import jakarta.annotation.Nullable;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.togglz.core.Feature;
@@ -13,9 +16,42 @@ public class FeatureTesterImpl implements FeatureTester {
     @NonNull // Lombok creates runtime nullness check for this own annotation only
     private final FeatureManager featureManager;
 
+    /**
+     * Group kill-switches, checked (in O(1)) before the feature itself.
+     */
+    @Nullable
+    private final FeatureGroupKillSwitches featureGroupKillSwitches;
+
+    /**
+     * Optional, records each check.
+     */
+    @Nullable
+    private final FeatureUsageTracker usageTracker;
+
+    /**
+     * Creates feature tester having neither group kill-switches nor usage tracking.
+     *
+     * @param featureManager feature manager
+     */
+    public FeatureTesterImpl(FeatureManager featureManager) {
+        this(featureManager, null, null);
+    }
+
     @Override
     public boolean test(Feature feature) {
-        return featureManager.isActive(feature);
+        boolean active = testWithoutUsageTracking(feature);
+
+        if (usageTracker != null) {
+            usageTracker.recordCheck(feature, active);
+        }
+
+        return active;
+    }
+
+    @Override
+    public boolean testWithoutUsageTracking(Feature feature) {
+        return ((featureGroupKillSwitches == null) || featureGroupKillSwitches.isAllowedByGroups(feature))
+                && featureManager.isActive(feature);
     }
 
 }
@@ -0,0 +1,423 @@
+package guru.nicks.commons.feature.interceptor;
+
+import guru.nicks.commons.feature.annotation.AutoDisable;
+import guru.nicks.commons.feature.repository.ReadonlyGuardFeatureStateRepository;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Disables a feature whose gated bean fails or is slow too often (see {@link AutoDisable @AutoDisable}).
+ * <p>
+ * The feature is disabled through the state repository chain (so all nodes see it), with the
+ * {@value #AUTO_DISABLED_PARAMETER} parameter set. If the chain refuses the write (e.g.
+ * {@link ReadonlyGuardFeatureStateRepository} for features not toggleable online), the feature is disabled in this
+ * process only. After {@link AutoDisable#retryAfterSeconds()}, {@link AutoDisable#probeCalls()} calls are let through
+ * (half-open state); if they all succeed, the feature is enabled again, otherwise the retry period starts anew. If
+ * someone has changed the feature state meanwhile (the parameter is gone), probing is skipped, and the manual decision
+ * is respected.
+ * <p>
+ * Breaker state lives in memory, but the disabled state is persisted. So when a closed breaker sees its feature
+ * disabled, it checks (at most once per retry period) if the feature has been auto-disabled - by another node, or by
+ * this one before a restart - and if so, opens with the persisted disabling time, so that the feature is probed anyway.
+ * <p>
+ * Which exceptions are failures is decided by {@link AutoDisable#ignoreExceptions()} or by a custom classifier (see
+ * {@link #FeatureCircuitBreaker(Feature, AutoDisable, StateRepository, Predicate)}).
+ */
+@Slf4j
+public class FeatureCircuitBreaker {
+
+    public static final String AUTO_DISABLED_PARAMETER = "auto-disabled-at";
+
+    private static final long MIN_PERSISTED_STATE_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Feature feature;
+    private final AutoDisable settings;
+    private final StateRepository stateRepository;
+
+    private final long slowCallNanos;
+    private final long retryAfterNanos;
+    private final SlidingCallStats stats;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger probePermits = new AtomicInteger();
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+    private final Predicate<Throwable> failureClassifier;
+    private final long persistedStateCheckIntervalNanos;
+
+    private volatile long openedAtNanos;
+    private volatile long nextPersistedStateCheckNanos;
+    /**
+     * {@code true} if the state repository refused to store the disabled state.
+     */
+    private volatile boolean disabledInProcessOnly;
+
+    /**
+     * Constructor. Exceptions listed in {@link AutoDisable#ignoreExceptions()} are not failures, all others are.
+     *
+     * @param feature         feature to disable
+     * @param settings        thresholds
+     * @param stateRepository state repository chain
+     */
+    public FeatureCircuitBreaker(Feature feature, AutoDisable settings, StateRepository stateRepository) {
+        this(feature, settings, stateRepository, toFailureClassifier(checkNotNull(settings, "auto-disable settings")));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param feature           feature to disable
+     * @param settings          thresholds ({@link AutoDisable#ignoreExceptions()} is not used)
+     * @param stateRepository   state repository chain
+     * @param failureClassifier returns {@code true} for exceptions which count as failures
+     */
+    public FeatureCircuitBreaker(Feature feature, AutoDisable settings, StateRepository stateRepository,
+            Predicate<Throwable> failureClassifier) {
+        this.feature = checkNotNull(feature, "feature");
+        this.settings = checkNotNull(settings, "auto-disable settings");
+        this.stateRepository = checkNotNull(stateRepository, "state repository");
+        this.failureClassifier = checkNotNull(failureClassifier, "failure classifier");
+
+        slowCallNanos = TimeUnit.MILLISECONDS.toNanos(settings.slowCallMillis());
+        retryAfterNanos = TimeUnit.SECONDS.toNanos(settings.retryAfterSeconds());
+        persistedStateCheckIntervalNanos = Math.max(retryAfterNanos, MIN_PERSISTED_STATE_CHECK_INTERVAL_NANOS);
+        stats = new SlidingCallStats(Duration.ofSeconds(settings.windowSeconds()));
+        nextPersistedStateCheckNanos = System.nanoTime();
+    }
+
+    /**
+     * Calls the target if the feature is enabled and the breaker is closed, or if a probe call is due. Otherwise, calls
+     * the fallback (which applies the usual disabled feature behavior).
+     *
+     * @param featureEnabled feature state as per feature tester
+     * @param targetCall     target method call
+     * @param fallback       disabled feature behavior
+     * @return target method or fallback result
+     * @throws Throwable whatever the target method or the fallback throws
+     */
+    @Nullable
+    public Object intercept(boolean featureEnabled, TargetCall targetCall, TargetCall fallback) throws Throwable {
+        return intercept(featureEnabled, targetCall, fallback, null);
+    }
+
+    /**
+     * Same as {@link #intercept(boolean, TargetCall, TargetCall)}, but prepares the target before a probe call (e.g.
+     * warms up a bean which has released its resources while the feature was off). Preparation time doesn't count
+     * towards {@link AutoDisable#slowCallMillis()}.
+     *
+     * @param featureEnabled feature state as per feature tester
+     * @param targetCall     target method call
+     * @param fallback       disabled feature behavior
+     * @param beforeProbe    called before each probe call, optional
+     * @return target method or fallback result
+     * @throws Throwable whatever the target method or the fallback throws
+     */
+    @Nullable
+    public Object intercept(boolean featureEnabled, TargetCall targetCall, TargetCall fallback,
+            @Nullable Runnable beforeProbe) throws Throwable {
+        State currentState = state.get();
+
+        if ((currentState == State.CLOSED) && (featureEnabled || !adoptPersistedAutoDisabling())) {
+            return featureEnabled
+                    ? execute(targetCall)
+                    : fallback.call();
+        }
+
+        if (tryAcquireProbe()) {
+            if (beforeProbe != null) {
+                beforeProbe.run();
+            }
+
+            return probe(targetCall);
+        }
+
+        // the breaker may have been closed by tryAcquireProbe() (manual state change detected)
+        return (featureEnabled && (state.get() == State.CLOSED))
+                ? execute(targetCall)
+                : fallback.call();
+    }
+
+    /**
+     * Returns current breaker state.
+     *
+     * @return state
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Creates failure classifier from {@link AutoDisable#ignoreExceptions()}.
+     *
+     * @param settings settings
+     * @return classifier returning {@code true} for exceptions which count as failures
+     */
+    private static Predicate<Throwable> toFailureClassifier(AutoDisable settings) {
+        Class<? extends Throwable>[] ignoredExceptions = settings.ignoreExceptions().clone();
+
+        return throwable -> {
+            for (Class<? extends Throwable> ignoredException : ignoredExceptions) {
+                if (ignoredException.isInstance(throwable)) {
+                    return false;
+                }
+            }
+
+            return true;
+        };
+    }
+
+    @Nullable
+    private Object execute(TargetCall targetCall) throws Throwable {
+        long startNanos = System.nanoTime();
+        boolean failed = false;
+
+        try {
+            return targetCall.call();
+        } catch (Throwable t) {
+            failed = failureClassifier.test(t);
+            throw t;
+        } finally {
+            boolean slow = (slowCallNanos > 0) && (System.nanoTime() - startNanos > slowCallNanos);
+            stats.record(failed, slow);
+
+            // thresholds can only be breached by a bad call, no need to evaluate them on each call
+            if ((failed || slow) && isThresholdBreached()) {
+                trip();
+            }
+        }
+    }
+
+    private boolean isThresholdBreached() {
+        SlidingCallStats.Totals totals = stats.getTotals();
+        if ((totals.calls() == 0) || (totals.calls() < settings.minCalls())) {
+            return false;
+        }
+
+        double errorRate = (double) totals.failures() / totals.calls();
+        double slowCallRate = (double) totals.slowCalls() / totals.calls();
+
+        return (errorRate >= settings.maxErrorRate())
+                || ((slowCallNanos > 0) && (slowCallRate >= settings.maxSlowCallRate()));
+    }
+
+    private void trip() {
+        if (!state.compareAndSet(State.CLOSED, State.OPEN)) {
+            return;
+        }
+
+        openedAtNanos = System.nanoTime();
+        SlidingCallStats.Totals totals = stats.getTotals();
+        log.error("Auto-disabling feature '{}': {} of {} calls failed, {} were slow (longer than {} ms)",
+                feature.name(), totals.failures(), totals.calls(), totals.slowCalls(), settings.slowCallMillis());
+
+        disabledInProcessOnly = !storeFeatureState(false);
+    }
+
+    /**
+     * Opens the breaker if the feature has been auto-disabled elsewhere (by another node, or by this one before a
+     * restart). Checked at most once per retry period.
+     *
+     * @return {@code true} if the breaker is not closed anymore
+     */
+    private boolean adoptPersistedAutoDisabling() {
+        long nowNanos = System.nanoTime();
+        if (nowNanos - nextPersistedStateCheckNanos < 0) {
+            return false;
+        }
+
+        nextPersistedStateCheckNanos = nowNanos + persistedStateCheckIntervalNanos;
+        Instant autoDisabledAt = findAutoDisabledAt();
+
+        if (autoDisabledAt == null) {
+            return false;
+        }
+
+        // must be set before the state becomes visible as open
+        openedAtNanos = nowNanos - Math.max(0, Duration.between(autoDisabledAt, Instant.now()).toNanos());
+        disabledInProcessOnly = false;
+
+        if (state.compareAndSet(State.CLOSED, State.OPEN)) {
+            log.warn("Feature '{}' was auto-disabled at {} elsewhere, probing it after the retry period",
+                    feature.name(), autoDisabledAt);
+        }
+
+        return state.get() != State.CLOSED;
+    }
+
+    /**
+     * Finds out when the feature was auto-disabled.
+     *
+     * @return auto-disabling time, {@code null} if the feature is not (or can't be read as) auto-disabled
+     */
+    @Nullable
+    private Instant findAutoDisabledAt() {
+        try {
+            FeatureState featureState = stateRepository.getFeatureState(feature);
+            String autoDisabledAt = (featureState == null) || featureState.isEnabled()
+                    ? null
+                    : featureState.getParameter(AUTO_DISABLED_PARAMETER);
+
+            return (autoDisabledAt == null)
+                    ? null
+                    : Instant.parse(autoDisabledAt);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read auto-disabling time of feature '{}': {}", feature.name(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the half-open state if the retry period has elapsed, and takes one probe permit.
+     *
+     * @return {@code true} if the caller may make a probe call
+     */
+    private boolean tryAcquireProbe() {
+        if ((state.get() == State.OPEN)
+                && (System.nanoTime() - openedAtNanos >= retryAfterNanos)
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            if (!disabledInProcessOnly && !isStillAutoDisabled()) {
+                log.info("State of feature '{}' was changed manually after auto-disabling, not probing",
+                        feature.name());
+                state.set(State.CLOSED);
+                stats.reset();
+                return false;
+            }
+
+            probeSuccesses.set(0);
+            probePermits.set(settings.probeCalls());
+            log.info("Probing auto-disabled feature '{}' with {} calls", feature.name(), settings.probeCalls());
+        }
+
+        return (state.get() == State.HALF_OPEN) && (probePermits.getAndDecrement() > 0);
+    }
+
+    @Nullable
+    private Object probe(TargetCall targetCall) throws Throwable {
+        long startNanos = System.nanoTime();
+        Object result;
+
+        try {
+            result = targetCall.call();
+        } catch (Throwable t) {
+            if (failureClassifier.test(t)) {
+                reopen("failed");
+            } else {
+                completeProbe(startNanos);
+            }
+
+            throw t;
+        }
+
+        completeProbe(startNanos);
+        return result;
+    }
+
+    /**
+     * Reopens the breaker if the probe call was slow, closes it if all probe calls have succeeded.
+     *
+     * @param startNanos probe call start time
+     */
+    private void completeProbe(long startNanos) {
+        if ((slowCallNanos > 0) && (System.nanoTime() - startNanos > slowCallNanos)) {
+            reopen("was slow");
+        } else if ((probeSuccesses.incrementAndGet() >= settings.probeCalls())
+                && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            stats.reset();
+            log.warn("Re-enabling auto-disabled feature '{}': all probe calls succeeded", feature.name());
+
+            if (!disabledInProcessOnly) {
+                storeFeatureState(true);
+            }
+        }
+    }
+
+    private void reopen(String reason) {
+        if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+            openedAtNanos = System.nanoTime();
+            log.warn("Probe call of feature '{}' {}, keeping it disabled", feature.name(), reason);
+        }
+    }
+
+    private boolean isStillAutoDisabled() {
+        try {
+            FeatureState featureState = stateRepository.getFeatureState(feature);
+            return (featureState != null)
+                    && !featureState.isEnabled()
+                    && (featureState.getParameter(AUTO_DISABLED_PARAMETER) != null);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read state of auto-disabled feature '{}', probing anyway: {}", feature.name(),
+                    e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Stores the feature state, keeping its strategy and parameters, and setting or removing
+     * {@value #AUTO_DISABLED_PARAMETER}.
+     *
+     * @param enabled new state
+     * @return {@code true} if stored successfully
+     */
+    private boolean storeFeatureState(boolean enabled) {
+        try {
+            FeatureState currentState = stateRepository.getFeatureState(feature);
+            var newState = new FeatureState(feature, enabled);
+
+            if (currentState != null) {
+                newState.setStrategyId(currentState.getStrategyId());
+                currentState.getParameterMap().forEach((name, value) -> {
+                    if (!AUTO_DISABLED_PARAMETER.equals(name)) {
+                        newState.setParameter(name, value);
+                    }
+                });
+            }
+
+            if (!enabled) {
+                newState.setParameter(AUTO_DISABLED_PARAMETER, Instant.now().toString());
+            }
+
+            stateRepository.setFeatureState(newState);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Failed to store state of feature '{}' (enabled: {}), applying it in this process only",
+                    feature.name(), enabled, e);
+            return false;
+        }
+    }
+
+    /**
+     * Circuit breaker state.
+     */
+    public enum State {
+
+        /**
+         * Feature state is as per feature tester.
+         */
+        CLOSED,
+
+        /**
+         * Feature is disabled by the breaker.
+         */
+        OPEN,
+
+        /**
+         * Feature is disabled by the breaker, but probe calls are let through.
+         */
+        HALF_OPEN
+
+    }
+
+}
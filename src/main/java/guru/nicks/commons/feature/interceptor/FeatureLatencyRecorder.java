@@ -0,0 +1,322 @@
+package guru.nicks.commons.feature.interceptor;
+
+import guru.nicks.commons.feature.domain.FeatureLatencyDto;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Records latency of gated bean calls per feature, method, and path ({@value #ENABLED_PATH} - the target was called,
+ * {@value #FALLBACK_PATH} - the disabled feature behavior was applied) in {@link LatencyHistogram}s. Once per interval,
+ * a virtual thread swaps the histograms, and the completed interval becomes visible through
+ * {@link #getLatencies()} and the {@value #METRIC_NAME} Micrometer meters:
+ * <ul>
+ *  <li>distribution summary (in milliseconds) publishing a percentile histogram, so percentiles can be aggregated
+ *      across instances by the monitoring system; unlike the gauges below, it's recorded on each call</li>
+ *  <li>{@code .percentile} gauges tagged with {@code phi} (0.5, 0.9, 0.99, 0.999) and {@code .max} gauge - in
+ *      milliseconds</li>
+ *  <li>{@code .count} gauge - number of calls</li>
+ * </ul>
+ * Comparing the two paths of the same method shows what enabling or disabling a feature does to latency.
+ */
+@Slf4j
+public class FeatureLatencyRecorder implements MeterBinder, AutoCloseable {
+
+    public static final String METRIC_NAME = "feature.gated.latency";
+    public static final String ENABLED_PATH = "enabled";
+    public static final String FALLBACK_PATH = "fallback";
+
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(1);
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    /**
+     * Histogram bucket range of the distribution summary, in milliseconds.
+     */
+    private static final double MIN_EXPECTED_MILLIS = 0.001;
+    private static final double MAX_EXPECTED_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Map<Feature, FeatureLatencies> featureLatencies = new ConcurrentHashMap<>();
+    /**
+     * All histograms, for the swapping thread and the readers.
+     */
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+    private final Thread swapper;
+    @Nullable
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * Creates recorder having {@link #DEFAULT_INTERVAL}.
+     */
+    public FeatureLatencyRecorder() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Constructor. Starts the histogram swapping thread.
+     *
+     * @param interval histogram interval
+     */
+    public FeatureLatencyRecorder(Duration interval) {
+        check(interval, "latency interval")
+                .notNull()
+                .constraint(Duration::isPositive, "must be positive");
+
+        swapper = Thread.ofVirtual()
+                .name("feature-latency-swapper")
+                .start(() -> swapLoop(interval));
+    }
+
+    /**
+     * Returns recorder for the given feature.
+     *
+     * @param feature feature
+     * @return recorder
+     */
+    public FeatureLatencies forFeature(Feature feature) {
+        checkNotNull(feature, "feature");
+        return featureLatencies.computeIfAbsent(feature, FeatureLatencies::new);
+    }
+
+    /**
+     * Returns latencies of the last completed interval, sorted by feature name, method, and path.
+     *
+     * @return latencies
+     */
+    public List<FeatureLatencyDto> getLatencies() {
+        return entries.stream()
+                .map(Entry::toDto)
+                .sorted(Comparator.comparing(FeatureLatencyDto::featureName)
+                        .thenComparing(FeatureLatencyDto::method)
+                        .thenComparing(FeatureLatencyDto::path))
+                .toList();
+    }
+
+    /**
+     * Completes the current interval of all histograms immediately (normally, it's done by the swapping thread).
+     */
+    public void swapIntervals() {
+        entries.forEach(Entry::swapInterval);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        entries.forEach(entry -> entry.register(registry));
+    }
+
+    /**
+     * Stops the histogram swapping thread.
+     */
+    @Override
+    public void close() {
+        swapper.interrupt();
+    }
+
+    private void swapLoop(Duration interval) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(interval);
+                swapIntervals();
+            }
+        } catch (InterruptedException e) {
+            // recorder closed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Latency recorder of one feature.
+     */
+    public final class FeatureLatencies {
+
+        private final Feature feature;
+        /**
+         * Values are [enabled path entry, fallback path entry].
+         */
+        private final Map<Method, Entry[]> methodEntries = new ConcurrentHashMap<>();
+
+        private FeatureLatencies(Feature feature) {
+            this.feature = feature;
+        }
+
+        /**
+         * Wraps the call so its latency is recorded.
+         *
+         * @param method      method being called
+         * @param enabledPath {@code true} if the call is the target call, {@code false} if it's the fallback
+         * @param call        call to wrap
+         * @return timed call
+         */
+        public TargetCall timed(Method method, boolean enabledPath, TargetCall call) {
+            Entry entry = findEntry(method, enabledPath);
+
+            return () -> {
+                long startNanos = System.nanoTime();
+
+                try {
+                    return call.call();
+                } finally {
+                    entry.record(System.nanoTime() - startNanos);
+                }
+            };
+        }
+
+        /**
+         * Records latency of a call timed by the caller. Unlike {@link #timed(Method, boolean, TargetCall)}, allocates
+         * nothing.
+         *
+         * @param method      method called
+         * @param enabledPath {@code true} if the target was called, {@code false} if it was the fallback
+         * @param nanos       call duration
+         */
+        public void record(Method method, boolean enabledPath, long nanos) {
+            findEntry(method, enabledPath).record(nanos);
+        }
+
+        private Entry findEntry(Method method, boolean enabledPath) {
+            return findEntries(method)[enabledPath ? 0 : 1];
+        }
+
+        private Entry[] findEntries(Method method) {
+            Entry[] methodEntry = methodEntries.get(method);
+            if (methodEntry != null) {
+                return methodEntry;
+            }
+
+            return methodEntries.computeIfAbsent(method, key -> {
+                String methodName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+                Entry[] newEntries = {
+                        new Entry(feature.name(), methodName, ENABLED_PATH),
+                        new Entry(feature.name(), methodName, FALLBACK_PATH)};
+
+                MeterRegistry registry = meterRegistry;
+                for (Entry entry : newEntries) {
+                    entries.add(entry);
+
+                    if (registry != null) {
+                        entry.register(registry);
+                    }
+                }
+
+                return newEntries;
+            });
+        }
+
+    }
+
+    /**
+     * Histogram of one (feature, method, path) combination.
+     */
+    private static final class Entry {
+
+        private final String featureName;
+        private final String method;
+        private final String path;
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private volatile LatencyHistogram.Snapshot lastInterval = LatencyHistogram.Snapshot.EMPTY;
+        /**
+         * Set once the meters have been registered.
+         */
+        @Nullable
+        private volatile DistributionSummary summary;
+
+        private Entry(String featureName, String method, String path) {
+            this.featureName = featureName;
+            this.method = method;
+            this.path = path;
+        }
+
+        private void record(long nanos) {
+            histogram.record(nanos);
+
+            DistributionSummary currentSummary = summary;
+            if (currentSummary != null) {
+                currentSummary.record(toMillis(nanos));
+            }
+        }
+
+        private void swapInterval() {
+            lastInterval = histogram.swapInterval();
+        }
+
+        private void register(MeterRegistry registry) {
+            Tags tags = Tags.of("feature", featureName, "method", method, "path", path);
+
+            // registering the same meter again returns the existing one
+            summary = DistributionSummary.builder(METRIC_NAME)
+                    .description("Latency of gated bean calls")
+                    .tags(tags)
+                    .baseUnit("milliseconds")
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(MIN_EXPECTED_MILLIS)
+                    .maximumExpectedValue(MAX_EXPECTED_MILLIS)
+                    .register(registry);
+
+            for (double percentile : PERCENTILES) {
+                Gauge.builder(METRIC_NAME + ".percentile", this,
+                                entry -> toMillis(entry.lastInterval.getValueAtPercentile(percentile)))
+                        .description("Latency percentile of gated bean calls during the last interval")
+                        .tags(tags)
+                        .tag("phi", String.valueOf(percentile / 100))
+                        .baseUnit("milliseconds")
+                        .register(registry);
+            }
+
+            Gauge.builder(METRIC_NAME + ".max", this, entry -> toMillis(entry.lastInterval.maxNanos()))
+                    .description("Max. latency of gated bean calls during the last interval")
+                    .tags(tags)
+                    .baseUnit("milliseconds")
+                    .register(registry);
+
+            Gauge.builder(METRIC_NAME + ".count", this, entry -> entry.lastInterval.count())
+                    .description("Number of gated bean calls during the last interval")
+                    .tags(tags)
+                    .register(registry);
+        }
+
+        private FeatureLatencyDto toDto() {
+            LatencyHistogram.Snapshot snapshot = lastInterval;
+
+            return FeatureLatencyDto.builder()
+                    .featureName(featureName)
+                    .method(method)
+                    .path(path)
+                    .count(snapshot.count())
+                    .meanMillis(toMillis(snapshot.getMeanNanos()))
+                    .p50Millis(toMillis(snapshot.getValueAtPercentile(50)))
+                    .p90Millis(toMillis(snapshot.getValueAtPercentile(90)))
+                    .p99Millis(toMillis(snapshot.getValueAtPercentile(99)))
+                    .p999Millis(toMillis(snapshot.getValueAtPercentile(99.9)))
+                    .maxMillis(toMillis(snapshot.maxNanos()))
+                    .build();
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+package guru.nicks.commons.feature.interceptor;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Shadow (dark-launch) mode of a disabled feature: the caller's path behaves as if the feature is off, but a sample
+ * ({@value #SAMPLE_PERCENTAGE_PARAMETER} feature state parameter, 0..100) of calls to the gated bean is mirrored
+ * asynchronously by {@link ShadowCallExecutor}, which records their latency and errors and discards their results. This
+ * shows the real production cost of a feature before it's enabled.
+ * <p>
+ * Only void methods are mirrored by default. Non-void methods (whose callers get the usual disabled feature behavior)
+ * are mirrored only if their names are listed in the {@value #NON_VOID_METHODS_PARAMETER} parameter (comma-separated)
+ * - it's up to the developer to make sure that calling them twice has no harmful side effects.
+ * <p>
+ * The parameters are re-read from the state repository chain at most once per
+ * {@value PeriodicFeatureStateReader#REFRESH_INTERVAL_MILLIS} ms, so shadow mode can be changed at runtime. Method
+ * arguments are shared with the caller, so mirrored methods must not rely on them being unchanged after the call
+ * returns.
+ */
+@Slf4j
+public class FeatureShadow {
+
+    public static final String SAMPLE_PERCENTAGE_PARAMETER = "shadow.sample-percentage";
+    public static final String NON_VOID_METHODS_PARAMETER = "shadow.non-void-methods";
+
+    private final Feature feature;
+    private final PeriodicFeatureStateReader stateReader;
+    private final ShadowCallExecutor executor;
+
+    @Nullable
+    private volatile FeatureState lastSeenState;
+    private volatile Settings settings = Settings.OFF;
+
+    /**
+     * Constructor.
+     *
+     * @param feature         feature
+     * @param stateRepository state repository chain to read the parameters from
+     * @param executor        executor for shadow calls
+     */
+    public FeatureShadow(Feature feature, StateRepository stateRepository, ShadowCallExecutor executor) {
+        this.feature = checkNotNull(feature, "feature");
+        stateReader = new PeriodicFeatureStateReader(feature, checkNotNull(stateRepository, "state repository"));
+        this.executor = checkNotNull(executor, "shadow call executor");
+    }
+
+    /**
+     * Mirrors the call asynchronously, if shadow mode is on for the method, and the call is sampled. Must be called
+     * only if the feature is disabled.
+     *
+     * @param method     method being called
+     * @param targetCall target method call
+     * @return {@code true} if the call has been scheduled
+     */
+    public boolean mirror(Method method, TargetCall targetCall) {
+        Settings currentSettings = refreshSettings();
+
+        if ((currentSettings.sampleShare <= 0)
+                || ((method.getReturnType() != void.class)
+                && !currentSettings.nonVoidMethodNames.contains(method.getName()))
+                || ((currentSettings.sampleShare < 1)
+                && (ThreadLocalRandom.current().nextDouble() >= currentSettings.sampleShare))) {
+            return false;
+        }
+
+        return executor.submit(feature, method, targetCall);
+    }
+
+    private Settings refreshSettings() {
+        FeatureState featureState = stateReader.get();
+        // the reader returns the same instance until it re-reads the state
+        if (featureState == lastSeenState) {
+            return settings;
+        }
+
+        lastSeenState = featureState;
+        Settings newSettings = Settings.parse(featureState);
+
+        if (!Objects.equals(newSettings, settings)) {
+            log.warn("Feature '{}' shadow mode: sample share: {}, non-void methods: {}", feature.name(),
+                    newSettings.sampleShare, newSettings.nonVoidMethodNames);
+        }
+
+        settings = newSettings;
+        return newSettings;
+    }
+
+    /**
+     * Parsed parameters.
+     *
+     * @param sampleShare        0..1, 0 means shadow mode is off
+     * @param nonVoidMethodNames names of non-void methods to mirror
+     */
+    private record Settings(double sampleShare, Set<String> nonVoidMethodNames) {
+
+        private static final Settings OFF = new Settings(0, Set.of());
+
+        private static Settings parse(@Nullable FeatureState featureState) {
+            String samplePercentage = (featureState == null)
+                    ? null
+                    : featureState.getParameter(SAMPLE_PERCENTAGE_PARAMETER);
+            if ((samplePercentage == null) || samplePercentage.isBlank()) {
+                return OFF;
+            }
+
+            double sampleShare;
+            try {
+                sampleShare = Math.clamp(Double.parseDouble(samplePercentage.strip()) / 100, 0.0, 1.0);
+            } catch (NumberFormatException e) {
+                log.error("Invalid shadow mode sample percentage of feature '{}', ignoring it: {}",
+                        featureState.getFeature().name(), e.getMessage());
+                return OFF;
+            }
+
+            String nonVoidMethods = featureState.getParameter(NON_VOID_METHODS_PARAMETER);
+            Set<String> nonVoidMethodNames = (nonVoidMethods == null)
+                    ? Set.of()
+                    : Arrays.stream(nonVoidMethods.split(","))
+                            .map(String::strip)
+                            .filter(name -> !name.isEmpty())
+                            .collect(Collectors.toUnmodifiableSet());
+
+            return new Settings(sampleShare, nonVoidMethodNames);
+        }
+
+    }
+
+}
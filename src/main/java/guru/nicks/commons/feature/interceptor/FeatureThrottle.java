@@ -0,0 +1,204 @@
+package guru.nicks.commons.feature.interceptor;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Degraded mode of an enabled feature: admits only a fraction ({@value #ADMITTED_PERCENTAGE_PARAMETER} feature state
+ * parameter, 0..100) and/or a rate ({@value #MAX_CALLS_PER_SECOND_PARAMETER}) of calls to the gated bean; the rest get
+ * the usual disabled feature behavior. Without these parameters, all calls are admitted.
+ * <p>
+ * The parameters are re-read from the state repository chain at most once per
+ * {@value PeriodicFeatureStateReader#REFRESH_INTERVAL_MILLIS} ms (by one of the calling threads), so they can be
+ * changed at runtime. The rate limiter is a lock-free token bucket (GCRA - one {@link AtomicLong} holding the
+ * theoretical arrival time of the next call), shared by all threads, so the configured rate is reached no matter how
+ * many threads call.
+ */
+@Slf4j
+public class FeatureThrottle {
+
+    public static final String MAX_CALLS_PER_SECOND_PARAMETER = "degraded.max-calls-per-second";
+    public static final String ADMITTED_PERCENTAGE_PARAMETER = "degraded.admitted-percentage";
+
+    private final Feature feature;
+    private final PeriodicFeatureStateReader stateReader;
+    private final LongSupplier nanoClock;
+
+    @Nullable
+    private volatile FeatureState lastSeenState;
+    private volatile Limits limits = Limits.UNLIMITED;
+
+    /**
+     * Constructor.
+     *
+     * @param feature         feature
+     * @param stateRepository state repository chain to read the parameters from
+     */
+    public FeatureThrottle(Feature feature, StateRepository stateRepository) {
+        this(feature, stateRepository, System::nanoTime);
+    }
+
+    /**
+     * Constructor having a custom clock for the rate limiter (for tests).
+     *
+     * @param feature         feature
+     * @param stateRepository state repository chain to read the parameters from
+     * @param nanoClock       source of {@link System#nanoTime()}-like values
+     */
+    public FeatureThrottle(Feature feature, StateRepository stateRepository, LongSupplier nanoClock) {
+        this.feature = checkNotNull(feature, "feature");
+        stateReader = new PeriodicFeatureStateReader(feature, checkNotNull(stateRepository, "state repository"));
+        this.nanoClock = checkNotNull(nanoClock, "clock");
+    }
+
+    /**
+     * Decides if the call to the gated bean of an enabled feature should be made.
+     *
+     * @return {@code true} if the call is admitted
+     */
+    public boolean tryAdmit() {
+        refreshIfDue();
+        return limits.tryAdmit();
+    }
+
+    private void refreshIfDue() {
+        FeatureState featureState = stateReader.get();
+        // the reader returns the same instance until it re-reads the state
+        if (featureState == lastSeenState) {
+            return;
+        }
+
+        lastSeenState = featureState;
+        String maxCallsPerSecond = (featureState == null)
+                ? null
+                : featureState.getParameter(MAX_CALLS_PER_SECOND_PARAMETER);
+        String admittedPercentage = (featureState == null)
+                ? null
+                : featureState.getParameter(ADMITTED_PERCENTAGE_PARAMETER);
+
+        Limits currentLimits = limits;
+        // keep token buckets if nothing has changed
+        if (!Objects.equals(maxCallsPerSecond, currentLimits.maxCallsPerSecond)
+                || !Objects.equals(admittedPercentage, currentLimits.admittedPercentage)) {
+            limits = Limits.parse(maxCallsPerSecond, admittedPercentage, nanoClock);
+            log.warn("Feature '{}' degraded mode: max. calls per second: {}, admitted percentage: {}",
+                    feature.name(), maxCallsPerSecond, admittedPercentage);
+        }
+    }
+
+    /**
+     * Parsed parameters. Parameter values are kept as strings to detect changes without parsing.
+     */
+    private static final class Limits {
+
+        private static final Limits UNLIMITED = new Limits(null, null, -1, null);
+
+        @Nullable
+        private final String maxCallsPerSecond;
+        @Nullable
+        private final String admittedPercentage;
+
+        /**
+         * Negative means no percentage limit.
+         */
+        private final double admittedShare;
+        @Nullable
+        private final RateLimiter rateLimiter;
+
+        private Limits(@Nullable String maxCallsPerSecond, @Nullable String admittedPercentage, double admittedShare,
+                @Nullable RateLimiter rateLimiter) {
+            this.maxCallsPerSecond = maxCallsPerSecond;
+            this.admittedPercentage = admittedPercentage;
+            this.admittedShare = admittedShare;
+            this.rateLimiter = rateLimiter;
+        }
+
+        private static Limits parse(@Nullable String maxCallsPerSecond, @Nullable String admittedPercentage,
+                LongSupplier nanoClock) {
+            double admittedShare = -1;
+            RateLimiter rateLimiter = null;
+
+            try {
+                if ((admittedPercentage != null) && !admittedPercentage.isBlank()) {
+                    admittedShare = Math.clamp(Double.parseDouble(admittedPercentage.strip()) / 100, 0.0, 1.0);
+                }
+
+                if ((maxCallsPerSecond != null) && !maxCallsPerSecond.isBlank()) {
+                    rateLimiter = new RateLimiter(Double.parseDouble(maxCallsPerSecond.strip()), nanoClock);
+                }
+            } catch (NumberFormatException e) {
+                log.error("Invalid degraded mode parameters, ignoring them: {}", e.getMessage());
+                return new Limits(maxCallsPerSecond, admittedPercentage, -1, null);
+            }
+
+            return new Limits(maxCallsPerSecond, admittedPercentage, admittedShare, rateLimiter);
+        }
+
+        private boolean tryAdmit() {
+            if ((admittedShare >= 0) && (ThreadLocalRandom.current().nextDouble() >= admittedShare)) {
+                return false;
+            }
+
+            return (rateLimiter == null) || rateLimiter.tryAcquire();
+        }
+
+    }
+
+    /**
+     * GCRA token bucket: stores the theoretical arrival time of the next call and admits a call if it's not too far in
+     * the future. Degraded mode is meant for a few hundred calls per second at most, so one CAS-updated cell doesn't
+     * become a contention point.
+     */
+    private static final class RateLimiter {
+
+        private final AtomicLong theoreticalArrivalNanos;
+        private final LongSupplier nanoClock;
+        private final long intervalNanos;
+        private final long burstNanos;
+
+        private RateLimiter(double maxCallsPerSecond, LongSupplier nanoClock) {
+            this.nanoClock = nanoClock;
+            theoreticalArrivalNanos = new AtomicLong(nanoClock.getAsLong());
+
+            intervalNanos = (maxCallsPerSecond <= 0)
+                    ? Long.MAX_VALUE
+                    : (long) (TimeUnit.SECONDS.toNanos(1) / maxCallsPerSecond);
+            // allow bursts of up to 100 ms worth of calls (at least one call)
+            burstNanos = Math.max(intervalNanos, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+
+        private boolean tryAcquire() {
+            if (intervalNanos == Long.MAX_VALUE) {
+                return false;
+            }
+
+            while (true) {
+                long now = nanoClock.getAsLong();
+                long arrival = theoreticalArrivalNanos.get();
+                // nanoTime() values may only be compared by subtraction
+                long nextArrival = ((arrival - now > 0) ? arrival : now) + intervalNanos;
+
+                if (nextArrival - now > burstNanos) {
+                    return false;
+                }
+
+                if (theoreticalArrivalNanos.compareAndSet(arrival, nextArrival)) {
+                    return true;
+                }
+            }
+        }
+
+    }
+
+}
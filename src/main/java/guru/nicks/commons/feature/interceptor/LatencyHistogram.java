@@ -0,0 +1,194 @@
+package guru.nicks.commons.feature.interceptor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HdrHistogram-style latency recorder with interval swapping. Values (nanoseconds) are counted in log-linear buckets:
+ * each power of two is split into 32 sub-buckets, so the relative error is within ~3%; values up to ~9.7 hours are
+ * tracked, longer ones are clamped.
+ * <p>
+ * Recording is lock-free: writers only increment atomic counters of the active interval. {@link #swapInterval()}
+ * replaces the active interval with an empty one and waits (writer-reader phaser) until in-flight writers of the old
+ * one have finished, so no value is lost or counted twice.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 44;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLong startEpoch = new AtomicLong();
+    private final AtomicLong evenEndEpoch = new AtomicLong();
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile Interval activeInterval = new Interval();
+    /**
+     * Accessed by the reader only.
+     */
+    private Interval inactiveInterval = new Interval();
+
+    /**
+     * Records one value.
+     *
+     * @param nanos latency
+     */
+    public void record(long nanos) {
+        long epoch = startEpoch.getAndIncrement();
+
+        try {
+            activeInterval.record(Math.clamp(nanos, 0, MAX_VALUE));
+        } finally {
+            if (epoch < 0) {
+                oddEndEpoch.getAndIncrement();
+            } else {
+                evenEndEpoch.getAndIncrement();
+            }
+        }
+    }
+
+    /**
+     * Starts a new interval and returns the values recorded during the previous one.
+     *
+     * @return snapshot of the previous interval
+     */
+    public synchronized Snapshot swapInterval() {
+        Interval previousInterval = activeInterval;
+        inactiveInterval.reset();
+        activeInterval = inactiveInterval;
+
+        // writer-reader phaser flip: wait until the writers which may still see the previous interval are done
+        boolean nextPhaseIsEven = (startEpoch.get() < 0);
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        (nextPhaseIsEven ? evenEndEpoch : oddEndEpoch).set(initialStartValue);
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+
+        AtomicLong previousPhaseEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousPhaseEndEpoch.get() != startValueAtFlip) {
+            Thread.onSpinWait();
+        }
+
+        inactiveInterval = previousInterval;
+        return previousInterval.toSnapshot();
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value falling into the given bucket.
+     */
+    private static long bucketUpperBound(int index) {
+        int block = index / SUB_BUCKET_COUNT;
+        int subBucket = index % SUB_BUCKET_COUNT;
+
+        if (block == 0) {
+            return subBucket;
+        }
+
+        int shift = block - 1;
+        return (((long) (SUB_BUCKET_COUNT + subBucket) + 1) << shift) - 1;
+    }
+
+    /**
+     * Counters of one interval.
+     */
+    private static final class Interval {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            buckets.incrementAndGet(bucketIndex(nanos));
+            totalNanos.addAndGet(nanos);
+
+            long max = maxNanos.get();
+            while ((nanos > max) && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        private Snapshot toSnapshot() {
+            long[] counts = new long[BUCKET_COUNT];
+            long count = 0;
+
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets.get(i);
+                count += counts[i];
+            }
+
+            return new Snapshot(counts, count, totalNanos.get(), maxNanos.get());
+        }
+
+    }
+
+    /**
+     * Values recorded during one interval.
+     *
+     * @param counts     bucket counters
+     * @param count      number of values
+     * @param totalNanos sum of values
+     * @param maxNanos   max. value
+     */
+    public record Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+
+        public static final Snapshot EMPTY = new Snapshot(new long[BUCKET_COUNT], 0, 0, 0);
+
+        /**
+         * Returns mean value.
+         *
+         * @return mean value, 0 if there are no values
+         */
+        public double getMeanNanos() {
+            return (count == 0)
+                    ? 0
+                    : (double) totalNanos / count;
+        }
+
+        /**
+         * Returns the value below which the given percentage of values fall (with the histogram's precision).
+         *
+         * @param percentile 0..100
+         * @return value, 0 if there are no values
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(Math.clamp(percentile, 0.0, 100.0) / 100 * count));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), maxNanos);
+                }
+            }
+
+            return maxNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package guru.nicks.commons.feature.interceptor;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads feature state from the state repository chain at most once per {@link #REFRESH_INTERVAL_MILLIS} ms, on the
+ * calling thread (only one of the concurrent callers does it, others get the previous state). Meant for feature state
+ * parameters consulted on each gated call, where reading the chain each time would be too expensive.
+ */
+@Slf4j
+class PeriodicFeatureStateReader {
+
+    static final long REFRESH_INTERVAL_MILLIS = 1_000;
+    private static final long REFRESH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(REFRESH_INTERVAL_MILLIS);
+
+    private final Feature feature;
+    private final StateRepository stateRepository;
+
+    private final AtomicLong nextRefreshNanos = new AtomicLong(System.nanoTime());
+    @Nullable
+    private volatile FeatureState featureState;
+
+    PeriodicFeatureStateReader(Feature feature, StateRepository stateRepository) {
+        this.feature = feature;
+        this.stateRepository = stateRepository;
+    }
+
+    /**
+     * Returns feature state, re-reading it if it's due. If reading fails, the previous state is kept.
+     *
+     * @return feature state, {@code null} if there's none (or it hasn't been read successfully yet)
+     */
+    @Nullable
+    FeatureState get() {
+        long now = System.nanoTime();
+        long due = nextRefreshNanos.get();
+
+        // only one thread refreshes
+        if ((now - due >= 0) && nextRefreshNanos.compareAndSet(due, now + REFRESH_INTERVAL_NANOS)) {
+            try {
+                featureState = stateRepository.getFeatureState(feature);
+            } catch (RuntimeException e) {
+                log.warn("Failed to read state of feature '{}', keeping the old one: {}", feature.name(),
+                        e.getMessage());
+            }
+        }
+
+        return featureState;
+    }
+
+}
@@ -0,0 +1,172 @@
+package guru.nicks.commons.feature.interceptor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+
+/**
+ * Runs shadow (mirrored) calls of gated beans on virtual threads, discarding their results. The number of pending
+ * calls is bounded: if the bound is reached, new calls are dropped, so shadow traffic never back-pressures the request
+ * path.
+ * <p>
+ * Latency of each shadow call is recorded as the {@value #LATENCY_METRIC_NAME} timer (tagged with feature name, method
+ * name, and outcome), dropped calls - as the {@value #DROPPED_METRIC_NAME} counter (tagged with feature name).
+ */
+@Slf4j
+public class ShadowCallExecutor implements MeterBinder, AutoCloseable {
+
+    public static final String LATENCY_METRIC_NAME = "feature.shadow.latency";
+    public static final String DROPPED_METRIC_NAME = "feature.shadow.dropped";
+
+    public static final int DEFAULT_MAX_PENDING_CALLS = 1_000;
+
+    private final int maxPendingCalls;
+    private final AtomicInteger pendingCalls = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+            .name("feature-shadow-", 0)
+            .factory());
+
+    @Nullable
+    private volatile MeterRegistry meterRegistry;
+    /**
+     * Keys are meter name, feature name, method name, and outcome - joined, to avoid creating a composite key object.
+     */
+    private final Map<String, Object> meters = new ConcurrentHashMap<>();
+
+    /**
+     * Creates executor having {@link #DEFAULT_MAX_PENDING_CALLS}.
+     */
+    public ShadowCallExecutor() {
+        this(DEFAULT_MAX_PENDING_CALLS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxPendingCalls max. number of shadow calls running or waiting to run
+     */
+    public ShadowCallExecutor(int maxPendingCalls) {
+        check(maxPendingCalls, "max. pending shadow calls")
+                .constraint(value -> value > 0, "must be positive");
+        this.maxPendingCalls = maxPendingCalls;
+    }
+
+    /**
+     * Schedules a shadow call unless there are too many pending ones.
+     *
+     * @param feature    feature gating the call
+     * @param method     method being called
+     * @param targetCall target method call
+     * @return {@code true} if scheduled, {@code false} if dropped
+     */
+    public boolean submit(Feature feature, Method method, TargetCall targetCall) {
+        if (pendingCalls.incrementAndGet() > maxPendingCalls) {
+            pendingCalls.decrementAndGet();
+            countDropped(feature);
+            return false;
+        }
+
+        try {
+            executor.execute(() -> run(feature, method, targetCall));
+            return true;
+        } catch (RejectedExecutionException e) {
+            // executor is closed
+            pendingCalls.decrementAndGet();
+            countDropped(feature);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of shadow calls running or waiting to run.
+     *
+     * @return pending call count
+     */
+    public int getPendingCalls() {
+        return pendingCalls.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+    }
+
+    /**
+     * Interrupts running shadow calls: their results are discarded anyway.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void run(Feature feature, Method method, TargetCall targetCall) {
+        long startNanos = System.nanoTime();
+        String outcome = "success";
+
+        try {
+            targetCall.call();
+        } catch (Throwable t) {
+            outcome = "error";
+            log.debug("Shadow call of [{}] gated by feature '{}' failed: {}", method.getName(), feature.name(),
+                    t.toString());
+        } finally {
+            pendingCalls.decrementAndGet();
+
+            Timer timer = findTimer(feature, method, outcome);
+            if (timer != null) {
+                timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @Nullable
+    private Timer findTimer(Feature feature, Method method, String outcome) {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            return null;
+        }
+
+        return (Timer) meters.computeIfAbsent(
+                String.join("|", LATENCY_METRIC_NAME, feature.name(), method.getName(), outcome),
+                key -> Timer.builder(LATENCY_METRIC_NAME)
+                        .description("Latency of shadow calls of beans gated by disabled features")
+                        .tag("feature", feature.name())
+                        .tag("method", method.getName())
+                        .tag("outcome", outcome)
+                        .register(registry));
+    }
+
+    private void countDropped(Feature feature) {
+        log.debug("Too many pending shadow calls ({}), dropping call gated by feature '{}'", maxPendingCalls,
+                feature.name());
+
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            return;
+        }
+
+        ((Counter) meters.computeIfAbsent(String.join("|", DROPPED_METRIC_NAME, feature.name()),
+                key -> Counter.builder(DROPPED_METRIC_NAME)
+                        .description("Shadow calls dropped because too many were pending")
+                        .tag("feature", feature.name())
+                        .register(registry)))
+                .increment();
+    }
+
+}
@@ -0,0 +1,91 @@
+package guru.nicks.commons.feature.interceptor;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counters over a sliding time window, split into buckets. Recording is lock-free and contention-free (striped
+ * {@link LongAdder}s). A bucket is reset lazily, by the first call falling into it after it has expired; calls recorded
+ * concurrently with the reset may be lost, which is acceptable for threshold evaluation.
+ */
+class SlidingCallStats {
+
+    private static final int BUCKET_COUNT = 10;
+
+    private final long bucketNanos;
+    private final Bucket[] buckets = new Bucket[BUCKET_COUNT];
+
+    SlidingCallStats(Duration window) {
+        bucketNanos = Math.max(1, window.toNanos() / BUCKET_COUNT);
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    void record(boolean failed, boolean slow) {
+        long epoch = Math.floorDiv(System.nanoTime(), bucketNanos);
+        Bucket bucket = buckets[(int) Math.floorMod(epoch, BUCKET_COUNT)];
+
+        long bucketEpoch = bucket.epoch.get();
+        if ((bucketEpoch != epoch) && bucket.epoch.compareAndSet(bucketEpoch, epoch)) {
+            bucket.calls.reset();
+            bucket.failures.reset();
+            bucket.slowCalls.reset();
+        }
+
+        bucket.calls.increment();
+        if (failed) {
+            bucket.failures.increment();
+        }
+        if (slow) {
+            bucket.slowCalls.increment();
+        }
+    }
+
+    /**
+     * Sums non-expired buckets.
+     *
+     * @return totals
+     */
+    Totals getTotals() {
+        long currentEpoch = Math.floorDiv(System.nanoTime(), bucketNanos);
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+
+        for (Bucket bucket : buckets) {
+            // not 'currentEpoch - epoch < BUCKET_COUNT': that would overflow for reset buckets
+            if (bucket.epoch.get() > currentEpoch - BUCKET_COUNT) {
+                calls += bucket.calls.sum();
+                failures += bucket.failures.sum();
+                slowCalls += bucket.slowCalls.sum();
+            }
+        }
+
+        return new Totals(calls, failures, slowCalls);
+    }
+
+    /**
+     * Expires all buckets.
+     */
+    void reset() {
+        for (Bucket bucket : buckets) {
+            bucket.epoch.set(Long.MIN_VALUE);
+        }
+    }
+
+    record Totals(long calls, long failures, long slowCalls) {
+    }
+
+    private static final class Bucket {
+
+        private final AtomicLong epoch = new AtomicLong(Long.MIN_VALUE);
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package guru.nicks.commons.feature.interceptor;
+
+import guru.nicks.commons.feature.FeatureBeanPostProcessor;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Call of a gated bean method (or of the rest of the AOP advice chain) made by
+ * {@link FeatureBeanPostProcessor.MethodCallInterceptor}.
+ */
+@FunctionalInterface
+public interface TargetCall {
+
+    /**
+     * Performs the call.
+     *
+     * @return method result
+     * @throws Throwable whatever the method throws
+     */
+    @Nullable
+    Object call() throws Throwable;
+
+}
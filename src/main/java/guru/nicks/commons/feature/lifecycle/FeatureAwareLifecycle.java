@@ -0,0 +1,30 @@
+package guru.nicks.commons.feature.lifecycle;
+
+import guru.nicks.commons.feature.FeatureBeanPostProcessor;
+
+/**
+ * Implemented by beans gated by a feature (see {@link FeatureBeanPostProcessor}) which hold resources worth releasing
+ * while the feature is off: thread pools, connection pools, caches, scheduled tasks. Called by
+ * {@link FeatureLifecycleManager}.
+ * <p>
+ * Beans are created in the enabled state, i.e. {@link #onFeatureEnabled()} is not called on startup, but
+ * {@link #onFeatureDisabled()} is if the feature is off. The two methods always alternate, are never called
+ * concurrently for the same bean, and are not gated (they're called even though the feature is off). Calls which have
+ * passed the feature check before the feature was disabled may still be running when {@link #onFeatureDisabled()} is
+ * called.
+ */
+public interface FeatureAwareLifecycle {
+
+    /**
+     * Called when the feature is turned on after having been off, before the first gated call is let through. Should
+     * re-create what {@link #onFeatureDisabled()} has released.
+     */
+    void onFeatureEnabled();
+
+    /**
+     * Called when the feature is turned off (or is found off on startup). Should release resources not needed while
+     * calls are skipped.
+     */
+    void onFeatureDisabled();
+
+}
@@ -0,0 +1,251 @@
+package guru.nicks.commons.feature.lifecycle;
+
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.listener.FeatureStateListener;
+import guru.nicks.commons.feature.repository.ListenerFeatureStateRepository;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Calls {@link FeatureAwareLifecycle} hooks of gated beans when their feature is turned on or off. Transitions are
+ * detected from three sources:
+ * <ul>
+ *  <li>{@link FeatureStateListener} events (register this class with {@link ListenerFeatureStateRepository}) - the
+ *      feature's {@code enabled} flag, not the activation strategy, decides</li>
+ *  <li>{@link #reconcile()} - reads the states of all registered features from the state repository; called once all
+ *      singletons are created, so beans of features which are off release their resources right after startup</li>
+ *  <li>{@link FeatureLifecycle#beforeEnabledCall()} - called by the interceptor for each call let through, so beans
+ *      are warmed up before the first call even if the enabling event hasn't been delivered yet (e.g. the change has
+ *      been made on another node)</li>
+ * </ul>
+ * Features having no stored state are left as is: their beans stay in the state they were created in.
+ * <p>
+ * Right after a disabling event, feature checks may still read a stale (cached) enabled state. So that such reads don't
+ * re-enable the beans, {@link FeatureLifecycle#beforeEnabledCall()} refuses to warm them up for {@code staleReadGrace}
+ * after the event, and the call is treated as if the feature was off. Calls meant to reach the beans while the feature
+ * is off - circuit breaker probes and shadow calls - warm them up unconditionally ({@link FeatureLifecycle#warmUp()});
+ * the beans then stay warm until the next disabling event.
+ */
+@Slf4j
+public class FeatureLifecycleManager implements FeatureStateListener, SmartInitializingSingleton {
+
+    public static final Duration DEFAULT_STALE_READ_GRACE = Duration.ofSeconds(2);
+
+    private final StateRepository stateRepository;
+    private final long staleReadGraceNanos;
+
+    /**
+     * Keys are feature names because that's what {@link FeatureStateDto} carries.
+     */
+    private final Map<String, FeatureLifecycle> lifecycles = new ConcurrentHashMap<>();
+    private volatile boolean reconciled;
+
+    /**
+     * Creates manager having {@link #DEFAULT_STALE_READ_GRACE}.
+     *
+     * @param stateRepository state repository chain, for reconciliation
+     */
+    public FeatureLifecycleManager(StateRepository stateRepository) {
+        this(stateRepository, DEFAULT_STALE_READ_GRACE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stateRepository state repository chain, for reconciliation
+     * @param staleReadGrace  how long after a disabling event enabled feature checks are considered stale (should be
+     *                        no less than the state cache TTL)
+     */
+    public FeatureLifecycleManager(StateRepository stateRepository, Duration staleReadGrace) {
+        this.stateRepository = checkNotNull(stateRepository, "state repository");
+        check(staleReadGrace, "stale read grace")
+                .notNull()
+                .constraint(grace -> !grace.isNegative(), "must not be negative");
+        staleReadGraceNanos = staleReadGrace.toNanos();
+    }
+
+    /**
+     * Registers gated bean. If reconciliation has already been done (e.g. for a lazy bean), the feature state is
+     * checked right away.
+     *
+     * @param feature feature the bean is gated by
+     * @param bean    bean (the target, not a wrapper)
+     * @return lifecycle of the feature, for {@link FeatureLifecycle#beforeEnabledCall()}
+     */
+    public FeatureLifecycle register(Feature feature, FeatureAwareLifecycle bean) {
+        checkNotNull(feature, "feature");
+        checkNotNull(bean, "bean");
+
+        FeatureLifecycle lifecycle = lifecycles.computeIfAbsent(feature.name(),
+                name -> new FeatureLifecycle(feature, staleReadGraceNanos));
+        lifecycle.add(bean);
+
+        if (reconciled) {
+            reconcile(lifecycle);
+        }
+
+        return lifecycle;
+    }
+
+    /**
+     * Reads the states of all registered features and calls the hooks where the state differs from the beans' one.
+     */
+    public void reconcile() {
+        lifecycles.values().forEach(this::reconcile);
+        reconciled = true;
+    }
+
+    /**
+     * Calls {@link #reconcile()}.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        reconcile();
+    }
+
+    @Override
+    public void onFeatureStatesChanged(List<FeatureStateDto> featureStates) {
+        for (FeatureStateDto featureState : featureStates) {
+            FeatureLifecycle lifecycle = lifecycles.get(featureState.featureName());
+
+            if (lifecycle != null) {
+                lifecycle.onEvent(featureState.enabled());
+            }
+        }
+    }
+
+    private void reconcile(FeatureLifecycle lifecycle) {
+        try {
+            FeatureState featureState = stateRepository.getFeatureState(lifecycle.feature);
+
+            if (featureState != null) {
+                lifecycle.transition(featureState.isEnabled());
+            }
+        }
+        // other features must still be reconciled
+        catch (RuntimeException e) {
+            log.error("Failed to reconcile lifecycle of feature '{}': {}", lifecycle.feature.name(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Beans of one feature and their current state.
+     */
+    public static class FeatureLifecycle {
+
+        private final Feature feature;
+        private final long staleReadGraceNanos;
+        private final List<FeatureAwareLifecycle> beans = new CopyOnWriteArrayList<>();
+
+        /**
+         * {@code true} after {@link FeatureAwareLifecycle#onFeatureDisabled()} has been called. Read without locking on
+         * each gated call.
+         */
+        private volatile boolean released;
+
+        /**
+         * {@link System#nanoTime()} of the last disabling event, if the beans have been released by it. Guarded by
+         * {@code this}.
+         */
+        @Nullable
+        private Long disabledByEventAtNanos;
+
+        private FeatureLifecycle(Feature feature, long staleReadGraceNanos) {
+            this.feature = feature;
+            this.staleReadGraceNanos = staleReadGraceNanos;
+        }
+
+        /**
+         * Called for each gated call let through. Costs one volatile read unless the beans have been released, in
+         * which case they're re-enabled first (other calls wait for that) - unless they've been released by a
+         * disabling event less than {@code staleReadGrace} ago.
+         *
+         * @return {@code false} if the call must be treated as if the feature was off
+         */
+        public boolean beforeEnabledCall() {
+            return !released || warmUpUnlessRecentlyDisabled();
+        }
+
+        /**
+         * Re-enables the beans if they've been released, regardless of the feature state. Called before circuit
+         * breaker probes and shadow calls.
+         */
+        public void warmUp() {
+            if (released) {
+                transition(true);
+            }
+        }
+
+        private synchronized boolean warmUpUnlessRecentlyDisabled() {
+            if (released
+                    && (disabledByEventAtNanos != null)
+                    && (System.nanoTime() - disabledByEventAtNanos < staleReadGraceNanos)) {
+                return false;
+            }
+
+            transition(true);
+            return true;
+        }
+
+        private synchronized void onEvent(boolean enabled) {
+            transition(enabled);
+
+            // also restarts the grace period if the beans were already released
+            if (!enabled) {
+                disabledByEventAtNanos = System.nanoTime();
+            }
+        }
+
+        private synchronized void add(FeatureAwareLifecycle bean) {
+            beans.add(bean);
+
+            // registered after the feature was turned off
+            if (released) {
+                callHook(bean, false);
+            }
+        }
+
+        private synchronized void transition(boolean enabled) {
+            if (released != enabled) {
+                return;
+            }
+
+            log.info("Feature '{}' turned {}, notifying {} beans", feature.name(), enabled ? "on" : "off",
+                    beans.size());
+            beans.forEach(bean -> callHook(bean, enabled));
+            released = !enabled;
+            disabledByEventAtNanos = null;
+        }
+
+        private void callHook(FeatureAwareLifecycle bean, boolean enabled) {
+            try {
+                if (enabled) {
+                    bean.onFeatureEnabled();
+                } else {
+                    bean.onFeatureDisabled();
+                }
+            }
+            // other beans must still be notified
+            catch (RuntimeException e) {
+                log.error("Lifecycle hook of bean [{}] failed for feature '{}' turned {}", bean.getClass().getName(),
+                        feature.name(), enabled ? "on" : "off", e);
+            }
+        }
+
+    }
+
+}
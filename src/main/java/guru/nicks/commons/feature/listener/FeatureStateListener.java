@@ -0,0 +1,24 @@
+package guru.nicks.commons.feature.listener;
+
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.repository.ListenerFeatureStateRepository;
+
+import java.util.List;
+
+/**
+ * Receives feature state changes from {@link ListenerFeatureStateRepository}. Called asynchronously, on a dedicated
+ * dispatcher thread, so implementations (audit trail, notifications to other nodes, cache warmers) don't add to the
+ * toggle latency. Implementations must not block for long because all listeners share the same thread.
+ */
+@FunctionalInterface
+public interface FeatureStateListener {
+
+    /**
+     * Called for each batch of feature state changes. Rapid consecutive changes of the same feature are coalesced, so
+     * each feature appears in the batch at most once, with its latest state.
+     *
+     * @param featureStates changed feature states (never empty)
+     */
+    void onFeatureStatesChanged(List<FeatureStateDto> featureStates);
+
+}
@@ -0,0 +1,188 @@
+package guru.nicks.commons.feature.processor;
+
+import guru.nicks.commons.feature.GatedBeanIndex;
+import guru.nicks.commons.feature.annotation.FeatureGate;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.FilerException;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Writes {@link GatedBeanIndex}: classes annotated with annotations which are themselves annotated with
+ * {@link FeatureGate @FeatureGate}, and the features taken from the annotations' {@code value} (for information only).
+ * <p>
+ * The processor is not registered automatically (so it doesn't run in every compilation of every module depending on
+ * this one), and it handles only the annotations listed in the {@value #ANNOTATIONS_OPTION} option. Javac arguments
+ * (with Maven - {@code annotationProcessors} and {@code compilerArgs} of the compiler plugin):
+ * <pre>
+ * -processor guru.nicks.commons.feature.processor.GatedBeanIndexProcessor
+ * -AfeatureGate.annotations=com.example.RequiresFeature
+ * </pre>
+ * Incremental compilation is supported: the existing index is read and merged, and entries of classes recompiled
+ * without the annotation are dropped. Entries of deleted classes remain, which is harmless: the post processor then
+ * checks their annotations (if they're beans at all) the usual way. So do entries of classes recompiled without the
+ * annotation if no other class in the compilation has it (javac doesn't call the processor then).
+ */
+@SupportedOptions(GatedBeanIndexProcessor.ANNOTATIONS_OPTION)
+public class GatedBeanIndexProcessor extends AbstractProcessor {
+
+    /**
+     * Comma-separated fully qualified names of gating annotations (each must be marked with
+     * {@link FeatureGate @FeatureGate}).
+     */
+    public static final String ANNOTATIONS_OPTION = "featureGate.annotations";
+
+    /**
+     * Keys are binary class names, values are feature names.
+     */
+    private final Map<String, String> index = new TreeMap<>();
+    private boolean existingIndexRead;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        String annotationNames = processingEnv.getOptions().get(ANNOTATIONS_OPTION);
+
+        if ((annotationNames == null) || annotationNames.isBlank()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, getClass().getSimpleName()
+                    + ": no gating annotations configured in -A" + ANNOTATIONS_OPTION + ", nothing will be indexed");
+            return Set.of();
+        }
+
+        return Arrays.stream(annotationNames.split(","))
+                .map(String::strip)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!existingIndexRead) {
+            readExistingIndex();
+            existingIndexRead = true;
+        }
+
+        // classes compiled in this round are re-added below if they're still annotated
+        roundEnv.getRootElements()
+                .stream()
+                .filter(TypeElement.class::isInstance)
+                .forEach(element -> index.remove(binaryName((TypeElement) element)));
+
+        for (TypeElement annotation : annotations) {
+            if (annotation.getAnnotation(FeatureGate.class) == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Annotation listed in -A"
+                        + ANNOTATIONS_OPTION + " is not marked with @" + FeatureGate.class.getSimpleName(), annotation);
+                continue;
+            }
+
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element instanceof TypeElement typeElement) {
+                    index.put(binaryName(typeElement), findFeatureName(typeElement, annotation));
+                }
+            }
+        }
+
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        }
+
+        // other processors may need the same annotations
+        return false;
+    }
+
+    private String binaryName(TypeElement typeElement) {
+        return processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+    }
+
+    private static String findFeatureName(TypeElement typeElement, TypeElement annotation) {
+        for (AnnotationMirror mirror : typeElement.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().asElement().equals(annotation)) {
+                continue;
+            }
+
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("value")) {
+                    // enum constants are rendered as their simple names
+                    return String.valueOf(entry.getValue().getValue());
+                }
+            }
+        }
+
+        return "";
+    }
+
+    private void readExistingIndex() {
+        try {
+            FileObject resource = processingEnv.getFiler()
+                    .getResource(StandardLocation.CLASS_OUTPUT, "", GatedBeanIndex.RESOURCE_LOCATION);
+
+            try (var reader = new BufferedReader(resource.openReader(true))) {
+                reader.lines()
+                        .filter(line -> !line.isBlank() && !line.startsWith("#"))
+                        .forEach(line -> {
+                            int separatorIndex = line.indexOf('=');
+
+                            if (separatorIndex < 0) {
+                                index.put(line.strip(), "");
+                            } else {
+                                index.put(line.substring(0, separatorIndex).strip(),
+                                        line.substring(separatorIndex + 1).strip());
+                            }
+                        });
+            }
+        }
+        // no index yet (clean build)
+        catch (IOException | IllegalArgumentException e) {
+            index.clear();
+        }
+    }
+
+    private void writeIndex() {
+        if (index.isEmpty()) {
+            return;
+        }
+
+        try {
+            FileObject resource = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", GatedBeanIndex.RESOURCE_LOCATION);
+
+            try (Writer writer = resource.openWriter()) {
+                writer.write("# Generated by " + getClass().getName() + ", do not edit\n");
+
+                for (Map.Entry<String, String> entry : index.entrySet()) {
+                    writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+                }
+            }
+        } catch (FilerException e) {
+            // already written in this compilation
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, e.getMessage());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write " + GatedBeanIndex.RESOURCE_LOCATION + ": " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package guru.nicks.commons.feature.repository;
+
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link StateRepository} able to store (and read) multiple feature states at once, e.g. in one database transaction or
+ * one pipelined Redis round trip. The default implementation stores and reads the states one by one.
+ */
+public interface BatchStateRepository extends StateRepository {
+
+    /**
+     * Calls {@link BatchStateRepository#setFeatureStates(Collection)} if the repository supports it, otherwise
+     * {@link StateRepository#setFeatureState(FeatureState)} for each state.
+     *
+     * @param repository    repository to store the states in
+     * @param featureStates feature states
+     */
+    static void setFeatureStates(StateRepository repository, Collection<FeatureState> featureStates) {
+        if (repository instanceof BatchStateRepository batchRepository) {
+            batchRepository.setFeatureStates(featureStates);
+        } else {
+            featureStates.forEach(repository::setFeatureState);
+        }
+    }
+
+    /**
+     * Calls {@link BatchStateRepository#getFeatureStates(Collection)} if the repository supports it, otherwise
+     * {@link StateRepository#getFeatureState(Feature)} for each feature.
+     *
+     * @param repository repository to read the states from
+     * @param features   features
+     * @return states by feature; features having no state are mapped to {@code null}
+     */
+    static Map<Feature, FeatureState> getFeatureStates(StateRepository repository,
+            Collection<? extends Feature> features) {
+        if (repository instanceof BatchStateRepository batchRepository) {
+            return batchRepository.getFeatureStates(features);
+        }
+
+        Map<Feature, FeatureState> featureStates = HashMap.newHashMap(features.size());
+        features.forEach(feature -> featureStates.put(feature, repository.getFeatureState(feature)));
+        return featureStates;
+    }
+
+    /**
+     * Reads the given feature states, e.g. in one cache round trip.
+     *
+     * @param features features
+     * @return states by feature; features having no state are mapped to {@code null}
+     */
+    default Map<Feature, FeatureState> getFeatureStates(Collection<? extends Feature> features) {
+        Map<Feature, FeatureState> featureStates = HashMap.newHashMap(features.size());
+        features.forEach(feature -> featureStates.put(feature, getFeatureState(feature)));
+        return featureStates;
+    }
+
+    /**
+     * Stores the given feature states. Implementations should apply them all-or-nothing, as far as the underlying
+     * storage permits.
+     *
+     * @param featureStates feature states
+     */
+    default void setFeatureStates(Collection<FeatureState> featureStates) {
+        featureStates.forEach(this::setFeatureState);
+    }
+
+}
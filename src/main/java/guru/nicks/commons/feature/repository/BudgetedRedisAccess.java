@@ -0,0 +1,268 @@
+package guru.nicks.commons.feature.repository;
+
+import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Redis access bounded by a latency budget, see
+ * {@link RedisCachingFeatureStateRepository#ofBudgeted(StateRepository, RedisTemplate, java.util.function.Function,
+ * Duration, Duration, int)} and
+ * {@link RedisCachingFeatureStateRepository#ofBudgetedCluster(StateRepository, RedisTemplate, RedisTemplate, String,
+ * Duration, Duration, Duration, int)}.
+ * <p>
+ * Reads run on virtual threads, and the caller waits for them no longer than the budget - also when Redis starts
+ * hanging, so no caller is ever held for the Redis client's own timeout. A read which has timed out keeps running in
+ * the background, and its result still updates the last-known values, but no more than {@value #MAX_IN_FLIGHT_CALLS}
+ * calls run at once, so a Redis brownout can't pile up threads: beyond that, the last-known value is served right
+ * away.
+ * <p>
+ * Writes never block the caller: they run in the background, within the same in-flight limit.
+ * <p>
+ * Last-known values are kept for at most {@value #MAX_LAST_KNOWN_VALUES} keys, so tenant overrides can't grow them
+ * without bound.
+ */
+@Slf4j
+class BudgetedRedisAccess implements AutoCloseable {
+
+    static final int MAX_IN_FLIGHT_CALLS = 1024;
+    static final int MAX_LAST_KNOWN_VALUES = 10_000;
+
+    private final Function<String, NullableFeatureStateWrapper> redisReader;
+    private final RedisWriter redisWriter;
+    private final long budgetNanos;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore inFlightCalls = new Semaphore(MAX_IN_FLIGHT_CALLS);
+    /**
+     * Keys are cache keys.
+     */
+    private final Map<String, NullableFeatureStateWrapper> lastKnownValues = new ConcurrentHashMap<>();
+
+    BudgetedRedisAccess(RedisTemplate<String, Object> redisTemplate, Duration budget) {
+        this(key -> (NullableFeatureStateWrapper) redisTemplate.opsForValue().get(key),
+                (key, wrapper, ttl) -> redisTemplate.opsForValue().set(key, wrapper, ttl), budget);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param redisReader reads cached state by cache key, {@code null} if there's none
+     * @param redisWriter writes cached state
+     * @param budget      max. time a caller waits for a read
+     */
+    BudgetedRedisAccess(Function<String, NullableFeatureStateWrapper> redisReader, RedisWriter redisWriter,
+            Duration budget) {
+        this.redisReader = redisReader;
+        this.redisWriter = redisWriter;
+        budgetNanos = budget.toNanos();
+    }
+
+    /**
+     * Reads cached state within the budget.
+     *
+     * @param key cache key
+     * @return cached state; on timeout or failure - the last-known one; {@code null} if neither is available
+     */
+    @Nullable
+    NullableFeatureStateWrapper read(String key) {
+        try {
+            return readWithinBudget(key);
+        } catch (TimeoutException e) {
+            log.debug("Redis read of '{}' exceeded {} us, serving last-known state", key,
+                    TimeUnit.NANOSECONDS.toMicros(budgetNanos));
+        } catch (RuntimeException e) {
+            log.error("Redis read of '{}' failed, serving last-known state: {}", key, e.getMessage(), e);
+        }
+
+        // null triggers a (concurrency-limited) delegate lookup
+        return lastKnownValues.get(key);
+    }
+
+    /**
+     * Writes state in the background. The local last-known value is updated right away.
+     *
+     * @param key     cache key
+     * @param wrapper state to cache
+     * @param ttl     TTL
+     */
+    void write(String key, NullableFeatureStateWrapper wrapper, Duration ttl) {
+        remember(key, wrapper);
+
+        if (!inFlightCalls.tryAcquire()) {
+            log.warn("Too many Redis calls in flight, '{}' not written (Redis keeps the old state until TTL)", key);
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    redisWriter.write(key, wrapper, ttl);
+                } catch (RuntimeException e) {
+                    log.error("Redis write of '{}' failed: {}", key, e.getMessage(), e);
+                } finally {
+                    inFlightCalls.release();
+                }
+            });
+        }
+        // executor is shut down
+        catch (RejectedExecutionException e) {
+            inFlightCalls.release();
+            log.warn("Redis write of '{}' rejected: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Remembers states written in a batch (the batch itself is not budgeted).
+     *
+     * @param keysAndWrappers keys are cache keys
+     */
+    void rememberAll(Map<String, NullableFeatureStateWrapper> keysAndWrappers) {
+        keysAndWrappers.forEach(this::remember);
+    }
+
+    /**
+     * Stops accepting new Redis calls. Calls in flight are not interrupted.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void remember(String key, NullableFeatureStateWrapper wrapper) {
+        // the bound is approximate under concurrency, which is fine
+        if ((lastKnownValues.size() < MAX_LAST_KNOWN_VALUES) || lastKnownValues.containsKey(key)) {
+            lastKnownValues.put(key, wrapper);
+        }
+    }
+
+    /**
+     * Reads on a virtual thread and waits for the read within the budget. The read remembers its result itself, so a
+     * late one still updates the last-known value.
+     *
+     * @throws TimeoutException budget exceeded, or too many calls in flight
+     */
+    @Nullable
+    private NullableFeatureStateWrapper readWithinBudget(String key) throws TimeoutException {
+        if (!inFlightCalls.tryAcquire()) {
+            throw new TimeoutException("Too many Redis calls in flight");
+        }
+
+        CompletableFuture<NullableFeatureStateWrapper> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    NullableFeatureStateWrapper wrapper = redisReader.apply(key);
+
+                    if (wrapper != null) {
+                        remember(key, wrapper);
+                    }
+
+                    return wrapper;
+                } finally {
+                    inFlightCalls.release();
+                }
+            }, executor);
+        }
+        // executor rejected the task, so it won't release the permit
+        catch (RuntimeException e) {
+            inFlightCalls.release();
+            throw e;
+        }
+
+        try {
+            return future.get(budgetNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while waiting for Redis: " + key);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof RuntimeException runtimeException)
+                    ? runtimeException
+                    : new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes cached state, e.g. {@code SET key value PX ttl}.
+     */
+    @FunctionalInterface
+    interface RedisWriter {
+
+        void write(String key, NullableFeatureStateWrapper wrapper, Duration ttl);
+
+    }
+
+    /**
+     * Limits concurrent reads of the delegate, so a cache outage doesn't turn into a database overload. A read which
+     * can't get a permit right away fails with {@link DelegateBusyException}: returning {@code null} instead would be
+     * cached as 'no state'.
+     */
+    static class ConcurrencyLimitedStateRepository implements BatchStateRepository {
+
+        private final StateRepository delegate;
+        private final Semaphore permits;
+
+        ConcurrencyLimitedStateRepository(StateRepository delegate, int maxConcurrentReads) {
+            this.delegate = delegate;
+            permits = new Semaphore(maxConcurrentReads);
+        }
+
+        @Nullable
+        @Override
+        public FeatureState getFeatureState(Feature feature) {
+            if (!permits.tryAcquire()) {
+                throw new DelegateBusyException(feature);
+            }
+
+            try {
+                return delegate.getFeatureState(feature);
+            } finally {
+                permits.release();
+            }
+        }
+
+        @Override
+        public void setFeatureState(FeatureState featureState) {
+            delegate.setFeatureState(featureState);
+        }
+
+        @Override
+        public void setFeatureStates(Collection<FeatureState> featureStates) {
+            BatchStateRepository.setFeatureStates(delegate, featureStates);
+        }
+
+    }
+
+    /**
+     * Thrown by {@link ConcurrencyLimitedStateRepository} when all permits are taken. Has no stack trace: it's thrown
+     * under load and caught right away.
+     */
+    static class DelegateBusyException extends RuntimeException {
+
+        DelegateBusyException(Feature feature) {
+            super("Too many concurrent state repository reads, feature '" + feature.name() + "' not read", null,
+                    false, false);
+        }
+
+    }
+
+}
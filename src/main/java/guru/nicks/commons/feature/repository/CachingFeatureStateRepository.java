@@ -1,5 +1,6 @@
 package guru.nicks.commons.feature.repository;
 
+import guru.nicks.commons.feature.domain.FeatureStateDto;
 import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
 
 import am.ik.yavi.meta.ConstraintArguments;
@@ -11,7 +12,16 @@ import org.togglz.core.manager.FeatureManager;
 import org.togglz.core.repository.FeatureState;
 import org.togglz.core.repository.StateRepository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
@@ -24,32 +34,99 @@ import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
  * <p>
  * Most cache engines (Redis, Caffeine) do not support nulls, therefore they're stored as
  * {@link NullableFeatureStateWrapper}.
+ * <p>
+ * Batches ({@link #setFeatureStates(Collection)}) are stored in the delegate as a batch (if it's a
+ * {@link BatchStateRepository}) and then written to the cache with a single call to the batch cache updater.
+ * <p>
+ * States of enum features decoded from cache hits are memoized per feature and reused as long as the cached content
+ * stays the same (compared by value, so it works for caches returning a new deserialized object on each hit), so the
+ * steady-state read path doesn't allocate. Therefore, such states are shared and read-only: their setters throw
+ * {@link UnsupportedOperationException}, so callers wanting to change a state must {@link FeatureState#copy() copy}
+ * it first.
+ * <p>
+ * Writes go to the delegate first, then to the cache. To update the cache without waiting for the database, make the
+ * delegate a {@link WriteBehindStateRepository}.
+ * <p>
+ * {@link #close()} closes the delegate if it's {@link AutoCloseable}, so declaring this repository as a Spring bean is
+ * enough for the delegate to be closed on shutdown.
  */
 @Slf4j
-public class CachingFeatureStateRepository implements StateRepository {
+public class CachingFeatureStateRepository implements BatchStateRepository, AutoCloseable {
 
     private final StateRepository delegate;
     private final Function<Feature, NullableFeatureStateWrapper> cacheGetter;
     private final BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater;
+    private final Consumer<Map<Feature, NullableFeatureStateWrapper>> cacheBatchUpdater;
+    private final Function<List<Feature>, List<NullableFeatureStateWrapper>> cacheBatchGetter;
 
     /**
-     * Constructor.
+     * Enum features only: other ones (e.g. tenant pseudo-features) are too many to be held forever.
+     */
+    private final Map<Feature, DecodedState> decodedStates = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor. Batches are written to the cache by calling {@code cacheUpdater} for each feature.
      *
      * @param delegate     underlying state repository to delegate to when the cache is missed
      * @param cacheGetter  supplier that retrieves the feature state from the cache, must return {@code null} for a
      *                     cache miss
      * @param cacheUpdater consumer that updates the cache with a new feature state (see note above on nulls)
      */
-    @ConstraintArguments
     public CachingFeatureStateRepository(StateRepository delegate,
             Function<Feature, NullableFeatureStateWrapper> cacheGetter,
             BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater) {
+        // cacheUpdater nullness is checked by the other constructor
+        this(delegate, cacheGetter, cacheUpdater, wrappers -> wrappers.forEach(cacheUpdater));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate          underlying state repository to delegate to when the cache is missed
+     * @param cacheGetter       supplier that retrieves the feature state from the cache, must return {@code null} for
+     *                          a cache miss
+     * @param cacheUpdater      consumer that updates the cache with a new feature state (see note above on nulls)
+     * @param cacheBatchUpdater consumer that updates the cache with multiple feature states at once (e.g. in one
+     *                          network round trip)
+     */
+    public CachingFeatureStateRepository(StateRepository delegate,
+            Function<Feature, NullableFeatureStateWrapper> cacheGetter,
+            BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater,
+            Consumer<Map<Feature, NullableFeatureStateWrapper>> cacheBatchUpdater) {
+        // cacheGetter nullness is checked by the other constructor
+        this(delegate, cacheGetter, cacheUpdater, cacheBatchUpdater, features -> features.stream()
+                .map(cacheGetter)
+                .toList());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate          underlying state repository to delegate to when the cache is missed
+     * @param cacheGetter       supplier that retrieves the feature state from the cache, must return {@code null} for
+     *                          a cache miss
+     * @param cacheUpdater      consumer that updates the cache with a new feature state (see note above on nulls)
+     * @param cacheBatchUpdater consumer that updates the cache with multiple feature states at once (e.g. in one
+     *                          network round trip)
+     * @param cacheBatchGetter  function that retrieves multiple feature states from the cache at once, in the order of
+     *                          the given features, with {@code null}s for cache misses
+     */
+    @ConstraintArguments
+    public CachingFeatureStateRepository(StateRepository delegate,
+            Function<Feature, NullableFeatureStateWrapper> cacheGetter,
+            BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater,
+            Consumer<Map<Feature, NullableFeatureStateWrapper>> cacheBatchUpdater,
+            Function<List<Feature>, List<NullableFeatureStateWrapper>> cacheBatchGetter) {
         this.delegate = checkNotNull(delegate, _CachingFeatureStateRepositoryArgumentsMeta.DELEGATE.name());
 
         this.cacheGetter = checkNotNull(cacheGetter,
                 _CachingFeatureStateRepositoryArgumentsMeta.CACHEGETTER.name());
         this.cacheUpdater = checkNotNull(cacheUpdater,
                 _CachingFeatureStateRepositoryArgumentsMeta.CACHEUPDATER.name());
+        this.cacheBatchUpdater = checkNotNull(cacheBatchUpdater,
+                _CachingFeatureStateRepositoryArgumentsMeta.CACHEBATCHUPDATER.name());
+        this.cacheBatchGetter = checkNotNull(cacheBatchGetter,
+                _CachingFeatureStateRepositoryArgumentsMeta.CACHEBATCHGETTER.name());
     }
 
     @Nullable
@@ -58,7 +135,7 @@ public class CachingFeatureStateRepository implements StateRepository {
         NullableFeatureStateWrapper wrapper = cacheGetter.apply(feature);
         // null means key not found in cache; empty Optional means null is cached
         if (wrapper != null) {
-            return wrapper.toFeatureState(feature);
+            return decode(feature, wrapper);
         }
 
         // can be null
@@ -67,6 +144,46 @@ public class CachingFeatureStateRepository implements StateRepository {
         return featureState;
     }
 
+    /**
+     * Reads the cache with one batch call; misses are read from the delegate as a batch too, and cached with one batch
+     * update.
+     */
+    @Override
+    public Map<Feature, FeatureState> getFeatureStates(Collection<? extends Feature> features) {
+        List<Feature> featureList = List.copyOf(features);
+        List<NullableFeatureStateWrapper> wrappers = cacheBatchGetter.apply(featureList);
+
+        Map<Feature, FeatureState> featureStates = HashMap.newHashMap(featureList.size());
+        List<Feature> misses = new ArrayList<>();
+
+        for (int i = 0; i < featureList.size(); i++) {
+            Feature feature = featureList.get(i);
+            NullableFeatureStateWrapper wrapper = wrappers.get(i);
+
+            if (wrapper == null) {
+                misses.add(feature);
+            } else {
+                featureStates.put(feature, decode(feature, wrapper));
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Map<Feature, FeatureState> loaded = BatchStateRepository.getFeatureStates(delegate, misses);
+            Map<Feature, NullableFeatureStateWrapper> missWrappers = new LinkedHashMap<>();
+
+            misses.forEach(feature -> {
+                FeatureState featureState = loaded.get(feature);
+                featureStates.put(feature, featureState);
+                missWrappers.put(feature, NullableFeatureStateWrapper.of(featureState));
+            });
+
+            log.debug("Caching {} feature states upon batch get", missWrappers.size());
+            cacheBatchUpdater.accept(missWrappers);
+        }
+
+        return featureStates;
+    }
+
     @Override
     public void setFeatureState(FeatureState featureState) {
         delegate.setFeatureState(featureState);
@@ -81,6 +198,72 @@ public class CachingFeatureStateRepository implements StateRepository {
         }
     }
 
+    @Override
+    public void setFeatureStates(Collection<FeatureState> featureStates) {
+        if (featureStates.isEmpty()) {
+            return;
+        }
+
+        BatchStateRepository.setFeatureStates(delegate, featureStates);
+
+        // LinkedHashMap keeps the batch order (if a feature occurs more than once, its last state wins)
+        Map<Feature, NullableFeatureStateWrapper> wrappers = new LinkedHashMap<>();
+        featureStates.forEach(featureState ->
+                wrappers.put(featureState.getFeature(), NullableFeatureStateWrapper.of(featureState)));
+
+        try {
+            log.debug("Caching {} feature states upon batch update", wrappers.size());
+            cacheBatchUpdater.accept(wrappers);
+        }
+        // log exception to make cache update failure stand out (the cache keeps holding the old states!)
+        catch (RuntimeException e) {
+            log.error("Failed to update cache for {} features", wrappers.size(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the delegate if it's {@link AutoCloseable}.
+     *
+     * @throws Exception whatever the delegate throws
+     */
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeableDelegate) {
+            closeableDelegate.close();
+        }
+    }
+
+    /**
+     * Returns memoized state if the cached content hasn't changed since the previous decoding, otherwise decodes and
+     * memoizes it.
+     *
+     * @param feature feature
+     * @param wrapper cached state
+     * @return feature state, {@code null} if the wrapper is empty
+     */
+    @Nullable
+    private FeatureState decode(Feature feature, NullableFeatureStateWrapper wrapper) {
+        FeatureStateDto dto = wrapper.featureStateDto();
+        if (dto == null) {
+            return null;
+        }
+
+        if (!(feature instanceof Enum<?>)) {
+            return dto.toFeatureState(feature);
+        }
+
+        DecodedState decoded = decodedStates.get(feature);
+        // identity check is for caches holding objects (not bytes) - they return the same DTO each time
+        if ((decoded != null) && ((decoded.dto() == dto) || decoded.dto().equals(dto))) {
+            return decoded.featureState();
+        }
+
+        FeatureState featureState = new SharedFeatureState(dto.toFeatureState(feature));
+        decodedStates.put(feature, new DecodedState(dto, featureState));
+        return featureState;
+    }
+
     /**
      * Updates the cache with the given feature state (wrapped in {@link NullableFeatureStateWrapper}).
      *
@@ -98,4 +281,83 @@ public class CachingFeatureStateRepository implements StateRepository {
         cacheUpdater.accept(feature, wrapper);
     }
 
+    /**
+     * Feature state decoded from the given DTO.
+     */
+    private record DecodedState(FeatureStateDto dto, FeatureState featureState) {
+    }
+
+    /**
+     * Read-only feature state shared by all callers: modifying it would change the state the whole process sees (until
+     * the cached content changes), so setters fail fast. {@link #copy()} returns a regular, modifiable state.
+     */
+    private static final class SharedFeatureState extends FeatureState {
+
+        /**
+         * Set once the constructor has populated the state.
+         */
+        private final boolean frozen;
+
+        private SharedFeatureState(FeatureState source) {
+            super(source.getFeature(), source.isEnabled());
+            super.setStrategyId(source.getStrategyId());
+            source.getParameterMap().forEach(super::setParameter);
+            frozen = true;
+        }
+
+        @Override
+        public FeatureState copy() {
+            var copy = new FeatureState(getFeature(), isEnabled());
+            copy.setStrategyId(getStrategyId());
+            getParameterMap().forEach(copy::setParameter);
+            return copy;
+        }
+
+        @Override
+        public FeatureState setEnabled(boolean enabled) {
+            checkNotFrozen();
+            return super.setEnabled(enabled);
+        }
+
+        @Override
+        public FeatureState enable() {
+            checkNotFrozen();
+            return super.enable();
+        }
+
+        @Override
+        public FeatureState disable() {
+            checkNotFrozen();
+            return super.disable();
+        }
+
+        @Override
+        public FeatureState setStrategyId(String strategyId) {
+            checkNotFrozen();
+            return super.setStrategyId(strategyId);
+        }
+
+        @Override
+        public FeatureState setParameter(String name, String value) {
+            checkNotFrozen();
+            return super.setParameter(name, value);
+        }
+
+        @Override
+        public Map<String, String> getParameterMap() {
+            return Collections.unmodifiableMap(super.getParameterMap());
+        }
+
+        /**
+         * The superclass constructor may call setters before {@link #frozen} is assigned; it's {@code false} then.
+         */
+        private void checkNotFrozen() {
+            if (frozen) {
+                throw new UnsupportedOperationException("Cached feature state of '" + getFeature().name()
+                        + "' is shared and read-only, modify its copy()");
+            }
+        }
+
+    }
+
 }
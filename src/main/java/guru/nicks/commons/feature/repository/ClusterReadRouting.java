@@ -0,0 +1,107 @@
+package guru.nicks.commons.feature.repository;
+
+import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.togglz.core.repository.StateRepository;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes reads of {@link RedisCachingFeatureStateRepository#ofCluster(StateRepository, RedisTemplate, RedisTemplate,
+ * String, Duration, Duration)} to replicas, with a replica lag check for keys written by this node: the replica's value
+ * is compared with the written one, and if the replica hasn't caught up yet, the primary is read instead. Once the
+ * replica returns the written value (or the max. staleness has passed), the key is read from replicas only again.
+ * <p>
+ * Written values are kept for at most the max. staleness: expired ones are swept on each write.
+ */
+@Slf4j
+class ClusterReadRouting {
+
+    private final RedisTemplate<String, Object> primaryTemplate;
+    private final RedisTemplate<String, Object> replicaTemplate;
+    private final long maxReplicaStalenessNanos;
+
+    /**
+     * Keys are cache keys.
+     */
+    private final Map<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+
+    ClusterReadRouting(RedisTemplate<String, Object> primaryTemplate, RedisTemplate<String, Object> replicaTemplate,
+            Duration maxReplicaStaleness) {
+        this.primaryTemplate = primaryTemplate;
+        this.replicaTemplate = replicaTemplate;
+        maxReplicaStalenessNanos = maxReplicaStaleness.toNanos();
+    }
+
+    /**
+     * Reads cached state from a replica or, if the replica lags behind a write of this node, from the primary.
+     *
+     * @param key cache key
+     * @return cached state, {@code null} if there's none
+     */
+    @Nullable
+    NullableFeatureStateWrapper read(String key) {
+        var wrapper = (NullableFeatureStateWrapper) replicaTemplate.opsForValue().get(key);
+
+        PendingWrite pendingWrite = pendingWrites.get(key);
+        if (pendingWrite == null) {
+            return wrapper;
+        }
+
+        if (Objects.equals(wrapper, pendingWrite.wrapper())) {
+            pendingWrites.remove(key, pendingWrite);
+            return wrapper;
+        }
+
+        // the key may also have been overwritten by another node since, so this isn't retried forever
+        if (System.nanoTime() - pendingWrite.deadlineNanos() >= 0) {
+            log.warn("Redis replica still lags behind the write of '{}' after {} ms, reading replica anyway", key,
+                    Duration.ofNanos(maxReplicaStalenessNanos).toMillis());
+            pendingWrites.remove(key, pendingWrite);
+            return wrapper;
+        }
+
+        return (NullableFeatureStateWrapper) primaryTemplate.opsForValue().get(key);
+    }
+
+    /**
+     * Writes state to the primary and remembers it for the replica lag check.
+     *
+     * @param key     cache key
+     * @param wrapper state to cache
+     * @param ttl     TTL
+     */
+    void write(String key, NullableFeatureStateWrapper wrapper, Duration ttl) {
+        primaryTemplate.opsForValue().set(key, wrapper, ttl);
+        written(Map.of(key, wrapper));
+    }
+
+    /**
+     * Remembers states written to the primary (e.g. in a pipeline) for the replica lag check.
+     *
+     * @param keysAndWrappers keys are cache keys
+     */
+    void written(Map<String, NullableFeatureStateWrapper> keysAndWrappers) {
+        long now = System.nanoTime();
+        pendingWrites.values().removeIf(pendingWrite -> now - pendingWrite.deadlineNanos() >= 0);
+
+        long deadlineNanos = now + maxReplicaStalenessNanos;
+        keysAndWrappers.forEach((key, wrapper) -> pendingWrites.put(key, new PendingWrite(wrapper, deadlineNanos)));
+    }
+
+    /**
+     * State written by this node.
+     *
+     * @param wrapper       written state
+     * @param deadlineNanos {@link System#nanoTime()} after which replicas are read anyway
+     */
+    private record PendingWrite(NullableFeatureStateWrapper wrapper, long deadlineNanos) {
+    }
+
+}
@@ -0,0 +1,100 @@
+package guru.nicks.commons.feature.repository;
+
+import jakarta.annotation.Nullable;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+import org.togglz.core.repository.composite.CompositeStateRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+
+/**
+ * Repository chain. Works like {@link CompositeStateRepository} with {@code SetterSelection.ALL}: the first non-null
+ * state is returned, and states are stored in all repositories in the given order. Additionally, batches are passed
+ * through the chain as batches (see {@link BatchStateRepository#setFeatureStates(StateRepository, Collection)}), so a
+ * group of features costs one guard pass, one database batch, one Redis pipeline and one listener event.
+ * <p>
+ * Typical order: {@link ReadonlyGuardFeatureStateRepository} first, then the caching/storing ones, then
+ * {@link ListenerFeatureStateRepository}.
+ */
+public class CompositeBatchStateRepository implements BatchStateRepository {
+
+    private final List<StateRepository> repositories;
+
+    /**
+     * Constructor.
+     *
+     * @param repositories repositories in chain order
+     */
+    public CompositeBatchStateRepository(List<StateRepository> repositories) {
+        check(repositories, "state repositories")
+                .notNull()
+                .constraint(list -> !list.isEmpty(), "must not be empty");
+        this.repositories = List.copyOf(repositories);
+    }
+
+    @Nullable
+    @Override
+    public FeatureState getFeatureState(Feature feature) {
+        for (StateRepository repository : repositories) {
+            FeatureState featureState = repository.getFeatureState(feature);
+
+            if (featureState != null) {
+                return featureState;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the features from each repository in turn, passing on only those still having no state.
+     */
+    @Override
+    public Map<Feature, FeatureState> getFeatureStates(Collection<? extends Feature> features) {
+        Map<Feature, FeatureState> featureStates = HashMap.newHashMap(features.size());
+        List<Feature> remaining = new ArrayList<>(features);
+
+        for (StateRepository repository : repositories) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+
+            Map<Feature, FeatureState> found = BatchStateRepository.getFeatureStates(repository, remaining);
+            found.forEach((feature, featureState) -> {
+                if (featureState != null) {
+                    featureStates.put(feature, featureState);
+                }
+            });
+            remaining.removeIf(featureStates::containsKey);
+        }
+
+        remaining.forEach(feature -> featureStates.put(feature, null));
+        return featureStates;
+    }
+
+    @Override
+    public void setFeatureState(FeatureState featureState) {
+        for (StateRepository repository : repositories) {
+            repository.setFeatureState(featureState);
+        }
+    }
+
+    @Override
+    public void setFeatureStates(Collection<FeatureState> featureStates) {
+        if (featureStates.isEmpty()) {
+            return;
+        }
+
+        for (StateRepository repository : repositories) {
+            BatchStateRepository.setFeatureStates(repository, featureStates);
+        }
+    }
+
+}
@@ -0,0 +1,432 @@
+package guru.nicks.commons.feature.repository;
+
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.util.DefaultMapSerializer;
+import org.togglz.core.repository.util.MapSerializer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Stores feature states in a database table, holding all of them in memory. Unlike Togglz' {@code JDBCStateRepository}
+ * (one {@code SELECT} per lookup), all states are loaded with one query on startup; afterwards, only a one-row change
+ * counter (along with the row count) is polled, and if it has changed, only the rows changed since the previous poll
+ * are reloaded. Therefore, the database load doesn't depend on how often features are checked. Rows deleted from the
+ * table (there's no API for that, so it's done directly in the database) are detected by the row count and trigger a
+ * full reload.
+ * <p>
+ * Each write increments the counter (in the same transaction, so concurrent writers on all nodes are serialized by the
+ * counter row lock, and change versions are committed in order) and stamps the written rows with the new value. Batches
+ * ({@link #setFeatureStates(Collection)}) are written in one transaction using JDBC batches: rows are updated, and
+ * those not found are inserted. Rows have the same fields as {@link FeatureStateDto}; parameters are serialized like in
+ * Togglz' JDBC repository.
+ * <p>
+ * Tables {@code <table name>} and {@code <table name>_VERSION} are created if they don't exist.
+ */
+@Slf4j
+public class JdbcBulkStateRepository implements BatchStateRepository, AutoCloseable {
+
+    public static final String DEFAULT_TABLE_NAME = "FEATURE_STATES";
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(5);
+
+    private static final MapSerializer PARAMETER_SERIALIZER = DefaultMapSerializer.multiline();
+
+    private final DataSource dataSource;
+    private final String tableName;
+    private final String versionTableName;
+
+    /**
+     * Keys are feature names.
+     */
+    private final Map<String, FeatureStateDto> states = new ConcurrentHashMap<>();
+    /**
+     * Highest change version seen.
+     */
+    private volatile long loadedVersion = -1;
+
+    @Nullable
+    private final Thread poller;
+
+    /**
+     * Constructor. Creates the tables if needed, loads all feature states, and starts polling for changes.
+     *
+     * @param dataSource   data source
+     * @param tableName    table name, see {@link #DEFAULT_TABLE_NAME}
+     * @param pollInterval how often to check for changes made by other nodes, zero to disable polling (then
+     *                     {@link #refresh()} should be called manually)
+     */
+    public JdbcBulkStateRepository(DataSource dataSource, String tableName, Duration pollInterval) {
+        this.dataSource = checkNotNull(dataSource, "data source");
+        check(tableName, "table name")
+                .notNull()
+                .constraint(name -> name.matches("[A-Za-z_][A-Za-z0-9_]*"), "must be a plain SQL identifier");
+        check(pollInterval, "poll interval")
+                .notNull()
+                .constraint(interval -> !interval.isNegative(), "must not be negative");
+
+        this.tableName = tableName;
+        versionTableName = tableName + "_VERSION";
+
+        createTablesIfMissing();
+        refresh();
+
+        poller = pollInterval.isZero()
+                ? null
+                : Thread.ofVirtual()
+                        .name("jdbc-feature-state-poller")
+                        .start(() -> pollLoop(pollInterval));
+    }
+
+    @Nullable
+    @Override
+    public FeatureState getFeatureState(Feature feature) {
+        FeatureStateDto dto = states.get(feature.name());
+
+        // callers may modify the state, so a new one is returned each time
+        return (dto == null)
+                ? null
+                : dto.toFeatureState(feature);
+    }
+
+    @Override
+    public void setFeatureState(FeatureState featureState) {
+        setFeatureStates(List.of(featureState));
+    }
+
+    @Override
+    public void setFeatureStates(Collection<FeatureState> featureStates) {
+        upsert(featureStates.stream()
+                .map(FeatureStateDto::from)
+                .toList());
+    }
+
+    /**
+     * Stores feature states in one transaction. If a feature occurs more than once, its last state wins.
+     *
+     * @param featureStates feature states
+     */
+    public void upsert(Collection<FeatureStateDto> featureStates) {
+        if (featureStates.isEmpty()) {
+            return;
+        }
+
+        // a feature occurring twice would violate the primary key on insert
+        Map<String, FeatureStateDto> byName = new LinkedHashMap<>();
+        featureStates.forEach(dto -> byName.put(dto.featureName(), dto));
+        List<FeatureStateDto> dtos = List.copyOf(byName.values());
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                // the counter row lock also keeps other writers from inserting the same rows between UPDATE and INSERT
+                long version = incrementVersion(connection);
+                String updateSql = "UPDATE " + tableName + " SET FEATURE_ENABLED = ?, STRATEGY_ID = ?, "
+                        + "STRATEGY_PARAMS = ?, CHANGE_VERSION = ? WHERE FEATURE_NAME = ?";
+                int[] updateCounts = executeBatch(connection, updateSql, dtos, version);
+
+                List<FeatureStateDto> inserts = new ArrayList<>();
+                for (int i = 0; i < dtos.size(); i++) {
+                    FeatureStateDto dto = dtos.get(i);
+                    // some drivers don't report counts of batched statements
+                    int updateCount = (updateCounts[i] == Statement.SUCCESS_NO_INFO)
+                            ? executeUpdate(connection, updateSql, dto, version)
+                            : updateCounts[i];
+
+                    if (updateCount == 0) {
+                        inserts.add(dto);
+                    }
+                }
+
+                executeBatch(connection, "INSERT INTO " + tableName + " (FEATURE_ENABLED, STRATEGY_ID, "
+                        + "STRATEGY_PARAMS, CHANGE_VERSION, FEATURE_NAME) VALUES (?, ?, ?, ?, ?)", inserts, version);
+
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to store " + dtos.size() + " feature states: " + e.getMessage(),
+                    e);
+        }
+
+        // visible immediately on this node; the poller will see the same rows again, which is harmless
+        dtos.forEach(dto -> states.put(dto.featureName(), dto));
+    }
+
+    /**
+     * Checks the change counter and, if it has changed, reloads the changed rows. The first call loads all rows. If
+     * rows have been deleted from the table, all rows are reloaded.
+     *
+     * @return number of feature states reloaded
+     */
+    public int refresh() {
+        try (Connection connection = dataSource.getConnection()) {
+            long[] versionAndRowCount = readVersionAndRowCount(connection);
+            long currentVersion = versionAndRowCount[0];
+            long rowCount = versionAndRowCount[1];
+
+            if ((currentVersion == loadedVersion) && (rowCount == states.size())) {
+                return 0;
+            }
+
+            long previousVersion = loadedVersion;
+            Map<String, FeatureStateDto> changed = new HashMap<>();
+            long maxVersion = loadChangedRows(connection, previousVersion, changed);
+
+            states.putAll(changed);
+            int reloadedCount = changed.size();
+
+            // rows have been deleted (the count can't be compared before applying changes: some rows may be new)
+            if (states.size() > rowCount) {
+                Map<String, FeatureStateDto> all = new HashMap<>();
+                maxVersion = Math.max(maxVersion, loadChangedRows(connection, -1, all));
+
+                states.keySet().retainAll(all.keySet());
+                states.putAll(all);
+                reloadedCount = all.size();
+            }
+
+            log.debug("Reloaded {} feature states (version {} -> {})", reloadedCount, previousVersion,
+                    Math.max(maxVersion, currentVersion));
+            loadedVersion = Math.max(maxVersion, currentVersion);
+            return reloadedCount;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to load feature states: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops polling.
+     */
+    @Override
+    public void close() {
+        if (poller != null) {
+            poller.interrupt();
+        }
+    }
+
+    private void pollLoop(Duration pollInterval) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(pollInterval);
+
+                try {
+                    refresh();
+                }
+                // keep serving the states loaded so far
+                catch (RuntimeException e) {
+                    log.warn("Feature state polling failed: {}", e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            // repository closed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loads rows changed after the given version.
+     *
+     * @param connection   connection
+     * @param sinceVersion rows having a greater change version are loaded
+     * @param target       where to put the loaded states, keys are feature names
+     * @return max. change version of the loaded rows, or {@code sinceVersion} if there are none
+     */
+    private long loadChangedRows(Connection connection, long sinceVersion, Map<String, FeatureStateDto> target)
+            throws SQLException {
+        long maxVersion = sinceVersion;
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT FEATURE_NAME, FEATURE_ENABLED, "
+                + "STRATEGY_ID, STRATEGY_PARAMS, CHANGE_VERSION FROM " + tableName + " WHERE CHANGE_VERSION > ?")) {
+            statement.setLong(1, sinceVersion);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String parameters = resultSet.getString("STRATEGY_PARAMS");
+
+                    var dto = FeatureStateDto.builder()
+                            .featureName(resultSet.getString("FEATURE_NAME"))
+                            .enabled(resultSet.getInt("FEATURE_ENABLED") != 0)
+                            .strategyId(resultSet.getString("STRATEGY_ID"))
+                            .parameters((parameters == null)
+                                    ? Map.of()
+                                    : PARAMETER_SERIALIZER.deserialize(parameters))
+                            .build();
+
+                    target.put(dto.featureName(), dto);
+                    maxVersion = Math.max(maxVersion, resultSet.getLong("CHANGE_VERSION"));
+                }
+            }
+        }
+
+        return maxVersion;
+    }
+
+    private void createTablesIfMissing() {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!tableExists(connection, tableName)) {
+                execute(connection, "CREATE TABLE " + tableName + " (FEATURE_NAME VARCHAR(100) PRIMARY KEY, "
+                        + "FEATURE_ENABLED INTEGER NOT NULL, STRATEGY_ID VARCHAR(200), STRATEGY_PARAMS VARCHAR(2000), "
+                        + "CHANGE_VERSION BIGINT NOT NULL)");
+                log.info("Created table {}", tableName);
+            }
+
+            if (!tableExists(connection, versionTableName)) {
+                execute(connection, "CREATE TABLE " + versionTableName + " (CHANGE_VERSION BIGINT NOT NULL)");
+                execute(connection, "INSERT INTO " + versionTableName + " (CHANGE_VERSION) VALUES (0)");
+                log.info("Created table {}", versionTableName);
+            }
+
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to create feature state tables: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks if the table exists in the current schema. Unlike querying the table, this doesn't abort the transaction
+     * (e.g. in PostgreSQL) if it doesn't exist. The name is converted to the case the database stores unquoted
+     * identifiers in.
+     */
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+
+        String storedName = metaData.storesUpperCaseIdentifiers()
+                ? table.toUpperCase(Locale.ROOT)
+                : (metaData.storesLowerCaseIdentifiers() ? table.toLowerCase(Locale.ROOT) : table);
+        // '_' is a wildcard in metadata patterns
+        String escape = metaData.getSearchStringEscape();
+        String namePattern = (escape == null)
+                ? storedName
+                : storedName.replace("_", escape + "_");
+
+        try (ResultSet resultSet = metaData.getTables(connection.getCatalog(), connection.getSchema(), namePattern,
+                new String[]{"TABLE"})) {
+            while (resultSet.next()) {
+                if (storedName.equals(resultSet.getString("TABLE_NAME"))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Increments the change counter, locking its row until the transaction ends.
+     *
+     * @return new counter value
+     */
+    private long incrementVersion(Connection connection) throws SQLException {
+        execute(connection, "UPDATE " + versionTableName + " SET CHANGE_VERSION = CHANGE_VERSION + 1");
+        return readVersion(connection);
+    }
+
+    private long readVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT CHANGE_VERSION FROM " + versionTableName)) {
+            if (!resultSet.next()) {
+                throw new IllegalStateException("Table " + versionTableName + " is empty");
+            }
+
+            return resultSet.getLong(1);
+        }
+    }
+
+    /**
+     * Reads the change counter and the number of feature state rows in one query.
+     *
+     * @return change counter, row count
+     */
+    private long[] readVersionAndRowCount(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT CHANGE_VERSION, (SELECT COUNT(*) FROM "
+                        + tableName + ") FROM " + versionTableName)) {
+            if (!resultSet.next()) {
+                throw new IllegalStateException("Table " + versionTableName + " is empty");
+            }
+
+            return new long[]{resultSet.getLong(1), resultSet.getLong(2)};
+        }
+    }
+
+    /**
+     * Executes statement whose parameters are: enabled, strategy ID, parameters, version, feature name.
+     *
+     * @return update counts, see {@link Statement#executeBatch()}
+     */
+    private static int[] executeBatch(Connection connection, String sql, List<FeatureStateDto> dtos, long version)
+            throws SQLException {
+        if (dtos.isEmpty()) {
+            return new int[0];
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (FeatureStateDto dto : dtos) {
+                bind(statement, dto, version);
+                statement.addBatch();
+            }
+
+            return statement.executeBatch();
+        }
+    }
+
+    /**
+     * Executes statement whose parameters are: enabled, strategy ID, parameters, version, feature name.
+     *
+     * @return update count
+     */
+    private static int executeUpdate(Connection connection, String sql, FeatureStateDto dto, long version)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, dto, version);
+            return statement.executeUpdate();
+        }
+    }
+
+    private static void bind(PreparedStatement statement, FeatureStateDto dto, long version) throws SQLException {
+        statement.setInt(1, dto.enabled() ? 1 : 0);
+        statement.setString(2, dto.strategyId());
+        statement.setString(3, dto.parameters().isEmpty()
+                ? null
+                : PARAMETER_SERIALIZER.serialize(dto.parameters()));
+        statement.setLong(4, version);
+        statement.setString(5, dto.featureName());
+    }
+
+}
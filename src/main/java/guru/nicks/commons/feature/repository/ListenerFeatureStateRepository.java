@@ -1,16 +1,125 @@
 package guru.nicks.commons.feature.repository;
 
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.listener.FeatureStateListener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import org.togglz.core.Feature;
 import org.togglz.core.repository.FeatureState;
-import org.togglz.core.repository.StateRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
 
 /**
  * Notifies about feature state changes. Must be the LAST repository in the chain.
+ * <p>
+ * Each change is logged synchronously and, if there are any {@link FeatureStateListener}s, queued for asynchronous
+ * delivery. The queue is lock-free and (softly - concurrent writers may overshoot it slightly) bounded. A dedicated
+ * virtual thread drains it and delivers changes in batches, so toggling many features costs one listener call, not
+ * N. Rapid consecutive changes of the same feature are coalesced: while the feature is still queued, only its latest
+ * state is kept. If the queue is full, {@link BackpressurePolicy} decides what happens.
+ * <p>
+ * Each listener's latency is recorded as the {@value #LISTENER_LATENCY_METRIC_NAME} timer (tagged with the listener
+ * class name), dropped changes - as the {@value #DROPPED_METRIC_NAME} counter.
+ * <p>
+ * {@link BackpressurePolicy#CALLER_RUNS} may call listeners concurrently with the dispatcher thread, so listeners
+ * should be thread-safe.
  */
 @Slf4j
-public class ListenerFeatureStateRepository implements StateRepository {
+public class ListenerFeatureStateRepository implements BatchStateRepository, MeterBinder, AutoCloseable {
+
+    public static final String LISTENER_LATENCY_METRIC_NAME = "feature.state.listener.latency";
+    public static final String DROPPED_METRIC_NAME = "feature.state.listener.dropped";
+    public static final String QUEUE_SIZE_METRIC_NAME = "feature.state.listener.queue.size";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    private static final int MAX_BATCH_SIZE = 1_000;
+    /**
+     * Safety net for missed unparks; normally the dispatcher is woken up by {@link LockSupport#unpark(Thread)}.
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final List<FeatureStateListener> listeners;
+    private final int queueCapacity;
+    private final BackpressurePolicy backpressurePolicy;
+
+    /**
+     * Names of queued features, each name appears here at most once.
+     */
+    private final Queue<String> queuedFeatureNames = new ConcurrentLinkedQueue<>();
+    /**
+     * Latest state of each queued feature. Keys are feature names.
+     */
+    private final Map<String, FeatureStateDto> pendingStates = new ConcurrentHashMap<>();
+    /**
+     * {@link ConcurrentLinkedQueue#size()} is O(n), hence a separate counter.
+     */
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    @Nullable
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * Per-listener timers, indexes match those of {@link #listeners}. {@code null} until {@link #bindTo(MeterRegistry)}
+     * is called.
+     */
+    @Nullable
+    private volatile Timer[] listenerTimers;
+    @Nullable
+    private volatile Counter droppedCounter;
+
+    /**
+     * Creates repository that only logs feature state changes.
+     */
+    public ListenerFeatureStateRepository() {
+        this(List.of(), DEFAULT_QUEUE_CAPACITY, BackpressurePolicy.CALLER_RUNS);
+    }
+
+    /**
+     * Constructor. Starts the dispatcher thread if there are any listeners.
+     *
+     * @param listeners          listeners to notify, in this order
+     * @param queueCapacity      max. number of distinct features waiting for delivery
+     * @param backpressurePolicy what to do when the queue is full
+     */
+    public ListenerFeatureStateRepository(List<FeatureStateListener> listeners, int queueCapacity,
+            BackpressurePolicy backpressurePolicy) {
+        check(queueCapacity, "listener queue capacity")
+                .constraint(capacity -> capacity > 0, "must be positive");
+
+        this.listeners = List.copyOf(checkNotNull(listeners, "listeners"));
+        this.queueCapacity = queueCapacity;
+        this.backpressurePolicy = checkNotNull(backpressurePolicy, "backpressure policy");
+
+        dispatcher = this.listeners.isEmpty()
+                ? null
+                : Thread.ofVirtual()
+                        .name("feature-state-listener-dispatcher")
+                        .start(this::dispatchLoop);
+    }
 
     @Nullable
     @Override
@@ -20,8 +129,195 @@ public class ListenerFeatureStateRepository implements StateRepository {
 
     @Override
     public void setFeatureState(FeatureState featureState) {
+        logAndEnqueue(featureState);
+
+        if (dispatcher != null) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * Queues all the states before waking the dispatcher up, so normally the whole batch is delivered to listeners as
+     * one event.
+     */
+    @Override
+    public void setFeatureStates(Collection<FeatureState> featureStates) {
+        featureStates.forEach(this::logAndEnqueue);
+
+        if (dispatcher != null) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        listenerTimers = listeners.stream()
+                .map(listener -> Timer.builder(LISTENER_LATENCY_METRIC_NAME)
+                        .description("Time spent by feature state listener on one batch")
+                        .tag("listener", listener.getClass().getName())
+                        .register(registry))
+                .toArray(Timer[]::new);
+
+        droppedCounter = Counter.builder(DROPPED_METRIC_NAME)
+                .description("Feature state changes dropped because the listener queue was full")
+                .register(registry);
+        droppedCounter.increment(droppedCount.get());
+
+        Gauge.builder(QUEUE_SIZE_METRIC_NAME, queueSize, AtomicInteger::get)
+                .description("Feature state changes waiting for listener dispatch")
+                .register(registry);
+    }
+
+    /**
+     * Stops accepting changes and waits (for a limited time) until the queued ones are delivered.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+
+        if (dispatcher != null) {
+            LockSupport.unpark(dispatcher);
+
+            if (!dispatcher.join(SHUTDOWN_TIMEOUT)) {
+                log.warn("Feature state listener dispatcher did not finish in {}, {} changes not delivered",
+                        SHUTDOWN_TIMEOUT, queueSize.get());
+            }
+        }
+    }
+
+    private void logAndEnqueue(FeatureState featureState) {
         log.info("Feature state updated: {}={}", featureState.getFeature().name(),
                 featureState.isEnabled() ? "enabled" : "disabled");
+
+        if (dispatcher != null) {
+            enqueue(featureState);
+        }
+    }
+
+    /**
+     * Queues the given state for delivery, coalescing it with the already queued state of the same feature, if any.
+     *
+     * @param featureState feature state
+     */
+    private void enqueue(FeatureState featureState) {
+        String featureName = featureState.getFeature().name();
+        // detach from the mutable FeatureState
+        var dto = FeatureStateDto.from(featureState);
+
+        if (!running) {
+            log.warn("Listener dispatcher is stopped, delivering '{}' change synchronously", featureName);
+            deliver(List.of(dto));
+            return;
+        }
+
+        // coalescing: the feature is already queued, just replace its state (the dispatcher takes the latest one)
+        if (pendingStates.replace(featureName, dto) != null) {
+            return;
+        }
+
+        if (queueSize.get() >= queueCapacity) {
+            applyBackpressure(featureName, dto);
+            return;
+        }
+
+        // another thread may have queued the same feature meanwhile
+        if (pendingStates.put(featureName, dto) == null) {
+            queueSize.incrementAndGet();
+            queuedFeatureNames.offer(featureName);
+        }
+    }
+
+    private void applyBackpressure(String featureName, FeatureStateDto dto) {
+        switch (backpressurePolicy) {
+            case DROP -> {
+                droppedCount.incrementAndGet();
+
+                Counter counter = droppedCounter;
+                if (counter != null) {
+                    counter.increment();
+                }
+
+                log.error("Listener queue is full ({} features), dropping '{}' change", queueCapacity, featureName);
+            }
+
+            case CALLER_RUNS -> {
+                log.warn("Listener queue is full ({} features), delivering '{}' change synchronously",
+                        queueCapacity, featureName);
+                deliver(List.of(dto));
+            }
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running || (queueSize.get() > 0)) {
+            List<FeatureStateDto> batch = drainBatch();
+
+            if (batch.isEmpty()) {
+                if (running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+
+                continue;
+            }
+
+            deliver(batch);
+        }
+    }
+
+    private List<FeatureStateDto> drainBatch() {
+        List<FeatureStateDto> batch = new ArrayList<>();
+        String featureName;
+
+        while ((batch.size() < MAX_BATCH_SIZE) && ((featureName = queuedFeatureNames.poll()) != null)) {
+            queueSize.decrementAndGet();
+
+            // removal makes further changes of this feature go to the queue again, not to this batch
+            FeatureStateDto dto = pendingStates.remove(featureName);
+            if (dto != null) {
+                batch.add(dto);
+            }
+        }
+
+        return batch;
+    }
+
+    private void deliver(List<FeatureStateDto> batch) {
+        Timer[] timers = listenerTimers;
+
+        for (int i = 0; i < listeners.size(); i++) {
+            FeatureStateListener listener = listeners.get(i);
+            long startNanos = System.nanoTime();
+
+            try {
+                listener.onFeatureStatesChanged(batch);
+            }
+            // one failed listener must not prevent others from being notified
+            catch (RuntimeException e) {
+                log.error("Feature state listener [{}] failed on {} changes", listener.getClass().getName(),
+                        batch.size(), e);
+            } finally {
+                if (timers != null) {
+                    timers[i].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * What to do with a feature state change if the listener queue is full.
+     */
+    public enum BackpressurePolicy {
+
+        /**
+         * Drop the change (it's logged and counted). The toggle itself is not affected.
+         */
+        DROP,
+
+        /**
+         * Deliver the change synchronously, on the caller's thread. Slows down the toggle but loses nothing.
+         */
+        CALLER_RUNS
+
     }
 
 }
@@ -0,0 +1,59 @@
+package guru.nicks.commons.feature.repository;
+
+import org.togglz.core.Feature;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Cache key builder which builds the keys of enum features once: for the first enum feature seen, keys of all its enum
+ * constants are built and stored in an array indexed by ordinal. Keys of other features (other enums, tenant and group
+ * pseudo-features) are built on each call.
+ */
+class PrecomputedCacheKeys implements Function<Feature, String> {
+
+    private final Function<Feature, String> cacheKeyBuilder;
+
+    /**
+     * Set once.
+     */
+    private volatile EnumKeys enumKeys;
+
+    PrecomputedCacheKeys(Function<Feature, String> cacheKeyBuilder) {
+        this.cacheKeyBuilder = cacheKeyBuilder;
+    }
+
+    @Override
+    public String apply(Feature feature) {
+        if (!(feature instanceof Enum<?> enumFeature)) {
+            return cacheKeyBuilder.apply(feature);
+        }
+
+        EnumKeys keys = enumKeys;
+        if (keys == null) {
+            // races are harmless: the keys built are the same
+            keys = new EnumKeys(enumFeature.getDeclaringClass(), buildKeys(enumFeature.getDeclaringClass()));
+            enumKeys = keys;
+        }
+
+        return (keys.enumClass() == enumFeature.getDeclaringClass())
+                ? keys.keys()[enumFeature.ordinal()]
+                : cacheKeyBuilder.apply(feature);
+    }
+
+    private String[] buildKeys(Class<?> enumClass) {
+        return Arrays.stream(enumClass.getEnumConstants())
+                .map(constant -> cacheKeyBuilder.apply((Feature) constant))
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Keys of one enum's constants.
+     *
+     * @param enumClass enum class
+     * @param keys      indexes are ordinals
+     */
+    private record EnumKeys(Class<?> enumClass, String[] keys) {
+    }
+
+}
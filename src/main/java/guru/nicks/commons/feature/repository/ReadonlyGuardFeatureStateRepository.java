@@ -10,8 +10,11 @@ import org.togglz.core.repository.StateRepository;
 /**
  * Forbids editing features whose {@link EnhancedFeature#toggleableOnline()} is {@code false}. Must be the FIRST
  * repository in the chain.
+ * <p>
+ * Batches ({@link #setFeatureStates(java.util.Collection)}) are checked as a whole before any other repository in the
+ * chain stores anything, so a batch containing a read-only feature is rejected entirely.
  */
-public class ReadonlyGuardFeatureStateRepository implements StateRepository {
+public class ReadonlyGuardFeatureStateRepository implements BatchStateRepository {
 
     /**
      * Always returns {@code null}, so Togglz tries the next repository in the chain.
@@ -1,30 +1,80 @@
 package guru.nicks.commons.feature.repository;
 
 import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
+import guru.nicks.commons.feature.domain.TenantFeature;
 
+import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
 import org.togglz.core.repository.StateRepository;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
 
 /**
- * Caches feature states in Redis.
+ * Caches feature states in Redis. Batch updates are sent in one pipeline. Cache keys of enum features are built once.
+ * <p>
+ * For Redis Cluster, see {@link #ofCluster(StateRepository, RedisTemplate, RedisTemplate, String, Duration, Duration)}:
+ * all keys share one hash slot, reads go to replicas, writes go to primaries.
+ * <p>
+ * To keep feature checks fast while Redis is slow or down, see
+ * {@link #ofBudgeted(StateRepository, RedisTemplate, Function, Duration, Duration, int)} and (for Redis Cluster)
+ * {@link #ofBudgetedCluster(StateRepository, RedisTemplate, RedisTemplate, String, Duration, Duration, Duration, int)}.
  *
  * @see #of(StateRepository, RedisTemplate, Function, Duration)
+ * @see #tenantAwareCacheKeyBuilder(String)
+ * @see #clusterCacheKeyBuilder(String, String)
  */
 @Slf4j
 public class RedisCachingFeatureStateRepository extends CachingFeatureStateRepository {
 
+    /**
+     * Key prefix used by {@link #ofCluster(StateRepository, RedisTemplate, RedisTemplate, String, Duration, Duration)}.
+     */
+    public static final String CLUSTER_KEY_PREFIX = "feature:";
+
+    public static final Duration DEFAULT_READ_BUDGET = Duration.ofMillis(2);
+    public static final int DEFAULT_MAX_CONCURRENT_DELEGATE_READS = 16;
+
+    /**
+     * Set by budgeted factory methods only.
+     */
+    @Nullable
+    private final BudgetedRedisAccess budgetedRedisAccess;
+
     private RedisCachingFeatureStateRepository(StateRepository delegate,
             Function<Feature, NullableFeatureStateWrapper> cacheGetter,
-            BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater) {
-        super(delegate, cacheGetter, cacheUpdater);
+            BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater,
+            Consumer<Map<Feature, NullableFeatureStateWrapper>> cacheBatchUpdater) {
+        this(delegate, cacheGetter, cacheUpdater, cacheBatchUpdater, features -> features.stream()
+                .map(cacheGetter)
+                .toList(), null);
+    }
+
+    private RedisCachingFeatureStateRepository(StateRepository delegate,
+            Function<Feature, NullableFeatureStateWrapper> cacheGetter,
+            BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater,
+            Consumer<Map<Feature, NullableFeatureStateWrapper>> cacheBatchUpdater,
+            Function<List<Feature>, List<NullableFeatureStateWrapper>> cacheBatchGetter,
+            @Nullable BudgetedRedisAccess budgetedRedisAccess) {
+        super(delegate, cacheGetter, cacheUpdater, cacheBatchUpdater, cacheBatchGetter);
+        this.budgetedRedisAccess = budgetedRedisAccess;
     }
 
     /**
@@ -41,11 +91,105 @@ public class RedisCachingFeatureStateRepository extends CachingFeatureStateRepos
         check(cacheTtl, "feature state cache TTL")
                 .notNull()
                 .constraint(duration -> !duration.isNegative(), "must not be negative");
+        Function<Feature, String> cacheKeys = new PrecomputedCacheKeys(checkNotNull(cacheKeyBuilder,
+                "cache key builder"));
+
+        Function<Feature, NullableFeatureStateWrapper> cacheGetter = feature ->
+                read(redisTemplate, cacheKeys.apply(feature));
+
+        BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater = (feature, wrapper) -> {
+            String key = cacheKeys.apply(feature);
+            redisTemplate.opsForValue().set(key, wrapper, cacheTtl);
+        };
+
+        return new RedisCachingFeatureStateRepository(delegate, cacheGetter, cacheUpdater,
+                pipelinedBatchUpdater(redisTemplate, cacheKeys, cacheTtl),
+                features -> multiRead(redisTemplate, features.stream()
+                        .map(cacheKeys)
+                        .toList()), null);
+    }
+
+    /**
+     * Creates a new instance of {@link RedisCachingFeatureStateRepository} whose Redis calls are bounded by a latency
+     * budget, so a Redis brownout neither slows feature checks down nor overloads the delegate (database):
+     * <ul>
+     *  <li>the caller waits for a read no longer than {@code readBudget}; on timeout or error, the last-known state of
+     *      the feature (read or written by this node) is served</li>
+     *  <li>only if there's no last-known state (e.g. Redis is down since startup), the delegate is read - by at most
+     *      {@code maxConcurrentDelegateReads} threads at once; others don't wait and get no state, which is not
+     *      cached, so the feature's default applies (e.g. {@code @EnabledByDefault})</li>
+     *  <li>single-feature writes, including cache refills after a delegate read, go on in the background, so a miss
+     *      takes at most the budget plus the delegate read; batches are not budgeted</li>
+     * </ul>
+     * Reads run on virtual threads, so the caller's wait is bounded even by the first read after Redis starts hanging.
+     * spring-data-redis templates are synchronous, so the Redis client's own timeouts still apply to the background
+     * calls; the budget only bounds how long the caller waits.
+     * <p>
+     * {@link #close()} stops the background calls.
+     *
+     * @param delegate                   underlying state repository to delegate to when the cache is missed
+     * @param redisTemplate              Redis template for cache operations
+     * @param cacheKeyBuilder            function that builds cache keys for features
+     * @param cacheTtl                   TTL for the cache entries
+     * @param readBudget                 max. time a caller waits for Redis, see {@link #DEFAULT_READ_BUDGET}
+     * @param maxConcurrentDelegateReads see {@link #DEFAULT_MAX_CONCURRENT_DELEGATE_READS}
+     * @return new instance
+     */
+    public static RedisCachingFeatureStateRepository ofBudgeted(StateRepository delegate,
+            RedisTemplate<String, Object> redisTemplate, Function<Feature, String> cacheKeyBuilder, Duration cacheTtl,
+            Duration readBudget, int maxConcurrentDelegateReads) {
+        checkNotNull(redisTemplate, "Redis template");
+        check(cacheTtl, "feature state cache TTL")
+                .notNull()
+                .constraint(duration -> !duration.isNegative(), "must not be negative");
+        check(readBudget, "Redis read budget")
+                .notNull()
+                .constraint(Duration::isPositive, "must be positive");
+        check(maxConcurrentDelegateReads, "max. concurrent delegate reads")
+                .constraint(value -> value > 0, "must be positive");
+        Function<Feature, String> cacheKeys = new PrecomputedCacheKeys(checkNotNull(cacheKeyBuilder,
+                "cache key builder"));
+
+        var redis = new BudgetedRedisAccess(redisTemplate, readBudget);
+        return budgeted(delegate, redis, cacheKeys, pipelinedBatchUpdater(redisTemplate, cacheKeys, cacheTtl),
+                cacheTtl, maxConcurrentDelegateReads);
+    }
+
+    /**
+     * Creates a new instance of {@link RedisCachingFeatureStateRepository} for Redis Cluster:
+     * <ul>
+     *  <li>keys are built by {@link #clusterCacheKeyBuilder(String, String)}, so they all share one hash slot, and
+     *      batch updates are pipelined to one node</li>
+     *  <li>writes go to {@code primaryTemplate}</li>
+     *  <li>reads go to {@code replicaTemplate} (e.g. backed by a Lettuce connection factory configured with
+     *      {@code ReadFrom.REPLICA_PREFERRED}), with a replica lag check for features written by this node: if the
+     *      replica returns something other than the written state, the primary is read instead - until the replica
+     *      catches up, but for no longer than {@code maxReplicaStaleness}; so this node never sees its own write undone
+     *      by replication lag, and other nodes see the change once replicas catch up</li>
+     * </ul>
+     * Feature check traffic therefore scales with the number of replicas of the shard holding the slot.
+     *
+     * @param delegate            underlying state repository to delegate to when the cache is missed
+     * @param primaryTemplate     Redis template writing to primaries
+     * @param replicaTemplate     Redis template reading from replicas
+     * @param hashTag             hash tag shared by all keys, typically the application name
+     * @param cacheTtl            TTL for the cache entries
+     * @param maxReplicaStaleness max. time replicas are checked for lagging behind writes of this node, should exceed
+     *                            the usual replication lag
+     * @return new instance
+     * @see #ofBudgetedCluster(StateRepository, RedisTemplate, RedisTemplate, String, Duration, Duration, Duration, int)
+     */
+    public static RedisCachingFeatureStateRepository ofCluster(StateRepository delegate,
+            RedisTemplate<String, Object> primaryTemplate, RedisTemplate<String, Object> replicaTemplate,
+            String hashTag, Duration cacheTtl, Duration maxReplicaStaleness) {
+        Function<Feature, String> cacheKeys = new PrecomputedCacheKeys(clusterCacheKeyBuilder(CLUSTER_KEY_PREFIX,
+                hashTag));
+        ClusterReadRouting routing = clusterReadRouting(primaryTemplate, replicaTemplate, cacheTtl,
+                maxReplicaStaleness);
 
         Function<Feature, NullableFeatureStateWrapper> cacheGetter = feature -> {
             try {
-                String key = cacheKeyBuilder.apply(feature);
-                return (NullableFeatureStateWrapper) redisTemplate.opsForValue().get(key);
+                return routing.read(cacheKeys.apply(feature));
             } catch (RuntimeException e) {
                 log.error("Redis read failed, falling back to database lookup: {}", e.getMessage(), e);
                 // this will trigger a database lookup
@@ -53,12 +197,254 @@ public class RedisCachingFeatureStateRepository extends CachingFeatureStateRepos
             }
         };
 
-        BiConsumer<Feature, NullableFeatureStateWrapper> cacheUpdater = (feature, wrapper) -> {
-            String key = cacheKeyBuilder.apply(feature);
-            redisTemplate.opsForValue().set(key, wrapper, cacheTtl);
+        return new RedisCachingFeatureStateRepository(delegate, cacheGetter,
+                (feature, wrapper) -> routing.write(cacheKeys.apply(feature), wrapper, cacheTtl),
+                clusterBatchUpdater(primaryTemplate, routing, cacheKeys, cacheTtl));
+    }
+
+    /**
+     * Combines {@link #ofCluster(StateRepository, RedisTemplate, RedisTemplate, String, Duration, Duration)} (reads
+     * from replicas, checked for lagging behind writes of this node) with
+     * {@link #ofBudgeted(StateRepository, RedisTemplate, Function, Duration, Duration, int)} (reads bounded by a
+     * latency budget, see the latter for details).
+     *
+     * @param delegate                   underlying state repository to delegate to when the cache is missed
+     * @param primaryTemplate            Redis template writing to primaries
+     * @param replicaTemplate            Redis template reading from replicas
+     * @param hashTag                    hash tag shared by all keys, typically the application name
+     * @param cacheTtl                   TTL for the cache entries
+     * @param maxReplicaStaleness        max. time replicas are checked for lagging behind writes of this node
+     * @param readBudget                 max. time a caller waits for Redis, see {@link #DEFAULT_READ_BUDGET}
+     * @param maxConcurrentDelegateReads see {@link #DEFAULT_MAX_CONCURRENT_DELEGATE_READS}
+     * @return new instance
+     */
+    public static RedisCachingFeatureStateRepository ofBudgetedCluster(StateRepository delegate,
+            RedisTemplate<String, Object> primaryTemplate, RedisTemplate<String, Object> replicaTemplate,
+            String hashTag, Duration cacheTtl, Duration maxReplicaStaleness, Duration readBudget,
+            int maxConcurrentDelegateReads) {
+        check(readBudget, "Redis read budget")
+                .notNull()
+                .constraint(Duration::isPositive, "must be positive");
+        check(maxConcurrentDelegateReads, "max. concurrent delegate reads")
+                .constraint(value -> value > 0, "must be positive");
+        Function<Feature, String> cacheKeys = new PrecomputedCacheKeys(clusterCacheKeyBuilder(CLUSTER_KEY_PREFIX,
+                hashTag));
+        ClusterReadRouting routing = clusterReadRouting(primaryTemplate, replicaTemplate, cacheTtl,
+                maxReplicaStaleness);
+
+        var redis = new BudgetedRedisAccess(routing::read, routing::write, readBudget);
+        return budgeted(delegate, redis, cacheKeys, clusterBatchUpdater(primaryTemplate, routing, cacheKeys, cacheTtl),
+                cacheTtl, maxConcurrentDelegateReads);
+    }
+
+    /**
+     * In addition to the parent's logic, returns {@code null} (not cached), so the feature's default applies, if the
+     * delegate of a budgeted instance (see {@link #ofBudgeted(StateRepository, RedisTemplate, Function, Duration,
+     * Duration, int)}) is too busy.
+     */
+    @Nullable
+    @Override
+    public FeatureState getFeatureState(Feature feature) {
+        try {
+            return super.getFeatureState(feature);
+        } catch (BudgetedRedisAccess.DelegateBusyException e) {
+            log.warn("{}, the default state applies", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * For budgeted instances (see {@link #ofBudgeted(StateRepository, RedisTemplate, Function, Duration, Duration,
+     * int)}), reads the states one by one, so each of them is budgeted and falls back to the default on its own (see
+     * {@link #getFeatureState(Feature)}). Otherwise see parent.
+     */
+    @Override
+    public Map<Feature, FeatureState> getFeatureStates(Collection<? extends Feature> features) {
+        if (budgetedRedisAccess == null) {
+            return super.getFeatureStates(features);
+        }
+
+        Map<Feature, FeatureState> featureStates = HashMap.newHashMap(features.size());
+        features.forEach(feature -> featureStates.put(feature, getFeatureState(feature)));
+        return featureStates;
+    }
+
+    /**
+     * Stops background Redis calls (if any), then closes the delegate (see parent).
+     *
+     * @throws Exception whatever the delegate throws
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            if (budgetedRedisAccess != null) {
+                budgetedRedisAccess.close();
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+    /**
+     * Creates cache key builder which puts tenant overrides (see {@link TenantFeatureStateRepository}) under a
+     * per-tenant key prefix: {@code <keyPrefix>tenant:<tenant ID>:<feature name>}, so all overrides of a tenant can be
+     * found (or deleted) by a key pattern. Other features' keys are {@code <keyPrefix><feature name>}.
+     *
+     * @param keyPrefix key prefix
+     * @return cache key builder
+     */
+    public static Function<Feature, String> tenantAwareCacheKeyBuilder(String keyPrefix) {
+        checkNotNull(keyPrefix, "key prefix");
+
+        return feature -> (feature instanceof TenantFeature tenantFeature)
+                ? keyPrefix + "tenant:" + tenantFeature.tenantId() + ":" + tenantFeature.feature().name()
+                : keyPrefix + feature.name();
+    }
+
+    /**
+     * Creates tenant-aware (see {@link #tenantAwareCacheKeyBuilder(String)}) cache key builder whose keys all have the
+     * same Redis Cluster hash tag, and therefore the same hash slot: {@code <keyPrefix>{<hashTag>}:<feature name>} and
+     * {@code <keyPrefix>{<hashTag>}:tenant:<tenant ID>:<feature name>}.
+     *
+     * @param keyPrefix key prefix
+     * @param hashTag   hash tag, typically the application name
+     * @return cache key builder
+     */
+    public static Function<Feature, String> clusterCacheKeyBuilder(String keyPrefix, String hashTag) {
+        checkNotNull(keyPrefix, "key prefix");
+        check(hashTag, "hash tag")
+                .notNull()
+                .constraint(tag -> !tag.isEmpty() && (tag.indexOf('{') < 0) && (tag.indexOf('}') < 0),
+                        "must be non-empty and contain no braces");
+
+        return tenantAwareCacheKeyBuilder(keyPrefix + "{" + hashTag + "}:");
+    }
+
+    private static ClusterReadRouting clusterReadRouting(RedisTemplate<String, Object> primaryTemplate,
+            RedisTemplate<String, Object> replicaTemplate, Duration cacheTtl, Duration maxReplicaStaleness) {
+        checkNotNull(primaryTemplate, "primary Redis template");
+        checkNotNull(replicaTemplate, "replica Redis template");
+        check(cacheTtl, "feature state cache TTL")
+                .notNull()
+                .constraint(duration -> !duration.isNegative(), "must not be negative");
+        check(maxReplicaStaleness, "max. replica staleness")
+                .notNull()
+                .constraint(duration -> !duration.isNegative(), "must not be negative");
+
+        return new ClusterReadRouting(primaryTemplate, replicaTemplate, maxReplicaStaleness);
+    }
+
+    /**
+     * Pipelines batches to the primary, then remembers them for the replica lag check.
+     */
+    private static Consumer<Map<Feature, NullableFeatureStateWrapper>> clusterBatchUpdater(
+            RedisTemplate<String, Object> primaryTemplate, ClusterReadRouting routing,
+            Function<Feature, String> cacheKeys, Duration cacheTtl) {
+        Consumer<Map<Feature, NullableFeatureStateWrapper>> batchUpdater = pipelinedBatchUpdater(primaryTemplate,
+                cacheKeys, cacheTtl);
+
+        return wrappers -> {
+            batchUpdater.accept(wrappers);
+
+            Map<String, NullableFeatureStateWrapper> keysAndWrappers = new LinkedHashMap<>();
+            wrappers.forEach((feature, wrapper) -> keysAndWrappers.put(cacheKeys.apply(feature), wrapper));
+            routing.written(keysAndWrappers);
+        };
+    }
+
+    /**
+     * Builds repository whose Redis reads and single-feature writes go through {@code redis}, see
+     * {@link #ofBudgeted(StateRepository, RedisTemplate, Function, Duration, Duration, int)}.
+     */
+    private static RedisCachingFeatureStateRepository budgeted(StateRepository delegate, BudgetedRedisAccess redis,
+            Function<Feature, String> cacheKeys, Consumer<Map<Feature, NullableFeatureStateWrapper>> batchUpdater,
+            Duration cacheTtl, int maxConcurrentDelegateReads) {
+        Consumer<Map<Feature, NullableFeatureStateWrapper>> cacheBatchUpdater = wrappers -> {
+            Map<String, NullableFeatureStateWrapper> keysAndWrappers = new LinkedHashMap<>();
+            wrappers.forEach((feature, wrapper) -> keysAndWrappers.put(cacheKeys.apply(feature), wrapper));
+            redis.rememberAll(keysAndWrappers);
+
+            batchUpdater.accept(wrappers);
         };
 
-        return new RedisCachingFeatureStateRepository(delegate, cacheGetter, cacheUpdater);
+        Function<Feature, NullableFeatureStateWrapper> cacheGetter = feature -> redis.read(cacheKeys.apply(feature));
+
+        // each read is budgeted on its own, see getFeatureStates()
+        return new RedisCachingFeatureStateRepository(
+                new BudgetedRedisAccess.ConcurrencyLimitedStateRepository(checkNotNull(delegate, "delegate"),
+                        maxConcurrentDelegateReads),
+                cacheGetter,
+                (feature, wrapper) -> redis.write(cacheKeys.apply(feature), wrapper, cacheTtl),
+                cacheBatchUpdater,
+                features -> features.stream()
+                        .map(cacheGetter)
+                        .toList(),
+                redis);
+    }
+
+    /**
+     * Reads cached state.
+     *
+     * @param redisTemplate Redis template
+     * @param key           cache key
+     * @return cached state, {@code null} if there's none or the read has failed
+     */
+    @Nullable
+    private static NullableFeatureStateWrapper read(RedisTemplate<String, Object> redisTemplate, String key) {
+        try {
+            return (NullableFeatureStateWrapper) redisTemplate.opsForValue().get(key);
+        } catch (RuntimeException e) {
+            log.error("Redis read failed, falling back to database lookup: {}", e.getMessage(), e);
+            // this will trigger a database lookup
+            return null;
+        }
+    }
+
+    /**
+     * Reads cached states with one MGET.
+     *
+     * @param redisTemplate Redis template
+     * @param keys          cache keys
+     * @return cached states in the order of the keys, {@code null}s for the ones not cached; all {@code null}s if the
+     *         read has failed
+     */
+    private static List<NullableFeatureStateWrapper> multiRead(RedisTemplate<String, Object> redisTemplate,
+            List<String> keys) {
+        List<Object> values;
+
+        try {
+            values = redisTemplate.opsForValue().multiGet(keys);
+        } catch (RuntimeException e) {
+            log.error("Redis batch read failed, falling back to database lookup: {}", e.getMessage(), e);
+            values = null;
+        }
+
+        // null (e.g. in a pipeline/transaction) means nothing was read; this will trigger a database lookup
+        if (values == null) {
+            return Collections.nCopies(keys.size(), null);
+        }
+
+        return values.stream()
+                .map(NullableFeatureStateWrapper.class::cast)
+                .toList();
+    }
+
+    private static Consumer<Map<Feature, NullableFeatureStateWrapper>> pipelinedBatchUpdater(
+            RedisTemplate<String, Object> redisTemplate, Function<Feature, String> cacheKeys, Duration cacheTtl) {
+        return wrappers -> redisTemplate.executePipelined(new SessionCallback<Object>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                var stringKeyOperations = (RedisOperations<String, Object>) operations;
+
+                wrappers.forEach((feature, wrapper) -> stringKeyOperations.opsForValue()
+                        .set(cacheKeys.apply(feature), wrapper, cacheTtl));
+                // results are read by executePipelined() itself
+                return null;
+            }
+
+        });
     }
 
 }
@@ -0,0 +1,438 @@
+package guru.nicks.commons.feature.repository;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Evaluates time-based activation strategies (Togglz' {@value #RELEASE_DATE_STRATEGY_ID} and
+ * {@value #TIME_WINDOW_STRATEGY_ID}) once per state change instead of once per feature check.
+ * <p>
+ * When such a state is loaded from the delegate, its date/time parameters are parsed once, and a virtual thread is
+ * started which sleeps until the next boundary of the time window and flips the feature's effective state at that
+ * instant (publishing the change to {@code changePublisher}, typically {@link ListenerFeatureStateRepository}). Until
+ * the state changes, lookups return a copy of a precomputed plain on/off state (no strategy), so time-based features
+ * cost about the same as plain flags at call time. Lookups also compare the current time (one
+ * {@link Clock#millis()} call) with the next boundary, so the state flips on time even if the timer thread is late.
+ * <p>
+ * The original strategy ID is kept in the {@value #ORIGINAL_STRATEGY_PARAMETER} parameter of the returned state, and
+ * {@link #setFeatureState(FeatureState)} restores it if the state still has no strategy and its parameters are the
+ * stored ones - so saving an unmodified state (e.g. from an admin UI) doesn't erase the schedule. Saving the state
+ * without that parameter, or with the schedule parameters changed or removed, clears the strategy.
+ */
+@Slf4j
+public class ScheduledFeatureStateRepository implements BatchStateRepository, AutoCloseable {
+
+    public static final String RELEASE_DATE_STRATEGY_ID = "release-date";
+    public static final String RELEASE_DATE_PARAMETER = "date";
+    public static final String RELEASE_TIME_PARAMETER = "time";
+
+    public static final String TIME_WINDOW_STRATEGY_ID = "time-window";
+    public static final String START_DATE_PARAMETER = "start_date";
+    public static final String START_TIME_PARAMETER = "start_time";
+    public static final String END_DATE_PARAMETER = "end_date";
+    public static final String END_TIME_PARAMETER = "end_time";
+
+    public static final String ORIGINAL_STRATEGY_PARAMETER = "scheduled.original-strategy";
+
+    private static final Set<String> TIME_BASED_STRATEGY_IDS = Set.of(RELEASE_DATE_STRATEGY_ID,
+            TIME_WINDOW_STRATEGY_ID);
+
+    private final StateRepository delegate;
+    @Nullable
+    private final StateRepository changePublisher;
+    private final ZoneId zoneId;
+    private final Clock clock;
+
+    /**
+     * Keys are feature names.
+     */
+    private final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param delegate        underlying state repository
+     * @param changePublisher repository to publish effective state flips to (optional)
+     * @param zoneId          time zone the date/time parameters are in
+     */
+    public ScheduledFeatureStateRepository(StateRepository delegate, @Nullable StateRepository changePublisher,
+            ZoneId zoneId) {
+        this(delegate, changePublisher, zoneId, Clock.systemUTC());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate        underlying state repository
+     * @param changePublisher repository to publish effective state flips to (optional)
+     * @param zoneId          time zone the date/time parameters are in
+     * @param clock           clock to evaluate the time windows with
+     */
+    public ScheduledFeatureStateRepository(StateRepository delegate, @Nullable StateRepository changePublisher,
+            ZoneId zoneId, Clock clock) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.changePublisher = changePublisher;
+        this.zoneId = checkNotNull(zoneId, "zone ID");
+        this.clock = checkNotNull(clock, "clock");
+    }
+
+    @Nullable
+    @Override
+    public FeatureState getFeatureState(Feature feature) {
+        FeatureState featureState = delegate.getFeatureState(feature);
+        String featureName = feature.name();
+
+        if ((featureState == null) || !isTimeBased(featureState)) {
+            cancelSchedule(featureName);
+            return featureState;
+        }
+
+        Schedule schedule = schedules.get(featureName);
+        if ((schedule != null) && schedule.matches(featureState)) {
+            return schedule.getEffectiveState();
+        }
+
+        schedule = compile(featureState);
+        // unparseable parameters - let Togglz deal with them as usual
+        if (schedule == null) {
+            cancelSchedule(featureName);
+            return featureState;
+        }
+
+        Schedule previous = schedules.put(featureName, schedule);
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        schedule.start();
+        return schedule.getEffectiveState();
+    }
+
+    @Override
+    public void setFeatureState(FeatureState featureState) {
+        // the schedule is recompiled on the next lookup, if needed
+        delegate.setFeatureState(restoreOriginalStrategy(featureState));
+    }
+
+    @Override
+    public void setFeatureStates(Collection<FeatureState> featureStates) {
+        BatchStateRepository.setFeatureStates(delegate, featureStates.stream()
+                .map(this::restoreOriginalStrategy)
+                .toList());
+    }
+
+    /**
+     * Stops all timers.
+     */
+    @Override
+    public void close() {
+        schedules.values().forEach(Schedule::cancel);
+        schedules.clear();
+    }
+
+    private static boolean isTimeBased(FeatureState featureState) {
+        // Set.of() doesn't accept nulls, even in contains()
+        String strategyId = featureState.getStrategyId();
+        return (strategyId != null) && TIME_BASED_STRATEGY_IDS.contains(strategyId);
+    }
+
+    private void cancelSchedule(String featureName) {
+        Schedule schedule = schedules.remove(featureName);
+
+        if (schedule != null) {
+            schedule.cancel();
+        }
+    }
+
+    /**
+     * Parses time-based strategy parameters.
+     *
+     * @param featureState feature state having a time-based strategy
+     * @return schedule, {@code null} if the parameters can't be parsed
+     */
+    @Nullable
+    private Schedule compile(FeatureState featureState) {
+        try {
+            return switch (featureState.getStrategyId()) {
+                case RELEASE_DATE_STRATEGY_ID -> new Schedule(featureState,
+                        parseInstant(featureState, RELEASE_DATE_PARAMETER, RELEASE_TIME_PARAMETER, LocalTime.MIDNIGHT),
+                        null);
+                case TIME_WINDOW_STRATEGY_ID -> new Schedule(featureState,
+                        parseInstant(featureState, START_DATE_PARAMETER, START_TIME_PARAMETER, LocalTime.MIDNIGHT),
+                        parseInstant(featureState, END_DATE_PARAMETER, END_TIME_PARAMETER, LocalTime.MAX));
+                default -> null;
+            };
+        } catch (DateTimeParseException e) {
+            log.warn("Cannot schedule feature '{}', falling back to per-call evaluation: {}",
+                    featureState.getFeature().name(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses date and time parameters.
+     *
+     * @return instant, {@code null} if the date parameter is blank (meaning no boundary)
+     */
+    @Nullable
+    private Instant parseInstant(FeatureState featureState, String dateParameter, String timeParameter,
+            LocalTime defaultTime) {
+        String date = featureState.getParameter(dateParameter);
+        if ((date == null) || date.isBlank()) {
+            return null;
+        }
+
+        String time = featureState.getParameter(timeParameter);
+        LocalTime localTime = ((time == null) || time.isBlank())
+                ? defaultTime
+                : LocalTime.parse(time.strip());
+
+        return LocalDate.parse(date.strip())
+                .atTime(localTime)
+                .atZone(zoneId)
+                .toInstant();
+    }
+
+    /**
+     * Removes {@value #ORIGINAL_STRATEGY_PARAMETER} and puts the strategy ID saved in it back, if the state still has
+     * no strategy and its parameters are the stored ones (i.e. the schedule hasn't been cleared).
+     *
+     * @param featureState state to store
+     * @return state to pass to the delegate
+     */
+    private FeatureState restoreOriginalStrategy(FeatureState featureState) {
+        String originalStrategyId = featureState.getParameter(ORIGINAL_STRATEGY_PARAMETER);
+        if (originalStrategyId == null) {
+            return featureState;
+        }
+
+        var restored = new FeatureState(featureState.getFeature(), featureState.isEnabled());
+        restored.setStrategyId(featureState.getStrategyId());
+
+        featureState.getParameterMap().forEach((name, value) -> {
+            if (!ORIGINAL_STRATEGY_PARAMETER.equals(name)) {
+                restored.setParameter(name, value);
+            }
+        });
+
+        if (featureState.getStrategyId() == null) {
+            FeatureState stored = delegate.getFeatureState(featureState.getFeature());
+
+            if ((stored != null)
+                    && originalStrategyId.equals(stored.getStrategyId())
+                    && stored.getParameterMap().equals(restored.getParameterMap())) {
+                restored.setStrategyId(originalStrategyId);
+            }
+        }
+
+        return restored;
+    }
+
+    /**
+     * Compiled time window of one feature state. {@code null} boundaries mean 'since forever' and 'forever'.
+     */
+    private final class Schedule {
+
+        private final Feature feature;
+        private final boolean enabled;
+        private final String strategyId;
+        private final Map<String, String> parameters;
+
+        @Nullable
+        private final Instant start;
+        @Nullable
+        private final Instant end;
+
+        private final FeatureState activeState;
+        private final FeatureState inactiveState;
+
+        private volatile boolean active;
+        /**
+         * Epoch millis of the next window boundary, {@link Long#MAX_VALUE} if there are no more.
+         */
+        private volatile long nextDeadlineMillis;
+        @Nullable
+        private volatile Thread timer;
+
+        private Schedule(FeatureState featureState, @Nullable Instant start, @Nullable Instant end) {
+            feature = featureState.getFeature();
+            enabled = featureState.isEnabled();
+            strategyId = featureState.getStrategyId();
+            parameters = new HashMap<>(featureState.getParameterMap());
+
+            this.start = start;
+            this.end = end;
+
+            activeState = toPlainState(featureState, true);
+            inactiveState = toPlainState(featureState, false);
+
+            Instant now = clock.instant();
+            active = enabled && isWithinWindow(now);
+            nextDeadlineMillis = toDeadlineMillis(now);
+        }
+
+        /**
+         * Checks if the state is the one this schedule was compiled from. Doesn't parse anything.
+         */
+        private boolean matches(FeatureState featureState) {
+            if ((featureState.isEnabled() != enabled)
+                    || !Objects.equals(featureState.getStrategyId(), strategyId)
+                    || (featureState.getParameterNames().size() != parameters.size())) {
+                return false;
+            }
+
+            for (Map.Entry<String, String> entry : parameters.entrySet()) {
+                if (!Objects.equals(entry.getValue(), featureState.getParameter(entry.getKey()))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Returns a copy of the precomputed state: callers may modify it.
+         */
+        private FeatureState getEffectiveState() {
+            if (clock.millis() >= nextDeadlineMillis) {
+                flip();
+            }
+
+            return active
+                    ? activeState.copy()
+                    : inactiveState.copy();
+        }
+
+        private void start() {
+            // disabled feature stays disabled no matter the time
+            if (!enabled) {
+                return;
+            }
+
+            timer = Thread.ofVirtual()
+                    .name("feature-schedule-" + feature.name())
+                    .start(this::runTimer);
+        }
+
+        private void cancel() {
+            Thread thread = timer;
+
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        private void runTimer() {
+            try {
+                for (Instant deadline = nextDeadline(clock.instant()); deadline != null;
+                        deadline = nextDeadline(clock.instant())) {
+                    Duration delay = Duration.between(clock.instant(), deadline);
+
+                    if (delay.isPositive()) {
+                        Thread.sleep(delay);
+                    }
+
+                    flip();
+                }
+            } catch (InterruptedException e) {
+                // schedule cancelled
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Finds the nearest window boundary after the given instant.
+         *
+         * @return boundary, {@code null} if there are no more
+         */
+        @Nullable
+        private Instant nextDeadline(Instant now) {
+            if ((start != null) && now.isBefore(start)) {
+                return start;
+            }
+
+            if ((end != null) && !now.isAfter(end)) {
+                // the window is inclusive - the state flips right after its end
+                return end.plusNanos(1);
+            }
+
+            return null;
+        }
+
+        /**
+         * Disabled feature has no deadlines: it stays disabled no matter the time.
+         */
+        private long toDeadlineMillis(Instant now) {
+            Instant deadline = enabled
+                    ? nextDeadline(now)
+                    : null;
+
+            if (deadline == null) {
+                return Long.MAX_VALUE;
+            }
+
+            // round up, so the state isn't evaluated before the boundary
+            long millis = deadline.toEpochMilli();
+            return (deadline.getNano() % 1_000_000 == 0)
+                    ? millis
+                    : millis + 1;
+        }
+
+        /**
+         * Called by both the timer and lookups, hence synchronized: each flip is published once.
+         */
+        private synchronized void flip() {
+            Instant now = clock.instant();
+            nextDeadlineMillis = toDeadlineMillis(now);
+
+            boolean nowActive = enabled && isWithinWindow(now);
+            if (nowActive == active) {
+                return;
+            }
+
+            active = nowActive;
+            log.info("Scheduled feature '{}' is now {}", feature.name(), nowActive ? "active" : "inactive");
+
+            if (changePublisher != null) {
+                try {
+                    changePublisher.setFeatureState((nowActive ? activeState : inactiveState).copy());
+                } catch (RuntimeException e) {
+                    log.error("Failed to publish scheduled state change of feature '{}'", feature.name(), e);
+                }
+            }
+        }
+
+        private boolean isWithinWindow(Instant now) {
+            return ((start == null) || !now.isBefore(start))
+                    && ((end == null) || !now.isAfter(end));
+        }
+
+        private static FeatureState toPlainState(FeatureState source, boolean enabled) {
+            var featureState = new FeatureState(source.getFeature(), enabled);
+            source.getParameterMap().forEach(featureState::setParameter);
+            featureState.setParameter(ORIGINAL_STRATEGY_PARAMETER, source.getStrategyId());
+            return featureState;
+        }
+
+    }
+
+}
@@ -0,0 +1,488 @@
+package guru.nicks.commons.feature.repository;
+
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Keeps a local file snapshot of all feature states seen so far, so that:
+ * <ul>
+ *  <li>a starting node serves last-known states immediately (each feature is refreshed from the delegate in the
+ *      background on its first lookup, the snapshot value is returned meanwhile)</li>
+ *  <li>a running node keeps serving last-known states (fail-static) if the delegate (e.g.
+ *      {@link CachingFeatureStateRepository} backed by Redis and a database) throws an exception</li>
+ * </ul>
+ * The snapshot is rewritten atomically (temporary file synced to disk + rename) only when a state actually changes and
+ * is read with memory-mapped I/O at startup. Changes seen on the read path are written by a background virtual thread
+ * (coalesced, so a burst of changes costs one write), changes made through this repository - synchronously.
+ * {@link #close()} writes the pending changes.
+ * <p>
+ * Snapshot states older than {@code maxAge} are never served. The age is measured from the last moment the delegate
+ * confirmed the states (or, right after startup, from the moment the file was written) and is exposed as the
+ * {@value #AGE_METRIC_NAME} gauge.
+ */
+@Slf4j
+public class SnapshotFeatureStateRepository implements BatchStateRepository, MeterBinder, AutoCloseable {
+
+    public static final String AGE_METRIC_NAME = "feature.state.snapshot.age";
+
+    /**
+     * 'TGLZ' - guards against reading a foreign file.
+     */
+    private static final int MAGIC = 0x54474C5A;
+    private static final short FORMAT_VERSION = 1;
+    /**
+     * Min. bytes taken by a feature in the snapshot: name length and 'has state' flag. Bounds the feature count read
+     * from the file, so a corrupt count can't make the map huge.
+     */
+    private static final int MIN_FEATURE_BYTES = Integer.BYTES + 1;
+    /**
+     * Min. bytes taken by a strategy parameter: key and value lengths.
+     */
+    private static final int MIN_PARAMETER_BYTES = 2 * Integer.BYTES;
+
+    private final StateRepository delegate;
+    private final Path snapshotFile;
+    private final Duration maxAge;
+
+    /**
+     * Keys are feature names.
+     */
+    private final Map<String, NullableFeatureStateWrapper> states = new ConcurrentHashMap<>();
+    /**
+     * Names of features whose states have been read from the delegate at least once since startup.
+     */
+    private final Set<String> confirmedFeatureNames = ConcurrentHashMap.newKeySet();
+    /**
+     * Names of features being refreshed in the background - to avoid multiple refreshes of the same feature.
+     */
+    private final Set<String> refreshingFeatureNames = ConcurrentHashMap.newKeySet();
+    private final Object writeLock = new Object();
+    /**
+     * Set when a background snapshot write has been requested and hasn't started yet.
+     */
+    private final AtomicBoolean writePending = new AtomicBoolean();
+
+    private volatile long confirmedAtMillis;
+
+    /**
+     * Constructor. Loads the snapshot file, if any. A missing or corrupt file is not an error: the repository then
+     * works as a pass-through one until the delegate responds.
+     *
+     * @param delegate     underlying state repository
+     * @param snapshotFile snapshot file location (its directory is created if needed)
+     * @param maxAge       snapshot states older than this are never served
+     */
+    public SnapshotFeatureStateRepository(StateRepository delegate, Path snapshotFile, Duration maxAge) {
+        check(maxAge, "snapshot max age")
+                .notNull()
+                .constraint(duration -> !duration.isNegative(), "must not be negative");
+
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.snapshotFile = checkNotNull(snapshotFile, "snapshot file");
+        this.maxAge = maxAge;
+
+        loadSnapshot();
+    }
+
+    @Nullable
+    @Override
+    public FeatureState getFeatureState(Feature feature) {
+        String featureName = feature.name();
+
+        // fast startup: serve last-known state while the delegate (possibly slow to warm up) is consulted in background
+        if (!confirmedFeatureNames.contains(featureName)) {
+            NullableFeatureStateWrapper wrapper = findFreshSnapshotState(featureName);
+
+            if (wrapper != null) {
+                refreshInBackground(feature);
+                return wrapper.toFeatureState(feature);
+            }
+        }
+
+        FeatureState featureState;
+
+        try {
+            featureState = delegate.getFeatureState(feature);
+        } catch (RuntimeException e) {
+            NullableFeatureStateWrapper wrapper = findFreshSnapshotState(featureName);
+
+            if (wrapper == null) {
+                throw e;
+            }
+
+            log.warn("Feature state lookup failed, serving snapshot state of '{}': {}", featureName, e.getMessage());
+            return wrapper.toFeatureState(feature);
+        }
+
+        remember(featureName, featureState);
+        return featureState;
+    }
+
+    @Override
+    public void setFeatureState(FeatureState featureState) {
+        delegate.setFeatureState(featureState);
+
+        if (confirm(featureState.getFeature().name(), featureState)) {
+            writeSnapshotSafely();
+        }
+    }
+
+    @Override
+    public void setFeatureStates(Collection<FeatureState> featureStates) {
+        BatchStateRepository.setFeatureStates(delegate, featureStates);
+
+        boolean changed = false;
+        for (FeatureState featureState : featureStates) {
+            changed |= confirm(featureState.getFeature().name(), featureState);
+        }
+
+        // one file write per batch
+        if (changed) {
+            writeSnapshotSafely();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(AGE_METRIC_NAME, this, repository -> repository.getAge().toMillis() / 1000.0)
+                .description("Time since feature states in the local snapshot were last confirmed")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Writes the changes not written yet by the background thread.
+     */
+    @Override
+    public void close() {
+        writePendingSnapshot();
+    }
+
+    /**
+     * Returns time since the snapshot states were last confirmed by the delegate.
+     *
+     * @return snapshot age, {@link Duration#ZERO} if there's no snapshot yet
+     */
+    public Duration getAge() {
+        return (confirmedAtMillis == 0)
+                ? Duration.ZERO
+                : Duration.ofMillis(Math.max(0, System.currentTimeMillis() - confirmedAtMillis));
+    }
+
+    /**
+     * Finds snapshot state not older than {@link #maxAge}.
+     *
+     * @param featureName feature name
+     * @return snapshot state ({@link NullableFeatureStateWrapper#EMPTY} for a cached {@code null}), or {@code null} if
+     *         the feature is not in the snapshot or the snapshot is too old
+     */
+    @Nullable
+    private NullableFeatureStateWrapper findFreshSnapshotState(String featureName) {
+        if (getAge().compareTo(maxAge) > 0) {
+            return null;
+        }
+
+        return states.get(featureName);
+    }
+
+    private void refreshInBackground(Feature feature) {
+        String featureName = feature.name();
+
+        if (!refreshingFeatureNames.add(featureName)) {
+            return;
+        }
+
+        Thread.ofVirtual()
+                .name("feature-snapshot-refresh-" + featureName)
+                .start(() -> {
+                    try {
+                        remember(featureName, delegate.getFeatureState(feature));
+                    } catch (RuntimeException e) {
+                        log.warn("Background refresh of feature '{}' failed: {}", featureName, e.getMessage());
+                    } finally {
+                        refreshingFeatureNames.remove(featureName);
+                    }
+                });
+    }
+
+    /**
+     * Stores the state read from the delegate and, if the state has changed, requests a background rewrite of the
+     * snapshot file - file I/O must not slow feature checks down.
+     *
+     * @param featureName  feature name
+     * @param featureState feature state, can be {@code null}
+     */
+    private void remember(String featureName, @Nullable FeatureState featureState) {
+        if (confirm(featureName, featureState) && writePending.compareAndSet(false, true)) {
+            Thread.ofVirtual()
+                    .name("feature-snapshot-writer")
+                    .start(this::writePendingSnapshot);
+        }
+    }
+
+    /**
+     * Writes the snapshot if a background write has been requested. Holding the lock while checking the request makes
+     * {@link #close()} wait for a write in progress.
+     */
+    private void writePendingSnapshot() {
+        synchronized (writeLock) {
+            if (writePending.getAndSet(false)) {
+                writeSnapshotSafely();
+            }
+        }
+    }
+
+    /**
+     * Stores the state confirmed by the delegate in memory.
+     *
+     * @param featureName  feature name
+     * @param featureState feature state, can be {@code null}
+     * @return {@code true} if the state has changed, i.e. the snapshot file needs to be rewritten
+     */
+    private boolean confirm(String featureName, @Nullable FeatureState featureState) {
+        confirmedFeatureNames.add(featureName);
+        confirmedAtMillis = System.currentTimeMillis();
+
+        var wrapper = NullableFeatureStateWrapper.of(featureState);
+        NullableFeatureStateWrapper previous = states.put(featureName, wrapper);
+        return !Objects.equals(previous, wrapper);
+    }
+
+    private void writeSnapshotSafely() {
+        try {
+            writeSnapshot();
+        }
+        // snapshot is a safety net, its failure must not break feature checks
+        catch (RuntimeException e) {
+            log.error("Failed to write feature state snapshot to '{}'", snapshotFile, e);
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!Files.isRegularFile(snapshotFile)) {
+            log.info("Feature state snapshot '{}' not found, starting without it", snapshotFile);
+            return;
+        }
+
+        try (var channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if ((buffer.getInt() != MAGIC) || (buffer.getShort() != FORMAT_VERSION)) {
+                log.warn("Ignoring feature state snapshot '{}': unknown format", snapshotFile);
+                return;
+            }
+
+            long writtenAtMillis = buffer.getLong();
+            int count = readCount(buffer, MIN_FEATURE_BYTES);
+            Map<String, NullableFeatureStateWrapper> loaded = HashMap.newHashMap(count);
+
+            for (int i = 0; i < count; i++) {
+                String featureName = readRequiredString(buffer);
+                loaded.put(featureName, readState(buffer, featureName));
+            }
+
+            states.putAll(loaded);
+            confirmedAtMillis = writtenAtMillis;
+            log.info("Loaded {} feature states from snapshot '{}' (age: {})", loaded.size(), snapshotFile, getAge());
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            log.warn("Ignoring corrupt feature state snapshot '{}': {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    private void writeSnapshot() {
+        synchronized (writeLock) {
+            // sorted for reproducible file contents
+            Map<String, NullableFeatureStateWrapper> sortedStates = new TreeMap<>(states);
+
+            try {
+                Path directory = snapshotFile.toAbsolutePath().getParent();
+                Files.createDirectories(directory);
+                Path tempFile = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+
+                try (var channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+                        var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                    out.writeInt(MAGIC);
+                    out.writeShort(FORMAT_VERSION);
+                    out.writeLong(System.currentTimeMillis());
+                    out.writeInt(sortedStates.size());
+
+                    for (Map.Entry<String, NullableFeatureStateWrapper> entry : sortedStates.entrySet()) {
+                        writeString(out, entry.getKey());
+                        writeState(out, entry.getValue().featureStateDto());
+                    }
+
+                    // without this, a crash right after the rename may leave an empty or partial file in place
+                    out.flush();
+                    channel.force(true);
+                }
+
+                moveAtomically(tempFile);
+                syncDirectory(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void moveAtomically(Path tempFile) throws IOException {
+        try {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.debug("Atomic move not supported for '{}', falling back to plain replace", snapshotFile);
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Makes the rename durable. Not supported on some platforms (e.g. Windows), which is not an error.
+     */
+    private static void syncDirectory(Path directory) {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Could not sync directory '{}': {}", directory, e.getMessage());
+        }
+    }
+
+    private static void writeState(DataOutputStream out, @Nullable FeatureStateDto dto) throws IOException {
+        out.writeBoolean(dto != null);
+        if (dto == null) {
+            return;
+        }
+
+        out.writeBoolean(dto.enabled());
+        writeString(out, dto.strategyId());
+
+        Map<String, String> parameters = (dto.parameters() == null)
+                ? Map.of()
+                : dto.parameters();
+        out.writeInt(parameters.size());
+
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static NullableFeatureStateWrapper readState(ByteBuffer buffer, String featureName) {
+        if (buffer.get() == 0) {
+            return NullableFeatureStateWrapper.EMPTY;
+        }
+
+        boolean enabled = buffer.get() != 0;
+        String strategyId = readString(buffer);
+        int parameterCount = readCount(buffer, MIN_PARAMETER_BYTES);
+        Map<String, String> parameters = HashMap.newHashMap(parameterCount);
+
+        for (int i = 0; i < parameterCount; i++) {
+            parameters.put(readRequiredString(buffer), readRequiredString(buffer));
+        }
+
+        return new NullableFeatureStateWrapper(FeatureStateDto.builder()
+                .featureName(featureName)
+                .enabled(enabled)
+                .strategyId(strategyId)
+                .parameters(parameters)
+                .build());
+    }
+
+    /**
+     * Writes length-prefixed UTF-8 string, {@code null} is stored as length -1.
+     */
+    private static void writeString(DataOutputStream out, @Nullable String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads element count and checks that the rest of the buffer can hold that many elements.
+     *
+     * @param buffer          buffer
+     * @param minElementBytes min. size of one element
+     * @return element count
+     * @throws IllegalArgumentException the count is negative or too large (the file is corrupt)
+     */
+    private static int readCount(ByteBuffer buffer, int minElementBytes) {
+        int count = buffer.getInt();
+
+        if ((count < 0) || (count > buffer.remaining() / minElementBytes)) {
+            throw new IllegalArgumentException("Invalid element count: " + count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Same as {@link #readString(ByteBuffer)}, but {@code null} means the file is corrupt.
+     *
+     * @throws IllegalArgumentException the string is {@code null}
+     */
+    private static String readRequiredString(ByteBuffer buffer) {
+        String str = readString(buffer);
+
+        if (str == null) {
+            throw new IllegalArgumentException("Missing required string at position " + buffer.position());
+        }
+
+        return str;
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
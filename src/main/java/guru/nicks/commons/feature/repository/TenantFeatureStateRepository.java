@@ -0,0 +1,375 @@
+package guru.nicks.commons.feature.repository;
+
+import guru.nicks.commons.feature.domain.TenantFeature;
+import guru.nicks.commons.feature.tenant.TenantResolver;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Tenant-scoped feature states. Must be the FIRST repository in the chain: for the tenant returned by
+ * {@link TenantResolver}, a tenant override (if any) is returned instead of the global state.
+ * <p>
+ * Overrides are stored through the delegate chain as {@link TenantFeature} pseudo-features (so caches, listeners, etc.
+ * apply to them as well); a stored state having the {@value #INHERIT_PARAMETER} parameter set to {@code true} means
+ * 'no override'. In memory, each tenant's overrides are held as a bitset delta on top of the global states: two bits
+ * per feature (overridden, enabled), indexed by enum ordinal. A tenant without overrides costs one small object plus a
+ * map entry, with overrides - 16 more bytes per 64 features, so memory per tenant is measured in bytes.
+ * <p>
+ * A tenant's overrides are loaded on its first lookup, with one batch read of the delegate (see
+ * {@link BatchStateRepository#getFeatureStates(Collection)}), so the delegate should be cached. At most
+ * {@code maxTenants} tenants are held in memory; cold ones are evicted (CLOCK algorithm: a tenant looked up since the
+ * previous eviction pass gets a second chance) and reloaded when needed. Overrides changed on other nodes are picked
+ * up after {@link #evictTenant(String)} or {@link #evictAllTenants()}.
+ * <p>
+ * Overridden states are plain on/off states (no strategy), shared between lookups, so they must not be modified by
+ * callers.
+ */
+@Slf4j
+public class TenantFeatureStateRepository implements BatchStateRepository {
+
+    public static final String INHERIT_PARAMETER = "tenant.inherit";
+    public static final int DEFAULT_MAX_TENANTS = 10_000;
+
+    private final StateRepository delegate;
+    private final TenantResolver tenantResolver;
+    private final Class<? extends Feature> featuresEnumClass;
+    private final Feature[] features;
+    private final int maxTenants;
+
+    /**
+     * Indexes are enum ordinals.
+     */
+    private final FeatureState[] enabledStates;
+    private final FeatureState[] disabledStates;
+
+    /**
+     * Keys are tenant IDs.
+     */
+    private final Map<String, TenantOverrides> tenants = new ConcurrentHashMap<>();
+    /**
+     * Tenant IDs in the CLOCK order.
+     */
+    private final Queue<String> evictionQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * {@link ConcurrentHashMap#size()} is not O(1) under contention, hence a separate counter.
+     */
+    private final AtomicInteger tenantCount = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param delegate          underlying state repository chain
+     * @param tenantResolver    resolves the current tenant
+     * @param featuresEnumClass features enum (the one configured as {@code togglz.feature-enums})
+     * @param maxTenants        max. number of tenants held in memory
+     */
+    public TenantFeatureStateRepository(StateRepository delegate, TenantResolver tenantResolver,
+            Class<? extends Feature> featuresEnumClass, int maxTenants) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.tenantResolver = checkNotNull(tenantResolver, "tenant resolver");
+        check(featuresEnumClass, "features enum class")
+                .notNull()
+                .constraint(Class::isEnum, "must be an enum");
+        check(maxTenants, "max. tenants")
+                .constraint(value -> value > 0, "must be positive");
+
+        this.featuresEnumClass = featuresEnumClass;
+        this.maxTenants = maxTenants;
+        features = featuresEnumClass.getEnumConstants();
+
+        enabledStates = new FeatureState[features.length];
+        disabledStates = new FeatureState[features.length];
+        for (int i = 0; i < features.length; i++) {
+            enabledStates[i] = new FeatureState(features[i], true);
+            disabledStates[i] = new FeatureState(features[i], false);
+        }
+    }
+
+    @Nullable
+    @Override
+    public FeatureState getFeatureState(Feature feature) {
+        // tenant pseudo-features are stored as is
+        if (feature instanceof TenantFeature) {
+            return delegate.getFeatureState(feature);
+        }
+
+        String tenantId = tenantResolver.resolveTenantId();
+        return (tenantId == null)
+                ? delegate.getFeatureState(feature)
+                : getFeatureState(tenantId, feature);
+    }
+
+    /**
+     * Returns feature state for the given tenant.
+     *
+     * @param tenantId tenant ID
+     * @param feature  feature
+     * @return tenant override if any, otherwise global state
+     */
+    @Nullable
+    public FeatureState getFeatureState(String tenantId, Feature feature) {
+        int index = indexOf(feature);
+        if (index < 0) {
+            return delegate.getFeatureState(feature);
+        }
+
+        TenantOverrides overrides = findOverrides(tenantId);
+        if (!overrides.isOverridden(index)) {
+            return delegate.getFeatureState(feature);
+        }
+
+        return overrides.isEnabled(index)
+                ? enabledStates[index]
+                : disabledStates[index];
+    }
+
+    @Override
+    public void setFeatureState(FeatureState featureState) {
+        delegate.setFeatureState(featureState);
+        updateCachedOverride(featureState);
+    }
+
+    @Override
+    public void setFeatureStates(Collection<FeatureState> featureStates) {
+        BatchStateRepository.setFeatureStates(delegate, featureStates);
+        featureStates.forEach(this::updateCachedOverride);
+    }
+
+    /**
+     * Sets or removes tenant override.
+     *
+     * @param tenantId tenant ID
+     * @param feature  feature
+     * @param enabled  override, {@code null} to inherit the global state
+     */
+    public void setTenantFeatureState(String tenantId, Feature feature, @Nullable Boolean enabled) {
+        var featureState = new FeatureState(new TenantFeature(checkNotNull(tenantId, "tenant ID"),
+                checkNotNull(feature, "feature")), Boolean.TRUE.equals(enabled));
+
+        if (enabled == null) {
+            featureState.setParameter(INHERIT_PARAMETER, Boolean.TRUE.toString());
+        }
+
+        setFeatureState(featureState);
+    }
+
+    /**
+     * Forgets tenant overrides held in memory, so they're reloaded on the next lookup.
+     *
+     * @param tenantId tenant ID
+     */
+    public void evictTenant(String tenantId) {
+        if (tenants.remove(tenantId) != null) {
+            tenantCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Forgets all tenant overrides held in memory, so they're reloaded on the next lookups.
+     */
+    public void evictAllTenants() {
+        tenants.keySet().forEach(this::evictTenant);
+        // tenants loaded concurrently stay in the queue, otherwise they could never be evicted as cold ones
+        evictionQueue.removeIf(tenantId -> !tenants.containsKey(tenantId));
+    }
+
+    /**
+     * Returns the number of tenants whose overrides are held in memory.
+     *
+     * @return tenant count
+     */
+    public int getCachedTenantCount() {
+        return tenantCount.get();
+    }
+
+    private int indexOf(Feature feature) {
+        return ((feature instanceof Enum<?> enumFeature) && (enumFeature.getDeclaringClass() == featuresEnumClass))
+                ? enumFeature.ordinal()
+                : -1;
+    }
+
+    private TenantOverrides findOverrides(String tenantId) {
+        TenantOverrides overrides = tenants.get(tenantId);
+        if (overrides != null) {
+            overrides.touch();
+            return overrides;
+        }
+
+        // loading is done inside the map, so an override set meanwhile (see updateCachedOverride()) waits for the
+        // loaded state and is applied on top of it, instead of being overwritten by it
+        var loaded = new boolean[1];
+        overrides = tenants.computeIfAbsent(tenantId, id -> {
+            loaded[0] = true;
+            return loadOverrides(id);
+        });
+
+        // the map must not be modified inside computeIfAbsent()
+        if (loaded[0]) {
+            evictionQueue.offer(tenantId);
+
+            if (tenantCount.incrementAndGet() > maxTenants) {
+                evictColdTenant();
+            }
+        }
+
+        return overrides;
+    }
+
+    private TenantOverrides loadOverrides(String tenantId) {
+        List<TenantFeature> tenantFeatures = Arrays.stream(features)
+                .map(feature -> new TenantFeature(tenantId, feature))
+                .toList();
+        Map<Feature, FeatureState> featureStates = BatchStateRepository.getFeatureStates(delegate, tenantFeatures);
+
+        TenantOverrides overrides = TenantOverrides.NONE;
+        for (int i = 0; i < features.length; i++) {
+            FeatureState featureState = featureStates.get(tenantFeatures.get(i));
+
+            if (isOverride(featureState)) {
+                overrides = overrides.with(i, featureState.isEnabled(), features.length);
+            }
+        }
+
+        // NONE is shared, but each tenant needs its own access flag
+        return (overrides == TenantOverrides.NONE)
+                ? new TenantOverrides(TenantOverrides.NO_WORDS)
+                : overrides;
+    }
+
+    private void evictColdTenant() {
+        // each tenant is inspected at most twice: on the second pass, its access flag is cleared already
+        for (int attempt = 2 * tenantCount.get(); attempt > 0; attempt--) {
+            String tenantId = evictionQueue.poll();
+            if (tenantId == null) {
+                return;
+            }
+
+            TenantOverrides overrides = tenants.get(tenantId);
+            // already evicted explicitly
+            if (overrides == null) {
+                continue;
+            }
+
+            if (overrides.referenced) {
+                overrides.referenced = false;
+                evictionQueue.offer(tenantId);
+                continue;
+            }
+
+            if (tenants.remove(tenantId, overrides)) {
+                tenantCount.decrementAndGet();
+                log.debug("Evicted feature overrides of cold tenant '{}'", tenantId);
+                return;
+            }
+
+            // replaced concurrently (override changed) - keep it
+            evictionQueue.offer(tenantId);
+        }
+    }
+
+    private void updateCachedOverride(FeatureState featureState) {
+        if (!(featureState.getFeature() instanceof TenantFeature tenantFeature)) {
+            return;
+        }
+
+        int index = indexOf(tenantFeature.feature());
+        if (index < 0) {
+            return;
+        }
+
+        // tenants not held in memory will load the new state on their next lookup
+        tenants.computeIfPresent(tenantFeature.tenantId(), (tenantId, overrides) -> isOverride(featureState)
+                ? overrides.with(index, featureState.isEnabled(), features.length)
+                : overrides.without(index));
+    }
+
+    private static boolean isOverride(@Nullable FeatureState featureState) {
+        return (featureState != null)
+                && !Boolean.parseBoolean(featureState.getParameter(INHERIT_PARAMETER));
+    }
+
+    /**
+     * Immutable (apart from the access flag) bitset delta of one tenant. Word {@code 2 * n} holds 'overridden' bits of
+     * features {@code 64 * n .. 64 * n + 63}, word {@code 2 * n + 1} - their 'enabled' bits.
+     */
+    private static final class TenantOverrides {
+
+        private static final long[] NO_WORDS = new long[0];
+        private static final TenantOverrides NONE = new TenantOverrides(NO_WORDS);
+
+        private final long[] words;
+        /**
+         * CLOCK access flag. Not volatile: a lost update only affects eviction order.
+         */
+        private boolean referenced = true;
+
+        private TenantOverrides(long[] words) {
+            this.words = words;
+        }
+
+        private void touch() {
+            // avoid writing (and invalidating the cache line) on each lookup
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+
+        private boolean isOverridden(int index) {
+            int word = 2 * (index >>> 6);
+            return (word < words.length) && ((words[word] & (1L << index)) != 0);
+        }
+
+        private boolean isEnabled(int index) {
+            return (words[2 * (index >>> 6) + 1] & (1L << index)) != 0;
+        }
+
+        private TenantOverrides with(int index, boolean enabled, int featureCount) {
+            long[] newWords = (words.length == 0)
+                    ? new long[2 * ((featureCount + Long.SIZE - 1) >>> 6)]
+                    : words.clone();
+            int word = 2 * (index >>> 6);
+            long bit = 1L << index;
+
+            newWords[word] |= bit;
+            newWords[word + 1] = enabled
+                    ? (newWords[word + 1] | bit)
+                    : (newWords[word + 1] & ~bit);
+
+            return new TenantOverrides(newWords);
+        }
+
+        private TenantOverrides without(int index) {
+            if (!isOverridden(index)) {
+                return this;
+            }
+
+            long[] newWords = words.clone();
+            int word = 2 * (index >>> 6);
+            long bit = 1L << index;
+            newWords[word] &= ~bit;
+            newWords[word + 1] &= ~bit;
+
+            return Arrays.stream(newWords).allMatch(value -> value == 0)
+                    ? new TenantOverrides(NO_WORDS)
+                    : new TenantOverrides(newWords);
+        }
+
+    }
+
+}
@@ -0,0 +1,347 @@
+package guru.nicks.commons.feature.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Write-behind decorator of the persistent repository, meant as the delegate of
+ * {@link CachingFeatureStateRepository}: {@code setFeatureState()} only queues the state, so the caching repository
+ * updates the cache (which all nodes read) right away, and the database write happens later. Queued writes are
+ * coalesced per feature (only the latest state is written) and flushed in batches (see {@link BatchStateRepository})
+ * by a virtual thread every {@code flushInterval}. Scripted mass toggles and automated rollouts stepping percentages
+ * every few seconds therefore cost one database batch per interval.
+ * <p>
+ * Reads of features having unflushed writes return the queued state, so this node never sees its own write undone.
+ * <p>
+ * Durability: if a batch fails, its states are written one by one, and those which still fail are put back into the
+ * queue (unless the feature has been written again meanwhile) and retried on the next flush. {@link #close()} stops
+ * queueing (later writes go to the delegate directly) and flushes what's queued, retrying up to
+ * {@value #CLOSE_FLUSH_ATTEMPTS} times; writes which still fail are logged as errors, one by one.
+ * {@link CachingFeatureStateRepository#close()} calls {@link #close()}, so it's enough to declare the caching
+ * repository as a bean. A crash (as opposed to a shutdown) loses up to {@code flushInterval} of writes - which are
+ * still in the cache, until it expires.
+ * <p>
+ * <b>Single writer only:</b> each node flushes its queue on its own schedule, and the delegate write is unconditional,
+ * so an older write queued on one node may overwrite a newer one flushed earlier by another node (while the shared
+ * cache holds the newer state). Use this mode only if feature states are written by one node at a time, e.g. by an
+ * admin service or a rollout job, and the other nodes only read them.
+ * <p>
+ * Metrics: {@value #LAG_METRIC_NAME} gauge (seconds since the oldest unflushed write), {@value #PENDING_METRIC_NAME}
+ * gauge (features having unflushed writes), {@value #FAILURES_METRIC_NAME} counter (failed state writes).
+ */
+@Slf4j
+public class WriteBehindStateRepository implements BatchStateRepository, MeterBinder, AutoCloseable {
+
+    public static final String LAG_METRIC_NAME = "feature.state.write-behind.lag";
+    public static final String PENDING_METRIC_NAME = "feature.state.write-behind.pending";
+    public static final String FAILURES_METRIC_NAME = "feature.state.write-behind.failures";
+
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    private static final int CLOSE_FLUSH_ATTEMPTS = 3;
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final StateRepository delegate;
+
+    /**
+     * Queued writes. Keys are feature names.
+     */
+    private final Map<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    /**
+     * Writes taken from {@link #pendingWrites} by the flush in progress. Keys are feature names.
+     */
+    private final Map<String, PendingWrite> flushingWrites = new ConcurrentHashMap<>();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    @Nullable
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    @Nullable
+    private volatile Counter failureCounter;
+
+    /**
+     * Constructor. Starts the flushing thread.
+     *
+     * @param delegate      persistent repository
+     * @param flushInterval how often to flush queued writes, zero to disable the flushing thread (then {@link #flush()}
+     *                      should be called manually)
+     */
+    public WriteBehindStateRepository(StateRepository delegate, Duration flushInterval) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        check(flushInterval, "flush interval")
+                .notNull()
+                .constraint(interval -> !interval.isNegative(), "must not be negative");
+
+        flusher = flushInterval.isZero()
+                ? null
+                : Thread.ofVirtual()
+                        .name("feature-state-write-behind")
+                        .start(() -> flushLoop(flushInterval));
+    }
+
+    @Nullable
+    @Override
+    public FeatureState getFeatureState(Feature feature) {
+        PendingWrite pendingWrite = pendingWrites.get(feature.name());
+        if (pendingWrite == null) {
+            pendingWrite = flushingWrites.get(feature.name());
+        }
+
+        // callers may modify the state
+        return (pendingWrite == null)
+                ? delegate.getFeatureState(feature)
+                : pendingWrite.featureState().copy();
+    }
+
+    @Override
+    public void setFeatureState(FeatureState featureState) {
+        if (!running) {
+            writeThrough(List.of(featureState));
+            return;
+        }
+
+        enqueue(featureState);
+        flushIfClosedMeanwhile();
+    }
+
+    @Override
+    public void setFeatureStates(Collection<FeatureState> featureStates) {
+        if (!running) {
+            writeThrough(featureStates);
+            return;
+        }
+
+        featureStates.forEach(this::enqueue);
+        flushIfClosedMeanwhile();
+    }
+
+    /**
+     * Writes all queued states to the delegate as one batch. If the batch fails, the states are written one by one, so
+     * one bad state (e.g. violating a database constraint) doesn't hold the others back; only the failed ones are
+     * queued again (unless there are newer ones).
+     *
+     * @throws RuntimeException whatever the delegate throws for the first failed state
+     */
+    public synchronized void flush() {
+        List<FeatureState> batch = new ArrayList<>();
+
+        for (Map.Entry<String, PendingWrite> entry : pendingWrites.entrySet()) {
+            // visible to readers at any moment: flushing map is filled before the pending entry is removed
+            flushingWrites.put(entry.getKey(), entry.getValue());
+
+            if (pendingWrites.remove(entry.getKey(), entry.getValue())) {
+                batch.add(entry.getValue().featureState());
+            } else {
+                // written again meanwhile, the newer state will be flushed next time
+                flushingWrites.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            BatchStateRepository.setFeatureStates(delegate, batch);
+            log.debug("Flushed {} queued feature states", batch.size());
+        } catch (RuntimeException e) {
+            RuntimeException failure = e;
+
+            if (batch.size() > 1) {
+                log.warn("Batch write of {} feature states failed, writing them one by one: {}", batch.size(),
+                        e.getMessage());
+                failure = writeOneByOne(batch);
+            } else {
+                failed(batch.getFirst(), e);
+            }
+
+            // failed ones are retried on the next flush; newer writes, if any, win
+            flushingWrites.forEach(pendingWrites::putIfAbsent);
+
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            flushingWrites.clear();
+        }
+    }
+
+    /**
+     * Writes the states one by one, removing the written ones from {@link #flushingWrites}.
+     *
+     * @param featureStates feature states
+     * @return the first failure, {@code null} if all states have been written
+     */
+    @Nullable
+    private RuntimeException writeOneByOne(List<FeatureState> featureStates) {
+        RuntimeException firstFailure = null;
+
+        for (FeatureState featureState : featureStates) {
+            try {
+                delegate.setFeatureState(featureState);
+                flushingWrites.remove(featureState.getFeature().name());
+            } catch (RuntimeException e) {
+                failed(featureState, e);
+
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+            }
+        }
+
+        return firstFailure;
+    }
+
+    private void failed(FeatureState featureState, RuntimeException e) {
+        failureCount.incrementAndGet();
+
+        Counter counter = failureCounter;
+        if (counter != null) {
+            counter.increment();
+        }
+
+        log.error("Failed to persist state of feature '{}', will retry: {}", featureState.getFeature().name(),
+                e.getMessage(), e);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(LAG_METRIC_NAME, this, WriteBehindStateRepository::getLagSeconds)
+                .description("Seconds since the oldest feature state write not yet persisted")
+                .baseUnit("seconds")
+                .register(registry);
+
+        Gauge.builder(PENDING_METRIC_NAME, pendingWrites, Map::size)
+                .description("Features having state writes not yet persisted")
+                .register(registry);
+
+        failureCounter = Counter.builder(FAILURES_METRIC_NAME)
+                .description("Failed write-behind writes of feature states")
+                .register(registry);
+        failureCounter.increment(failureCount.get());
+    }
+
+    /**
+     * Returns the age of the oldest unflushed write.
+     *
+     * @return seconds, 0 if there are no unflushed writes
+     */
+    public double getLagSeconds() {
+        long now = System.nanoTime();
+
+        return Stream.concat(pendingWrites.values().stream(), flushingWrites.values().stream())
+                .mapToLong(pendingWrite -> now - pendingWrite.queuedAtNanos())
+                .max()
+                .orElse(0) / 1e9;
+    }
+
+    /**
+     * Stops queueing and flushes the queued writes.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+
+            if (!flusher.join(SHUTDOWN_TIMEOUT)) {
+                log.warn("Write-behind flusher did not finish in {}", SHUTDOWN_TIMEOUT);
+            }
+        }
+
+        for (int attempt = 1; (attempt <= CLOSE_FLUSH_ATTEMPTS) && !pendingWrites.isEmpty(); attempt++) {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.warn("Final flush of {} feature states failed (attempt {}/{}): {}", pendingWrites.size(),
+                        attempt, CLOSE_FLUSH_ATTEMPTS, e.getMessage());
+            }
+        }
+
+        pendingWrites.values().forEach(pendingWrite -> log.error("Feature state NOT persisted on shutdown: {}={}",
+                pendingWrite.featureState().getFeature().name(),
+                pendingWrite.featureState().isEnabled() ? "enabled" : "disabled"));
+    }
+
+    /**
+     * Writes the states to the delegate directly (after {@link #close()}). Synchronized with {@link #flush()}, and
+     * queued states of the same features are dropped, so they can't overwrite the given ones later.
+     *
+     * @param featureStates feature states
+     */
+    private synchronized void writeThrough(Collection<FeatureState> featureStates) {
+        featureStates.forEach(featureState -> pendingWrites.remove(featureState.getFeature().name()));
+        BatchStateRepository.setFeatureStates(delegate, featureStates);
+    }
+
+    private void enqueue(FeatureState featureState) {
+        // detach from the mutable FeatureState
+        var pendingWrite = new PendingWrite(featureState.copy(), System.nanoTime());
+
+        // coalescing: the latest state wins, the lag counts from the oldest unflushed write
+        pendingWrites.merge(featureState.getFeature().name(), pendingWrite,
+                (queued, latest) -> new PendingWrite(latest.featureState(), queued.queuedAtNanos()));
+    }
+
+    /**
+     * If {@link #close()} has started after the {@link #running} check, its final flush may have missed the write.
+     */
+    private void flushIfClosedMeanwhile() {
+        if (!running) {
+            flush();
+        }
+    }
+
+    private void flushLoop(Duration flushInterval) {
+        long intervalNanos = flushInterval.toNanos();
+
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+
+            // the final flush is done by close()
+            if (!running) {
+                return;
+            }
+
+            try {
+                flush();
+            }
+            // keep the writes queued
+            catch (RuntimeException e) {
+                log.warn("Write-behind flush of feature states failed, will retry: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queued write.
+     *
+     * @param featureState  state to write (detached copy)
+     * @param queuedAtNanos {@link System#nanoTime()} of the oldest unflushed write of the feature
+     */
+    private record PendingWrite(FeatureState featureState, long queuedAtNanos) {
+    }
+
+}
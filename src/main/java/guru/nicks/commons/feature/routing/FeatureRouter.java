@@ -0,0 +1,268 @@
+package guru.nicks.commons.feature.routing;
+
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.listener.FeatureStateListener;
+import guru.nicks.commons.feature.repository.ListenerFeatureStateRepository;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.NamingStrategy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.MethodDelegation;
+import net.bytebuddy.implementation.bind.annotation.Pipe;
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+import net.bytebuddy.matcher.ElementMatchers;
+import org.togglz.core.Feature;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+
+/**
+ * Exposes several implementations of the same interface as one {@link #getProxy() proxy} which dispatches each call to
+ * the implementation of the first active feature in {@code routes}, or to {@code fallback} if none is active. Replaces
+ * caller-side {@code if (featureTester.test(...))} branches during rollouts, e.g. of a new serializer:
+ * <pre>
+ * &#64;Bean
+ * &#64;Primary
+ * public Serializer serializer(FeatureTester featureTester, NewSerializer newSerializer,
+ *         LegacySerializer legacySerializer) {
+ *     return FeatureRouter.of(Serializer.class, featureTester, MyFeature.NEW_SERIALIZER, newSerializer,
+ *             legacySerializer).getProxy();
+ * }
+ * </pre>
+ * The routing decision is cached: it's re-evaluated when the state version changes (a routing feature changed, as
+ * reported to {@link #onFeatureStatesChanged(List)} - register the router with {@link ListenerFeatureStateRepository})
+ * or when the decision is older than {@code maxDecisionAge} (covers changes made on other nodes). Therefore, routing
+ * features should be global switches: per-user activation strategies are evaluated for whichever user happens to make
+ * the deciding call.
+ * <p>
+ * The proxy class is generated once per router; each interface method forwards the call to the chosen implementation
+ * by a generated direct invocation (ByteBuddy {@link Pipe @Pipe}), not by reflection, so exceptions are propagated as
+ * is. {@code equals()}, {@code hashCode()} and {@code toString()} are not routed.
+ *
+ * @param <T> interface type
+ */
+@Slf4j
+public class FeatureRouter<T> implements FeatureStateListener {
+
+    public static final Duration DEFAULT_MAX_DECISION_AGE = Duration.ofSeconds(1);
+
+    private final Class<T> type;
+    private final Predicate<Feature> featureTester;
+    private final List<Route<T>> routes;
+    private final T fallback;
+    private final long maxDecisionAgeNanos;
+
+    /**
+     * Names of the routing features, to filter state change events.
+     */
+    private final Set<String> routingFeatureNames;
+    /**
+     * Incremented on each routing feature change.
+     */
+    private final AtomicLong stateVersion = new AtomicLong();
+    private volatile Decision<T> decision;
+
+    private final T proxy;
+
+    /**
+     * Constructor. Generates the proxy class.
+     *
+     * @param type           interface all implementations have in common
+     * @param featureTester  evaluates features
+     * @param routes         feature-bound implementations, in priority order
+     * @param fallback       implementation used when no routing feature is active
+     * @param maxDecisionAge how long a routing decision is reused if no state change has been reported
+     */
+    public FeatureRouter(Class<T> type, Predicate<Feature> featureTester, List<Route<T>> routes, T fallback,
+            Duration maxDecisionAge) {
+        check(type, "routed type")
+                .notNull()
+                .constraint(Class::isInterface, "must be an interface");
+        this.featureTester = checkNotNull(featureTester, "feature tester");
+        this.routes = List.copyOf(checkNotNull(routes, "routes"));
+        this.fallback = checkNotNull(fallback, "fallback implementation");
+        check(maxDecisionAge, "max. decision age")
+                .notNull()
+                .constraint(Duration::isPositive, "must be positive");
+
+        this.type = type;
+        maxDecisionAgeNanos = maxDecisionAge.toNanos();
+        routingFeatureNames = this.routes.stream()
+                .map(route -> route.feature().name())
+                .collect(Collectors.toUnmodifiableSet());
+
+        decision = decide(stateVersion.get());
+        proxy = generateProxy();
+    }
+
+    /**
+     * Creates router for an old/new implementation pair having {@link #DEFAULT_MAX_DECISION_AGE}.
+     *
+     * @param type                 interface both implementations have in common
+     * @param featureTester        evaluates features
+     * @param feature              feature enabling the new implementation
+     * @param newImplementation    implementation used while the feature is active
+     * @param legacyImplementation implementation used while the feature is inactive
+     * @param <T>                  interface type
+     * @return router
+     */
+    public static <T> FeatureRouter<T> of(Class<T> type, Predicate<Feature> featureTester, Feature feature,
+            T newImplementation, T legacyImplementation) {
+        return new FeatureRouter<>(type, featureTester, List.of(new Route<>(feature, newImplementation)),
+                legacyImplementation, DEFAULT_MAX_DECISION_AGE);
+    }
+
+    /**
+     * Returns the proxy to be exposed as a bean.
+     *
+     * @return proxy implementing {@code T}
+     */
+    public T getProxy() {
+        return proxy;
+    }
+
+    /**
+     * Returns the implementation calls are currently dispatched to, re-evaluating the routing decision if it's due.
+     *
+     * @return implementation
+     */
+    public T getActiveImplementation() {
+        long version = stateVersion.get();
+        Decision<T> current = decision;
+
+        if ((current.stateVersion() == version) && (System.nanoTime() - current.expiresAtNanos() < 0)) {
+            return current.implementation();
+        }
+
+        // concurrent re-evaluations are harmless, the last one wins
+        Decision<T> next = decide(version);
+        decision = next;
+
+        if (next.implementation() != current.implementation()) {
+            log.info("Routing {} calls to [{}] instead of [{}]", type.getName(),
+                    next.implementation().getClass().getName(), current.implementation().getClass().getName());
+        }
+
+        return next.implementation();
+    }
+
+    @Override
+    public void onFeatureStatesChanged(List<FeatureStateDto> featureStates) {
+        for (FeatureStateDto featureState : featureStates) {
+            if (routingFeatureNames.contains(featureState.featureName())) {
+                stateVersion.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private Decision<T> decide(long version) {
+        T implementation = fallback;
+
+        for (Route<T> route : routes) {
+            if (featureTester.test(route.feature())) {
+                implementation = route.implementation();
+                break;
+            }
+        }
+
+        return new Decision<>(implementation, version, System.nanoTime() + maxDecisionAgeNanos);
+    }
+
+    @SneakyThrows
+    private T generateProxy() {
+        Class<?> proxyClass = new ByteBuddy()
+                .with(new NamingStrategy.Suffixing(getClass().getSimpleName()))
+                .subclass(Object.class)
+                .implement(type)
+                .method(not(ElementMatchers.isDeclaredBy(Object.class)))
+                .intercept(MethodDelegation.withDefaultConfiguration()
+                        .withBinders(Pipe.Binder.install(Forwarder.class))
+                        .filter(ElementMatchers.named("dispatch"))
+                        .to(new Dispatcher(this)))
+                .make()
+                // see FeatureBeanPostProcessor: own class loader per proxy class, so it's unloaded together with it
+                .load(Objects.requireNonNullElse(type.getClassLoader(), getClass().getClassLoader()),
+                        ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+
+        return type.cast(proxyClass.getDeclaredConstructor().newInstance());
+    }
+
+    /**
+     * Implementation bound to a feature.
+     *
+     * @param feature        feature
+     * @param implementation implementation used while the feature is active
+     * @param <T>            interface type
+     */
+    public record Route<T>(Feature feature, T implementation) {
+
+        public Route {
+            checkNotNull(feature, "feature");
+            checkNotNull(implementation, "implementation");
+        }
+
+    }
+
+    /**
+     * Cached routing decision.
+     */
+    private record Decision<T>(T implementation, long stateVersion, long expiresAtNanos) {
+    }
+
+    /**
+     * Generated by ByteBuddy for each routed method: calls the same method, with the same arguments, on the given
+     * target. This interface MUST be public, otherwise ByteBuddy won't be able to implement it.
+     *
+     * @param <R> return type
+     * @param <S> target type
+     */
+    public interface Forwarder<R, S> {
+
+        /**
+         * Calls the intercepted method on the target.
+         *
+         * @param target target
+         * @return method result
+         */
+        R to(S target);
+
+    }
+
+    /**
+     * This class MUST be public, otherwise ByteBuddy won't be able to delegate to it.
+     */
+    public static class Dispatcher {
+
+        private final FeatureRouter<?> router;
+
+        private Dispatcher(FeatureRouter<?> router) {
+            this.router = router;
+        }
+
+        /**
+         * Forwards the call to the active implementation.
+         *
+         * @param forwarder generated forwarder of the intercepted call
+         * @return method result
+         */
+        @RuntimeType
+        public Object dispatch(@Pipe Forwarder<Object, Object> forwarder) {
+            return forwarder.to(router.getActiveImplementation());
+        }
+
+    }
+
+}
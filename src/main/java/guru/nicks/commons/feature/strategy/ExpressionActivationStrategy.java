@@ -0,0 +1,120 @@
+package guru.nicks.commons.feature.strategy;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.activation.Parameter;
+import org.togglz.core.activation.ParameterBuilder;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.spi.ActivationStrategy;
+import org.togglz.core.user.FeatureUser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Activates a feature if its {@link FeatureExpression} (the {@value #EXPRESSION_PARAMETER} parameter) is {@code true}
+ * for the current {@link FeatureExpressionContext}.
+ * <p>
+ * Each expression is compiled once - when a feature state having a new expression text is seen - and cached per
+ * feature, so {@code FeatureManager.isActive()} costs one parameter lookup, one string comparison (usually by
+ * reference, because cached states are reused), and the evaluation of the compiled lambdas. An invalid expression is
+ * logged once and deactivates the feature.
+ */
+@Slf4j
+public class ExpressionActivationStrategy implements ActivationStrategy {
+
+    public static final String ID = "expression";
+    public static final String EXPRESSION_PARAMETER = "expression";
+
+    private final FeatureExpressionContextProvider contextProvider;
+
+    /**
+     * Keys are feature names.
+     */
+    private final Map<String, CompiledExpression> compiledExpressions = new ConcurrentHashMap<>();
+
+    /**
+     * Creates strategy building context from Togglz user (see {@link FeatureExpressionContext#from(FeatureUser)}).
+     */
+    public ExpressionActivationStrategy() {
+        this(FeatureExpressionContext::from);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param contextProvider builds context for each check
+     */
+    public ExpressionActivationStrategy(FeatureExpressionContextProvider contextProvider) {
+        this.contextProvider = checkNotNull(contextProvider, "context provider");
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Expression";
+    }
+
+    @Override
+    public boolean isActive(FeatureState featureState, @Nullable FeatureUser user) {
+        String text = featureState.getParameter(EXPRESSION_PARAMETER);
+        if ((text == null) || text.isBlank()) {
+            return false;
+        }
+
+        FeatureExpression expression = findCompiledExpression(featureState.getFeature().name(), text);
+        return (expression != null)
+                && expression.test(contextProvider.getContext(user));
+    }
+
+    @Override
+    public Parameter[] getParameters() {
+        return new Parameter[]{
+                ParameterBuilder.create(EXPRESSION_PARAMETER)
+                        .label("Expression")
+                        .description("E.g. region in ('EU', 'UK') and plan != 'free' and percentage(25)")
+        };
+    }
+
+    /**
+     * Returns cached compiled expression, compiling it if the text has changed.
+     *
+     * @return compiled expression, {@code null} if it's invalid
+     */
+    @Nullable
+    private FeatureExpression findCompiledExpression(String featureName, String text) {
+        CompiledExpression compiled = compiledExpressions.get(featureName);
+
+        if ((compiled == null) || !compiled.text().equals(text)) {
+            compiled = compile(featureName, text);
+            compiledExpressions.put(featureName, compiled);
+        }
+
+        return compiled.expression();
+    }
+
+    private static CompiledExpression compile(String featureName, String text) {
+        try {
+            return new CompiledExpression(text, FeatureExpression.compile(featureName, text));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid expression of feature '{}', the feature is inactive: {}", featureName, e.getMessage());
+            return new CompiledExpression(text, null);
+        }
+    }
+
+    /**
+     * Cache entry.
+     *
+     * @param text       expression text
+     * @param expression compiled expression, {@code null} if invalid
+     */
+    private record CompiledExpression(String text, @Nullable FeatureExpression expression) {
+    }
+
+}
@@ -0,0 +1,317 @@
+package guru.nicks.commons.feature.strategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.checkNotNull;
+
+/**
+ * Rollout rule compiled once into a tree of lambdas, so evaluation involves neither parsing nor reflection. Grammar
+ * (keywords are case-insensitive):
+ * <pre>
+ * expression := and ('or' and)*
+ * and        := unary ('and' unary)*
+ * unary      := 'not' unary | '(' expression ')' | 'true' | 'false' | 'percentage' '(' 0..100 ')'
+ *             | identifier ('==' | '!=') 'string'
+ *             | identifier 'in' '(' 'string' (',' 'string')* ')'
+ * identifier := 'user' | 'region' | 'plan' | any other name (looked up in attributes)
+ * </pre>
+ * Example: {@code region in ('EU', 'UK') and plan != 'free' and percentage(25)}.
+ * <p>
+ * {@code percentage(n)} is {@code true} for a stable n% of users: the user ID hash is combined with the feature name
+ * hash, so different features get different cohorts. Without a user ID, it's {@code false}.
+ */
+public final class FeatureExpression {
+
+    private final String text;
+    private final Predicate<FeatureExpressionContext> predicate;
+
+    private FeatureExpression(String text, Predicate<FeatureExpressionContext> predicate) {
+        this.text = text;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Compiles expression.
+     *
+     * @param featureName feature the expression belongs to (salts {@code percentage()})
+     * @param text        expression
+     * @return compiled expression
+     * @throws IllegalArgumentException syntax error
+     */
+    public static FeatureExpression compile(String featureName, String text) {
+        checkNotNull(featureName, "feature name");
+        if (checkNotNull(text, "expression").isBlank()) {
+            throw new IllegalArgumentException("Expression must not be blank");
+        }
+
+        var parser = new Parser(featureName, text);
+        Predicate<FeatureExpressionContext> predicate = parser.parseExpression();
+        parser.expectEnd();
+
+        return new FeatureExpression(text, predicate);
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param context context
+     * @return result
+     */
+    public boolean test(FeatureExpressionContext context) {
+        return predicate.test(context);
+    }
+
+    /**
+     * Returns the source text.
+     *
+     * @return expression
+     */
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * Recursive descent parser producing lambdas.
+     */
+    private static final class Parser {
+
+        private final int featureNameHash;
+        private final String text;
+        private final List<String> tokens;
+        private int position;
+
+        private Parser(String featureName, String text) {
+            featureNameHash = featureName.hashCode();
+            this.text = text;
+            tokens = tokenize(text);
+        }
+
+        private Predicate<FeatureExpressionContext> parseExpression() {
+            Predicate<FeatureExpressionContext> result = parseAnd();
+
+            while (acceptKeyword("or")) {
+                Predicate<FeatureExpressionContext> left = result;
+                Predicate<FeatureExpressionContext> right = parseAnd();
+                result = context -> left.test(context) || right.test(context);
+            }
+
+            return result;
+        }
+
+        private Predicate<FeatureExpressionContext> parseAnd() {
+            Predicate<FeatureExpressionContext> result = parseUnary();
+
+            while (acceptKeyword("and")) {
+                Predicate<FeatureExpressionContext> left = result;
+                Predicate<FeatureExpressionContext> right = parseUnary();
+                result = context -> left.test(context) && right.test(context);
+            }
+
+            return result;
+        }
+
+        private Predicate<FeatureExpressionContext> parseUnary() {
+            if (acceptKeyword("not")) {
+                Predicate<FeatureExpressionContext> operand = parseUnary();
+                return context -> !operand.test(context);
+            }
+
+            if (accept("(")) {
+                Predicate<FeatureExpressionContext> result = parseExpression();
+                expect(")");
+                return result;
+            }
+
+            if (acceptKeyword("true")) {
+                return context -> true;
+            }
+
+            if (acceptKeyword("false")) {
+                return context -> false;
+            }
+
+            if (acceptKeyword("percentage")) {
+                return parsePercentage();
+            }
+
+            return parseComparison();
+        }
+
+        private Predicate<FeatureExpressionContext> parsePercentage() {
+            expect("(");
+            String token = next("percentage");
+            expect(")");
+
+            int percentage;
+            try {
+                percentage = Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw syntaxError("Percentage must be an integer, got '" + token + "'");
+            }
+
+            if ((percentage < 0) || (percentage > 100)) {
+                throw syntaxError("Percentage must be 0..100, got " + percentage);
+            }
+
+            return context -> {
+                String userId = context.userId();
+                return (userId != null)
+                        && (Math.floorMod(31 * featureNameHash + userId.hashCode(), 100) < percentage);
+            };
+        }
+
+        private Predicate<FeatureExpressionContext> parseComparison() {
+            Function<FeatureExpressionContext, String> accessor = parseIdentifier();
+
+            if (accept("==")) {
+                String value = parseString();
+                return context -> value.equals(accessor.apply(context));
+            }
+
+            if (accept("!=")) {
+                String value = parseString();
+                return context -> !value.equals(accessor.apply(context));
+            }
+
+            if (acceptKeyword("in")) {
+                expect("(");
+                List<String> values = new ArrayList<>();
+
+                do {
+                    values.add(parseString());
+                } while (accept(","));
+
+                expect(")");
+                Set<String> valueSet = Set.copyOf(values);
+
+                return context -> {
+                    String actual = accessor.apply(context);
+                    // Set.of() doesn't accept nulls, even in contains()
+                    return (actual != null) && valueSet.contains(actual);
+                };
+            }
+
+            throw syntaxError("Expected '==', '!=' or 'in'");
+        }
+
+        private Function<FeatureExpressionContext, String> parseIdentifier() {
+            String identifier = next("identifier");
+            if (!Character.isJavaIdentifierStart(identifier.charAt(0))) {
+                throw syntaxError("Expected identifier, got '" + identifier + "'");
+            }
+
+            // resolved once, at compile time
+            return switch (identifier.toLowerCase(Locale.ROOT)) {
+                case "user" -> FeatureExpressionContext::userId;
+                case "region" -> FeatureExpressionContext::region;
+                case "plan" -> FeatureExpressionContext::plan;
+                default -> context -> context.attributes().get(identifier);
+            };
+        }
+
+        private String parseString() {
+            String token = next("string");
+            if ((token.length() < 2) || (token.charAt(0) != '\'')) {
+                throw syntaxError("Expected quoted string, got '" + token + "'");
+            }
+
+            return token.substring(1, token.length() - 1);
+        }
+
+        private boolean accept(String token) {
+            if ((position < tokens.size()) && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if ((position < tokens.size()) && tokens.get(position).equalsIgnoreCase(keyword)) {
+                position++;
+                return true;
+            }
+
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw syntaxError("Expected '" + token + "'");
+            }
+        }
+
+        private String next(String expected) {
+            if (position >= tokens.size()) {
+                throw syntaxError("Expected " + expected + ", got end of expression");
+            }
+
+            return tokens.get(position++);
+        }
+
+        private void expectEnd() {
+            if (position < tokens.size()) {
+                throw syntaxError("Unexpected '" + tokens.get(position) + "'");
+            }
+        }
+
+        private IllegalArgumentException syntaxError(String message) {
+            return new IllegalArgumentException(message + " at token #" + (position + 1) + " in expression '" + text
+                    + "'");
+        }
+
+        private static List<String> tokenize(String text) {
+            List<String> tokens = new ArrayList<>();
+            int i = 0;
+
+            while (i < text.length()) {
+                char c = text.charAt(i);
+
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if ((c == '(') || (c == ')') || (c == ',')) {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (((c == '=') || (c == '!')) && (i + 1 < text.length()) && (text.charAt(i + 1) == '=')) {
+                    tokens.add(text.substring(i, i + 2));
+                    i += 2;
+                } else if (c == '\'') {
+                    int end = text.indexOf('\'', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unterminated string in expression '" + text + "'");
+                    }
+
+                    // quotes are kept to tell strings from identifiers
+                    tokens.add(text.substring(i, end + 1));
+                    i = end + 1;
+                } else if (Character.isLetterOrDigit(c) || (c == '_') || (c == '-') || (c == '.')) {
+                    int start = i;
+                    while ((i < text.length()) && (Character.isLetterOrDigit(text.charAt(i))
+                            || (text.charAt(i) == '_') || (text.charAt(i) == '-') || (text.charAt(i) == '.'))) {
+                        i++;
+                    }
+
+                    tokens.add(text.substring(start, i));
+                } else {
+                    throw new IllegalArgumentException("Unexpected character '" + c + "' in expression '" + text
+                            + "'");
+                }
+            }
+
+            return tokens;
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+package guru.nicks.commons.feature.strategy;
+
+import jakarta.annotation.Nullable;
+import lombok.Builder;
+import org.togglz.core.user.FeatureUser;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Typed context {@link FeatureExpression}s are evaluated against. Well-known fields are accessed directly (no
+ * reflection, no map lookups), other identifiers are looked up in {@link #attributes()}.
+ *
+ * @param userId     user ID (the {@code user} identifier in expressions)
+ * @param region     region (the {@code region} identifier)
+ * @param plan       subscription plan (the {@code plan} identifier)
+ * @param attributes other attributes
+ */
+@Builder
+public record FeatureExpressionContext(
+
+        @Nullable
+        String userId,
+        @Nullable
+        String region,
+        @Nullable
+        String plan,
+        Map<String, String> attributes) {
+
+    public static final String REGION_ATTRIBUTE = "region";
+    public static final String PLAN_ATTRIBUTE = "plan";
+
+    public static final FeatureExpressionContext EMPTY = new FeatureExpressionContext(null, null, null, Map.of());
+
+    /**
+     * Compact constructor.
+     */
+    public FeatureExpressionContext {
+        attributes = (attributes == null)
+                ? Map.of()
+                : attributes;
+    }
+
+    /**
+     * Creates context from Togglz user: the user name becomes {@link #userId()}, the {@value #REGION_ATTRIBUTE} and
+     * {@value #PLAN_ATTRIBUTE} attributes - {@link #region()} and {@link #plan()}. Other identifiers are looked up with
+     * {@link FeatureUser#getAttribute(String)}: {@link FeatureUser} can't list its attributes, so {@link #attributes()}
+     * is a view supporting lookups by name only (it has no entries to iterate over).
+     *
+     * @param user user, may be {@code null}
+     * @return context
+     */
+    public static FeatureExpressionContext from(@Nullable FeatureUser user) {
+        if (user == null) {
+            return EMPTY;
+        }
+
+        return FeatureExpressionContext.builder()
+                .userId(user.getName())
+                .region(toStringOrNull(user.getAttribute(REGION_ATTRIBUTE)))
+                .plan(toStringOrNull(user.getAttribute(PLAN_ATTRIBUTE)))
+                .attributes(new UserAttributes(user))
+                .build();
+    }
+
+    @Nullable
+    private static String toStringOrNull(@Nullable Object value) {
+        return (value == null)
+                ? null
+                : value.toString();
+    }
+
+    /**
+     * Attributes of a {@link FeatureUser}, converted to strings on lookup.
+     */
+    private static final class UserAttributes extends AbstractMap<String, String> {
+
+        private final FeatureUser user;
+
+        private UserAttributes(FeatureUser user) {
+            this.user = user;
+        }
+
+        @Nullable
+        @Override
+        public String get(Object key) {
+            return (key instanceof String name)
+                    ? toStringOrNull(user.getAttribute(name))
+                    : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return Set.of();
+        }
+
+    }
+
+}
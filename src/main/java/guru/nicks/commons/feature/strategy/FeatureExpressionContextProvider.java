@@ -0,0 +1,21 @@
+package guru.nicks.commons.feature.strategy;
+
+import jakarta.annotation.Nullable;
+import org.togglz.core.user.FeatureUser;
+
+/**
+ * Builds {@link FeatureExpressionContext} for the current feature check, e.g. from the request context. Called on each
+ * check of a feature having {@link ExpressionActivationStrategy}, so it should be cheap.
+ */
+@FunctionalInterface
+public interface FeatureExpressionContextProvider {
+
+    /**
+     * Builds context.
+     *
+     * @param user current Togglz user, may be {@code null}
+     * @return context
+     */
+    FeatureExpressionContext getContext(@Nullable FeatureUser user);
+
+}
@@ -0,0 +1,24 @@
+package guru.nicks.commons.feature.tenant;
+
+import guru.nicks.commons.feature.repository.TenantFeatureStateRepository;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Resolves the tenant the current feature check is made for, e.g. from the request context or the security principal.
+ * Called on each feature state lookup, so it should be cheap.
+ *
+ * @see TenantFeatureStateRepository
+ */
+@FunctionalInterface
+public interface TenantResolver {
+
+    /**
+     * Resolves the current tenant.
+     *
+     * @return tenant ID, {@code null} if there's no tenant (then global feature states apply)
+     */
+    @Nullable
+    String resolveTenantId();
+
+}
@@ -0,0 +1,21 @@
+package guru.nicks.commons.feature.usage;
+
+import guru.nicks.commons.feature.domain.FeatureUsageDto;
+
+import java.util.List;
+
+/**
+ * Receives feature usage periodically flushed by {@link FeatureUsageTracker}, e.g. to store it in a database or to
+ * report flags not checked for a long time.
+ */
+@FunctionalInterface
+public interface FeatureUsageSink {
+
+    /**
+     * Called from the flushing thread, so it may block.
+     *
+     * @param usage usage of all features since the application start (not a delta)
+     */
+    void flush(List<FeatureUsageDto> usage);
+
+}
@@ -0,0 +1,267 @@
+package guru.nicks.commons.feature.usage;
+
+import guru.nicks.commons.feature.domain.FeatureUsageDto;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.togglz.core.Feature;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import static guru.nicks.commons.validation.dsl.ValiDsl.check;
+
+/**
+ * Tracks which features are still checked, how often, and from where - to find dead flags (never checked, but still
+ * costing checks and wrappers) and hot ones. Fed by {@code FeatureTesterImpl} (state checks) and
+ * {@code FeatureBeanPostProcessor.MethodCallInterceptor} (calls to gated beans).
+ * <p>
+ * Cheap enough to stay on in production: counters are {@link LongAdder}s indexed by enum ordinal (no map lookups, no
+ * contended CAS); the last check time is written at most once per second per feature (so the cache line isn't
+ * invalidated on each check); the stack is walked for only one in {@code callSiteSamplingRate} checks. Checks of
+ * features not belonging to the features enum (group and tenant pseudo-features) are ignored.
+ * <p>
+ * A call site is the first stack frame outside this library, Spring AOP, and reflection. For checks made by gated
+ * beans, it's the method of the generated wrapper class, i.e. it names the gated bean method. At most
+ * {@value #MAX_CALL_SITES_PER_FEATURE} call sites are kept per feature, the rest are counted as
+ * {@value #OTHER_CALL_SITES}.
+ * <p>
+ * If {@link FeatureUsageSink} is given, a virtual thread flushes usage to it periodically and on {@link #close()}.
+ */
+@Slf4j
+public class FeatureUsageTracker implements AutoCloseable {
+
+    public static final int DEFAULT_CALL_SITE_SAMPLING_RATE = 1000;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMinutes(5);
+
+    public static final int MAX_CALL_SITES_PER_FEATURE = 32;
+    public static final String OTHER_CALL_SITES = "(other)";
+
+    private static final long LAST_CHECKED_PRECISION_MILLIS = 1000;
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+    private static final List<String> SKIPPED_CALL_SITE_PREFIXES = List.of("guru.nicks.commons.feature.",
+            "org.springframework.aop.", "net.bytebuddy.", "java.lang.reflect.", "jdk.internal.");
+
+    private final Class<? extends Feature> featuresEnumClass;
+    private final Feature[] features;
+    private final int callSiteSamplingRate;
+
+    /**
+     * Indexes are enum ordinals.
+     */
+    private final LongAdder[] checks;
+    private final LongAdder[] activeChecks;
+    private final LongAdder[] interceptedCalls;
+    private final AtomicLongArray lastCheckedMillis;
+    private final List<Map<String, LongAdder>> callSites;
+
+    @Nullable
+    private final FeatureUsageSink sink;
+    @Nullable
+    private final Thread flusher;
+
+    /**
+     * Creates tracker having {@link #DEFAULT_CALL_SITE_SAMPLING_RATE} and no sink.
+     *
+     * @param featuresEnumClass features enum (the one configured as {@code togglz.feature-enums})
+     */
+    public FeatureUsageTracker(Class<? extends Feature> featuresEnumClass) {
+        this(featuresEnumClass, DEFAULT_CALL_SITE_SAMPLING_RATE, null, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Constructor. Starts the flushing thread if the sink is given.
+     *
+     * @param featuresEnumClass    features enum (the one configured as {@code togglz.feature-enums})
+     * @param callSiteSamplingRate call site is captured for one in this many checks, 0 to disable call site capture
+     * @param sink                 where to flush usage to, optional
+     * @param flushInterval        how often to flush usage to the sink
+     */
+    public FeatureUsageTracker(Class<? extends Feature> featuresEnumClass, int callSiteSamplingRate,
+            @Nullable FeatureUsageSink sink, Duration flushInterval) {
+        check(featuresEnumClass, "features enum class")
+                .notNull()
+                .constraint(Class::isEnum, "must be an enum");
+        check(callSiteSamplingRate, "call site sampling rate")
+                .constraint(value -> value >= 0, "must not be negative");
+        check(flushInterval, "flush interval")
+                .notNull()
+                .constraint(Duration::isPositive, "must be positive");
+
+        this.featuresEnumClass = featuresEnumClass;
+        this.callSiteSamplingRate = callSiteSamplingRate;
+        this.sink = sink;
+        features = featuresEnumClass.getEnumConstants();
+
+        checks = newAdders(features.length);
+        activeChecks = newAdders(features.length);
+        interceptedCalls = newAdders(features.length);
+        lastCheckedMillis = new AtomicLongArray(features.length);
+        callSites = IntStream.range(0, features.length)
+                .<Map<String, LongAdder>>mapToObj(i -> new ConcurrentHashMap<>())
+                .toList();
+
+        flusher = (sink == null)
+                ? null
+                : Thread.ofVirtual()
+                        .name("feature-usage-flusher")
+                        .start(() -> flushLoop(flushInterval));
+    }
+
+    /**
+     * Records feature state check.
+     *
+     * @param feature feature
+     * @param active  check result
+     */
+    public void recordCheck(Feature feature, boolean active) {
+        int index = indexOf(feature);
+        if (index < 0) {
+            return;
+        }
+
+        checks[index].increment();
+        if (active) {
+            activeChecks[index].increment();
+        }
+
+        long nowMillis = System.currentTimeMillis();
+        // a plain read is cheap, a write on each check would make all cores fight for the cache line
+        if (nowMillis - lastCheckedMillis.get(index) >= LAST_CHECKED_PRECISION_MILLIS) {
+            lastCheckedMillis.set(index, nowMillis);
+        }
+
+        if ((callSiteSamplingRate > 0) && (ThreadLocalRandom.current().nextInt(callSiteSamplingRate) == 0)) {
+            recordCallSite(index);
+        }
+    }
+
+    /**
+     * Records call to a bean gated by the feature.
+     *
+     * @param feature feature
+     */
+    public void recordInterceptedCall(Feature feature) {
+        int index = indexOf(feature);
+
+        if (index >= 0) {
+            interceptedCalls[index].increment();
+        }
+    }
+
+    /**
+     * Returns usage of all features of the enum, including those never checked, in the enum order.
+     *
+     * @return usage since the application start
+     */
+    public List<FeatureUsageDto> getUsage() {
+        return IntStream.range(0, features.length)
+                .mapToObj(this::toDto)
+                .toList();
+    }
+
+    /**
+     * Flushes usage to the sink (if any) and stops the flushing thread.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.interrupt();
+            flush();
+        }
+    }
+
+    private void flushLoop(Duration flushInterval) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(flushInterval);
+                flush();
+            }
+        } catch (InterruptedException e) {
+            // tracker closed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush() {
+        if (sink == null) {
+            return;
+        }
+
+        try {
+            sink.flush(getUsage());
+        }
+        // keep tracking
+        catch (RuntimeException e) {
+            log.warn("Failed to flush feature usage: {}", e.getMessage(), e);
+        }
+    }
+
+    private int indexOf(Feature feature) {
+        return ((feature instanceof Enum<?> enumFeature) && (enumFeature.getDeclaringClass() == featuresEnumClass))
+                ? enumFeature.ordinal()
+                : -1;
+    }
+
+    private void recordCallSite(int index) {
+        String callSite = STACK_WALKER.walk(frames -> frames
+                .filter(frame -> SKIPPED_CALL_SITE_PREFIXES.stream()
+                        .noneMatch(prefix -> frame.getClassName().startsWith(prefix)))
+                .findFirst()
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse(OTHER_CALL_SITES));
+
+        Map<String, LongAdder> featureCallSites = callSites.get(index);
+        LongAdder counter = featureCallSites.get(callSite);
+
+        if (counter == null) {
+            // the bound is approximate under concurrency, which is fine
+            String key = (featureCallSites.size() < MAX_CALL_SITES_PER_FEATURE)
+                    ? callSite
+                    : OTHER_CALL_SITES;
+            counter = featureCallSites.computeIfAbsent(key, k -> new LongAdder());
+        }
+
+        counter.increment();
+    }
+
+    private FeatureUsageDto toDto(int index) {
+        long lastChecked = lastCheckedMillis.get(index);
+
+        Map<String, Long> featureCallSites = new LinkedHashMap<>();
+        callSites.get(index)
+                .entrySet()
+                .stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> featureCallSites.put(entry.getKey(), entry.getValue()));
+
+        return FeatureUsageDto.builder()
+                .featureName(features[index].name())
+                .checkCount(checks[index].sum())
+                .activeCount(activeChecks[index].sum())
+                .interceptedCallCount(interceptedCalls[index].sum())
+                .lastCheckedAt((lastChecked == 0)
+                        ? null
+                        : Instant.ofEpochMilli(lastChecked))
+                .callSites(featureCallSites)
+                .build();
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        Arrays.setAll(adders, i -> new LongAdder());
+        return adders;
+    }
+
+}
@@ -0,0 +1,121 @@
+package guru.nicks.commons.benchmark;
+
+import guru.nicks.commons.feature.strategy.ExpressionActivationStrategy;
+import guru.nicks.commons.feature.strategy.FeatureExpression;
+import guru.nicks.commons.feature.strategy.FeatureExpressionContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parts of an expression check separately:
+ * <ul>
+ *  <li>{@link #parse()} - compiling the expression text into lambdas</li>
+ *  <li>{@link #evaluate()} - evaluating an already compiled expression</li>
+ *  <li>{@link #strategy()} - {@link ExpressionActivationStrategy}: the cached compiled expression lookup plus
+ *      evaluation</li>
+ *  <li>{@link #parseOnEachCheck()} - parsing and evaluating on each check, like custom strategies re-parsing their
+ *      parameters do (this library has no separate interpreter)</li>
+ * </ul>
+ * Contexts vary per call, so the branches taken vary too. Not a test - run {@link #main(String[])} manually, e.g. from
+ * the IDE, after test classes have been compiled (JMH generates its harness at compile time).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureExpressionBenchmark {
+
+    private static final String EXPRESSION = "region in ('EU', 'UK') and plan != 'free' and (beta == 'yes' "
+            + "or percentage(25))";
+    private static final Feature FEATURE = () -> "BENCHMARK_FEATURE";
+
+    /**
+     * Power of 2, so the index can be masked.
+     */
+    private static final int CONTEXT_COUNT = 1024;
+
+    private final FeatureExpressionContext[] contexts = new FeatureExpressionContext[CONTEXT_COUNT];
+    private int contextIndex;
+    /**
+     * Returned by the strategy's context provider.
+     */
+    private FeatureExpressionContext currentContext;
+
+    private FeatureState featureState;
+    private FeatureExpression expression;
+    private ExpressionActivationStrategy strategy;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FeatureExpressionBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i] = FeatureExpressionContext.builder()
+                    .userId("user-" + i)
+                    .region((i % 3 == 0) ? "US" : "EU")
+                    .plan((i % 5 == 0) ? "free" : "pro")
+                    .attributes(Map.of("beta", (i % 7 == 0) ? "yes" : "no"))
+                    .build();
+        }
+
+        featureState = new FeatureState(FEATURE, true);
+        featureState.setStrategyId(ExpressionActivationStrategy.ID);
+        featureState.setParameter(ExpressionActivationStrategy.EXPRESSION_PARAMETER, EXPRESSION);
+
+        expression = FeatureExpression.compile(FEATURE.name(), EXPRESSION);
+        strategy = new ExpressionActivationStrategy(user -> currentContext);
+    }
+
+    /**
+     * Returned value is consumed by JMH, so the parsing is not eliminated as dead code.
+     */
+    @Benchmark
+    public FeatureExpression parse() {
+        return FeatureExpression.compile(FEATURE.name(), EXPRESSION);
+    }
+
+    @Benchmark
+    public boolean evaluate() {
+        return expression.test(nextContext());
+    }
+
+    @Benchmark
+    public boolean strategy() {
+        currentContext = nextContext();
+        return strategy.isActive(featureState, null);
+    }
+
+    @Benchmark
+    public boolean parseOnEachCheck() {
+        return FeatureExpression.compile(FEATURE.name(), EXPRESSION).test(nextContext());
+    }
+
+    private FeatureExpressionContext nextContext() {
+        return contexts[contextIndex++ & (CONTEXT_COUNT - 1)];
+    }
+
+}
@@ -0,0 +1,464 @@
+package guru.nicks.commons.benchmark;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.FeatureBeanPostProcessor;
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
+import guru.nicks.commons.feature.impl.FeatureTesterImpl;
+import guru.nicks.commons.feature.interceptor.LatencyHistogram;
+import guru.nicks.commons.feature.repository.RedisCachingFeatureStateRepository;
+
+import jakarta.annotation.Nullable;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.togglz.core.Feature;
+import org.togglz.core.manager.FeatureManager;
+import org.togglz.core.manager.FeatureManagerBuilder;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+import org.togglz.core.user.NoOpUserProvider;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end contention harness: {@code threads} request threads (platform, then virtual) check features through
+ * {@link FeatureTesterImpl} -&gt; {@link FeatureManager} -&gt; {@link RedisCachingFeatureStateRepository} (created by
+ * {@link RedisCachingFeatureStateRepository#of(StateRepository, RedisTemplate, java.util.function.Function, Duration)
+ * of()}, so the production key building, MGET and pipelined writes are exercised) -&gt; Redis stand-in -&gt; in-memory
+ * delegate, and call a gated bean, while an admin thread toggles a feature every
+ * {@code toggleIntervalMillis}. Reports, for the measured period:
+ * <ul>
+ *  <li>throughput and p50/p99/p99.9 latency of {@code FeatureTester.test()} and gated bean calls</li>
+ *  <li>cache hit ratio and delegate (database) QPS</li>
+ *  <li>time to convergence: from a toggle to the first request thread seeing the new state</li>
+ * </ul>
+ * The Redis stand-in is a {@link RedisTemplate} whose value operations are backed by a map holding copies of the
+ * cached DTOs (so each hit returns a new object, like deserialization does) with TTL and a simulated round trip
+ * ({@code redisRoundTripMicros} per command or pipeline, parked, not spun - like network I/O). Keys are built by
+ * {@link RedisCachingFeatureStateRepository#tenantAwareCacheKeyBuilder(String)}.
+ * Latencies are recorded in {@link LatencyHistogram}s. Random choices are seeded, so runs with the same arguments do
+ * the same work.
+ * <p>
+ * Unlike the other benchmarks, this is not a JMH benchmark: it coordinates request threads with an admin thread and
+ * measures cross-thread convergence and cache/delegate counters, which don't fit JMH's per-operation model.
+ * <p>
+ * Not a test - run {@link #main(String[])} manually, e.g. from the IDE. Arguments (all optional, in this order):
+ * {@code threads} (200), {@code durationSeconds} (10), {@code toggleIntervalMillis} (5), {@code redisRoundTripMicros}
+ * (100), {@code cacheTtlMillis} (1000).
+ */
+public class FeatureStateContentionBenchmark {
+
+    private static final Duration WARMUP = Duration.ofSeconds(3);
+    private static final TestFeature TOGGLED_FEATURE = TestFeature.DAILY_REPORT;
+    private static final TestFeature GATING_FEATURE = TestFeature.CARD_PAYMENTS;
+    /**
+     * Each request thread calls the gated bean once per this many feature checks.
+     */
+    private static final int CHECKS_PER_GATED_CALL = 10;
+
+    /**
+     * Prevents dead code elimination.
+     */
+    private static final AtomicLong BLACKHOLE = new AtomicLong();
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = intArg(args, 0, 200);
+        Duration duration = Duration.ofSeconds(intArg(args, 1, 10));
+        Duration toggleInterval = Duration.ofMillis(intArg(args, 2, 5));
+        long redisRoundTripNanos = TimeUnit.MICROSECONDS.toNanos(intArg(args, 3, 100));
+        Duration cacheTtl = Duration.ofMillis(intArg(args, 4, 1000));
+
+        System.out.printf("%d threads, %s measured, toggle every %s, Redis round trip %d us, cache TTL %s%n%n",
+                threads, duration, toggleInterval, TimeUnit.NANOSECONDS.toMicros(redisRoundTripNanos), cacheTtl);
+
+        for (boolean virtual : new boolean[]{false, true}) {
+            new Run(virtual, threads, duration, toggleInterval, redisRoundTripNanos, cacheTtl).execute();
+        }
+
+        System.out.println("(blackhole: " + BLACKHOLE.get() + ")");
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return (args.length > index)
+                ? Integer.parseInt(args[index])
+                : defaultValue;
+    }
+
+    /**
+     * One measurement: builds its own repository chain, so runs don't share cache contents or counters.
+     */
+    private static final class Run {
+
+        private final boolean virtual;
+        private final int threadCount;
+        private final Duration duration;
+        private final Duration toggleInterval;
+
+        private final CountingStateRepository delegate = new CountingStateRepository();
+        private final RedisStandIn redis;
+        private final RedisCachingFeatureStateRepository cachingRepository;
+        private final FeatureTesterImpl featureTester;
+        private final GatedBean gatedBean;
+
+        private final LatencyHistogram testLatencies = new LatencyHistogram();
+        private final LatencyHistogram gatedCallLatencies = new LatencyHistogram();
+        private final LatencyHistogram convergenceLatencies = new LatencyHistogram();
+
+        /**
+         * The latest toggle; request threads compare what they see with it.
+         */
+        private volatile Toggle lastToggle = new Toggle(0, true, System.nanoTime());
+        private final AtomicLong convergedToggleSeq = new AtomicLong();
+        private volatile boolean running = true;
+
+        private Run(boolean virtual, int threadCount, Duration duration, Duration toggleInterval,
+                long redisRoundTripNanos, Duration cacheTtl) {
+            this.virtual = virtual;
+            this.threadCount = threadCount;
+            this.duration = duration;
+            this.toggleInterval = toggleInterval;
+
+            for (TestFeature feature : TestFeature.values()) {
+                delegate.setFeatureState(new FeatureState(feature, true));
+            }
+
+            redis = new RedisStandIn(redisRoundTripNanos);
+            cachingRepository = RedisCachingFeatureStateRepository.of(delegate, redis.toRedisTemplate(),
+                    RedisCachingFeatureStateRepository.tenantAwareCacheKeyBuilder("feature:"), cacheTtl);
+
+            FeatureManager featureManager = new FeatureManagerBuilder()
+                    .featureEnum(TestFeature.class)
+                    .stateRepository(cachingRepository)
+                    .userProvider(new NoOpUserProvider())
+                    .build();
+            featureTester = new FeatureTesterImpl(featureManager);
+
+            var postProcessor = new GatedBeanPostProcessor(featureTester);
+            // test classes are not indexed
+            postProcessor.setGatedBeanIndexEnabled(false);
+            gatedBean = (GatedBean) postProcessor.postProcessAfterInitialization(new GatedBean(), "gatedBean");
+        }
+
+        private void execute() throws InterruptedException {
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                int seed = i;
+                workers.add(newThread("request-" + i, () -> requestLoop(new SplittableRandom(seed))));
+            }
+
+            workers.add(Thread.ofPlatform().name("admin-toggler").start(this::toggleLoop));
+
+            Thread.sleep(WARMUP);
+            // discard warmup
+            testLatencies.swapInterval();
+            gatedCallLatencies.swapInterval();
+            convergenceLatencies.swapInterval();
+            long hitsBefore = redis.hits.sum();
+            long missesBefore = redis.misses.sum();
+            long delegateReadsBefore = delegate.reads.sum();
+
+            long startNanos = System.nanoTime();
+            Thread.sleep(duration);
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+            LatencyHistogram.Snapshot tests = testLatencies.swapInterval();
+            LatencyHistogram.Snapshot gatedCalls = gatedCallLatencies.swapInterval();
+            LatencyHistogram.Snapshot convergence = convergenceLatencies.swapInterval();
+            long hits = redis.hits.sum() - hitsBefore;
+            long misses = redis.misses.sum() - missesBefore;
+            long delegateReads = delegate.reads.sum() - delegateReadsBefore;
+
+            running = false;
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            System.out.printf("=== %s threads ===%n", virtual ? "virtual" : "platform");
+            printLatencies("FeatureTester.test()", tests, seconds);
+            printLatencies("gated bean call", gatedCalls, seconds);
+            System.out.printf("%-22s %.2f%% (%d hits, %d misses)%n", "cache hit ratio",
+                    (hits + misses == 0) ? 0.0 : 100.0 * hits / (hits + misses), hits, misses);
+            System.out.printf("%-22s %.0f/s%n", "delegate QPS", delegateReads / seconds);
+            System.out.printf("%-22s %d toggles, p50 %.1f us, p99 %.1f us, max %.1f us%n%n", "convergence",
+                    convergence.count(), convergence.getValueAtPercentile(50) / 1e3,
+                    convergence.getValueAtPercentile(99) / 1e3, convergence.maxNanos() / 1e3);
+        }
+
+        private Thread newThread(String name, Runnable task) {
+            return virtual
+                    ? Thread.ofVirtual().name(name).start(task)
+                    : Thread.ofPlatform().name(name).start(task);
+        }
+
+        private void requestLoop(SplittableRandom random) {
+            TestFeature[] features = TestFeature.values();
+            long count = 0;
+
+            while (running) {
+                for (int i = 0; i < CHECKS_PER_GATED_CALL; i++) {
+                    TestFeature feature = features[random.nextInt(features.length)];
+
+                    long startNanos = System.nanoTime();
+                    boolean active = featureTester.test(feature);
+                    long endNanos = System.nanoTime();
+                    testLatencies.record(endNanos - startNanos);
+
+                    if (feature == TOGGLED_FEATURE) {
+                        recordConvergence(active, endNanos);
+                    }
+
+                    count += active ? 1 : 0;
+                }
+
+                long startNanos = System.nanoTime();
+                count += gatedBean.call();
+                gatedCallLatencies.record(System.nanoTime() - startNanos);
+            }
+
+            BLACKHOLE.addAndGet(count);
+        }
+
+        /**
+         * Records time to convergence if this is the first thread seeing the latest toggle.
+         */
+        private void recordConvergence(boolean active, long nowNanos) {
+            Toggle toggle = lastToggle;
+            long convergedSeq = convergedToggleSeq.get();
+
+            if ((active == toggle.enabled()) && (convergedSeq < toggle.seq())
+                    && convergedToggleSeq.compareAndSet(convergedSeq, toggle.seq())) {
+                convergenceLatencies.record(nowNanos - toggle.nanos());
+            }
+        }
+
+        private void toggleLoop() {
+            long seq = 0;
+
+            while (running) {
+                LockSupport.parkNanos(toggleInterval.toNanos());
+
+                boolean enabled = !lastToggle.enabled();
+                // published before the write, so no request thread can see the new state before the toggle
+                lastToggle = new Toggle(++seq, enabled, System.nanoTime());
+                cachingRepository.setFeatureState(new FeatureState(TOGGLED_FEATURE, enabled));
+            }
+        }
+
+    }
+
+    private static void printLatencies(String name, LatencyHistogram.Snapshot snapshot, double seconds) {
+        System.out.printf("%-22s %,12.0f ops/s, p50 %8.2f us, p99 %8.2f us, p99.9 %8.2f us, max %8.2f us%n", name,
+                snapshot.count() / seconds, snapshot.getValueAtPercentile(50) / 1e3,
+                snapshot.getValueAtPercentile(99) / 1e3, snapshot.getValueAtPercentile(99.9) / 1e3,
+                snapshot.maxNanos() / 1e3);
+    }
+
+    /**
+     * Toggle made by the admin thread.
+     *
+     * @param seq     sequence number, starting with 1
+     * @param enabled new state
+     * @param nanos   {@link System#nanoTime()} right before the state was written
+     */
+    private record Toggle(long seq, boolean enabled, long nanos) {
+    }
+
+    /**
+     * Counts reads, i.e. cache misses reaching the database.
+     */
+    private static final class CountingStateRepository implements StateRepository {
+
+        private final StateRepository storage = new InMemoryStateRepository();
+        private final LongAdder reads = new LongAdder();
+
+        @Nullable
+        @Override
+        public FeatureState getFeatureState(Feature feature) {
+            reads.increment();
+            return storage.getFeatureState(feature);
+        }
+
+        @Override
+        public void setFeatureState(FeatureState featureState) {
+            storage.setFeatureState(featureState);
+        }
+
+    }
+
+    /**
+     * Shared remote cache imitation, see class comment. Only the commands {@link RedisCachingFeatureStateRepository}
+     * sends are supported: GET, MGET, SET with TTL (also pipelined).
+     */
+    private static final class RedisStandIn {
+
+        private final long roundTripNanos;
+
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        private RedisStandIn(long roundTripNanos) {
+            this.roundTripNanos = roundTripNanos;
+        }
+
+        /**
+         * Creates a template whose value operations are served by this stand-in. Pipelined commands are executed right
+         * away, without the round trip each: the pipeline itself makes one.
+         *
+         * @return Redis template
+         */
+        @SuppressWarnings("unchecked")
+        private RedisTemplate<String, Object> toRedisTemplate() {
+            var valueOperations = (ValueOperations<String, Object>) Proxy.newProxyInstance(
+                    ValueOperations.class.getClassLoader(), new Class<?>[]{ValueOperations.class},
+                    (proxy, method, args) -> invoke(method, args, true));
+            var pipelinedValueOperations = (ValueOperations<String, Object>) Proxy.newProxyInstance(
+                    ValueOperations.class.getClassLoader(), new Class<?>[]{ValueOperations.class},
+                    (proxy, method, args) -> invoke(method, args, false));
+
+            var pipelineTemplate = new RedisTemplate<String, Object>() {
+
+                @Override
+                public ValueOperations<String, Object> opsForValue() {
+                    return pipelinedValueOperations;
+                }
+
+            };
+
+            return new RedisTemplate<>() {
+
+                @Override
+                public ValueOperations<String, Object> opsForValue() {
+                    return valueOperations;
+                }
+
+                @Override
+                public List<Object> executePipelined(SessionCallback<?> session) {
+                    roundTrip();
+                    session.execute(pipelineTemplate);
+                    return List.of();
+                }
+
+            };
+        }
+
+        @Nullable
+        private Object invoke(Method method, Object[] args, boolean roundTrip) {
+            if (roundTrip) {
+                roundTrip();
+            }
+
+            return switch (method.getName()) {
+                case "get" -> get((String) args[0]);
+                case "multiGet" -> ((Collection<?>) args[0]).stream()
+                        .map(key -> get((String) key))
+                        // MGET returns nulls for missing keys, which Stream.toList() accepts
+                        .toList();
+                case "set" -> {
+                    set((String) args[0], (NullableFeatureStateWrapper) args[1], ttlNanos(args));
+                    yield null;
+                }
+                default -> throw new UnsupportedOperationException("Not supported by the Redis stand-in: "
+                        + method.getName());
+            };
+        }
+
+        @Nullable
+        private NullableFeatureStateWrapper get(String key) {
+            Entry entry = entries.get(key);
+
+            if ((entry == null) || (System.nanoTime() - entry.expiresAtNanos() >= 0)) {
+                misses.increment();
+                return null;
+            }
+
+            hits.increment();
+            FeatureStateDto dto = entry.wrapper().featureStateDto();
+
+            // deserialization creates a new object on each read
+            return (dto == null)
+                    ? NullableFeatureStateWrapper.EMPTY
+                    : new NullableFeatureStateWrapper(dto.toBuilder().build());
+        }
+
+        private void set(String key, NullableFeatureStateWrapper wrapper, long ttlNanos) {
+            entries.put(key, new Entry(wrapper, System.nanoTime() + ttlNanos));
+        }
+
+        private void roundTrip() {
+            if (roundTripNanos > 0) {
+                LockSupport.parkNanos(roundTripNanos);
+            }
+        }
+
+        /**
+         * Extracts TTL from {@code set(key, value, Duration)} or {@code set(key, value, long, TimeUnit)} arguments.
+         */
+        private static long ttlNanos(Object[] args) {
+            if (args.length == 3) {
+                return ((Duration) args[2]).toNanos();
+            }
+
+            if (args.length == 4) {
+                return ((TimeUnit) args[3]).toNanos((Long) args[2]);
+            }
+
+            throw new UnsupportedOperationException("SET without TTL is not supported by the Redis stand-in");
+        }
+
+        private record Entry(NullableFeatureStateWrapper wrapper, long expiresAtNanos) {
+        }
+
+    }
+
+    /**
+     * Gated bean. Must be public: ByteBuddy defines the generated subclass in its own class loader.
+     */
+    public static class GatedBean {
+
+        /**
+         * Gated method.
+         *
+         * @return 1
+         */
+        public int call() {
+            return 1;
+        }
+
+    }
+
+    /**
+     * Gates {@link GatedBean} by {@link #GATING_FEATURE}, which is never toggled (calls of a disabled feature's beans
+     * would be logged each time), but is read through the same churning cache.
+     */
+    private static final class GatedBeanPostProcessor extends FeatureBeanPostProcessor {
+
+        private GatedBeanPostProcessor(FeatureTesterImpl featureTester) {
+            super(featureTester);
+        }
+
+        @Override
+        public Optional<Feature> findRequiredFeature(Class<?> clazz) {
+            return (clazz == GatedBean.class)
+                    ? Optional.of(GATING_FEATURE)
+                    : Optional.empty();
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package guru.nicks.commons.benchmark;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.impl.FeatureTesterImpl;
+import guru.nicks.commons.feature.usage.FeatureUsageTracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.togglz.core.manager.FeatureManager;
+import org.togglz.core.manager.FeatureManagerBuilder;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+import org.togglz.core.user.NoOpUserProvider;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead {@link FeatureUsageTracker} adds to {@link FeatureTesterImpl#test(org.togglz.core.Feature)},
+ * single-threaded and with all cores checking the same feature (the worst case for shared counters). Not a test - run
+ * {@link #main(String[])} manually, e.g. from the IDE, after test classes have been compiled (JMH generates its
+ * harness at compile time).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureUsageTrackerBenchmark {
+
+    private FeatureTesterImpl untracked;
+    private FeatureTesterImpl tracked;
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, Runtime.getRuntime().availableProcessors()}) {
+            new Runner(new OptionsBuilder()
+                    .include(FeatureUsageTrackerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        var stateRepository = new InMemoryStateRepository();
+        stateRepository.setFeatureState(new FeatureState(TestFeature.SEARCH, true));
+
+        FeatureManager featureManager = new FeatureManagerBuilder()
+                .featureEnum(TestFeature.class)
+                .stateRepository(stateRepository)
+                .userProvider(new NoOpUserProvider())
+                .build();
+
+        untracked = new FeatureTesterImpl(featureManager);
+        tracked = new FeatureTesterImpl(featureManager, null, new FeatureUsageTracker(TestFeature.class));
+    }
+
+    /**
+     * Returned value is consumed by JMH, so the check is not eliminated as dead code.
+     */
+    @Benchmark
+    public boolean untracked() {
+        return untracked.test(TestFeature.SEARCH);
+    }
+
+    @Benchmark
+    public boolean tracked() {
+        return tracked.test(TestFeature.SEARCH);
+    }
+
+}
@@ -0,0 +1,131 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
+import guru.nicks.commons.feature.repository.CachingFeatureStateRepository;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Step definitions for testing {@link CachingFeatureStateRepository}.
+ */
+public class CachingFeatureStateRepositorySteps {
+
+    /**
+     * Imitates a remote cache: stores DTOs and returns a new copy on each read, like deserialization does.
+     */
+    private final Map<Feature, FeatureStateDto> cache = new HashMap<>();
+
+    private CachingFeatureStateRepository repository;
+    private FeatureState firstRead;
+    private FeatureState secondRead;
+
+    @Before
+    public void beforeEachScenario() {
+        cache.clear();
+
+        repository = new CachingFeatureStateRepository(new InMemoryStateRepository(),
+                feature -> {
+                    FeatureStateDto dto = cache.get(feature);
+                    return (dto == null)
+                            ? null
+                            : new NullableFeatureStateWrapper(dto.toBuilder().build());
+                },
+                (feature, wrapper) -> cache.put(feature, wrapper.featureStateDto()));
+    }
+
+    @Given("the cache holds feature {string} with enabled: {booleanValue} and parameter {string} = {string}")
+    public void theCacheHoldsFeature(String featureName, boolean enabled, String parameterName,
+            String parameterValue) {
+        cache.put(TestFeature.valueOf(featureName), FeatureStateDto.builder()
+                .featureName(featureName)
+                .enabled(enabled)
+                .parameters(Map.of(parameterName, parameterValue))
+                .build());
+    }
+
+    @When("the cached feature {string} is read")
+    public void theCachedFeatureIsRead(String featureName) {
+        firstRead = repository.getFeatureState(TestFeature.valueOf(featureName));
+    }
+
+    @When("the cached feature {string} is read twice, each time deserialized anew")
+    public void theCachedFeatureIsReadTwice(String featureName) {
+        firstRead = repository.getFeatureState(TestFeature.valueOf(featureName));
+        secondRead = repository.getFeatureState(TestFeature.valueOf(featureName));
+    }
+
+    @Then("both reads should return the same feature state instance")
+    public void bothReadsShouldReturnTheSameFeatureStateInstance() {
+        assertThat(secondRead)
+                .as("second read")
+                .isNotNull()
+                .isSameAs(firstRead);
+    }
+
+    @Then("the cached feature {string} should have parameter {string} = {string}")
+    public void theCachedFeatureShouldHaveParameter(String featureName, String parameterName, String parameterValue) {
+        FeatureState featureState = repository.getFeatureState(TestFeature.valueOf(featureName));
+
+        assertThat(featureState)
+                .as("feature state")
+                .isNotNull()
+                .isNotSameAs(firstRead);
+        assertThat(featureState.getParameter(parameterName))
+                .as("strategy parameter")
+                .isEqualTo(parameterValue);
+    }
+
+    @Then("modifying the read feature state should fail")
+    public void modifyingTheReadFeatureStateShouldFail() {
+        assertThat(catchThrowable(() -> firstRead.setEnabled(false)))
+                .as("setEnabled() exception")
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThat(catchThrowable(() -> firstRead.setParameter("percentage", "20")))
+                .as("setParameter() exception")
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Then("the copy of the read feature state should be modifiable")
+    public void theCopyOfTheReadFeatureStateShouldBeModifiable() {
+        FeatureState copy = firstRead.copy()
+                .setEnabled(false)
+                .setParameter("percentage", "20");
+
+        assertThat(copy.isEnabled())
+                .as("copy enabled")
+                .isFalse();
+        assertThat(copy.getParameter("percentage"))
+                .as("copy strategy parameter")
+                .isEqualTo("20");
+    }
+
+    @Then("the cached feature {string} should still be enabled: {booleanValue}")
+    public void theCachedFeatureShouldStillBeEnabled(String featureName, boolean enabled) {
+        FeatureState featureState = repository.getFeatureState(TestFeature.valueOf(featureName));
+
+        assertThat(featureState)
+                .as("feature state")
+                .isNotNull();
+        assertThat(featureState.isEnabled())
+                .as("enabled")
+                .isEqualTo(enabled);
+        assertThat(featureState.getParameter("percentage"))
+                .as("strategy parameter")
+                .isEqualTo("10");
+    }
+
+}
@@ -0,0 +1,207 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.client.ClientFeatureStates;
+import guru.nicks.commons.feature.client.ClientFeatureStatesController;
+
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.togglz.core.Feature;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link ClientFeatureStates} and {@link ClientFeatureStatesController}.
+ */
+public class ClientFeatureStatesSteps {
+
+    private volatile Set<String> activeFeatureNames = Set.of();
+
+    private ClientFeatureStates clientFeatureStates;
+    private ClientFeatureStates.Snapshot firstSnapshot;
+    private ResponseEntity<byte[]> response;
+
+    @After
+    public void afterEachScenario() {
+        if (clientFeatureStates != null) {
+            clientFeatureStates.close();
+        }
+    }
+
+    @Given("client feature states where active features are {string}")
+    public void clientFeatureStatesWhereActiveFeaturesAre(String featureNames) {
+        activeFeatureNames = parseFeatureNames(featureNames);
+
+        // no refreshing thread: refreshes are triggered by steps
+        clientFeatureStates = new ClientFeatureStates(this::isActive, List.of(TestFeature.values()), Duration.ZERO);
+        firstSnapshot = clientFeatureStates.getSnapshot();
+    }
+
+    @When("active features become {string}")
+    public void activeFeaturesBecome(String featureNames) {
+        activeFeatureNames = parseFeatureNames(featureNames);
+    }
+
+    @When("client feature states are refreshed")
+    public void clientFeatureStatesAreRefreshed() {
+        clientFeatureStates.refresh();
+    }
+
+    /**
+     * {@code <identity ETag>}, {@code <gzip ETag>}, {@code <delta ETag>} in If-None-Match are replaced with the current
+     * ones; empty strings mean no header.
+     */
+    @When("client feature states are requested with If-None-Match {string} and Accept-Encoding {string}")
+    public void clientFeatureStatesAreRequested(String ifNoneMatch, String acceptEncoding) {
+        requestClientFeatureStates(null, ifNoneMatch, acceptEncoding);
+    }
+
+    @When("client feature states are requested since the first version with Accept-Encoding {string}")
+    public void clientFeatureStatesAreRequestedSinceTheFirstVersion(String acceptEncoding) {
+        requestClientFeatureStates(firstSnapshot.version(), "", acceptEncoding);
+    }
+
+    @Then("the response status should be {int}")
+    public void theResponseStatusShouldBe(int status) {
+        assertThat(response.getStatusCode().value())
+                .as("response status")
+                .isEqualTo(status);
+    }
+
+    @Then("the response ETag should be the {word} ETag")
+    public void theResponseEtagShouldBe(String representation) {
+        assertThat(response.getHeaders().getETag())
+                .as("response ETag")
+                .isEqualTo(resolveEtags("<" + representation + " ETag>"));
+    }
+
+    @Then("the response header {string} should be {string}")
+    public void theResponseHeaderShouldBe(String headerName, String value) {
+        assertThat(response.getHeaders().getFirst(headerName))
+                .as("response header " + headerName)
+                .isEqualTo(value.isEmpty() ? null : value);
+    }
+
+    @Then("the response body should be the {word} payload")
+    public void theResponseBodyShouldBe(String payload) throws IOException {
+        ClientFeatureStates.Snapshot snapshot = clientFeatureStates.getSnapshot();
+
+        byte[] body = "gzip".equals(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING))
+                ? gunzip(response.getBody())
+                : response.getBody();
+        byte[] expected = "delta".equals(payload)
+                ? snapshot.getDelta(firstSnapshot.version())
+                : snapshot.json();
+
+        assertThat(new String(body, StandardCharsets.UTF_8))
+                .as("response body")
+                .isEqualTo(new String(expected, StandardCharsets.UTF_8));
+    }
+
+    @Then("the full client payload should be {string}")
+    public void theFullClientPayloadShouldBe(String featuresJson) {
+        ClientFeatureStates.Snapshot snapshot = clientFeatureStates.getSnapshot();
+
+        assertThat(new String(snapshot.json(), StandardCharsets.UTF_8))
+                .as("full payload")
+                .isEqualTo("{\"version\":" + snapshot.version() + ",\"features\":" + featuresJson + "}");
+    }
+
+    @Then("the client states version and ETag should not change")
+    public void theClientStatesVersionAndEtagShouldNotChange() {
+        assertThat(clientFeatureStates.getSnapshot())
+                .as("snapshot")
+                .isSameAs(firstSnapshot);
+    }
+
+    @Then("the client states version and ETag should change")
+    public void theClientStatesVersionAndEtagShouldChange() {
+        ClientFeatureStates.Snapshot snapshot = clientFeatureStates.getSnapshot();
+
+        assertThat(snapshot.version())
+                .as("version")
+                .isEqualTo(firstSnapshot.version() + 1);
+        assertThat(snapshot.etag())
+                .as("ETag")
+                .isNotEqualTo(firstSnapshot.etag());
+    }
+
+    @Then("the delta since the first version should be {string}")
+    public void theDeltaSinceTheFirstVersionShouldBe(String featuresJson) {
+        ClientFeatureStates.Snapshot snapshot = clientFeatureStates.getSnapshot();
+
+        assertThat(clientFeatureStates.isKnownVersion(firstSnapshot.version()))
+                .as("first version known")
+                .isTrue();
+        assertThat(new String(snapshot.getDelta(firstSnapshot.version()), StandardCharsets.UTF_8))
+                .as("delta payload")
+                .isEqualTo("{\"version\":" + snapshot.version() + ",\"since\":" + firstSnapshot.version()
+                        + ",\"features\":" + featuresJson + "}");
+    }
+
+    @Then("the current ETag should match If-None-Match")
+    public void theCurrentEtagShouldMatchIfNoneMatch() {
+        ClientFeatureStates.Snapshot snapshot = clientFeatureStates.getSnapshot();
+
+        assertThat(snapshot.matches("W/" + firstSnapshot.etag() + ", " + snapshot.etag()))
+                .as("current ETag matches")
+                .isTrue();
+        assertThat(snapshot.matches(firstSnapshot.etag()))
+                .as("previous ETag matches")
+                .isFalse();
+    }
+
+    @Then("version {long} should be unknown to client feature states")
+    public void versionShouldBeUnknown(long version) {
+        assertThat(clientFeatureStates.isKnownVersion(version))
+                .as("version known")
+                .isFalse();
+    }
+
+    private void requestClientFeatureStates(Long since, String ifNoneMatch, String acceptEncoding) {
+        response = new ClientFeatureStatesController(clientFeatureStates).getFeatureStates(since,
+                ifNoneMatch.isEmpty() ? null : resolveEtags(ifNoneMatch),
+                acceptEncoding.isEmpty() ? null : acceptEncoding);
+    }
+
+    private String resolveEtags(String value) {
+        ClientFeatureStates.Snapshot snapshot = clientFeatureStates.getSnapshot();
+
+        return value
+                .replace("<identity ETag>", snapshot.etag())
+                .replace("<gzip ETag>", snapshot.gzipEtag())
+                .replace("<delta ETag>", snapshot.deltaEtag());
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (var gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return gzip.readAllBytes();
+        }
+    }
+
+    private boolean isActive(Feature feature) {
+        return activeFeatureNames.contains(feature.name());
+    }
+
+    private static Set<String> parseFeatureNames(String featureNames) {
+        return Arrays.stream(featureNames.split(","))
+                .map(String::strip)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+}
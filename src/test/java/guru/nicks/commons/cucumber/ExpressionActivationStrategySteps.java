@@ -0,0 +1,97 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.strategy.ExpressionActivationStrategy;
+import guru.nicks.commons.feature.strategy.FeatureExpressionContext;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.And;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.user.SimpleFeatureUser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link ExpressionActivationStrategy}.
+ */
+public class ExpressionActivationStrategySteps {
+
+    private ExpressionActivationStrategy strategy;
+    private FeatureExpressionContext context;
+    private FeatureState featureState;
+    private int activeUsers;
+    private int unstableUsers;
+
+    @Before
+    public void beforeEachScenario() {
+        context = FeatureExpressionContext.EMPTY;
+        // the context is set by steps, not derived from Togglz user
+        strategy = new ExpressionActivationStrategy(user -> context);
+    }
+
+    @Given("the feature expression is {string}")
+    public void theFeatureExpressionIs(String expression) {
+        featureState = new FeatureState(TestFeature.SEARCH, true);
+        featureState.setStrategyId(ExpressionActivationStrategy.ID);
+        featureState.setParameter(ExpressionActivationStrategy.EXPRESSION_PARAMETER, expression);
+    }
+
+    @And("the expression context has user {string}, region {string}, plan {string}")
+    public void theExpressionContextHas(String userId, String region, String plan) {
+        context = FeatureExpressionContext.builder()
+                .userId(userId)
+                .region(region)
+                .plan(plan)
+                .build();
+    }
+
+    @And("the Togglz user {string} has attribute {string} = {string}")
+    public void theTogglzUserHasAttribute(String userName, String attributeName, String attributeValue) {
+        var user = new SimpleFeatureUser(userName);
+        user.setAttribute(attributeName, attributeValue);
+        context = FeatureExpressionContext.from(user);
+    }
+
+    @When("{int} distinct users are checked twice each")
+    public void distinctUsersAreCheckedTwiceEach(int count) {
+        for (int i = 0; i < count; i++) {
+            context = FeatureExpressionContext.builder()
+                    .userId("user-" + i)
+                    .build();
+
+            boolean active = strategy.isActive(featureState, null);
+            if (active) {
+                activeUsers++;
+            }
+
+            if (strategy.isActive(featureState, null) != active) {
+                unstableUsers++;
+            }
+        }
+    }
+
+    @Then("the feature should be active: {booleanValue}")
+    public void theFeatureShouldBeActive(boolean active) {
+        assertThat(strategy.isActive(featureState, null))
+                .as("feature active")
+                .isEqualTo(active);
+    }
+
+    @Then("each user should have got the same result both times")
+    public void eachUserShouldHaveGotTheSameResultBothTimes() {
+        assertThat(unstableUsers)
+                .as("users whose result has changed")
+                .isZero();
+    }
+
+    @Then("between {int} and {int} users should be active")
+    public void betweenUsersShouldBeActive(int min, int max) {
+        assertThat(activeUsers)
+                .as("active users")
+                .isBetween(min, max);
+    }
+
+}
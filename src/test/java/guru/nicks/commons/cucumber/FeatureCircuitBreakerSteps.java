@@ -0,0 +1,100 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.interceptor.FeatureCircuitBreaker;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Step definitions for testing {@link FeatureCircuitBreaker}.
+ */
+public class FeatureCircuitBreakerSteps {
+
+    private static final TestFeature FEATURE = TestFeature.RECOMMENDATIONS;
+
+    private InMemoryStateRepository storage;
+    private FeatureCircuitBreaker circuitBreaker;
+    private int targetCalls;
+
+    @Before
+    public void beforeEachScenario() {
+        storage = new InMemoryStateRepository();
+        circuitBreaker = new FeatureCircuitBreaker(FEATURE, FEATURE.findAutoDisable().orElseThrow(), storage);
+    }
+
+    @Given("the auto-disabled feature is stored as enabled")
+    public void theAutoDisabledFeatureIsStoredAsEnabled() {
+        storage.setFeatureState(new FeatureState(FEATURE, true));
+    }
+
+    @Given("the auto-disabled feature is stored as disabled")
+    public void theAutoDisabledFeatureIsStoredAsDisabled() {
+        storage.setFeatureState(new FeatureState(FEATURE, false));
+    }
+
+    @Given("the auto-disabled feature is stored as auto-disabled by another node")
+    public void theAutoDisabledFeatureIsStoredAsAutoDisabledByAnotherNode() {
+        storage.setFeatureState(new FeatureState(FEATURE, false)
+                .setParameter(FeatureCircuitBreaker.AUTO_DISABLED_PARAMETER, Instant.now().toString()));
+    }
+
+    @When("the gated call fails {int} times")
+    public void theGatedCallFails(int times) {
+        theGatedCallFailsWith(IllegalStateException.class.getSimpleName(), times);
+    }
+
+    @When("the gated call fails with {word} {int} times")
+    public void theGatedCallFailsWith(String exceptionName, int times) {
+        for (int i = 0; i < times; i++) {
+            catchThrowable(() -> circuitBreaker.intercept(isStoredAsEnabled(),
+                    () -> {
+                        throw IllegalArgumentException.class.getSimpleName().equals(exceptionName)
+                                ? new IllegalArgumentException("Gated call rejected its arguments")
+                                : new IllegalStateException("Gated call failed");
+                    },
+                    () -> null));
+        }
+    }
+
+    @When("the gated call succeeds")
+    public void theGatedCallSucceeds() throws Throwable {
+        circuitBreaker.intercept(isStoredAsEnabled(), () -> ++targetCalls, () -> null);
+    }
+
+    @Then("the gated target should have been called {int} times")
+    public void theGatedTargetShouldHaveBeenCalled(int times) {
+        assertThat(targetCalls)
+                .as("target calls")
+                .isEqualTo(times);
+    }
+
+    @Then("the auto-disabled feature should be stored as enabled: {booleanValue}")
+    public void theAutoDisabledFeatureShouldBeStoredAs(boolean enabled) {
+        assertThat(isStoredAsEnabled())
+                .as("stored feature state")
+                .isEqualTo(enabled);
+    }
+
+    @Then("the circuit breaker state should be {word}")
+    public void theCircuitBreakerStateShouldBe(String state) {
+        assertThat(circuitBreaker.getState())
+                .as("circuit breaker state")
+                .isEqualTo(FeatureCircuitBreaker.State.valueOf(state));
+    }
+
+    private boolean isStoredAsEnabled() {
+        FeatureState featureState = storage.getFeatureState(FEATURE);
+        return (featureState != null) && featureState.isEnabled();
+    }
+
+}
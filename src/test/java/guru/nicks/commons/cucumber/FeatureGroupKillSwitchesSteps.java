@@ -0,0 +1,47 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.FeatureGroupIndex;
+import guru.nicks.commons.feature.FeatureGroupKillSwitches;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link FeatureGroupKillSwitches}.
+ */
+public class FeatureGroupKillSwitchesSteps {
+
+    private final FeatureGroupIndex featureGroupIndex = FeatureGroupIndex.of(TestFeature.class);
+
+    private InMemoryStateRepository storage;
+    private FeatureGroupKillSwitches killSwitches;
+
+    @Before
+    public void beforeEachScenario() {
+        storage = new InMemoryStateRepository();
+        killSwitches = new FeatureGroupKillSwitches(storage, featureGroupIndex);
+    }
+
+    @When("feature group {string} kill-switch is set to enabled: {booleanValue}")
+    public void featureGroupKillSwitchIsSetTo(String groupName, boolean enabled) {
+        killSwitches.setGroupEnabled(groupName, enabled);
+    }
+
+    @When("feature group kill-switches are reloaded from the storage")
+    public void featureGroupKillSwitchesAreReloadedFromTheStorage() {
+        killSwitches = new FeatureGroupKillSwitches(storage, featureGroupIndex);
+    }
+
+    @Then("feature {word} should be allowed by groups: {booleanValue}")
+    public void featureShouldBeAllowedByGroups(String featureName, boolean allowed) {
+        assertThat(killSwitches.isAllowedByGroups(TestFeature.valueOf(featureName)))
+                .as("feature %s allowed by groups", featureName)
+                .isEqualTo(allowed);
+    }
+
+}
@@ -0,0 +1,83 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.FeatureGroupIndex;
+import guru.nicks.commons.feature.FeatureGroupToggler;
+import guru.nicks.commons.feature.repository.CompositeBatchStateRepository;
+import guru.nicks.commons.feature.repository.ReadonlyGuardFeatureStateRepository;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Step definitions for testing {@link FeatureGroupToggler}.
+ */
+public class FeatureGroupTogglerSteps {
+
+    private final FeatureGroupIndex featureGroupIndex = FeatureGroupIndex.of(TestFeature.class);
+
+    private InMemoryStateRepository storage;
+    private FeatureGroupToggler featureGroupToggler;
+    private Throwable lastException;
+
+    @Before
+    public void beforeEachScenario() {
+        storage = new InMemoryStateRepository();
+
+        var chain = new CompositeBatchStateRepository(List.of(
+                new ReadonlyGuardFeatureStateRepository(),
+                storage));
+        featureGroupToggler = new FeatureGroupToggler(chain, featureGroupIndex);
+    }
+
+    @Given("features of group {string} are stored as enabled: {booleanValue}")
+    public void featuresOfGroupAreStoredAs(String groupName, boolean enabled) {
+        featureGroupIndex.getFeatures(groupName)
+                .forEach(feature -> storage.setFeatureState(new FeatureState(feature, enabled)));
+    }
+
+    @When("group {string} is toggled to enabled: {booleanValue}")
+    public void groupIsToggledTo(String groupName, boolean enabled) {
+        lastException = catchThrowable(() -> featureGroupToggler.setGroupEnabled(groupName, enabled));
+    }
+
+    @Then("features of group {string} should be enabled: {booleanValue}")
+    public void featuresOfGroupShouldBe(String groupName, boolean enabled) {
+        List<Feature> features = featureGroupIndex.getFeatures(groupName);
+
+        assertThat(features)
+                .as("group features")
+                .isNotEmpty()
+                .allSatisfy(feature -> assertThat(storage.getFeatureState(feature).isEnabled())
+                        .as("feature %s enabled", feature.name())
+                        .isEqualTo(enabled));
+    }
+
+    @Then("feature {word} should not be stored")
+    public void featureShouldNotBeStored(String featureName) {
+        assertThat(storage.getFeatureState(TestFeature.valueOf(featureName)))
+                .as("stored state")
+                .isNull();
+    }
+
+    @Then("the group toggle should fail with {word}")
+    public void theGroupToggleShouldFailWith(String exceptionClassName) {
+        assertThat(lastException)
+                .as("group toggle exception")
+                .isNotNull();
+        assertThat(lastException.getClass().getSimpleName())
+                .as("group toggle exception class")
+                .isEqualTo(exceptionClassName);
+    }
+
+}
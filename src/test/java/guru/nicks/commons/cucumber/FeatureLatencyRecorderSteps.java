@@ -0,0 +1,180 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.FeatureBeanPostProcessor;
+import guru.nicks.commons.feature.domain.FeatureLatencyDto;
+import guru.nicks.commons.feature.interceptor.FeatureLatencyRecorder;
+import guru.nicks.commons.feature.interceptor.LatencyHistogram;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.And;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Step definitions for testing {@link FeatureLatencyRecorder}, {@link LatencyHistogram}, and latency recording by
+ * {@link FeatureBeanPostProcessor.MethodCallInterceptor}.
+ */
+public class FeatureLatencyRecorderSteps {
+
+    private static final TestFeature FEATURE = TestFeature.SEARCH;
+
+    private LatencyHistogram histogram;
+    private LatencyHistogram.Snapshot snapshot;
+    private FeatureLatencyRecorder recorder;
+    private SimpleMeterRegistry meterRegistry;
+    private boolean featureEnabled;
+
+    @Before
+    public void beforeEachScenario() {
+        histogram = new LatencyHistogram();
+        recorder = new FeatureLatencyRecorder();
+    }
+
+    @After
+    public void afterEachScenario() {
+        recorder.close();
+    }
+
+    @Given("latencies from {int} to {int} microseconds are recorded")
+    public void latenciesAreRecorded(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+    }
+
+    @When("the latency interval is swapped")
+    public void theLatencyIntervalIsSwapped() {
+        snapshot = histogram.swapInterval();
+    }
+
+    @Then("the latency count should be {int}")
+    public void theLatencyCountShouldBe(int count) {
+        assertThat(snapshot.count())
+                .as("latency count")
+                .isEqualTo(count);
+    }
+
+    @And("the latency at percentile {double} should be about {int} microseconds")
+    public void theLatencyAtPercentileShouldBeAbout(double percentile, int micros) {
+        long expectedNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+
+        assertThat(snapshot.getValueAtPercentile(percentile))
+                .as("latency at percentile %s", percentile)
+                .isCloseTo(expectedNanos, within(expectedNanos * 4 / 100));
+    }
+
+    @And("the max. latency should be {int} microseconds")
+    public void theMaxLatencyShouldBe(int micros) {
+        assertThat(snapshot.maxNanos())
+                .as("max. latency")
+                .isEqualTo(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    @When("a gated call is timed on the {word} path {int} times")
+    public void aGatedCallIsTimed(String path, int times) throws Throwable {
+        FeatureLatencyRecorder.FeatureLatencies latencies = recorder.forFeature(FEATURE);
+
+        for (int i = 0; i < times; i++) {
+            latencies.timed(Runnable.class.getMethod("run"), FeatureLatencyRecorder.ENABLED_PATH.equals(path),
+                    () -> null).call();
+        }
+    }
+
+    @Given("the recorder is bound to a meter registry")
+    public void theRecorderIsBoundToAMeterRegistry() {
+        meterRegistry = new SimpleMeterRegistry();
+        recorder.bindTo(meterRegistry);
+    }
+
+    @Given("a feature is enabled for the latency interceptor: {booleanValue}")
+    public void aFeatureIsEnabledForTheLatencyInterceptor(boolean enabled) {
+        featureEnabled = enabled;
+    }
+
+    @When("the latency-recording interceptor is invoked {int} times")
+    public void theLatencyRecordingInterceptorIsInvoked(int times) throws NoSuchMethodException {
+        Runnable target = () -> {
+        };
+
+        var interceptor = FeatureBeanPostProcessor.MethodCallInterceptor.builder()
+                .proxyTarget(target)
+                .feature(FEATURE)
+                .featureTester(feature -> featureEnabled)
+                .latencies(recorder.forFeature(FEATURE))
+                .build();
+
+        // void method of a non-controller bean: the fallback returns null instead of throwing
+        Method method = Runnable.class.getMethod("run");
+        for (int i = 0; i < times; i++) {
+            interceptor.invoke(target, method, new Object[]{});
+        }
+    }
+
+    @And("the recorder intervals are swapped")
+    public void theRecorderIntervalsAreSwapped() {
+        recorder.swapIntervals();
+    }
+
+    @Then("the recorder should report {int} calls on the {word} path")
+    public void theRecorderShouldReportCalls(int count, String path) {
+        assertThat(recorder.getLatencies())
+                .as("latencies")
+                .filteredOn(latency -> latency.path().equals(path))
+                .singleElement()
+                .extracting(FeatureLatencyDto::count)
+                .isEqualTo((long) count);
+    }
+
+    @Then("the latency summary of the {word} path should have count {int}")
+    public void theLatencySummaryShouldHaveCount(String path, int count) {
+        assertThat(findSummary(path).count())
+                .as("summary count")
+                .isEqualTo(count);
+    }
+
+    @And("the latency summary of the {word} path should publish a percentile histogram")
+    public void theLatencySummaryShouldPublishAPercentileHistogram(String path) {
+        assertThat(findSummary(path).takeSnapshot().histogramCounts())
+                .as("histogram buckets")
+                .isNotEmpty();
+    }
+
+    @And("the latency count gauge of the {word} path should be {int}")
+    public void theLatencyCountGaugeShouldBe(String path, int count) {
+        assertThat(meterRegistry.get(FeatureLatencyRecorder.METRIC_NAME + ".count")
+                .tag("path", path)
+                .gauge()
+                .value())
+                .as("count gauge")
+                .isEqualTo(count);
+    }
+
+    @And("there should be {int} latency percentile gauges per path")
+    public void thereShouldBeLatencyPercentileGaugesPerPath(int count) {
+        for (String path : new String[]{FeatureLatencyRecorder.ENABLED_PATH, FeatureLatencyRecorder.FALLBACK_PATH}) {
+            assertThat(meterRegistry.get(FeatureLatencyRecorder.METRIC_NAME + ".percentile")
+                    .tag("path", path)
+                    .gauges())
+                    .as("percentile gauges of the %s path", path)
+                    .hasSize(count);
+        }
+    }
+
+    private DistributionSummary findSummary(String path) {
+        return meterRegistry.get(FeatureLatencyRecorder.METRIC_NAME)
+                .tag("path", path)
+                .summary();
+    }
+
+}
@@ -0,0 +1,170 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.FeatureBeanPostProcessor;
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.interceptor.FeatureCircuitBreaker;
+import guru.nicks.commons.feature.lifecycle.FeatureAwareLifecycle;
+import guru.nicks.commons.feature.lifecycle.FeatureLifecycleManager;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Step definitions for testing {@link FeatureLifecycleManager}.
+ */
+public class FeatureLifecycleManagerSteps {
+
+    private TestFeature feature;
+    private InMemoryStateRepository storage;
+    private FeatureLifecycleManager lifecycleManager;
+    private RecordingBean bean;
+    private FeatureLifecycleManager.FeatureLifecycle lifecycle;
+    private FeatureBeanPostProcessor.MethodCallInterceptor interceptor;
+    private boolean callLetThrough;
+
+    @Before
+    public void beforeEachScenario() {
+        feature = TestFeature.SEARCH;
+        storage = new InMemoryStateRepository();
+        lifecycleManager = new FeatureLifecycleManager(storage, Duration.ZERO);
+        bean = new RecordingBean();
+    }
+
+    @Given("lifecycle warm-up is refused for {int} seconds after a disabling event")
+    public void lifecycleWarmUpIsRefusedAfterADisablingEvent(int seconds) {
+        lifecycleManager = new FeatureLifecycleManager(storage, Duration.ofSeconds(seconds));
+    }
+
+    @Given("the lifecycle feature is stored as enabled: {booleanValue}")
+    public void theLifecycleFeatureIsStoredAsEnabled(boolean enabled) {
+        storage.setFeatureState(new FeatureState(feature, enabled));
+    }
+
+    @Given("a lifecycle-aware bean is registered")
+    public void aLifecycleAwareBeanIsRegistered() {
+        lifecycle = lifecycleManager.register(feature, bean);
+    }
+
+    @Given("a lifecycle-aware bean is gated by an auto-disabled feature")
+    public void aLifecycleAwareBeanIsGatedByAnAutoDisabledFeature() {
+        feature = TestFeature.RECOMMENDATIONS;
+        storage.setFeatureState(new FeatureState(feature, true));
+
+        interceptor = FeatureBeanPostProcessor.MethodCallInterceptor.builder()
+                .proxyTarget(bean)
+                .feature(feature)
+                .featureTester(this::isStoredAsEnabled)
+                .circuitBreaker(new FeatureCircuitBreaker(feature, feature.findAutoDisable().orElseThrow(), storage))
+                .lifecycle(lifecycleManager.register(feature, bean))
+                .build();
+    }
+
+    @When("the gated lifecycle-aware bean fails {int} times")
+    public void theGatedLifecycleAwareBeanFails(int times) {
+        bean.failing = true;
+
+        for (int i = 0; i < times; i++) {
+            catchThrowable(this::callGatedBean);
+        }
+
+        bean.failing = false;
+    }
+
+    @When("the gated lifecycle-aware bean is called")
+    public void theGatedLifecycleAwareBeanIsCalled() throws Throwable {
+        callGatedBean();
+    }
+
+    @When("feature lifecycles are reconciled")
+    public void featureLifecyclesAreReconciled() {
+        lifecycleManager.reconcile();
+    }
+
+    @When("the lifecycle feature change event says enabled: {booleanValue}")
+    public void theLifecycleFeatureChangeEventSaysEnabled(boolean enabled) {
+        lifecycleManager.onFeatureStatesChanged(List.of(FeatureStateDto.builder()
+                .featureName(feature.name())
+                .enabled(enabled)
+                .build()));
+    }
+
+    @When("a call is let through to the lifecycle-aware bean")
+    public void aCallIsLetThroughToTheLifecycleAwareBean() {
+        callLetThrough = lifecycle.beforeEnabledCall();
+    }
+
+    @Then("the call should reach the lifecycle-aware bean: {booleanValue}")
+    public void theCallShouldReachTheLifecycleAwareBean(boolean reached) {
+        assertThat(callLetThrough)
+                .as("call let through")
+                .isEqualTo(reached);
+    }
+
+    @Then("the auto-disabled lifecycle feature should be stored as enabled: {booleanValue}")
+    public void theAutoDisabledLifecycleFeatureShouldBeStoredAsEnabled(boolean enabled) {
+        assertThat(isStoredAsEnabled(feature))
+                .as("stored feature state")
+                .isEqualTo(enabled);
+    }
+
+    @Then("the lifecycle-aware bean should have received {string}")
+    public void theLifecycleAwareBeanShouldHaveReceived(String hooks) {
+        assertThat(String.join(",", bean.hooks))
+                .as("hooks called")
+                .isEqualTo(hooks);
+    }
+
+    private boolean isStoredAsEnabled(Feature storedFeature) {
+        FeatureState featureState = storage.getFeatureState(storedFeature);
+        return (featureState != null) && featureState.isEnabled();
+    }
+
+    private void callGatedBean() throws NoSuchMethodException {
+        Method method = RecordingBean.class.getMethod("work");
+        interceptor.invoke(bean, method, new Object[0]);
+    }
+
+    public static class RecordingBean implements FeatureAwareLifecycle {
+
+        private final List<String> hooks = new ArrayList<>();
+        private boolean released;
+        private boolean failing;
+
+        @Override
+        public void onFeatureEnabled() {
+            hooks.add("enabled");
+            released = false;
+        }
+
+        @Override
+        public void onFeatureDisabled() {
+            hooks.add("disabled");
+            released = true;
+        }
+
+        /**
+         * Gated method: fails if called while resources are released.
+         */
+        public void work() {
+            if (released || failing) {
+                throw new IllegalStateException("Gated bean failed, released: " + released);
+            }
+        }
+
+    }
+
+}
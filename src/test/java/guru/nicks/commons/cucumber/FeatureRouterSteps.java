@@ -0,0 +1,101 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.cucumber.world.TextWorld;
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.routing.FeatureRouter;
+
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Step definitions for testing {@link FeatureRouter}.
+ */
+@RequiredArgsConstructor
+public class FeatureRouterSteps {
+
+    private static final TestFeature ROUTING_FEATURE = TestFeature.SEARCH;
+
+    // DI
+    private final TextWorld textWorld;
+
+    private volatile boolean routingFeatureActive;
+    private FeatureRouter<Greeter> router;
+    private String greeting;
+
+    @Given("a feature router for greeters where routing feature active: {booleanValue}")
+    public void aFeatureRouterForGreeters(boolean active) {
+        routingFeatureActive = active;
+
+        // decisions never expire by age, so only reported changes invalidate them
+        router = new FeatureRouter<>(Greeter.class,
+                feature -> (feature == ROUTING_FEATURE) && routingFeatureActive,
+                List.of(new FeatureRouter.Route<>(ROUTING_FEATURE, name -> "new: " + name)),
+                new LegacyGreeter(), Duration.ofHours(1));
+    }
+
+    @When("the routing feature becomes active: {booleanValue}")
+    public void theRoutingFeatureBecomesActive(boolean active) {
+        routingFeatureActive = active;
+    }
+
+    @When("the routing feature change is reported to the router")
+    public void theRoutingFeatureChangeIsReportedToTheRouter() {
+        aChangeOfFeatureIsReportedToTheRouter(ROUTING_FEATURE.name());
+    }
+
+    @When("a change of feature {string} is reported to the router")
+    public void aChangeOfFeatureIsReportedToTheRouter(String featureName) {
+        router.onFeatureStatesChanged(List.of(FeatureStateDto.builder()
+                .featureName(featureName)
+                .enabled(true)
+                .build()));
+    }
+
+    @When("the routed greeter greets {string}")
+    public void theRoutedGreeterGreets(String name) {
+        var lastException = catchThrowable(() -> greeting = router.getProxy().greet(name));
+        textWorld.setLastException(lastException);
+    }
+
+    @Then("the greeting should be {string}")
+    public void theGreetingShouldBe(String expected) {
+        assertThat(greeting)
+                .as("greeting")
+                .isEqualTo(expected);
+    }
+
+    /**
+     * Routed interface. Must be public: ByteBuddy defines the generated proxy in its own class loader.
+     */
+    public interface Greeter {
+
+        String greet(String name);
+
+    }
+
+    /**
+     * Fallback implementation.
+     */
+    public static class LegacyGreeter implements Greeter {
+
+        @Override
+        public String greet(String name) {
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Name must not be empty");
+            }
+
+            return "legacy: " + name;
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.interceptor.FeatureShadow;
+import guru.nicks.commons.feature.interceptor.ShadowCallExecutor;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.And;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link FeatureShadow} and {@link ShadowCallExecutor}.
+ */
+public class FeatureShadowSteps {
+
+    private static final TestFeature FEATURE = TestFeature.SEARCH;
+
+    private InMemoryStateRepository storage;
+    private ShadowCallExecutor executor;
+    private final CountDownLatch blockedCallRelease = new CountDownLatch(1);
+
+    private CountDownLatch mirroredCall;
+    private boolean submitted;
+
+    @Before
+    public void beforeEachScenario() {
+        storage = new InMemoryStateRepository();
+        executor = new ShadowCallExecutor(1);
+    }
+
+    @After
+    public void afterEachScenario() {
+        blockedCallRelease.countDown();
+        executor.close();
+    }
+
+    @Given("the shadowed feature is stored as disabled")
+    public void theShadowedFeatureIsStoredAsDisabled() {
+        storage.setFeatureState(new FeatureState(FEATURE, false));
+    }
+
+    @Given("the shadowed feature has parameter {string} set to {string}")
+    public void theShadowedFeatureHasParameterSetTo(String name, String value) {
+        FeatureState featureState = storage.getFeatureState(FEATURE);
+        if (featureState == null) {
+            featureState = new FeatureState(FEATURE, false);
+        }
+
+        featureState = featureState.copy();
+        featureState.setParameter(name, value);
+        storage.setFeatureState(featureState);
+    }
+
+    @And("a shadow call is blocked")
+    public void aShadowCallIsBlocked() throws NoSuchMethodException {
+        executor.submit(FEATURE, Runnable.class.getMethod("run"), () -> {
+            blockedCallRelease.await();
+            return null;
+        });
+    }
+
+    @When("a void method of the shadowed feature is called")
+    public void aVoidMethodOfTheShadowedFeatureIsCalled() throws NoSuchMethodException {
+        mirror(Runnable.class.getMethod("run"));
+    }
+
+    @When("a non-void method of the shadowed feature is called")
+    public void aNonVoidMethodOfTheShadowedFeatureIsCalled() throws NoSuchMethodException {
+        mirror(Object.class.getMethod("toString"));
+    }
+
+    @Then("the call should be mirrored: {booleanValue}")
+    public void theCallShouldBeMirrored(boolean mirrored) throws InterruptedException {
+        assertThat(submitted)
+                .as("shadow call submitted")
+                .isEqualTo(mirrored);
+        assertThat(mirroredCall.await(mirrored ? 5 : 0, TimeUnit.SECONDS))
+                .as("shadow call made")
+                .isEqualTo(mirrored);
+    }
+
+    private void mirror(Method method) {
+        mirroredCall = new CountDownLatch(1);
+        // shadow reads parameters on the first call
+        var shadow = new FeatureShadow(FEATURE, storage, executor);
+
+        submitted = shadow.mirror(method, () -> {
+            mirroredCall.countDown();
+            return null;
+        });
+    }
+
+}
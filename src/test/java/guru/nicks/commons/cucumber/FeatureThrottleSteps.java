@@ -0,0 +1,75 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.interceptor.FeatureThrottle;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.And;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link FeatureThrottle}.
+ */
+public class FeatureThrottleSteps {
+
+    private static final TestFeature FEATURE = TestFeature.SEARCH;
+
+    private InMemoryStateRepository storage;
+    private int admittedCalls;
+    private long nowNanos;
+
+    @Before
+    public void beforeEachScenario() {
+        storage = new InMemoryStateRepository();
+        admittedCalls = 0;
+        nowNanos = 0;
+    }
+
+    @Given("the throttled feature is stored as enabled")
+    public void theThrottledFeatureIsStoredAsEnabled() {
+        storage.setFeatureState(new FeatureState(FEATURE, true));
+    }
+
+    @And("the throttled feature has parameter {string} set to {string}")
+    public void theThrottledFeatureHasParameterSetTo(String name, String value) {
+        FeatureState featureState = storage.getFeatureState(FEATURE).copy();
+        featureState.setParameter(name, value);
+        storage.setFeatureState(featureState);
+    }
+
+    @When("the throttled feature is called {int} times")
+    public void theThrottledFeatureIsCalled(int times) {
+        theThrottledFeatureIsCalledWithin(times, 0);
+    }
+
+    @When("the throttled feature is called {int} times within {int} ms")
+    public void theThrottledFeatureIsCalledWithin(int times, int millis) {
+        // throttle reads parameters on the first call; one thread, so no stripe could hide a shortfall
+        var throttle = new FeatureThrottle(FEATURE, storage, () -> nowNanos);
+        long stepNanos = TimeUnit.MILLISECONDS.toNanos(millis) / times;
+
+        for (int i = 0; i < times; i++) {
+            if (throttle.tryAdmit()) {
+                admittedCalls++;
+            }
+
+            nowNanos += stepNanos;
+        }
+    }
+
+    @Then("{int} calls should be admitted")
+    public void callsShouldBeAdmitted(int expected) {
+        assertThat(admittedCalls)
+                .as("admitted calls")
+                .isEqualTo(expected);
+    }
+
+}
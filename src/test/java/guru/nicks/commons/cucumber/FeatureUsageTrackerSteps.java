@@ -0,0 +1,141 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.domain.FeatureUsageDto;
+import guru.nicks.commons.feature.impl.FeatureTesterImpl;
+import guru.nicks.commons.feature.usage.FeatureUsageTracker;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.And;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.manager.FeatureManagerBuilder;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+import org.togglz.core.user.NoOpUserProvider;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link FeatureUsageTracker}.
+ */
+public class FeatureUsageTrackerSteps {
+
+    private FeatureUsageTracker tracker;
+    private List<FeatureUsageDto> flushedUsage;
+
+    @Before
+    public void beforeEachScenario() {
+        flushedUsage = List.of();
+        // each check is sampled
+        tracker = new FeatureUsageTracker(TestFeature.class, 1, usage -> flushedUsage = usage, Duration.ofHours(1));
+    }
+
+    @After
+    public void afterEachScenario() {
+        tracker.close();
+    }
+
+    @When("feature {string} is checked {int} times with result active: {booleanValue}")
+    public void featureIsChecked(String featureName, int count, boolean active) {
+        for (int i = 0; i < count; i++) {
+            tracker.recordCheck(TestFeature.valueOf(featureName), active);
+        }
+    }
+
+    @And("a bean gated by feature {string} is called {int} times")
+    public void aBeanGatedByFeatureIsCalled(String featureName, int count) {
+        for (int i = 0; i < count; i++) {
+            tracker.recordInterceptedCall(TestFeature.valueOf(featureName));
+        }
+    }
+
+    @When("feature {string} is checked {int} times by the feature tester, tracking usage: {booleanValue}")
+    public void featureIsCheckedByTheFeatureTester(String featureName, int count, boolean trackingUsage) {
+        var stateRepository = new InMemoryStateRepository();
+        stateRepository.setFeatureState(new FeatureState(TestFeature.valueOf(featureName), true));
+
+        var featureTester = new FeatureTesterImpl(new FeatureManagerBuilder()
+                .featureEnum(TestFeature.class)
+                .stateRepository(stateRepository)
+                .userProvider(new NoOpUserProvider())
+                .build(), null, tracker);
+
+        for (int i = 0; i < count; i++) {
+            if (trackingUsage) {
+                featureTester.test(TestFeature.valueOf(featureName));
+            } else {
+                featureTester.testWithoutUsageTracking(TestFeature.valueOf(featureName));
+            }
+        }
+    }
+
+    @When("the usage tracker is closed")
+    public void theUsageTrackerIsClosed() {
+        tracker.close();
+    }
+
+    @Then("feature {string} usage should have {long} checks, {long} active checks, and {long} intercepted calls")
+    public void featureUsageShouldHave(String featureName, long checkCount, long activeCount,
+            long interceptedCallCount) {
+        FeatureUsageDto usage = findUsage(tracker.getUsage(), featureName);
+
+        assertThat(usage.checkCount())
+                .as("check count")
+                .isEqualTo(checkCount);
+        assertThat(usage.activeCount())
+                .as("active check count")
+                .isEqualTo(activeCount);
+        assertThat(usage.interceptedCallCount())
+                .as("intercepted call count")
+                .isEqualTo(interceptedCallCount);
+    }
+
+    @Then("feature {string} usage should have the last check time")
+    public void featureUsageShouldHaveTheLastCheckTime(String featureName) {
+        assertThat(findUsage(tracker.getUsage(), featureName).lastCheckedAt())
+                .as("last check time")
+                .isNotNull();
+    }
+
+    @Then("feature {string} usage should have no last check time")
+    public void featureUsageShouldHaveNoLastCheckTime(String featureName) {
+        assertThat(findUsage(tracker.getUsage(), featureName).lastCheckedAt())
+                .as("last check time")
+                .isNull();
+    }
+
+    @Then("feature {string} usage should have a call site in the usage tracker steps")
+    public void featureUsageShouldHaveACallSiteInTheUsageTrackerSteps(String featureName) {
+        assertThat(findUsage(tracker.getUsage(), featureName).callSites())
+                .as("call sites")
+                .hasSize(1)
+                .allSatisfy((callSite, count) -> {
+                    assertThat(callSite)
+                            .as("call site")
+                            .startsWith(getClass().getName() + ".featureIsChecked:");
+                    assertThat(count)
+                            .as("call site sample count")
+                            .isEqualTo(3);
+                });
+    }
+
+    @Then("the usage sink should have received {long} checks of feature {string}")
+    public void theUsageSinkShouldHaveReceivedChecks(long checkCount, String featureName) {
+        assertThat(findUsage(flushedUsage, featureName).checkCount())
+                .as("flushed check count")
+                .isEqualTo(checkCount);
+    }
+
+    private static FeatureUsageDto findUsage(List<FeatureUsageDto> usage, String featureName) {
+        return usage.stream()
+                .filter(featureUsage -> featureUsage.featureName().equals(featureName))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No usage of feature " + featureName));
+    }
+
+}
@@ -0,0 +1,173 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.feature.GatedBeanIndex;
+import guru.nicks.commons.feature.annotation.FeatureGate;
+import guru.nicks.commons.feature.processor.GatedBeanIndexProcessor;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.springframework.util.FileSystemUtils;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link GatedBeanIndexProcessor} and {@link GatedBeanIndex}: test classes are compiled
+ * with {@link JavaCompiler} into a temporary directory, which is then a separate code source.
+ */
+public class GatedBeanIndexSteps {
+
+    private Path sourceDir;
+    private Path classesDir;
+    private boolean compiled;
+    private String compilerOutput;
+
+    @Before
+    public void beforeEachScenario() throws IOException {
+        sourceDir = Files.createTempDirectory("gated-bean-sources");
+        classesDir = Files.createTempDirectory("gated-bean-classes");
+    }
+
+    @After
+    public void afterEachScenario() throws IOException {
+        FileSystemUtils.deleteRecursively(sourceDir);
+        FileSystemUtils.deleteRecursively(classesDir);
+    }
+
+    @Given("gating annotation {string} is marked with @FeatureGate: {booleanValue}")
+    public void gatingAnnotationIsMarkedWithFeatureGate(String annotationName, boolean marked) throws IOException {
+        writeSource(annotationName, (marked ? "@" + FeatureGate.class.getName() + "\n" : "")
+                + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                + "public @interface " + simpleName(annotationName) + " {\n"
+                + "    String value();\n"
+                + "}\n");
+    }
+
+    @Given("class {string} is annotated with {string}")
+    public void classIsAnnotatedWith(String className, String annotationName) throws IOException {
+        writeSource(className, "@" + annotationName + "(\"SEARCH\")\n"
+                + "public class " + simpleName(className) + " {\n"
+                + "}\n");
+    }
+
+    @Given("class {string} is not annotated")
+    public void classIsNotAnnotated(String className) throws IOException {
+        writeSource(className, "public class " + simpleName(className) + " {\n"
+                + "}\n");
+    }
+
+    @Given("class {string} extends {string}")
+    public void classExtends(String className, String superclassName) throws IOException {
+        writeSource(className, "public class " + simpleName(className) + " extends " + superclassName + " {\n"
+                + "}\n");
+    }
+
+    @When("the classes are compiled with gating annotations {string}")
+    public void theClassesAreCompiledWithGatingAnnotations(String annotationNames) throws IOException {
+        List<Path> sources;
+        try (var paths = Files.walk(sourceDir)) {
+            sources = paths.filter(path -> path.toString().endsWith(".java")).toList();
+        }
+
+        compile(sources, annotationNames);
+    }
+
+    @When("classes {string} are recompiled with gating annotations {string}")
+    public void classesAreRecompiledWithGatingAnnotations(String classNames, String annotationNames)
+            throws IOException {
+        compile(Arrays.stream(classNames.split(","))
+                .map(this::toSourcePath)
+                .toList(), annotationNames);
+    }
+
+    @Then("the compilation should succeed: {booleanValue}")
+    public void theCompilationShouldSucceed(boolean succeeded) {
+        assertThat(compiled)
+                .as("compiled successfully; compiler output: %s", compilerOutput)
+                .isEqualTo(succeeded);
+    }
+
+    @Then("the gated bean index should be {string}")
+    public void theGatedBeanIndexShouldBe(String entries) throws IOException {
+        Path indexFile = classesDir.resolve(GatedBeanIndex.RESOURCE_LOCATION);
+
+        List<String> lines = Files.exists(indexFile)
+                ? Files.readAllLines(indexFile, StandardCharsets.UTF_8)
+                .stream()
+                .filter(line -> !line.startsWith("#"))
+                .toList()
+                : List.of();
+
+        assertThat(String.join(",", lines))
+                .as("index entries")
+                .isEqualTo(entries);
+    }
+
+    @Then("compiled class {string} may be gated: {booleanValue}")
+    public void compiledClassMayBeGated(String className, boolean mayBeGated) throws Exception {
+        // the parent delegates to the test classpath, which has no index
+        try (var classLoader = new URLClassLoader(new URL[]{classesDir.toUri().toURL()},
+                getClass().getClassLoader())) {
+            assertThat(GatedBeanIndex.load(classLoader).mayBeGated(classLoader.loadClass(className)))
+                    .as("may be gated")
+                    .isEqualTo(mayBeGated);
+        }
+    }
+
+    private void compile(List<Path> sources, String annotationNames) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        var output = new StringWriter();
+
+        List<String> options = new ArrayList<>(List.of(
+                "-d", classesDir.toString(),
+                "-classpath", System.getProperty("java.class.path") + File.pathSeparator + classesDir));
+        if (!annotationNames.isEmpty()) {
+            options.add("-A" + GatedBeanIndexProcessor.ANNOTATIONS_OPTION + "=" + annotationNames);
+        }
+
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null,
+                StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(output, fileManager, null, options, null,
+                    fileManager.getJavaFileObjectsFromPaths(sources));
+            task.setProcessors(List.of(new GatedBeanIndexProcessor()));
+
+            compiled = task.call();
+        }
+
+        compilerOutput = output.toString();
+    }
+
+    private void writeSource(String className, String body) throws IOException {
+        Path sourceFile = toSourcePath(className);
+        Files.createDirectories(sourceFile.getParent());
+
+        Files.writeString(sourceFile, "package " + className.substring(0, className.lastIndexOf('.')) + ";\n\n"
+                + body, StandardCharsets.UTF_8);
+    }
+
+    private Path toSourcePath(String className) {
+        return sourceDir.resolve(className.replace('.', '/') + ".java");
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+}
@@ -0,0 +1,144 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.repository.JdbcBulkStateRepository;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.h2.jdbcx.JdbcDataSource;
+import org.togglz.core.repository.FeatureState;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link JdbcBulkStateRepository}.
+ */
+public class JdbcBulkStateRepositorySteps {
+
+    private JdbcDataSource dataSource;
+    private JdbcBulkStateRepository repository;
+    private JdbcBulkStateRepository otherRepository;
+    private int reloadedCount;
+
+    @Before
+    public void beforeEachScenario() {
+        dataSource = new JdbcDataSource();
+        // each scenario gets its own database
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+
+        repository = createRepository();
+        otherRepository = null;
+    }
+
+    @After
+    public void afterEachScenario() {
+        repository.close();
+
+        if (otherRepository != null) {
+            otherRepository.close();
+        }
+    }
+
+    @Given("JDBC feature {string} is stored with enabled: {booleanValue}")
+    public void jdbcFeatureIsStored(String featureName, boolean enabled) {
+        repository.setFeatureState(new FeatureState(TestFeature.valueOf(featureName), enabled));
+    }
+
+    @Given("JDBC features {string} are stored in one batch with strategy {string} and parameter {string} = {string}")
+    public void jdbcFeaturesAreStoredInOneBatch(String featureNames, String strategyId, String parameterName,
+            String parameterValue) {
+        repository.setFeatureStates(Arrays.stream(featureNames.split(","))
+                .map(String::strip)
+                .map(featureName -> new FeatureState(TestFeature.valueOf(featureName), true)
+                        .setStrategyId(strategyId)
+                        .setParameter(parameterName, parameterValue))
+                .toList());
+    }
+
+    @When("another JDBC repository instance is created")
+    public void anotherJdbcRepositoryInstanceIsCreated() {
+        otherRepository = createRepository();
+    }
+
+    @Given("JDBC feature {string} is stored twice in one batch, with enabled: {booleanValue} and then {booleanValue}")
+    public void jdbcFeatureIsStoredTwiceInOneBatch(String featureName, boolean firstEnabled, boolean secondEnabled) {
+        TestFeature feature = TestFeature.valueOf(featureName);
+        repository.setFeatureStates(List.of(new FeatureState(feature, firstEnabled),
+                new FeatureState(feature, secondEnabled)));
+    }
+
+    @When("JDBC feature {string} is deleted from the table")
+    public void jdbcFeatureIsDeletedFromTheTable(String featureName) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("DELETE FROM "
+                        + JdbcBulkStateRepository.DEFAULT_TABLE_NAME + " WHERE FEATURE_NAME = ?")) {
+            statement.setString(1, featureName);
+            statement.executeUpdate();
+        }
+    }
+
+    @When("the other JDBC repository instance is refreshed")
+    public void theOtherJdbcRepositoryInstanceIsRefreshed() {
+        reloadedCount = otherRepository.refresh();
+    }
+
+    @Then("the other JDBC repository instance should have reloaded {int} feature state(s)")
+    public void theOtherJdbcRepositoryInstanceShouldHaveReloaded(int count) {
+        assertThat(reloadedCount)
+                .as("reloaded feature states")
+                .isEqualTo(count);
+    }
+
+    @Then("in the other JDBC repository instance feature {string} should have no state")
+    public void inTheOtherJdbcRepositoryInstanceFeatureShouldHaveNoState(String featureName) {
+        assertThat(otherRepository.getFeatureState(TestFeature.valueOf(featureName)))
+                .as("feature state")
+                .isNull();
+    }
+
+    @Then("in the other JDBC repository instance feature {string} should be enabled: {booleanValue}")
+    public void inTheOtherJdbcRepositoryInstanceFeatureShouldBe(String featureName, boolean enabled) {
+        FeatureState featureState = otherRepository.getFeatureState(TestFeature.valueOf(featureName));
+
+        assertThat(featureState)
+                .as("feature state")
+                .isNotNull();
+        assertThat(featureState.isEnabled())
+                .as("feature state enabled")
+                .isEqualTo(enabled);
+    }
+
+    @Then("in the other JDBC repository instance feature {string} should have strategy {string} "
+            + "and parameter {string} = {string}")
+    public void inTheOtherJdbcRepositoryInstanceFeatureShouldHave(String featureName, String strategyId,
+            String parameterName, String parameterValue) {
+        FeatureState featureState = otherRepository.getFeatureState(TestFeature.valueOf(featureName));
+
+        assertThat(featureState)
+                .as("feature state")
+                .isNotNull();
+        assertThat(featureState.getStrategyId())
+                .as("strategy ID")
+                .isEqualTo(strategyId);
+        assertThat(featureState.getParameter(parameterName))
+                .as("strategy parameter")
+                .isEqualTo(parameterValue);
+    }
+
+    private JdbcBulkStateRepository createRepository() {
+        // polling is disabled to make refreshes deterministic
+        return new JdbcBulkStateRepository(dataSource, JdbcBulkStateRepository.DEFAULT_TABLE_NAME, Duration.ZERO);
+    }
+
+}
@@ -0,0 +1,159 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.domain.FeatureStateDto;
+import guru.nicks.commons.feature.listener.FeatureStateListener;
+import guru.nicks.commons.feature.repository.ListenerFeatureStateRepository;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.togglz.core.repository.FeatureState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link ListenerFeatureStateRepository}.
+ */
+public class ListenerFeatureStateRepositorySteps {
+
+    private final List<FeatureStateListener> listeners = new ArrayList<>();
+    private final AtomicInteger failingListenerCalls = new AtomicInteger();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RecordingListener recordingListener;
+    private ListenerFeatureStateRepository repository;
+
+    @Before
+    public void beforeEachScenario() {
+        recordingListener = new RecordingListener();
+    }
+
+    @After
+    public void afterEachScenario() throws InterruptedException {
+        if (repository != null) {
+            recordingListener.release();
+            repository.close();
+        }
+    }
+
+    @Given("a failing listener is registered first")
+    public void aFailingListenerIsRegisteredFirst() {
+        listeners.add(featureStates -> {
+            failingListenerCalls.incrementAndGet();
+            throw new IllegalStateException("Listener failed");
+        });
+    }
+
+    @Given("a listener repository with queue capacity {int} and backpressure policy {word}")
+    public void aListenerRepository(int queueCapacity, String backpressurePolicy) {
+        listeners.add(recordingListener);
+
+        repository = new ListenerFeatureStateRepository(listeners, queueCapacity,
+                ListenerFeatureStateRepository.BackpressurePolicy.valueOf(backpressurePolicy));
+        repository.bindTo(meterRegistry);
+    }
+
+    @When("the listener dispatcher is busy with feature {string} set to enabled: {booleanValue}")
+    public void theListenerDispatcherIsBusyWithFeature(String featureName, boolean enabled)
+            throws InterruptedException {
+        featureIsSetInTheListenerRepository(featureName, enabled);
+
+        assertThat(recordingListener.firstBatchEntered.await(5, TimeUnit.SECONDS))
+                .as("dispatcher delivering the first batch")
+                .isTrue();
+    }
+
+    @When("feature {string} is set in the listener repository to enabled: {booleanValue}")
+    public void featureIsSetInTheListenerRepository(String featureName, boolean enabled) {
+        repository.setFeatureState(new FeatureState(TestFeature.valueOf(featureName), enabled));
+    }
+
+    @When("the listener repository is closed")
+    public void theListenerRepositoryIsClosed() throws InterruptedException {
+        recordingListener.release();
+        repository.close();
+    }
+
+    @Then("the listener should have received batches {string}")
+    public void theListenerShouldHaveReceivedBatches(String batches) {
+        assertThat(String.join("|", recordingListener.batches))
+                .as("batches received")
+                .isEqualTo(batches);
+    }
+
+    @Then("feature {string} should have been delivered on the caller's thread: {booleanValue}")
+    public void featureShouldHaveBeenDeliveredOnTheCallersThread(String featureName, boolean callersThread) {
+        assertThat(recordingListener.deliveryThreads.get(featureName) == Thread.currentThread())
+                .as("delivered on caller's thread")
+                .isEqualTo(callersThread);
+    }
+
+    @Then("{int} listener changes should have been dropped")
+    public void listenerChangesShouldHaveBeenDropped(int count) {
+        assertThat(meterRegistry.get(ListenerFeatureStateRepository.DROPPED_METRIC_NAME).counter().count())
+                .as("dropped changes")
+                .isEqualTo(count);
+    }
+
+    @Then("the failing listener should have been called {int} times")
+    public void theFailingListenerShouldHaveBeenCalled(int times) {
+        assertThat(failingListenerCalls.get())
+                .as("failing listener calls")
+                .isEqualTo(times);
+    }
+
+    /**
+     * Records batches (as {@code <feature>=<enabled>,...}) and the threads they were delivered on. Holds the first
+     * batch until {@link #release()} is called, so the dispatcher is busy and further changes are queued.
+     */
+    private static class RecordingListener implements FeatureStateListener {
+
+        private final List<String> batches = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, Thread> deliveryThreads = new ConcurrentHashMap<>();
+        private final CountDownLatch firstBatchEntered = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void onFeatureStatesChanged(List<FeatureStateDto> featureStates) {
+            batches.add(featureStates.stream()
+                    .map(dto -> dto.featureName() + "=" + dto.enabled())
+                    .collect(Collectors.joining(",")));
+            featureStates.forEach(dto -> deliveryThreads.put(dto.featureName(), Thread.currentThread()));
+
+            if (firstBatchEntered.getCount() > 0) {
+                firstBatchEntered.countDown();
+                awaitRelease();
+            }
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        private void awaitRelease() {
+            try {
+                assertThat(released.await(5, TimeUnit.SECONDS))
+                        .as("listener released")
+                        .isTrue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
@@ -1,8 +1,11 @@
 package guru.nicks.commons.cucumber;
 
+import guru.nicks.commons.cucumber.domain.TestFeature;
 import guru.nicks.commons.cucumber.world.TextWorld;
 import guru.nicks.commons.feature.FeatureBeanPostProcessor;
 import guru.nicks.commons.feature.FeatureTester;
+import guru.nicks.commons.feature.annotation.AsyncIfDisabled;
+import guru.nicks.commons.feature.exception.FeatureDisabledException;
 
 import io.cucumber.java.After;
 import io.cucumber.java.Before;
@@ -14,15 +17,30 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
+import org.aopalliance.intercept.MethodInterceptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.interceptor.AsyncExecutionInterceptor;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.util.ClassUtils;
 import org.togglz.core.Feature;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Predicate;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -52,9 +70,20 @@ public class MethodCallInterceptorSteps {
     private FeatureBeanPostProcessor.MethodCallInterceptor interceptor;
     private boolean proxyTargetIsController;
     private boolean returnVoid;
+    private boolean returnAsync;
+    private AsyncIfDisabled.Policy asyncPolicy;
+    private Object invocationResult;
 
     private TestBean rawBean;
     private Object wrappedBean;
+    private final List<WeakReference<Class<?>>> releasedWrapperClasses = new ArrayList<>();
+    private Class<?> childLoadedClass;
+
+    private Object aopProxy;
+    private int otherAdviceCallCount;
+
+    private ExecutorService asyncExecutor;
+    private AsyncTestBean asyncBean;
 
     @Before
     public void beforeEachScenario() {
@@ -64,6 +93,10 @@ public class MethodCallInterceptorSteps {
     @After
     public void afterEachScenario() throws Exception {
         closeableMocks.close();
+
+        if (asyncExecutor != null) {
+            asyncExecutor.close();
+        }
     }
 
     @Given("a feature is enabled: {booleanValue}")
@@ -80,6 +113,12 @@ public class MethodCallInterceptorSteps {
     @And("a proxy target method returns {word}")
     public void aProxyTargetMethodReturns(String returnType) {
         returnVoid = "void".equals(returnType);
+        returnAsync = "async".equals(returnType);
+    }
+
+    @And("disabled async calls are handled with policy {string}")
+    public void disabledAsyncCallsAreHandledWithPolicy(String policy) {
+        asyncPolicy = AsyncIfDisabled.Policy.valueOf(policy);
     }
 
     @When("the interceptor is invoked")
@@ -89,14 +128,16 @@ public class MethodCallInterceptorSteps {
                 .proxyTargetIsController(proxyTargetIsController)
                 .feature(feature)
                 .featureTester(featureTester)
+                .asyncPolicy(asyncPolicy)
                 .build();
 
         Method methodToInvoke = returnVoid
                 ? proxyTarget.getClass().getMethod("voidMethod")
-                : proxyTarget.getClass().getMethod("nonVoidMethod");
+                : proxyTarget.getClass().getMethod(returnAsync ? "asyncMethod" : "nonVoidMethod");
 
         // passing the target as the wrapper is harmless: the identity branch never triggers for these methods
-        var lastException = catchThrowable(() -> interceptor.invoke(proxyTarget, methodToInvoke, new Object[]{}));
+        var lastException = catchThrowable(() ->
+                invocationResult = interceptor.invoke(proxyTarget, methodToInvoke, new Object[]{}));
         textWorld.setLastException(lastException);
     }
 
@@ -104,6 +145,8 @@ public class MethodCallInterceptorSteps {
     public void theProxyTargetMethodShouldBeCalled() {
         if (returnVoid) {
             verify(proxyTarget).voidMethod();
+        } else if (returnAsync) {
+            verify(proxyTarget).asyncMethod();
         } else {
             verify(proxyTarget).nonVoidMethod();
         }
@@ -113,6 +156,8 @@ public class MethodCallInterceptorSteps {
     public void theProxyTargetMethodShouldNotBeCalled() {
         if (returnVoid) {
             verify(proxyTarget, never()).voidMethod();
+        } else if (returnAsync) {
+            verify(proxyTarget, never()).asyncMethod();
         } else {
             verify(proxyTarget, never()).nonVoidMethod();
         }
@@ -184,6 +229,160 @@ public class MethodCallInterceptorSteps {
                 .hasToString(rawBean.toString());
     }
 
+    @When("an AOP-proxied bean is processed by the post processor")
+    public void anAopProxiedBeanIsProcessedByThePostProcessor() {
+        var proxyFactory = new ProxyFactory(new TestBean("some-value"));
+        proxyFactory.setProxyTargetClass(true);
+        // stands for transaction/cache interceptors
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            otherAdviceCallCount++;
+            return invocation.proceed();
+        });
+
+        aopProxy = proxyFactory.getProxy();
+        var postProcessor = new TestFeaturePostProcessor(featureTester, feature);
+        wrappedBean = postProcessor.postProcessAfterInitialization(aopProxy, "aopProxy");
+    }
+
+    @Then("the existing AOP proxy should be returned")
+    public void theExistingAopProxyShouldBeReturned() {
+        assertThat(wrappedBean)
+                .as("post-processed bean")
+                .isSameAs(aopProxy);
+    }
+
+    @When("the AOP-proxied bean method is called")
+    public void theAopProxiedBeanMethodIsCalled() {
+        var lastException = catchThrowable(() -> ((TestBean) wrappedBean).getValue());
+        textWorld.setLastException(lastException);
+    }
+
+    @Then("other AOP advice should be called {int} time(s)")
+    public void otherAopAdviceShouldBeCalled(int times) {
+        assertThat(otherAdviceCallCount)
+                .as("other advice call count")
+                .isEqualTo(times);
+    }
+
+    @Then("the returned future should be failed with FeatureDisabledException without stack trace")
+    public void theReturnedFutureShouldBeFailed() {
+        assertThat(invocationResult)
+                .as("returned future")
+                .isInstanceOf(CompletionStage.class);
+
+        Throwable throwable = catchThrowable(((CompletionStage<?>) invocationResult).toCompletableFuture()::join);
+        assertThat(throwable)
+                .as("future failure")
+                .hasRootCauseInstanceOf(FeatureDisabledException.class);
+
+        Throwable rootCause = throwable;
+        while (rootCause.getCause() != null) {
+            rootCause = rootCause.getCause();
+        }
+
+        assertThat(rootCause.getStackTrace())
+                .as("stack trace")
+                .isEmpty();
+    }
+
+    @Then("the returned future should be completed with null")
+    public void theReturnedFutureShouldBeCompletedWithNull() {
+        assertThat(invocationResult)
+                .as("returned future")
+                .isInstanceOf(CompletionStage.class);
+        assertThat(((CompletionStage<?>) invocationResult).toCompletableFuture().join())
+                .as("future result")
+                .isNull();
+    }
+
+    @Given("the feature is enabled on the calling thread only")
+    public void theFeatureIsEnabledOnTheCallingThreadOnly() {
+        Thread callingThread = Thread.currentThread();
+        when(featureTester.test(TestFeature.SEARCH))
+                .thenAnswer(invocation -> Thread.currentThread() == callingThread);
+    }
+
+    @When("an async AOP-proxied bean is processed by the post processor")
+    public void anAsyncAopProxiedBeanIsProcessedByThePostProcessor() {
+        asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+        var proxyFactory = new ProxyFactory(new AsyncTestBean());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new AsyncExecutionInterceptor(asyncExecutor));
+
+        // the feature has @AsyncIfDisabled(recheckOnExecution = true)
+        var postProcessor = new TestFeaturePostProcessor(featureTester, TestFeature.SEARCH);
+        asyncBean = (AsyncTestBean) postProcessor.postProcessAfterInitialization(proxyFactory.getProxy(), "asyncBean");
+    }
+
+    @When("the async AOP-proxied bean method is called")
+    public void theAsyncAopProxiedBeanMethodIsCalled() {
+        var lastException = catchThrowable(() -> invocationResult = asyncBean.compute());
+        textWorld.setLastException(lastException);
+    }
+
+    @Then("the async target method should not be called")
+    public void theAsyncTargetMethodShouldNotBeCalled() {
+        assertThat(AsyncTestBean.callCount)
+                .as("async target method call count")
+                .isZero();
+    }
+
+    @When("the bean is wrapped by the post processor {int} times and the wrappers are released")
+    public void theBeanIsWrappedAndTheWrappersAreReleased(int times) {
+        for (int i = 0; i < times; i++) {
+            // a lambda, not a mock: mocks remember invocations and could keep wrappers reachable
+            var postProcessor = new TestFeaturePostProcessor(anyFeature -> true, feature);
+            Object wrapper = postProcessor.postProcessAfterInitialization(new TestBean("value-" + i), "bean" + i);
+
+            assertThat(wrapper)
+                    .as("wrapping must actually happen")
+                    .isInstanceOf(TestBean.class)
+                    .isNotExactlyInstanceOf(TestBean.class);
+            releasedWrapperClasses.add(new WeakReference<>(wrapper.getClass()));
+        }
+    }
+
+    @Then("all generated wrapper classes should be unloaded")
+    public void allGeneratedWrapperClassesShouldBeUnloaded() throws InterruptedException {
+        // class unloading happens on full GC only, and System.gc() is just a hint - retry a few times
+        for (int attempt = 0; (attempt < 20) && (countLoadedWrapperClasses() > 0); attempt++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        assertThat(countLoadedWrapperClasses())
+                .as("wrapper classes still loaded")
+                .isZero();
+    }
+
+    @When("a bean whose class is defined by a child class loader is wrapped by the post processor")
+    public void aBeanWhoseClassIsDefinedByAChildClassLoaderIsWrapped() throws ReflectiveOperationException {
+        childLoadedClass = new ChildFirstClassLoader(TestBean.class, getClass().getClassLoader())
+                .loadClass(TestBean.class.getName());
+        assertThat(childLoadedClass)
+                .as("class defined by child loader")
+                .isNotSameAs(TestBean.class);
+
+        Object childLoadedBean = childLoadedClass.getConstructor(String.class).newInstance("value");
+        textWorld.setLastException(catchThrowable(() -> wrappedBean = new TestFeaturePostProcessor(
+                anyFeature -> true, feature).postProcessAfterInitialization(childLoadedBean, "childLoadedBean")));
+    }
+
+    @Then("the wrapper should be a subclass of the child-loaded class")
+    public void theWrapperShouldBeASubclassOfTheChildLoadedClass() {
+        assertThat(wrappedBean)
+                .as("wrapper")
+                .isInstanceOf(childLoadedClass)
+                .isNotExactlyInstanceOf(childLoadedClass);
+    }
+
+    private long countLoadedWrapperClasses() {
+        return releasedWrapperClasses.stream()
+                .filter(reference -> reference.get() != null)
+                .count();
+    }
+
     /**
      * A dummy class to be used as a proxy target for testing.
      */
@@ -197,6 +396,10 @@ public class MethodCallInterceptorSteps {
             return "some-value";
         }
 
+        public CompletableFuture<String> asyncMethod() {
+            return CompletableFuture.completedFuture("some-value");
+        }
+
     }
 
     /**
@@ -219,7 +422,66 @@ public class MethodCallInterceptorSteps {
     }
 
     /**
-     * Minimal {@link FeatureBeanPostProcessor} implementation recognizing {@link TestBean} only.
+     * Bean having an {@link Async @Async} method. Must stay public for CGLIB.
+     */
+    public static class AsyncTestBean {
+
+        /**
+         * Static because CGLIB proxies don't delegate field access.
+         */
+        private static int callCount;
+
+        public AsyncTestBean() {
+            callCount = 0;
+        }
+
+        @Async
+        public CompletableFuture<String> compute() {
+            callCount++;
+            return CompletableFuture.completedFuture("computed");
+        }
+
+    }
+
+    /**
+     * Defines its own copy of the given class (like Spring DevTools' restart class loader does for application
+     * classes), delegating everything else to the parent.
+     */
+    private static class ChildFirstClassLoader extends ClassLoader {
+
+        private final Class<?> childFirstClass;
+
+        private ChildFirstClassLoader(Class<?> childFirstClass, ClassLoader parent) {
+            super(parent);
+            this.childFirstClass = childFirstClass;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!childFirstClass.getName().equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded != null) {
+                    return loaded;
+                }
+
+                try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                    byte[] bytes = Objects.requireNonNull(in, "class file not found").readAllBytes();
+                    return defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Minimal {@link FeatureBeanPostProcessor} implementation recognizing {@link TestBean}, {@link AsyncTestBean} (and
+     * their AOP proxies) only.
      */
     private static class TestFeaturePostProcessor extends FeatureBeanPostProcessor {
 
@@ -232,7 +494,11 @@ public class MethodCallInterceptorSteps {
 
         @Override
         public Optional<Feature> findRequiredFeature(Class<?> clazz) {
-            return TestBean.class.equals(clazz)
+            // user class: CGLIB proxies are subclasses
+            Class<?> userClass = ClassUtils.getUserClass(clazz);
+
+            // by name: the class may be defined by another class loader
+            return (TestBean.class.getName().equals(userClass.getName()) || AsyncTestBean.class.equals(userClass))
                     ? Optional.of(requiredFeature)
                     : Optional.empty();
         }
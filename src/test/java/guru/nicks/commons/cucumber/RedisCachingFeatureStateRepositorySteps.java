@@ -0,0 +1,306 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
+import guru.nicks.commons.feature.domain.TenantFeature;
+import guru.nicks.commons.feature.repository.RedisCachingFeatureStateRepository;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Step definitions for testing {@link RedisCachingFeatureStateRepository}.
+ */
+public class RedisCachingFeatureStateRepositorySteps {
+
+    @Mock
+    private RedisTemplate<String, Object> primaryTemplate;
+    @Mock
+    private ValueOperations<String, Object> primaryOperations;
+    @Mock
+    private RedisTemplate<String, Object> replicaTemplate;
+    @Mock
+    private ValueOperations<String, Object> replicaOperations;
+    private AutoCloseable closeableMocks;
+
+    private Function<Feature, String> cacheKeyBuilder;
+    private RedisCachingFeatureStateRepository repository;
+    private InMemoryStateRepository delegate;
+    private volatile int delegateReadMillis;
+    private final CountDownLatch delegateReadStarted = new CountDownLatch(1);
+
+    private FeatureState readState;
+    private long readMillis;
+    private volatile Thread lastRedisReadThread;
+
+    @Before
+    public void beforeEachScenario() {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+
+        when(primaryTemplate.opsForValue())
+                .thenReturn(primaryOperations);
+        when(replicaTemplate.opsForValue())
+                .thenReturn(replicaOperations);
+        // cached 'no state'
+        when(primaryOperations.get(anyString()))
+                .thenReturn(NullableFeatureStateWrapper.EMPTY);
+        when(replicaOperations.get(anyString()))
+                .thenReturn(NullableFeatureStateWrapper.EMPTY);
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        if (repository != null) {
+            repository.close();
+        }
+
+        closeableMocks.close();
+    }
+
+    @Given("cluster cache keys with prefix {string} and hash tag {string}")
+    public void clusterCacheKeysWithPrefixAndHashTag(String keyPrefix, String hashTag) {
+        cacheKeyBuilder = RedisCachingFeatureStateRepository.clusterCacheKeyBuilder(keyPrefix, hashTag);
+    }
+
+    @Given("a cluster-mode Redis caching repository with hash tag {string}")
+    public void aClusterModeRedisCachingRepository(String hashTag) {
+        repository = RedisCachingFeatureStateRepository.ofCluster(new InMemoryStateRepository(), primaryTemplate,
+                replicaTemplate, hashTag, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    }
+
+    @Given("a budgeted cluster-mode Redis caching repository with hash tag {string}")
+    public void aBudgetedClusterModeRedisCachingRepository(String hashTag) {
+        repository = RedisCachingFeatureStateRepository.ofBudgetedCluster(new InMemoryStateRepository(),
+                primaryTemplate, replicaTemplate, hashTag, Duration.ofMinutes(1), Duration.ofMinutes(1),
+                Duration.ofSeconds(1), 1);
+    }
+
+    @Given("the Redis replica holds feature {string} with enabled: {booleanValue}")
+    public void theRedisReplicaHoldsFeature(String featureName, boolean enabled) {
+        doReturn(NullableFeatureStateWrapper.of(new FeatureState(TestFeature.valueOf(featureName), enabled)))
+                .when(replicaOperations).get(anyString());
+    }
+
+    @Given("a budgeted Redis caching repository with read budget of {int} ms")
+    public void aBudgetedRedisCachingRepository(int budgetMillis) {
+        delegate = new InMemoryStateRepository() {
+
+            @Override
+            public FeatureState getFeatureState(Feature feature) {
+                delegateReadStarted.countDown();
+
+                try {
+                    Thread.sleep(delegateReadMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return super.getFeatureState(feature);
+            }
+
+        };
+
+        repository = RedisCachingFeatureStateRepository.ofBudgeted(delegate, primaryTemplate,
+                RedisCachingFeatureStateRepository.tenantAwareCacheKeyBuilder("feature:"), Duration.ofMinutes(1),
+                Duration.ofMillis(budgetMillis), 1);
+    }
+
+    @Given("Redis holds feature {string} with enabled: {booleanValue}")
+    public void redisHoldsFeature(String featureName, boolean enabled) {
+        var featureState = new FeatureState(TestFeature.valueOf(featureName), enabled);
+
+        doAnswer(invocation -> {
+            lastRedisReadThread = Thread.currentThread();
+            return NullableFeatureStateWrapper.of(featureState);
+        }).when(primaryOperations).get(anyString());
+    }
+
+    @Given("Redis holds no entries")
+    public void redisHoldsNoEntries() {
+        doReturn(null)
+                .when(primaryOperations).get(anyString());
+    }
+
+    @Given("Redis writes take {int} ms")
+    public void redisWritesTake(int millis) {
+        doAnswer(invocation -> {
+            Thread.sleep(millis);
+            return null;
+        }).when(primaryOperations).set(anyString(), any(), any(Duration.class));
+    }
+
+    @Given("budgeted repository delegate reads take {int} ms")
+    public void budgetedRepositoryDelegateReadsTake(int millis) {
+        delegateReadMillis = millis;
+    }
+
+    @Given("the budgeted repository delegate holds feature {string} with enabled: {booleanValue}")
+    public void theBudgetedRepositoryDelegateHoldsFeature(String featureName, boolean enabled) {
+        delegate.setFeatureState(new FeatureState(TestFeature.valueOf(featureName), enabled));
+    }
+
+    @When("Redis reads take {int} ms and return enabled: {booleanValue}")
+    public void redisReadsTake(int millis, boolean enabled) {
+        doAnswer(invocation -> {
+            lastRedisReadThread = Thread.currentThread();
+            Thread.sleep(millis);
+            return NullableFeatureStateWrapper.of(new FeatureState(TestFeature.SEARCH, enabled));
+        }).when(primaryOperations).get(anyString());
+    }
+
+    @When("{int} ms pass")
+    public void msPass(int millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @When("Redis reads fail")
+    public void redisReadsFail() {
+        doThrow(new IllegalStateException("Redis is down"))
+                .when(primaryOperations).get(anyString());
+    }
+
+    @When("feature {string} is read from the budgeted repository")
+    public void featureIsReadFromTheBudgetedRepository(String featureName) {
+        long startNanos = System.nanoTime();
+        readState = repository.getFeatureState(TestFeature.valueOf(featureName));
+        readMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    @When("feature {string} is read from the budgeted repository while another read waits for the delegate")
+    public void featureIsReadWhileAnotherReadWaitsForTheDelegate(String featureName) throws InterruptedException {
+        Thread otherRead = Thread.startVirtualThread(() ->
+                repository.getFeatureState(TestFeature.valueOf(featureName)));
+        assertThat(delegateReadStarted.await(5, TimeUnit.SECONDS))
+                .as("other read reached the delegate")
+                .isTrue();
+
+        featureIsReadFromTheBudgetedRepository(featureName);
+        otherRead.join();
+    }
+
+    @Then("the last Redis read should have run on the caller's thread: {booleanValue}")
+    public void theLastRedisReadShouldHaveRunOnTheCallersThread(boolean callersThread) {
+        assertThat(lastRedisReadThread == Thread.currentThread())
+                .as("Redis read on caller's thread")
+                .isEqualTo(callersThread);
+    }
+
+    @Then("Redis should eventually be written feature {string} with enabled: {booleanValue}")
+    public void redisShouldEventuallyBeWrittenFeature(String featureName, boolean enabled) {
+        verify(primaryOperations, timeout(5_000))
+                .set(anyString(), argThat(isStateOf(featureName, enabled)), any(Duration.class));
+    }
+
+    @Then("Redis should not have been written feature {string} with enabled: {booleanValue}")
+    public void redisShouldNotHaveBeenWrittenFeature(String featureName, boolean enabled) {
+        verify(primaryOperations, never())
+                .set(anyString(), argThat(isStateOf(featureName, enabled)), any(Duration.class));
+    }
+
+    @Then("the budgeted read should return enabled: {booleanValue}")
+    public void theBudgetedReadShouldReturn(boolean enabled) {
+        assertThat(readState)
+                .as("feature state")
+                .isNotNull();
+        assertThat(readState.isEnabled())
+                .as("enabled")
+                .isEqualTo(enabled);
+    }
+
+    @Then("the budgeted read should return no state")
+    public void theBudgetedReadShouldReturnNoState() {
+        assertThat(readState)
+                .as("feature state")
+                .isNull();
+    }
+
+    @Then("the budgeted read should take less than {int} ms")
+    public void theBudgetedReadShouldTakeLessThan(int millis) {
+        assertThat(readMillis)
+                .as("read time, ms")
+                .isLessThan(millis);
+    }
+
+    @When("feature {string} is read from the cluster-mode repository")
+    public void featureIsReadFromTheClusterModeRepository(String featureName) {
+        repository.getFeatureState(TestFeature.valueOf(featureName));
+    }
+
+    @When("feature {string} is stored in the cluster-mode repository as enabled: {booleanValue}")
+    public void featureIsStoredInTheClusterModeRepository(String featureName, boolean enabled) {
+        repository.setFeatureState(new FeatureState(TestFeature.valueOf(featureName), enabled));
+    }
+
+    @Then("the key of feature {string} should be {string}")
+    public void theKeyOfFeatureShouldBe(String featureName, String expectedKey) {
+        assertThat(cacheKeyBuilder.apply(TestFeature.valueOf(featureName)))
+                .as("cache key")
+                .isEqualTo(expectedKey);
+    }
+
+    @Then("the key of feature {string} for tenant {string} should be {string}")
+    public void theKeyOfFeatureForTenantShouldBe(String featureName, String tenantId, String expectedKey) {
+        assertThat(cacheKeyBuilder.apply(new TenantFeature(tenantId, TestFeature.valueOf(featureName))))
+                .as("cache key")
+                .isEqualTo(expectedKey);
+    }
+
+    @Then("the keys of all features should be in the same hash slot")
+    public void theKeysOfAllFeaturesShouldBeInTheSameHashSlot() {
+        assertThat(Arrays.stream(TestFeature.values())
+                .map(cacheKeyBuilder)
+                .map(ClusterSlotHashUtil::calculateSlot)
+                .distinct())
+                .as("hash slots")
+                .hasSize(1);
+    }
+
+    private static ArgumentMatcher<Object> isStateOf(String featureName, boolean enabled) {
+        return value -> (value instanceof NullableFeatureStateWrapper wrapper)
+                && (wrapper.featureStateDto() != null)
+                && wrapper.featureStateDto().featureName().equals(featureName)
+                && (wrapper.featureStateDto().enabled() == enabled);
+    }
+
+    @Then("the replica should have been read {int} times")
+    public void theReplicaShouldHaveBeenRead(int times) {
+        verify(replicaOperations, times(times)).get(anyString());
+    }
+
+    @Then("the primary should have been read {int} times")
+    public void thePrimaryShouldHaveBeenRead(int times) {
+        verify(primaryOperations, times(times)).get(anyString());
+    }
+
+}
@@ -0,0 +1,173 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.repository.ScheduledFeatureStateRepository;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link ScheduledFeatureStateRepository}. Time is controlled by {@link TestClock}, so
+ * window boundaries are crossed without waiting.
+ */
+public class ScheduledFeatureStateRepositorySteps {
+
+    private static final TestFeature FEATURE = TestFeature.SEARCH;
+
+    private InMemoryStateRepository storage;
+    private InMemoryStateRepository publishedStates;
+    private TestClock clock;
+    private ScheduledFeatureStateRepository repository;
+
+    @Before
+    public void beforeEachScenario() {
+        storage = new InMemoryStateRepository();
+        publishedStates = new InMemoryStateRepository();
+        clock = new TestClock(Instant.parse("2026-01-15T10:00:00Z"));
+        repository = new ScheduledFeatureStateRepository(storage, publishedStates, ZoneOffset.UTC, clock);
+    }
+
+    @After
+    public void afterEachScenario() {
+        repository.close();
+    }
+
+    @Given("the feature is stored with a time window from {int} to {int} days from now")
+    public void theFeatureIsStoredWithATimeWindow(int startDays, int endDays) {
+        LocalDateTime now = LocalDateTime.ofInstant(clock.instant(), ZoneOffset.UTC);
+        storeTimeWindow(now.plusDays(startDays), now.plusDays(endDays), false);
+    }
+
+    @Given("the feature is stored with a time window from {int} to {int} hours from now")
+    public void theFeatureIsStoredWithATimeWindowInHours(int startHours, int endHours) {
+        LocalDateTime now = LocalDateTime.ofInstant(clock.instant(), ZoneOffset.UTC);
+        storeTimeWindow(now.plusHours(startHours), now.plusHours(endHours), true);
+    }
+
+    @When("{int} minutes pass")
+    public void minutesPass(int minutes) {
+        clock.advance(Duration.ofMinutes(minutes));
+    }
+
+    @When("the looked up feature state is saved unmodified")
+    public void theLookedUpFeatureStateIsSavedUnmodified() {
+        repository.setFeatureState(repository.getFeatureState(FEATURE));
+    }
+
+    @When("the looked up feature state is saved without the time window parameters")
+    public void theLookedUpFeatureStateIsSavedWithoutTheTimeWindowParameters() {
+        FeatureState lookedUp = repository.getFeatureState(FEATURE);
+
+        // e.g. an admin UI keeps unknown parameters, but drops those of the cleared strategy
+        var featureState = new FeatureState(FEATURE, lookedUp.isEnabled());
+        featureState.setParameter(ScheduledFeatureStateRepository.ORIGINAL_STRATEGY_PARAMETER,
+                lookedUp.getParameter(ScheduledFeatureStateRepository.ORIGINAL_STRATEGY_PARAMETER));
+        repository.setFeatureState(featureState);
+    }
+
+    @When("the looked up feature state is modified by the caller to enabled: {booleanValue}")
+    public void theLookedUpFeatureStateIsModifiedByTheCaller(boolean enabled) {
+        repository.getFeatureState(FEATURE).setEnabled(enabled);
+    }
+
+    @Then("the effective feature state should be enabled: {booleanValue}")
+    public void theEffectiveFeatureStateShouldBe(boolean enabled) {
+        FeatureState featureState = repository.getFeatureState(FEATURE);
+
+        assertThat(featureState.getStrategyId())
+                .as("effective strategy")
+                .isNull();
+        assertThat(featureState.isEnabled())
+                .as("effective state")
+                .isEqualTo(enabled);
+    }
+
+    @Then("the published feature state should be enabled: {booleanValue}")
+    public void thePublishedFeatureStateShouldBe(boolean enabled) {
+        FeatureState featureState = publishedStates.getFeatureState(FEATURE);
+
+        assertThat(featureState)
+                .as("published state")
+                .isNotNull();
+        assertThat(featureState.isEnabled())
+                .as("published state enabled")
+                .isEqualTo(enabled);
+    }
+
+    @Then("the stored feature strategy should be {string}")
+    public void theStoredFeatureStrategyShouldBe(String strategyId) {
+        FeatureState featureState = storage.getFeatureState(FEATURE);
+
+        assertThat(featureState.getStrategyId())
+                .as("stored strategy")
+                .isEqualTo(strategyId.isEmpty() ? null : strategyId);
+        assertThat(featureState.getParameterNames())
+                .as("stored parameters")
+                .doesNotContain(ScheduledFeatureStateRepository.ORIGINAL_STRATEGY_PARAMETER);
+    }
+
+    private void storeTimeWindow(LocalDateTime start, LocalDateTime end, boolean withTime) {
+        var featureState = new FeatureState(FEATURE, true);
+        featureState.setStrategyId(ScheduledFeatureStateRepository.TIME_WINDOW_STRATEGY_ID);
+        featureState.setParameter(ScheduledFeatureStateRepository.START_DATE_PARAMETER,
+                start.toLocalDate().toString());
+        featureState.setParameter(ScheduledFeatureStateRepository.END_DATE_PARAMETER, end.toLocalDate().toString());
+
+        if (withTime) {
+            featureState.setParameter(ScheduledFeatureStateRepository.START_TIME_PARAMETER,
+                    start.toLocalTime().truncatedTo(ChronoUnit.SECONDS).toString());
+            featureState.setParameter(ScheduledFeatureStateRepository.END_TIME_PARAMETER,
+                    end.toLocalTime().truncatedTo(ChronoUnit.SECONDS).toString());
+        }
+
+        storage.setFeatureState(featureState);
+    }
+
+    /**
+     * Clock whose time only changes when {@link #advance(Duration)} is called.
+     */
+    private static class TestClock extends Clock {
+
+        private volatile Instant instant;
+
+        TestClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException("Zone can't be changed");
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+    }
+
+}
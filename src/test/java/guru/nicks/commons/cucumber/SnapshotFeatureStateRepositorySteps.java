@@ -0,0 +1,147 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.feature.repository.SnapshotFeatureStateRepository;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.And;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.FileSystemUtils;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.StateRepository;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.when;
+
+/**
+ * Step definitions for testing {@link SnapshotFeatureStateRepository}.
+ */
+public class SnapshotFeatureStateRepositorySteps {
+
+    @Mock
+    private Feature feature;
+    @Mock
+    private StateRepository delegate;
+    private AutoCloseable closeableMocks;
+
+    private Path snapshotDir;
+    private Path snapshotFile;
+    private Duration maxAge;
+    private SnapshotFeatureStateRepository repository;
+
+    @Before
+    public void beforeEachScenario() throws IOException {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+        when(feature.name())
+                .thenReturn("SOME_FEATURE");
+
+        snapshotDir = Files.createTempDirectory("feature-snapshot");
+        snapshotFile = snapshotDir.resolve("features.snapshot");
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        if (repository != null) {
+            repository.close();
+        }
+
+        closeableMocks.close();
+        FileSystemUtils.deleteRecursively(snapshotDir);
+    }
+
+    @Given("the delegate repository holds feature state enabled: {booleanValue}")
+    public void theDelegateRepositoryHoldsFeatureState(boolean enabled) {
+        when(delegate.getFeatureState(feature))
+                .thenReturn(new FeatureState(feature, enabled));
+    }
+
+    @And("the snapshot repository with max age {word} has read the feature state")
+    public void theSnapshotRepositoryHasReadTheFeatureState(String maxAge) {
+        this.maxAge = DurationStyle.detectAndParse(maxAge);
+        repository = new SnapshotFeatureStateRepository(delegate, snapshotFile, this.maxAge);
+        repository.getFeatureState(feature);
+    }
+
+    @Given("the snapshot file declares {int} features but holds none")
+    public void theSnapshotFileDeclaresFeaturesButHoldsNone(int count) throws IOException {
+        maxAge = Duration.ofHours(1);
+
+        try (var out = new DataOutputStream(Files.newOutputStream(snapshotFile))) {
+            // magic, format version, written at, feature count
+            out.writeInt(0x54474C5A);
+            out.writeShort(1);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(count);
+        }
+    }
+
+    @Given("the snapshot file holds {int} feature without a name")
+    public void theSnapshotFileHoldsFeatureWithoutAName(int count) throws IOException {
+        theSnapshotFileDeclaresFeaturesButHoldsNone(count);
+
+        try (var out = new DataOutputStream(Files.newOutputStream(snapshotFile, StandardOpenOption.APPEND))) {
+            for (int i = 0; i < count; i++) {
+                // null name, no state
+                out.writeInt(-1);
+                out.writeBoolean(false);
+            }
+        }
+    }
+
+    @When("the feature state is set to enabled: {booleanValue}")
+    public void theFeatureStateIsSetTo(boolean enabled) {
+        repository.setFeatureState(new FeatureState(feature, enabled));
+    }
+
+    @When("the snapshot repository is recreated and the delegate fails")
+    public void theSnapshotRepositoryIsRecreatedAndTheDelegateFails() {
+        when(delegate.getFeatureState(feature))
+                .thenThrow(new IllegalStateException("Delegate is down"));
+
+        // restart: the old instance writes its pending changes on shutdown
+        if (repository != null) {
+            repository.close();
+        }
+
+        repository = new SnapshotFeatureStateRepository(delegate, snapshotFile, maxAge);
+    }
+
+    @And("the snapshot becomes older than its max age")
+    public void theSnapshotBecomesOlderThanItsMaxAge() throws InterruptedException {
+        Thread.sleep(maxAge.toMillis() + 10);
+    }
+
+    @Then("the snapshot repository should return feature state enabled: {booleanValue}")
+    public void theSnapshotRepositoryShouldReturnFeatureState(boolean enabled) {
+        FeatureState featureState = repository.getFeatureState(feature);
+
+        assertThat(featureState)
+                .as("snapshot feature state")
+                .isNotNull();
+        assertThat(featureState.isEnabled())
+                .as("snapshot feature state enabled")
+                .isEqualTo(enabled);
+    }
+
+    @Then("the snapshot repository lookup should fail")
+    public void theSnapshotRepositoryLookupShouldFail() {
+        assertThat(catchThrowable(() -> repository.getFeatureState(feature)))
+                .as("lookup exception")
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+}
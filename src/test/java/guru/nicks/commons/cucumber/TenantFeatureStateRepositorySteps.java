@@ -0,0 +1,200 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.feature.domain.TenantFeature;
+import guru.nicks.commons.feature.repository.BatchStateRepository;
+import guru.nicks.commons.feature.repository.TenantFeatureStateRepository;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.And;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link TenantFeatureStateRepository}.
+ */
+public class TenantFeatureStateRepositorySteps {
+
+    private static final TestFeature FEATURE = TestFeature.SEARCH;
+    private static final int MAX_TENANTS = 2;
+
+    private CountingStateRepository storage;
+    private TenantFeatureStateRepository repository;
+    private String currentTenantId;
+
+    @Before
+    public void beforeEachScenario() {
+        storage = new CountingStateRepository();
+        currentTenantId = null;
+        repository = new TenantFeatureStateRepository(storage, () -> currentTenantId, TestFeature.class,
+                MAX_TENANTS);
+    }
+
+    @Given("the global state of the tenant-scoped feature is enabled: {booleanValue}")
+    public void theGlobalStateOfTheTenantScopedFeatureIs(boolean enabled) {
+        repository.setFeatureState(new FeatureState(FEATURE, enabled));
+    }
+
+    @And("tenant {string} overrides the tenant-scoped feature with enabled: {booleanValue}")
+    public void tenantOverridesTheTenantScopedFeature(String tenantId, boolean enabled) {
+        repository.setTenantFeatureState(tenantId, FEATURE, enabled);
+    }
+
+    @When("tenant {string} removes the tenant-scoped feature override")
+    public void tenantRemovesTheTenantScopedFeatureOverride(String tenantId) {
+        repository.setTenantFeatureState(tenantId, FEATURE, null);
+    }
+
+    @When("tenants {string} look up the tenant-scoped feature")
+    public void tenantsLookUpTheTenantScopedFeature(String tenantIds) {
+        Arrays.stream(tenantIds.split(","))
+                .map(String::strip)
+                .forEach(tenantId -> repository.getFeatureState(tenantId, FEATURE));
+    }
+
+    @When("tenant {string} overrides the tenant-scoped feature with enabled: {booleanValue} while being loaded")
+    public void tenantOverridesTheTenantScopedFeatureWhileLoading(String tenantId, boolean enabled)
+            throws InterruptedException {
+        storage.pauseNextBatchRead();
+        CompletableFuture<Void> lookup = CompletableFuture.runAsync(() ->
+                repository.getFeatureState(tenantId, FEATURE));
+        assertThat(storage.batchReadPaused.await(5, TimeUnit.SECONDS))
+                .as("overrides being loaded")
+                .isTrue();
+
+        CompletableFuture<Void> override = CompletableFuture.runAsync(() ->
+                repository.setTenantFeatureState(tenantId, FEATURE, enabled));
+        assertThat(storage.stateStored.await(5, TimeUnit.SECONDS))
+                .as("override stored")
+                .isTrue();
+
+        storage.batchReadReleased.countDown();
+        CompletableFuture.allOf(lookup, override).orTimeout(5, TimeUnit.SECONDS).join();
+    }
+
+    @When("all tenants are evicted")
+    public void allTenantsAreEvicted() {
+        repository.evictAllTenants();
+    }
+
+    @Then("the overrides should have been loaded with {int} batch read(s) and {int} single read(s)")
+    public void theOverridesShouldHaveBeenLoadedWith(int batchReads, int singleReads) {
+        assertThat(storage.batchReads.get())
+                .as("batch reads")
+                .isEqualTo(batchReads);
+        assertThat(storage.singleTenantReads.get())
+                .as("single reads of tenant overrides")
+                .isEqualTo(singleReads);
+    }
+
+    @Then("for tenant {string} the tenant-scoped feature should be enabled: {booleanValue}")
+    public void forTenantTheTenantScopedFeatureShouldBe(String tenantId, boolean enabled) {
+        currentTenantId = tenantId;
+        assertEnabled(enabled);
+    }
+
+    @Then("without tenant the tenant-scoped feature should be enabled: {booleanValue}")
+    public void withoutTenantTheTenantScopedFeatureShouldBe(boolean enabled) {
+        currentTenantId = null;
+        assertEnabled(enabled);
+    }
+
+    @Then("at most {int} tenants should be held in memory")
+    public void atMostTenantsShouldBeHeldInMemory(int count) {
+        assertThat(repository.getCachedTenantCount())
+                .as("cached tenant count")
+                .isLessThanOrEqualTo(count);
+    }
+
+    private void assertEnabled(boolean enabled) {
+        FeatureState featureState = repository.getFeatureState(FEATURE);
+
+        assertThat(featureState)
+                .as("feature state")
+                .isNotNull();
+        assertThat(featureState.isEnabled())
+                .as("feature state enabled")
+                .isEqualTo(enabled);
+    }
+
+    /**
+     * Counts reads of tenant overrides; can hold the next batch read until released.
+     */
+    private static class CountingStateRepository extends InMemoryStateRepository implements BatchStateRepository {
+
+        private final AtomicInteger batchReads = new AtomicInteger();
+        private final AtomicInteger singleTenantReads = new AtomicInteger();
+        private final CountDownLatch batchReadPaused = new CountDownLatch(1);
+        private final CountDownLatch batchReadReleased = new CountDownLatch(1);
+        /**
+         * Counted down when a tenant override is stored.
+         */
+        private final CountDownLatch stateStored = new CountDownLatch(1);
+        private volatile boolean pauseNextBatchRead;
+
+        void pauseNextBatchRead() {
+            pauseNextBatchRead = true;
+        }
+
+        @Override
+        public FeatureState getFeatureState(Feature feature) {
+            if (feature instanceof TenantFeature) {
+                singleTenantReads.incrementAndGet();
+            }
+
+            return super.getFeatureState(feature);
+        }
+
+        @Override
+        public Map<Feature, FeatureState> getFeatureStates(Collection<? extends Feature> features) {
+            batchReads.incrementAndGet();
+
+            Map<Feature, FeatureState> featureStates = HashMap.newHashMap(features.size());
+            features.forEach(feature -> featureStates.put(feature, super.getFeatureState(feature)));
+
+            if (pauseNextBatchRead) {
+                pauseNextBatchRead = false;
+                batchReadPaused.countDown();
+                awaitRelease();
+            }
+
+            return featureStates;
+        }
+
+        @Override
+        public void setFeatureState(FeatureState featureState) {
+            super.setFeatureState(featureState);
+
+            if (featureState.getFeature() instanceof TenantFeature) {
+                stateStored.countDown();
+            }
+        }
+
+        private void awaitRelease() {
+            try {
+                assertThat(batchReadReleased.await(5, TimeUnit.SECONDS))
+                        .as("batch read released")
+                        .isTrue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.domain.TestFeature;
+import guru.nicks.commons.cucumber.world.TextWorld;
+import guru.nicks.commons.feature.domain.NullableFeatureStateWrapper;
+import guru.nicks.commons.feature.repository.CachingFeatureStateRepository;
+import guru.nicks.commons.feature.repository.WriteBehindStateRepository;
+
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import lombok.RequiredArgsConstructor;
+import org.togglz.core.Feature;
+import org.togglz.core.repository.FeatureState;
+import org.togglz.core.repository.mem.InMemoryStateRepository;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Step definitions for testing {@link WriteBehindStateRepository}.
+ */
+@RequiredArgsConstructor
+public class WriteBehindStateRepositorySteps {
+
+    private static final TestFeature FEATURE = TestFeature.WALLET_PAYMENTS;
+
+    // DI
+    private final TextWorld textWorld;
+
+    private CountingStateRepository storage;
+    private WriteBehindStateRepository writeBehindRepository;
+    private CachingFeatureStateRepository cachingRepository;
+
+    @Before
+    public void beforeEachScenario() {
+        storage = new CountingStateRepository();
+    }
+
+    @Given("a write-behind repository")
+    public void aWriteBehindRepository() {
+        // no flushing thread, flushes are triggered by steps
+        writeBehindRepository = new WriteBehindStateRepository(storage, Duration.ZERO);
+    }
+
+    @Given("a write-behind repository behind a cache")
+    public void aWriteBehindRepositoryBehindACache() {
+        aWriteBehindRepository();
+
+        Map<Feature, NullableFeatureStateWrapper> cache = new ConcurrentHashMap<>();
+        cachingRepository = new CachingFeatureStateRepository(writeBehindRepository, cache::get, cache::put);
+    }
+
+    @Given("the persistent repository rejects feature {string}: {booleanValue}")
+    public void thePersistentRepositoryRejectsFeature(String featureName, boolean rejecting) {
+        storage.rejectedFeatureName = rejecting
+                ? featureName
+                : null;
+    }
+
+    @When("feature {string} is written behind as enabled: {booleanValue}")
+    public void featureIsWrittenBehindAsEnabled(String featureName, boolean enabled) {
+        writeBehindRepository.setFeatureState(new FeatureState(TestFeature.valueOf(featureName), enabled));
+    }
+
+    @When("the caching repository is closed")
+    public void theCachingRepositoryIsClosed() throws Exception {
+        cachingRepository.setFeatureState(new FeatureState(FEATURE, true));
+        cachingRepository.close();
+    }
+
+    @Then("feature {string} should be persisted as enabled: {booleanValue}")
+    public void featureShouldBePersistedAsEnabled(String featureName, boolean enabled) {
+        assertThat(storage.getFeatureState(TestFeature.valueOf(featureName)))
+                .as("persisted feature state")
+                .isNotNull()
+                .extracting(FeatureState::isEnabled)
+                .isEqualTo(enabled);
+    }
+
+    @Then("feature {string} should not be persisted")
+    public void featureShouldNotBePersisted(String featureName) {
+        assertThat(storage.getFeatureState(TestFeature.valueOf(featureName)))
+                .as("persisted feature state")
+                .isNull();
+    }
+
+    @Given("the persistent repository fails: {booleanValue}")
+    public void thePersistentRepositoryFails(boolean failing) {
+        storage.failing = failing;
+    }
+
+    @When("the write-behind feature is set to enabled: {booleanValue}")
+    public void theWriteBehindFeatureIsSetToEnabled(boolean enabled) {
+        writeBehindRepository.setFeatureState(new FeatureState(FEATURE, enabled));
+    }
+
+    @When("write-behind writes are flushed")
+    public void writeBehindWritesAreFlushed() {
+        textWorld.setLastException(catchThrowable(() -> writeBehindRepository.flush()));
+    }
+
+    @When("the write-behind repository is closed")
+    public void theWriteBehindRepositoryIsClosed() throws InterruptedException {
+        writeBehindRepository.close();
+    }
+
+    @Then("the write-behind feature should be read as enabled: {booleanValue}")
+    public void theWriteBehindFeatureShouldBeReadAsEnabled(boolean enabled) {
+        assertThat(writeBehindRepository.getFeatureState(FEATURE))
+                .as("feature state")
+                .isNotNull()
+                .extracting(FeatureState::isEnabled)
+                .isEqualTo(enabled);
+    }
+
+    @Then("the persistent repository should have received {int} writes")
+    public void thePersistentRepositoryShouldHaveReceivedWrites(int writes) {
+        assertThat(storage.writeCount)
+                .as("persistent writes")
+                .isEqualTo(writes);
+    }
+
+    @Then("the persisted write-behind feature should be enabled: {booleanValue}")
+    public void thePersistedWriteBehindFeatureShouldBeEnabled(boolean enabled) {
+        assertThat(storage.getFeatureState(FEATURE))
+                .as("persisted feature state")
+                .isNotNull()
+                .extracting(FeatureState::isEnabled)
+                .isEqualTo(enabled);
+    }
+
+    @Then("the write-behind lag should be positive: {booleanValue}")
+    public void theWriteBehindLagShouldBePositive(boolean positive) {
+        assertThat(writeBehindRepository.getLagSeconds() > 0)
+                .as("lag is positive")
+                .isEqualTo(positive);
+    }
+
+    private static class CountingStateRepository extends InMemoryStateRepository {
+
+        private volatile boolean failing;
+        private volatile String rejectedFeatureName;
+        private int writeCount;
+
+        @Override
+        public void setFeatureState(FeatureState featureState) {
+            if (failing) {
+                throw new IllegalStateException("Database unavailable");
+            }
+
+            if (featureState.getFeature().name().equals(rejectedFeatureName)) {
+                throw new IllegalArgumentException("Constraint violated");
+            }
+
+            writeCount++;
+            super.setFeatureState(featureState);
+        }
+
+    }
+
+}
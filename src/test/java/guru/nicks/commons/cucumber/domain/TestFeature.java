@@ -0,0 +1,67 @@
+package guru.nicks.commons.cucumber.domain;
+
+import guru.nicks.commons.feature.EnhancedFeature;
+import guru.nicks.commons.feature.annotation.AsyncIfDisabled;
+import guru.nicks.commons.feature.annotation.AutoDisable;
+import guru.nicks.commons.feature.annotation.ClientVisible;
+import guru.nicks.commons.feature.annotation.HowToToggle;
+
+import org.togglz.core.annotation.FeatureGroup;
+import org.togglz.core.annotation.Label;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Features used in tests. Group membership is declared with {@link FeatureGroup @FeatureGroup} meta-annotations.
+ */
+public enum TestFeature implements EnhancedFeature {
+
+    @Label("Card payments")
+    @PaymentsGroup
+    @ClientVisible
+    CARD_PAYMENTS,
+
+    @Label("Wallet payments")
+    @PaymentsGroup
+    WALLET_PAYMENTS,
+
+    @Label("Daily report")
+    @ReportsGroup
+    @ClientVisible
+    DAILY_REPORT,
+
+    @Label("Legacy report")
+    @ReportsGroup
+    @HowToToggle(HowToToggle.MODULE_REBUILD_REQUIRED)
+    LEGACY_REPORT,
+
+    @Label("Search")
+    @AsyncIfDisabled(recheckOnExecution = true)
+    SEARCH,
+
+    @Label("Recommendations")
+    @AutoDisable(minCalls = 3, maxErrorRate = 0.5, retryAfterSeconds = 0, probeCalls = 1,
+            ignoreExceptions = IllegalArgumentException.class)
+    RECOMMENDATIONS;
+
+    public static final String PAYMENTS_GROUP = "payments";
+    public static final String REPORTS_GROUP = "reports";
+
+    @FeatureGroup(PAYMENTS_GROUP)
+    @Label("Payments")
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.FIELD)
+    public @interface PaymentsGroup {
+    }
+
+    @FeatureGroup(REPORTS_GROUP)
+    @Label("Reports")
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.FIELD)
+    public @interface ReportsGroup {
+    }
+
+}
@@ -0,0 +1,19 @@
+Feature: Caching Feature State Repository
+
+  Scenario: Unchanged cached content is decoded once
+    Given the cache holds feature "SEARCH" with enabled: true and parameter "percentage" = "10"
+    When the cached feature "SEARCH" is read twice, each time deserialized anew
+    Then both reads should return the same feature state instance
+
+  Scenario: Changed cached content is decoded again
+    Given the cache holds feature "SEARCH" with enabled: true and parameter "percentage" = "10"
+    And the cached feature "SEARCH" is read
+    When the cache holds feature "SEARCH" with enabled: true and parameter "percentage" = "20"
+    Then the cached feature "SEARCH" should have parameter "percentage" = "20"
+
+  Scenario: Shared cached state is read-only, its copy is not
+    Given the cache holds feature "SEARCH" with enabled: true and parameter "percentage" = "10"
+    When the cached feature "SEARCH" is read
+    Then modifying the read feature state should fail
+    And the copy of the read feature state should be modifiable
+    And the cached feature "SEARCH" should still be enabled: true
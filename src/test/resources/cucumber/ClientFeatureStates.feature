@@ -0,0 +1,74 @@
+Feature: Client Feature States
+
+  Scenario: Full payload contains client-visible features only
+    Given client feature states where active features are "CARD_PAYMENTS,SEARCH"
+    Then the full client payload should be '{"CARD_PAYMENTS":true,"DAILY_REPORT":false}'
+
+  Scenario: Unchanged states keep version and ETag
+    Given client feature states where active features are "CARD_PAYMENTS"
+    When client feature states are refreshed
+    Then the client states version and ETag should not change
+
+  Scenario: Changed state produces new version and delta
+    Given client feature states where active features are "CARD_PAYMENTS"
+    When active features become "CARD_PAYMENTS,DAILY_REPORT"
+    And client feature states are refreshed
+    Then the client states version and ETag should change
+    And the delta since the first version should be '{"DAILY_REPORT":true}'
+    And the current ETag should match If-None-Match
+
+  Scenario: Changes of features not visible to clients are ignored
+    Given client feature states where active features are "CARD_PAYMENTS"
+    When active features become "CARD_PAYMENTS,SEARCH"
+    And client feature states are refreshed
+    Then the client states version and ETag should not change
+
+  Scenario: Versions not issued by this node are unknown
+    Given client feature states where active features are "CARD_PAYMENTS"
+    Then version 1 should be unknown to client feature states
+
+  Scenario: Full payload is served with the identity ETag
+    Given client feature states where active features are "CARD_PAYMENTS"
+    When client feature states are requested with If-None-Match "" and Accept-Encoding ""
+    Then the response status should be 200
+    And the response ETag should be the identity ETag
+    And the response header "Vary" should be "Accept-Encoding"
+    And the response header "Content-Encoding" should be ""
+    And the response body should be the full payload
+
+  Scenario: Gzipped payload has its own ETag
+    Given client feature states where active features are "CARD_PAYMENTS"
+    When client feature states are requested with If-None-Match "" and Accept-Encoding "gzip, deflate"
+    Then the response status should be 200
+    And the response ETag should be the gzip ETag
+    And the response header "Vary" should be "Accept-Encoding"
+    And the response header "Content-Encoding" should be "gzip"
+    And the response body should be the full payload
+
+  Scenario: Delta payload has its own ETag and is not gzipped
+    Given client feature states where active features are "CARD_PAYMENTS"
+    When active features become "CARD_PAYMENTS,DAILY_REPORT"
+    And client feature states are refreshed
+    And client feature states are requested since the first version with Accept-Encoding "gzip"
+    Then the response status should be 200
+    And the response ETag should be the delta ETag
+    And the response header "Content-Encoding" should be ""
+    And the response body should be the delta payload
+
+  Scenario Outline: Current ETag of any representation results in 304
+    Given client feature states where active features are "CARD_PAYMENTS"
+    When client feature states are requested with If-None-Match "<ifNoneMatch>" and Accept-Encoding "<acceptEncoding>"
+    Then the response status should be 304
+    And the response ETag should be the <representation> ETag
+    And the response header "Vary" should be "Accept-Encoding"
+    Examples:
+      | ifNoneMatch                | acceptEncoding | representation |
+      | <identity ETag>            |                | identity       |
+      | W/<gzip ETag>              | gzip           | gzip           |
+      | \"stale\", <identity ETag> | gzip           | gzip           |
+      | *                          |                | identity       |
+
+  Scenario: Stale ETag results in the full payload
+    Given client feature states where active features are "CARD_PAYMENTS"
+    When client feature states are requested with If-None-Match "\"stale\"" and Accept-Encoding ""
+    Then the response status should be 200
@@ -0,0 +1,45 @@
+Feature: Expression Activation Strategy
+
+  Scenario Outline: Expression is evaluated against the context
+    Given the feature expression is "<expression>"
+    And the expression context has user "<user>", region "<region>", plan "<plan>"
+    Then the feature should be active: <active>
+
+    Examples:
+      | expression                                       | user  | region | plan  | active |
+      | region == 'EU'                                   | alice | EU     | pro   | true   |
+      | region == 'EU'                                   | alice | US     | pro   | false  |
+      | region in ('EU', 'UK') and plan != 'free'        | alice | UK     | pro   | true   |
+      | region in ('EU', 'UK') and plan != 'free'        | alice | UK     | free  | false  |
+      | not (plan == 'free') or region == 'US'           | alice | US     | free  | true   |
+      | percentage(100)                                  | alice | EU     | pro   | true   |
+      | percentage(0)                                    | alice | EU     | pro   | false  |
+      | tier == 'gold'                                   | alice | EU     | pro   | false  |
+
+  Scenario: Invalid expression deactivates the feature
+    Given the feature expression is "region === 'EU'"
+    And the expression context has user "alice", region "EU", plan "pro"
+    Then the feature should be active: false
+
+  Scenario: Changed expression is recompiled
+    Given the feature expression is "region == 'EU'"
+    And the expression context has user "alice", region "US", plan "pro"
+    And the feature should be active: false
+    When the feature expression is "region == 'US'"
+    Then the feature should be active: true
+
+  Scenario: Percentage rollout is stable and roughly proportional
+    Given the feature expression is "percentage(30)"
+    When 1000 distinct users are checked twice each
+    Then each user should have got the same result both times
+    And between 250 and 350 users should be active
+
+  Scenario Outline: Other attributes of the Togglz user are available to expressions
+    Given the feature expression is "tier == 'gold'"
+    And the Togglz user "alice" has attribute "tier" = "<tier>"
+    Then the feature should be active: <active>
+
+    Examples:
+      | tier   | active |
+      | gold   | true   |
+      | silver | false  |
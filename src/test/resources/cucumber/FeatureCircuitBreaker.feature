@@ -0,0 +1,40 @@
+Feature: Feature Circuit Breaker
+
+  Scenario: Feature is disabled after too many failures
+    Given the auto-disabled feature is stored as enabled
+    When the gated call fails 3 times
+    Then the auto-disabled feature should be stored as enabled: false
+    And the circuit breaker state should be OPEN
+
+  Scenario: Feature is re-enabled after a successful probe
+    Given the auto-disabled feature is stored as enabled
+    When the gated call fails 3 times
+    And the gated call succeeds
+    Then the auto-disabled feature should be stored as enabled: true
+    And the circuit breaker state should be CLOSED
+
+  Scenario: Too few calls don't disable the feature
+    Given the auto-disabled feature is stored as enabled
+    When the gated call fails 2 times
+    Then the auto-disabled feature should be stored as enabled: true
+    And the circuit breaker state should be CLOSED
+
+  Scenario: Ignored exceptions don't disable the feature
+    Given the auto-disabled feature is stored as enabled
+    When the gated call fails with IllegalArgumentException 3 times
+    Then the auto-disabled feature should be stored as enabled: true
+    And the circuit breaker state should be CLOSED
+
+  Scenario: Feature auto-disabled elsewhere is probed
+    Given the auto-disabled feature is stored as auto-disabled by another node
+    When the gated call succeeds
+    Then the gated target should have been called 1 times
+    And the auto-disabled feature should be stored as enabled: true
+    And the circuit breaker state should be CLOSED
+
+  Scenario: Feature disabled manually is not probed
+    Given the auto-disabled feature is stored as disabled
+    When the gated call succeeds
+    Then the gated target should have been called 0 times
+    And the auto-disabled feature should be stored as enabled: false
+    And the circuit breaker state should be CLOSED
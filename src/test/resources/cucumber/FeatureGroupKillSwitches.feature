@@ -0,0 +1,22 @@
+Feature: Feature Group Kill-Switches
+
+  Scenario Outline: Disabled group disables its member features only
+    When feature group "payments" kill-switch is set to enabled: false
+    Then feature <feature> should be allowed by groups: <allowed>
+    Examples:
+      | feature         | allowed |
+      | CARD_PAYMENTS   | false   |
+      | WALLET_PAYMENTS | false   |
+      | DAILY_REPORT    | true    |
+      | SEARCH          | true    |
+
+  Scenario: Re-enabled group allows its member features again
+    When feature group "payments" kill-switch is set to enabled: false
+    And feature group "payments" kill-switch is set to enabled: true
+    Then feature CARD_PAYMENTS should be allowed by groups: true
+
+  Scenario: Group state is stored in the state repository
+    When feature group "reports" kill-switch is set to enabled: false
+    And feature group kill-switches are reloaded from the storage
+    Then feature DAILY_REPORT should be allowed by groups: false
+    And feature CARD_PAYMENTS should be allowed by groups: true
@@ -0,0 +1,17 @@
+Feature: Feature Group Toggler
+
+  Scenario: All features of a group are toggled with one batch
+    Given features of group "payments" are stored as enabled: true
+    When group "payments" is toggled to enabled: false
+    Then features of group "payments" should be enabled: false
+    And feature SEARCH should not be stored
+
+  Scenario: Batch containing a read-only feature is rejected entirely
+    Given features of group "reports" are stored as enabled: true
+    When group "reports" is toggled to enabled: false
+    Then the group toggle should fail with IllegalStateException
+    And features of group "reports" should be enabled: true
+
+  Scenario: Unknown group is rejected
+    When group "unknown" is toggled to enabled: false
+    Then the group toggle should fail with IllegalArgumentException
@@ -0,0 +1,45 @@
+Feature: Feature Latency Recorder
+
+  Scenario: Percentiles are computed within histogram precision
+    Given latencies from 1 to 1000 microseconds are recorded
+    When the latency interval is swapped
+    Then the latency count should be 1000
+    And the latency at percentile 50 should be about 500 microseconds
+    And the latency at percentile 99 should be about 990 microseconds
+    And the max. latency should be 1000 microseconds
+
+  Scenario: Swapping starts a new interval
+    Given latencies from 1 to 10 microseconds are recorded
+    When the latency interval is swapped
+    And the latency interval is swapped
+    Then the latency count should be 0
+
+  Scenario: Gated calls are recorded per path
+    When a gated call is timed on the enabled path 3 times
+    And a gated call is timed on the fallback path 2 times
+    And the recorder intervals are swapped
+    Then the recorder should report 3 calls on the enabled path
+    And the recorder should report 2 calls on the fallback path
+
+  Scenario: Meters are registered for entries created before and after binding
+    Given a gated call is timed on the fallback path 1 times
+    And the recorder is bound to a meter registry
+    When a gated call is timed on the enabled path 3 times
+    And the recorder intervals are swapped
+    Then the latency summary of the enabled path should have count 3
+    And the latency summary of the enabled path should publish a percentile histogram
+    And the latency summary of the fallback path should have count 0
+    And the latency count gauge of the enabled path should be 3
+    And there should be 4 latency percentile gauges per path
+
+  Scenario Outline: Interceptor records gated calls on the path taken
+    Given the recorder is bound to a meter registry
+    And a feature is enabled for the latency interceptor: <featureEnabled>
+    When the latency-recording interceptor is invoked 2 times
+    And the recorder intervals are swapped
+    Then the recorder should report 2 calls on the <path> path
+    And the latency summary of the <path> path should have count 2
+    Examples:
+      | featureEnabled | path     |
+      | true           | enabled  |
+      | false          | fallback |
@@ -0,0 +1,50 @@
+Feature: Feature Lifecycle Manager
+
+  Scenario: Beans of features found off on startup are released
+    Given the lifecycle feature is stored as enabled: false
+    And a lifecycle-aware bean is registered
+    When feature lifecycles are reconciled
+    Then the lifecycle-aware bean should have received "disabled"
+
+  Scenario: Beans of features having no stored state are left as is
+    Given a lifecycle-aware bean is registered
+    When feature lifecycles are reconciled
+    Then the lifecycle-aware bean should have received ""
+
+  Scenario: Hooks alternate and aren't repeated for the same state
+    Given a lifecycle-aware bean is registered
+    When the lifecycle feature change event says enabled: false
+    And the lifecycle feature change event says enabled: false
+    And the lifecycle feature change event says enabled: true
+    And the lifecycle feature change event says enabled: true
+    Then the lifecycle-aware bean should have received "disabled,enabled"
+
+  Scenario: Released beans are warmed up before the first call let through
+    Given a lifecycle-aware bean is registered
+    And the lifecycle feature change event says enabled: false
+    When a call is let through to the lifecycle-aware bean
+    Then the call should reach the lifecycle-aware bean: true
+    And the lifecycle-aware bean should have received "disabled,enabled"
+
+  Scenario: Stale enabled reads right after a disabling event don't warm released beans up
+    Given lifecycle warm-up is refused for 60 seconds after a disabling event
+    And a lifecycle-aware bean is registered
+    And the lifecycle feature change event says enabled: false
+    When a call is let through to the lifecycle-aware bean
+    Then the call should reach the lifecycle-aware bean: false
+    And the lifecycle-aware bean should have received "disabled"
+
+  Scenario: Bean registered after the feature was found off is released right away
+    Given the lifecycle feature is stored as enabled: false
+    And feature lifecycles are reconciled
+    When a lifecycle-aware bean is registered
+    Then the lifecycle-aware bean should have received "disabled"
+
+  Scenario: Probe calls of an auto-disabled feature warm released beans up
+    Given lifecycle warm-up is refused for 60 seconds after a disabling event
+    And a lifecycle-aware bean is gated by an auto-disabled feature
+    When the gated lifecycle-aware bean fails 3 times
+    And the lifecycle feature change event says enabled: false
+    And the gated lifecycle-aware bean is called
+    Then the lifecycle-aware bean should have received "disabled,enabled"
+    And the auto-disabled lifecycle feature should be stored as enabled: true
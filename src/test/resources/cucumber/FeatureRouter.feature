@@ -0,0 +1,31 @@
+Feature: Feature Router
+
+  Scenario: Calls go to the fallback while the routing feature is inactive
+    Given a feature router for greeters where routing feature active: false
+    When the routed greeter greets "Alice"
+    Then the greeting should be "legacy: Alice"
+
+  Scenario: Calls go to the new implementation after a reported state change
+    Given a feature router for greeters where routing feature active: false
+    When the routing feature becomes active: true
+    And the routing feature change is reported to the router
+    And the routed greeter greets "Alice"
+    Then the greeting should be "new: Alice"
+
+  Scenario: Routing decision is cached until the state version changes
+    Given a feature router for greeters where routing feature active: false
+    When the routing feature becomes active: true
+    And the routed greeter greets "Alice"
+    Then the greeting should be "legacy: Alice"
+
+  Scenario: Changes of other features don't invalidate the routing decision
+    Given a feature router for greeters where routing feature active: false
+    When the routing feature becomes active: true
+    And a change of feature "CARD_PAYMENTS" is reported to the router
+    And the routed greeter greets "Alice"
+    Then the greeting should be "legacy: Alice"
+
+  Scenario: Exceptions of implementations are propagated as is
+    Given a feature router for greeters where routing feature active: false
+    When the routed greeter greets ""
+    Then the exception should be of type "IllegalArgumentException"
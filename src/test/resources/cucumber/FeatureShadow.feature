@@ -0,0 +1,28 @@
+Feature: Feature Shadow
+
+  Scenario: Void method call is mirrored if shadow mode is on
+    Given the shadowed feature has parameter "shadow.sample-percentage" set to "100"
+    When a void method of the shadowed feature is called
+    Then the call should be mirrored: true
+
+  Scenario: Void method call is not mirrored if shadow mode is off
+    Given the shadowed feature is stored as disabled
+    When a void method of the shadowed feature is called
+    Then the call should be mirrored: false
+
+  Scenario: Non-void method call is mirrored only if listed
+    Given the shadowed feature has parameter "shadow.sample-percentage" set to "100"
+    When a non-void method of the shadowed feature is called
+    Then the call should be mirrored: false
+
+  Scenario: Listed non-void method call is mirrored
+    Given the shadowed feature has parameter "shadow.sample-percentage" set to "100"
+    And the shadowed feature has parameter "shadow.non-void-methods" set to "toString"
+    When a non-void method of the shadowed feature is called
+    Then the call should be mirrored: true
+
+  Scenario: Shadow calls are dropped if too many are pending
+    Given the shadowed feature has parameter "shadow.sample-percentage" set to "100"
+    And a shadow call is blocked
+    When a void method of the shadowed feature is called
+    Then the call should be mirrored: false
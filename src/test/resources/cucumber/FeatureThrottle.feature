@@ -0,0 +1,30 @@
+Feature: Feature Throttle
+
+  Scenario: All calls are admitted without degraded mode parameters
+    Given the throttled feature is stored as enabled
+    When the throttled feature is called 100 times
+    Then 100 calls should be admitted
+
+  Scenario: No calls are admitted if the admitted percentage is zero
+    Given the throttled feature is stored as enabled
+    And the throttled feature has parameter "degraded.admitted-percentage" set to "0"
+    When the throttled feature is called 100 times
+    Then 0 calls should be admitted
+
+  Scenario: Bursts are limited by the max. rate
+    Given the throttled feature is stored as enabled
+    And the throttled feature has parameter "degraded.max-calls-per-second" set to "5"
+    When the throttled feature is called 100 times
+    Then 1 calls should be admitted
+
+  Scenario: Calls of a single thread are admitted at the full max. rate
+    Given the throttled feature is stored as enabled
+    And the throttled feature has parameter "degraded.max-calls-per-second" set to "5"
+    When the throttled feature is called 100 times within 2000 ms
+    Then 10 calls should be admitted
+
+  Scenario: Invalid parameters are ignored
+    Given the throttled feature is stored as enabled
+    And the throttled feature has parameter "degraded.max-calls-per-second" set to "many"
+    When the throttled feature is called 100 times
+    Then 100 calls should be admitted
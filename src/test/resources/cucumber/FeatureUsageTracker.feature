@@ -0,0 +1,27 @@
+Feature: Feature Usage Tracker
+
+  Scenario: Checks and gated calls are counted per feature
+    When feature "SEARCH" is checked 3 times with result active: true
+    And feature "SEARCH" is checked 2 times with result active: false
+    And a bean gated by feature "SEARCH" is called 4 times
+    Then feature "SEARCH" usage should have 5 checks, 3 active checks, and 4 intercepted calls
+    And feature "SEARCH" usage should have the last check time
+
+  Scenario: Features never checked are reported as unused
+    When feature "SEARCH" is checked 1 times with result active: true
+    Then feature "LEGACY_REPORT" usage should have 0 checks, 0 active checks, and 0 intercepted calls
+    And feature "LEGACY_REPORT" usage should have no last check time
+
+  Scenario: Sampled call sites point to the caller
+    When feature "SEARCH" is checked 3 times with result active: true
+    Then feature "SEARCH" usage should have a call site in the usage tracker steps
+
+  Scenario: Usage is flushed to the sink on close
+    When feature "SEARCH" is checked 2 times with result active: true
+    And the usage tracker is closed
+    Then the usage sink should have received 2 checks of feature "SEARCH"
+
+  Scenario: Internal checks are not counted as usage
+    When feature "SEARCH" is checked 2 times by the feature tester, tracking usage: true
+    And feature "SEARCH" is checked 3 times by the feature tester, tracking usage: false
+    Then feature "SEARCH" usage should have 2 checks, 2 active checks, and 0 intercepted calls
@@ -0,0 +1,24 @@
+Feature: Gated Bean Index
+
+  Scenario: Classes of the indexed code source may be gated only if they or their superclasses are indexed
+    Given gating annotation "test.Gated" is marked with @FeatureGate: true
+    And class "test.GatedService" is annotated with "test.Gated"
+    And class "test.GatedSubService" extends "test.GatedService"
+    And class "test.PlainService" is not annotated
+    When the classes are compiled with gating annotations "test.Gated"
+    Then compiled class "test.GatedService" may be gated: true
+    And compiled class "test.GatedSubService" may be gated: true
+    And compiled class "test.PlainService" may be gated: false
+
+  Scenario: Classes of code sources having no index may be gated
+    Given gating annotation "test.Gated" is marked with @FeatureGate: true
+    And class "test.GatedService" is annotated with "test.Gated"
+    And class "test.PlainService" is not annotated
+    When the classes are compiled with gating annotations "test.Gated"
+    Then compiled class "guru.nicks.commons.cucumber.GatedBeanIndexSteps" may be gated: true
+    And compiled class "java.util.ArrayList" may be gated: false
+
+  Scenario: Without index every class of the application may be gated
+    Given class "test.PlainService" is not annotated
+    When the classes are compiled with gating annotations ""
+    Then compiled class "test.PlainService" may be gated: true
@@ -0,0 +1,35 @@
+Feature: Gated Bean Index Processor
+
+  Scenario: Classes annotated with listed gating annotations are indexed
+    Given gating annotation "test.Gated" is marked with @FeatureGate: true
+    And gating annotation "test.Other" is marked with @FeatureGate: true
+    And class "test.GatedService" is annotated with "test.Gated"
+    And class "test.OtherService" is annotated with "test.Other"
+    And class "test.PlainService" is not annotated
+    When the classes are compiled with gating annotations "test.Gated"
+    Then the compilation should succeed: true
+    And the gated bean index should be "test.GatedService=SEARCH"
+
+  Scenario: Nothing is indexed if no gating annotations are listed
+    Given gating annotation "test.Gated" is marked with @FeatureGate: true
+    And class "test.GatedService" is annotated with "test.Gated"
+    When the classes are compiled with gating annotations ""
+    Then the compilation should succeed: true
+    And the gated bean index should be ""
+
+  Scenario: Listed annotations must be marked with @FeatureGate
+    Given gating annotation "test.Gated" is marked with @FeatureGate: false
+    And class "test.GatedService" is annotated with "test.Gated"
+    When the classes are compiled with gating annotations "test.Gated"
+    Then the compilation should succeed: false
+
+  Scenario: Incremental compilation merges the existing index and drops classes no longer annotated
+    Given gating annotation "test.Gated" is marked with @FeatureGate: true
+    And class "test.GatedService" is annotated with "test.Gated"
+    And class "test.OtherGatedService" is annotated with "test.Gated"
+    And the classes are compiled with gating annotations "test.Gated"
+    And class "test.GatedService" is not annotated
+    And class "test.NewGatedService" is annotated with "test.Gated"
+    When classes "test.GatedService,test.NewGatedService" are recompiled with gating annotations "test.Gated"
+    Then the compilation should succeed: true
+    And the gated bean index should be "test.NewGatedService=SEARCH,test.OtherGatedService=SEARCH"
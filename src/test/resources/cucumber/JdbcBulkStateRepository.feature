@@ -0,0 +1,47 @@
+Feature: JDBC Bulk State Repository
+
+  Scenario: All feature states are loaded by a new instance
+    Given JDBC feature "SEARCH" is stored with enabled: true
+    And JDBC feature "DAILY_REPORT" is stored with enabled: false
+    When another JDBC repository instance is created
+    Then in the other JDBC repository instance feature "SEARCH" should be enabled: true
+    And in the other JDBC repository instance feature "DAILY_REPORT" should be enabled: false
+
+  Scenario: Changes made by another instance are picked up on refresh
+    Given JDBC feature "SEARCH" is stored with enabled: true
+    And another JDBC repository instance is created
+    When JDBC feature "SEARCH" is stored with enabled: false
+    Then in the other JDBC repository instance feature "SEARCH" should be enabled: true
+    When the other JDBC repository instance is refreshed
+    Then in the other JDBC repository instance feature "SEARCH" should be enabled: false
+
+  Scenario: Batch write stores strategies and parameters
+    Given JDBC features "SEARCH, RECOMMENDATIONS" are stored in one batch with strategy "gradual" and parameter "percentage" = "25"
+    When another JDBC repository instance is created
+    Then in the other JDBC repository instance feature "RECOMMENDATIONS" should have strategy "gradual" and parameter "percentage" = "25"
+    And in the other JDBC repository instance feature "SEARCH" should have strategy "gradual" and parameter "percentage" = "25"
+
+  Scenario: Only changed feature states are reloaded
+    Given JDBC feature "SEARCH" is stored with enabled: true
+    And JDBC feature "DAILY_REPORT" is stored with enabled: true
+    And another JDBC repository instance is created
+    When JDBC feature "SEARCH" is stored with enabled: false
+    And the other JDBC repository instance is refreshed
+    Then the other JDBC repository instance should have reloaded 1 feature state
+    And in the other JDBC repository instance feature "SEARCH" should be enabled: false
+    When the other JDBC repository instance is refreshed
+    Then the other JDBC repository instance should have reloaded 0 feature states
+
+  Scenario: Feature states deleted from the table are picked up on refresh
+    Given JDBC feature "SEARCH" is stored with enabled: true
+    And JDBC feature "DAILY_REPORT" is stored with enabled: true
+    And another JDBC repository instance is created
+    When JDBC feature "SEARCH" is deleted from the table
+    And the other JDBC repository instance is refreshed
+    Then in the other JDBC repository instance feature "SEARCH" should have no state
+    And in the other JDBC repository instance feature "DAILY_REPORT" should be enabled: true
+
+  Scenario: Feature occurring twice in a batch is stored once, with its last state
+    Given JDBC feature "SEARCH" is stored twice in one batch, with enabled: true and then false
+    When another JDBC repository instance is created
+    Then in the other JDBC repository instance feature "SEARCH" should be enabled: false
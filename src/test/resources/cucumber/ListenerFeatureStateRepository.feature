@@ -0,0 +1,41 @@
+Feature: Listener feature state repository
+
+  Scenario: Changes queued while the dispatcher is busy are coalesced in queue order
+    Given a listener repository with queue capacity 10 and backpressure policy CALLER_RUNS
+    When the listener dispatcher is busy with feature "SEARCH" set to enabled: true
+    And feature "CARD_PAYMENTS" is set in the listener repository to enabled: true
+    And feature "SEARCH" is set in the listener repository to enabled: false
+    And feature "CARD_PAYMENTS" is set in the listener repository to enabled: false
+    And feature "SEARCH" is set in the listener repository to enabled: true
+    And the listener repository is closed
+    Then the listener should have received batches "SEARCH=true|CARD_PAYMENTS=false,SEARCH=true"
+
+  Scenario: Full queue drops changes with DROP policy
+    Given a listener repository with queue capacity 1 and backpressure policy DROP
+    When the listener dispatcher is busy with feature "SEARCH" set to enabled: true
+    And feature "CARD_PAYMENTS" is set in the listener repository to enabled: true
+    And feature "DAILY_REPORT" is set in the listener repository to enabled: true
+    And feature "CARD_PAYMENTS" is set in the listener repository to enabled: false
+    And the listener repository is closed
+    Then the listener should have received batches "SEARCH=true|CARD_PAYMENTS=false"
+    And 1 listener changes should have been dropped
+
+  Scenario: Full queue delivers changes on the caller's thread with CALLER_RUNS policy
+    Given a listener repository with queue capacity 1 and backpressure policy CALLER_RUNS
+    When the listener dispatcher is busy with feature "SEARCH" set to enabled: true
+    And feature "CARD_PAYMENTS" is set in the listener repository to enabled: true
+    And feature "DAILY_REPORT" is set in the listener repository to enabled: true
+    And the listener repository is closed
+    Then the listener should have received batches "SEARCH=true|DAILY_REPORT=true|CARD_PAYMENTS=true"
+    And feature "DAILY_REPORT" should have been delivered on the caller's thread: true
+    And feature "CARD_PAYMENTS" should have been delivered on the caller's thread: false
+    And 0 listener changes should have been dropped
+
+  Scenario: Failing listener doesn't prevent others from being notified
+    Given a failing listener is registered first
+    And a listener repository with queue capacity 10 and backpressure policy CALLER_RUNS
+    When the listener dispatcher is busy with feature "SEARCH" set to enabled: true
+    And feature "CARD_PAYMENTS" is set in the listener repository to enabled: true
+    And the listener repository is closed
+    Then the listener should have received batches "SEARCH=true|CARD_PAYMENTS=true"
+    And the failing listener should have been called 2 times
@@ -52,3 +52,47 @@ Feature: Method Call Interceptor
     And the wrapper should equal the raw target
     And the wrapper hashCode should equal the raw target hashCode
     And the wrapper toString should equal the raw target toString
+
+  # regression guard: wrapper classes must stay unloadable, e.g. must not be defined in a long-lived class loader
+  Scenario: Generated wrapper classes are unloaded once the wrapped beans are unreachable
+    When the bean is wrapped by the post processor 50 times and the wrappers are released
+    Then all generated wrapper classes should be unloaded
+
+  Scenario Outline: Feature check is merged into an existing AOP proxy
+    Given a feature is enabled: <featureEnabled>
+    When an AOP-proxied bean is processed by the post processor
+    Then the existing AOP proxy should be returned
+    When the AOP-proxied bean method is called
+    Then other AOP advice should be called <otherAdviceCalls> times
+    And the exception should be of type "<exceptionType>"
+    Examples:
+      | featureEnabled | otherAdviceCalls | exceptionType            |
+      | true           | 1                |                          |
+      | false          | 0                | FeatureDisabledException |
+
+  Scenario Outline: Disabled feature returns futures instead of throwing
+    Given a feature is enabled: false
+    And a proxy target is a bean
+    And a proxy target method returns async
+    And disabled async calls are handled with policy "<policy>"
+    When the interceptor is invoked
+    Then the proxy target method should not be called
+    And the exception should be of type ""
+    And the returned future should be <outcome>
+    Examples:
+      | policy         | outcome                                                  |
+      | FAIL           | failed with FeatureDisabledException without stack trace |
+      | COMPLETE_EMPTY | completed with null                                      |
+
+  Scenario: Async methods check the feature again when executed
+    Given the feature is enabled on the calling thread only
+    When an async AOP-proxied bean is processed by the post processor
+    And the async AOP-proxied bean method is called
+    Then the exception should be of type ""
+    And the returned future should be failed with FeatureDisabledException without stack trace
+    And the async target method should not be called
+
+  Scenario: Classes defined by a child class loader can be wrapped
+    When a bean whose class is defined by a child class loader is wrapped by the post processor
+    Then the exception should be of type ""
+    And the wrapper should be a subclass of the child-loaded class
@@ -0,0 +1,91 @@
+Feature: Redis Caching Feature State Repository
+
+  Scenario: Cluster cache keys share one hash slot
+    Given cluster cache keys with prefix "feature:" and hash tag "orders"
+    Then the key of feature "SEARCH" should be "feature:{orders}:SEARCH"
+    And the key of feature "CARD_PAYMENTS" for tenant "acme" should be "feature:{orders}:tenant:acme:CARD_PAYMENTS"
+    And the keys of all features should be in the same hash slot
+
+  Scenario: Cluster mode reads from replicas
+    Given a cluster-mode Redis caching repository with hash tag "orders"
+    When feature "SEARCH" is read from the cluster-mode repository
+    Then the replica should have been read 1 times
+    And the primary should have been read 0 times
+
+  Scenario: Cluster mode reads own writes from the primary until the replica catches up
+    Given a cluster-mode Redis caching repository with hash tag "orders"
+    When feature "SEARCH" is stored in the cluster-mode repository as enabled: true
+    And feature "SEARCH" is read from the cluster-mode repository
+    Then the replica should have been read 1 times
+    And the primary should have been read 1 times
+    When the Redis replica holds feature "SEARCH" with enabled: true
+    And feature "SEARCH" is read from the cluster-mode repository
+    And feature "SEARCH" is read from the cluster-mode repository
+    Then the replica should have been read 3 times
+    And the primary should have been read 1 times
+
+  Scenario: Budgeted cluster mode reads from replicas
+    Given a budgeted cluster-mode Redis caching repository with hash tag "orders"
+    When feature "SEARCH" is read from the cluster-mode repository
+    Then the replica should have been read 1 times
+    And the primary should have been read 0 times
+
+  Scenario: Budgeted mode serves the last-known state when Redis is slow
+    Given a budgeted Redis caching repository with read budget of 50 ms
+    And Redis holds feature "SEARCH" with enabled: true
+    And feature "SEARCH" is read from the budgeted repository
+    And Redis reads fail
+    And feature "SEARCH" is read from the budgeted repository
+    When Redis reads take 500 ms and return enabled: false
+    And feature "SEARCH" is read from the budgeted repository
+    Then the budgeted read should return enabled: true
+    And the budgeted read should take less than 250 ms
+
+  Scenario: Budgeted mode reads the delegate when Redis fails and nothing is known
+    Given a budgeted Redis caching repository with read budget of 50 ms
+    And the budgeted repository delegate holds feature "SEARCH" with enabled: true
+    When Redis reads fail
+    And feature "SEARCH" is read from the budgeted repository
+    Then the budgeted read should return enabled: true
+
+  Scenario: Budgeted mode bounds the first read after Redis starts hanging
+    Given a budgeted Redis caching repository with read budget of 50 ms
+    And Redis holds feature "SEARCH" with enabled: true
+    And feature "SEARCH" is read from the budgeted repository
+    When Redis reads take 500 ms and return enabled: false
+    And feature "SEARCH" is read from the budgeted repository
+    Then the budgeted read should return enabled: true
+    And the budgeted read should take less than 250 ms
+    And the last Redis read should have run on the caller's thread: false
+
+  Scenario: Late Redis replies update the last-known state
+    Given a budgeted Redis caching repository with read budget of 50 ms
+    And Redis holds feature "SEARCH" with enabled: true
+    And feature "SEARCH" is read from the budgeted repository
+    And Redis reads take 200 ms and return enabled: false
+    And feature "SEARCH" is read from the budgeted repository
+    When 400 ms pass
+    And Redis reads fail
+    And feature "SEARCH" is read from the budgeted repository
+    Then the budgeted read should return enabled: false
+
+  Scenario: Budgeted mode refills the cache without waiting for Redis
+    Given a budgeted Redis caching repository with read budget of 50 ms
+    And the budgeted repository delegate holds feature "SEARCH" with enabled: true
+    And Redis holds no entries
+    And Redis writes take 500 ms
+    When feature "SEARCH" is read from the budgeted repository
+    Then the budgeted read should return enabled: true
+    And the budgeted read should take less than 250 ms
+    And Redis should eventually be written feature "SEARCH" with enabled: true
+
+  Scenario: Budgeted mode returns no state when the delegate is busy, so the feature default applies
+    Given a budgeted Redis caching repository with read budget of 50 ms
+    And the budgeted repository delegate holds feature "SEARCH" with enabled: true
+    And budgeted repository delegate reads take 500 ms
+    And Redis reads fail
+    When feature "SEARCH" is read from the budgeted repository while another read waits for the delegate
+    Then the budgeted read should return no state
+    And the budgeted read should take less than 250 ms
+    And Redis should eventually be written feature "SEARCH" with enabled: true
+    And Redis should not have been written feature "SEARCH" with enabled: false
@@ -0,0 +1,37 @@
+Feature: Scheduled Feature State Repository
+
+  Scenario Outline: Time window is evaluated into a plain on/off state
+    Given the feature is stored with a time window from <startDays> to <endDays> days from now
+    Then the effective feature state should be enabled: <enabled>
+    Examples:
+      | startDays | endDays | enabled |
+      | -2        | -1      | false   |
+      | -1        | 1       | true    |
+      | 1         | 2       | false   |
+
+  Scenario: Saving the effective state keeps the schedule
+    Given the feature is stored with a time window from -1 to 1 days from now
+    When the looked up feature state is saved unmodified
+    Then the stored feature strategy should be "time-window"
+    And the effective feature state should be enabled: true
+
+  Scenario: Effective state flips when the clock crosses the window boundaries
+    Given the feature is stored with a time window from 1 to 2 hours from now
+    And the effective feature state should be enabled: false
+    When 90 minutes pass
+    Then the effective feature state should be enabled: true
+    And the published feature state should be enabled: true
+    When 60 minutes pass
+    Then the effective feature state should be enabled: false
+    And the published feature state should be enabled: false
+
+  Scenario: Saving the state without the time window parameters clears the schedule
+    Given the feature is stored with a time window from -1 to 1 days from now
+    When the looked up feature state is saved without the time window parameters
+    Then the stored feature strategy should be ""
+    And the effective feature state should be enabled: true
+
+  Scenario: Looked up state modified by the caller doesn't affect other lookups
+    Given the feature is stored with a time window from -1 to 1 days from now
+    When the looked up feature state is modified by the caller to enabled: false
+    Then the effective feature state should be enabled: true
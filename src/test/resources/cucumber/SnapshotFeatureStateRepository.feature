@@ -0,0 +1,31 @@
+Feature: Snapshot Feature State Repository
+
+  Scenario: Last-known state is served after restart while the delegate is down
+    Given the delegate repository holds feature state enabled: true
+    And the snapshot repository with max age 1h has read the feature state
+    When the snapshot repository is recreated and the delegate fails
+    Then the snapshot repository should return feature state enabled: true
+
+  Scenario: Delegate failure is propagated if the snapshot is too old
+    Given the delegate repository holds feature state enabled: true
+    And the snapshot repository with max age 1ms has read the feature state
+    When the snapshot repository is recreated and the delegate fails
+    And the snapshot becomes older than its max age
+    Then the snapshot repository lookup should fail
+
+  Scenario: Changed state is written to the snapshot
+    Given the delegate repository holds feature state enabled: true
+    And the snapshot repository with max age 1h has read the feature state
+    When the feature state is set to enabled: false
+    And the snapshot repository is recreated and the delegate fails
+    Then the snapshot repository should return feature state enabled: false
+
+  Scenario: Snapshot declaring more features than it holds is ignored
+    Given the snapshot file declares 2147483647 features but holds none
+    When the snapshot repository is recreated and the delegate fails
+    Then the snapshot repository lookup should fail
+
+  Scenario: Snapshot having a feature without a name is ignored
+    Given the snapshot file holds 1 feature without a name
+    When the snapshot repository is recreated and the delegate fails
+    Then the snapshot repository lookup should fail
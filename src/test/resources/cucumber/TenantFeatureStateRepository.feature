@@ -0,0 +1,39 @@
+Feature: Tenant Feature State Repository
+
+  Scenario: Tenant override takes precedence over the global state
+    Given the global state of the tenant-scoped feature is enabled: true
+    And tenant "acme" overrides the tenant-scoped feature with enabled: false
+    Then for tenant "acme" the tenant-scoped feature should be enabled: false
+    And for tenant "globex" the tenant-scoped feature should be enabled: true
+    And without tenant the tenant-scoped feature should be enabled: true
+
+  Scenario: Removed override falls back to the global state
+    Given the global state of the tenant-scoped feature is enabled: true
+    And tenant "acme" overrides the tenant-scoped feature with enabled: false
+    And for tenant "acme" the tenant-scoped feature should be enabled: false
+    When tenant "acme" removes the tenant-scoped feature override
+    Then for tenant "acme" the tenant-scoped feature should be enabled: true
+
+  Scenario: Cold tenants are evicted and reloaded
+    Given the global state of the tenant-scoped feature is enabled: true
+    And tenant "acme" overrides the tenant-scoped feature with enabled: false
+    When tenants "acme, globex, initech" look up the tenant-scoped feature
+    Then at most 2 tenants should be held in memory
+    And for tenant "acme" the tenant-scoped feature should be enabled: false
+
+  Scenario: Tenant overrides are loaded with one batch read
+    Given tenant "acme" overrides the tenant-scoped feature with enabled: false
+    When tenants "acme" look up the tenant-scoped feature
+    Then the overrides should have been loaded with 1 batch read and 0 single reads
+
+  Scenario: Override set while the tenant is being loaded is not lost
+    Given the global state of the tenant-scoped feature is enabled: true
+    When tenant "acme" overrides the tenant-scoped feature with enabled: false while being loaded
+    Then for tenant "acme" the tenant-scoped feature should be enabled: false
+
+  Scenario: Tenants loaded after evicting all tenants can be evicted as cold ones
+    Given the global state of the tenant-scoped feature is enabled: true
+    And tenants "acme, globex" look up the tenant-scoped feature
+    When all tenants are evicted
+    And tenants "initech, umbrella, hooli" look up the tenant-scoped feature
+    Then at most 2 tenants should be held in memory
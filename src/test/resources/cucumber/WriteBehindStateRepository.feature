@@ -0,0 +1,61 @@
+Feature: Write-behind feature state repository
+
+  Scenario: Queued writes are visible to reads but not persisted until flushed
+    Given a write-behind repository
+    When the write-behind feature is set to enabled: true
+    Then the write-behind feature should be read as enabled: true
+    And the persistent repository should have received 0 writes
+    And the write-behind lag should be positive: true
+    When write-behind writes are flushed
+    Then the persistent repository should have received 1 writes
+    And the persisted write-behind feature should be enabled: true
+    And the write-behind lag should be positive: false
+
+  Scenario: Writes to the same feature are coalesced
+    Given a write-behind repository
+    When the write-behind feature is set to enabled: true
+    And the write-behind feature is set to enabled: false
+    And the write-behind feature is set to enabled: true
+    And write-behind writes are flushed
+    Then the persistent repository should have received 1 writes
+    And the persisted write-behind feature should be enabled: true
+
+  Scenario: Failed flush keeps writes queued for the next flush
+    Given a write-behind repository
+    And the persistent repository fails: true
+    When the write-behind feature is set to enabled: true
+    And write-behind writes are flushed
+    Then the exception should be of type "IllegalStateException"
+    And the write-behind feature should be read as enabled: true
+    When the persistent repository fails: false
+    And write-behind writes are flushed
+    Then the persistent repository should have received 1 writes
+    And the persisted write-behind feature should be enabled: true
+
+  Scenario: Closing flushes queued writes, later writes are persisted directly
+    Given a write-behind repository
+    When the write-behind feature is set to enabled: true
+    And the write-behind repository is closed
+    Then the persistent repository should have received 1 writes
+    When the write-behind feature is set to enabled: false
+    Then the persistent repository should have received 2 writes
+    And the persisted write-behind feature should be enabled: false
+
+  Scenario: A state failing to persist doesn't hold the others back
+    Given a write-behind repository
+    And the persistent repository rejects feature "CARD_PAYMENTS": true
+    When feature "CARD_PAYMENTS" is written behind as enabled: true
+    And feature "DAILY_REPORT" is written behind as enabled: true
+    And write-behind writes are flushed
+    Then the exception should be of type "IllegalArgumentException"
+    And feature "DAILY_REPORT" should be persisted as enabled: true
+    And feature "CARD_PAYMENTS" should not be persisted
+    When the persistent repository rejects feature "CARD_PAYMENTS": false
+    And write-behind writes are flushed
+    Then feature "CARD_PAYMENTS" should be persisted as enabled: true
+
+  Scenario: Closing the caching repository flushes queued writes
+    Given a write-behind repository behind a cache
+    When the caching repository is closed
+    Then the persistent repository should have received 1 writes
+    And the persisted write-behind feature should be enabled: true